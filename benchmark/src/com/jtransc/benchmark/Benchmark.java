@@ -0,0 +1,15 @@
+package com.jtransc.benchmark;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a public no-argument method of a suite as a benchmark. The returned value is consumed by the runner.
+ * Each invocation is one operation, so methods should do enough work for the timer resolution (milliseconds on some targets).
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Benchmark {
+}
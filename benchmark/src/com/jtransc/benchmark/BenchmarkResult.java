@@ -0,0 +1,82 @@
+package com.jtransc.benchmark;
+
+public class BenchmarkResult {
+	// Student's t quantiles for a 99.9% confidence interval, indexed by degrees of freedom
+	static private final double[] T_999 = {
+		Double.NaN, 636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+		4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850
+	};
+
+	public final String benchmark;
+	public final String params;
+	public final int samples;
+	// Microseconds per operation
+	public final double mean;
+	public final double error;
+	public final double opsPerSecond;
+
+	public BenchmarkResult(String benchmark, String params, double[] samples) {
+		this.benchmark = benchmark;
+		this.params = params;
+		this.samples = samples.length;
+
+		double sum = 0;
+		for (double sample : samples) sum += sample;
+		this.mean = sum / samples.length;
+
+		if (samples.length > 1) {
+			double squares = 0;
+			for (double sample : samples) squares += (sample - mean) * (sample - mean);
+			double stddev = Math.sqrt(squares / (samples.length - 1));
+			int df = samples.length - 1;
+			double t = (df < T_999.length) ? T_999[df] : 3.291;
+			this.error = t * stddev / Math.sqrt(samples.length);
+		} else {
+			this.error = 0;
+		}
+
+		this.opsPerSecond = (mean > 0) ? (1000000.0 / mean) : 0;
+	}
+
+	public String getName() {
+		return params.isEmpty() ? benchmark : benchmark + "(" + params + ")";
+	}
+
+	public String toJson() {
+		return "{\"benchmark\":" + quote(benchmark) +
+			",\"params\":" + quote(params) +
+			",\"samples\":" + samples +
+			",\"mean\":" + mean +
+			",\"error\":" + error +
+			",\"opsPerSecond\":" + opsPerSecond +
+			",\"unit\":\"us/op\"}";
+	}
+
+	static private String quote(String str) {
+		StringBuilder out = new StringBuilder();
+		out.append('"');
+		for (int n = 0; n < str.length(); n++) {
+			char c = str.charAt(n);
+			if (c == '"' || c == '\\') out.append('\\');
+			out.append(c);
+		}
+		out.append('"');
+		return out.toString();
+	}
+
+	@Override
+	public String toString() {
+		return getName() + ": " + fixed(mean, 3) + " +- " + fixed(error, 3) + " us/op, " + fixed(opsPerSecond, 1) + " ops/s";
+	}
+
+	// Avoids String.format, which is not available on every target
+	static public String fixed(double value, int decimals) {
+		double scale = Math.pow(10, decimals);
+		long scaled = (long) Math.floor(Math.abs(value) * scale + 0.5);
+		String digits = Long.toString(scaled);
+		while (digits.length() <= decimals) digits = "0" + digits;
+		String sign = (value < 0 && scaled != 0) ? "-" : "";
+		if (decimals == 0) return sign + digits;
+		return sign + digits.substring(0, digits.length() - decimals) + "." + digits.substring(digits.length() - decimals);
+	}
+}
@@ -0,0 +1,181 @@
+package com.jtransc.benchmark;
+
+import com.jtransc.JTranscSystem;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Runs the {@link Benchmark} methods of suite classes and reports the mean time per operation with a 99.9% error.
+ *
+ * Suites are found through reflection, so they must be kept by tree shaking with {@link com.jtransc.annotation.JTranscKeep}.
+ * Options: -wi (warmup iterations), -i (measurement iterations), -t (iteration time in ms) and -f (name filter).
+ */
+public class BenchmarkRunner {
+	// Prefix of the line with the results in JSON, read by the benchmarkReport gradle task
+	static public final String RESULTS_PREFIX = "BENCHMARK_RESULTS ";
+
+	// Consumes the results so benchmark bodies can't be removed as dead code
+	static public int blackhole;
+
+	public int warmupIterations = 3;
+	public int iterations = 5;
+	public double iterationTime = 200.0;
+	public String filter = null;
+
+	private final ArrayList<BenchmarkResult> results = new ArrayList<>();
+
+	public BenchmarkRunner() {
+	}
+
+	public BenchmarkRunner(String[] args) {
+		for (int n = 0; n < args.length - 1; n++) {
+			String arg = args[n];
+			String value = args[n + 1];
+			switch (arg) {
+				case "-wi": warmupIterations = Integer.parseInt(value); n++; break;
+				case "-i": iterations = Integer.parseInt(value); n++; break;
+				case "-t": iterationTime = Double.parseDouble(value); n++; break;
+				case "-f": filter = value; n++; break;
+			}
+		}
+	}
+
+	public List<BenchmarkResult> getResults() {
+		return results;
+	}
+
+	public BenchmarkRunner run(Class<?>... suites) {
+		for (Class<?> suite : suites) {
+			try {
+				runSuite(suite);
+			} catch (Throwable t) {
+				System.out.println("Error running " + suite.getName() + ": " + t);
+			}
+		}
+		return this;
+	}
+
+	public void report() {
+		System.out.println();
+		for (BenchmarkResult result : results) System.out.println(result);
+
+		StringBuilder json = new StringBuilder();
+		json.append('[');
+		for (int n = 0; n < results.size(); n++) {
+			if (n > 0) json.append(',');
+			json.append(results.get(n).toJson());
+		}
+		json.append(']');
+		System.out.println(RESULTS_PREFIX + json);
+	}
+
+	private void runSuite(Class<?> suite) throws Throwable {
+		String suiteName = suite.getSimpleName();
+		List<Method> benchmarks = annotated(suite, Benchmark.class);
+		List<Method> setups = annotated(suite, Setup.class);
+		List<Field> params = new ArrayList<>();
+		for (Field field : suite.getDeclaredFields()) {
+			if (field.getAnnotation(Param.class) != null) params.add(field);
+		}
+		Collections.sort(params, new Comparator<Field>() {
+			@Override
+			public int compare(Field a, Field b) {
+				return a.getName().compareTo(b.getName());
+			}
+		});
+
+		for (Method method : benchmarks) {
+			String name = suiteName + "." + method.getName();
+			if (filter != null && !name.contains(filter)) continue;
+			for (String[] values : combinations(params)) {
+				Object instance = suite.newInstance();
+				StringBuilder paramsName = new StringBuilder();
+				for (int n = 0; n < params.size(); n++) {
+					Field field = params.get(n);
+					setParam(instance, field, values[n]);
+					if (n > 0) paramsName.append(", ");
+					paramsName.append(field.getName()).append('=').append(values[n]);
+				}
+				for (Method setup : setups) setup.invoke(instance);
+
+				System.out.print(name + (paramsName.length() > 0 ? "(" + paramsName + ")" : "") + "...");
+				for (int n = 0; n < warmupIterations; n++) iteration(instance, method);
+				double[] samples = new double[iterations];
+				for (int n = 0; n < iterations; n++) samples[n] = iteration(instance, method);
+				BenchmarkResult result = new BenchmarkResult(name, paramsName.toString(), samples);
+				results.add(result);
+				System.out.println(BenchmarkResult.fixed(result.mean, 3) + " us/op");
+			}
+		}
+	}
+
+	// Returns the microseconds per operation of one iteration
+	private double iteration(Object instance, Method method) throws Throwable {
+		int ops = 0;
+		double start = JTranscSystem.stamp();
+		double elapsed;
+		do {
+			Object result = method.invoke(instance);
+			blackhole += (result != null) ? result.hashCode() : 0;
+			ops++;
+			elapsed = JTranscSystem.stamp() - start;
+		} while (elapsed < iterationTime);
+		return elapsed * 1000.0 / ops;
+	}
+
+	static private List<Method> annotated(Class<?> clazz, Class<? extends java.lang.annotation.Annotation> annotation) {
+		List<Method> out = new ArrayList<>();
+		for (Method method : clazz.getDeclaredMethods()) {
+			if (method.getAnnotation(annotation) != null && Modifier.isPublic(method.getModifiers())) out.add(method);
+		}
+		// Reflection order is not the same on every target
+		Collections.sort(out, new Comparator<Method>() {
+			@Override
+			public int compare(Method a, Method b) {
+				return a.getName().compareTo(b.getName());
+			}
+		});
+		return out;
+	}
+
+	static private List<String[]> combinations(List<Field> params) {
+		List<String[]> out = new ArrayList<>();
+		out.add(new String[0]);
+		for (Field field : params) {
+			List<String[]> next = new ArrayList<>();
+			for (String[] prefix : out) {
+				for (String value : field.getAnnotation(Param.class).value()) {
+					String[] values = Arrays.copyOf(prefix, prefix.length + 1);
+					values[prefix.length] = value;
+					next.add(values);
+				}
+			}
+			out = next;
+		}
+		return out;
+	}
+
+	static private void setParam(Object instance, Field field, String value) throws IllegalAccessException {
+		Class<?> type = field.getType();
+		if (type == int.class) {
+			field.setInt(instance, Integer.parseInt(value));
+		} else if (type == long.class) {
+			field.setLong(instance, Long.parseLong(value));
+		} else if (type == double.class) {
+			field.setDouble(instance, Double.parseDouble(value));
+		} else if (type == boolean.class) {
+			field.setBoolean(instance, Boolean.parseBoolean(value));
+		} else if (type == String.class) {
+			field.set(instance, value);
+		} else {
+			throw new IllegalArgumentException("Unsupported @Param type " + type.getName() + " for " + field.getName());
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package com.jtransc.benchmark;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Values for a public int, long, double, boolean or String field of a suite.
+ * Benchmarks run once for every combination of the parameter values.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Param {
+	String[] value();
+}
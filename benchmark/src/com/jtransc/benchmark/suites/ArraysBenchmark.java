@@ -0,0 +1,29 @@
+package com.jtransc.benchmark.suites;
+
+import com.jtransc.annotation.JTranscKeep;
+import com.jtransc.benchmark.Benchmark;
+import com.jtransc.benchmark.Param;
+
+@JTranscKeep
+public class ArraysBenchmark {
+	@Param({"1000", "1000000"})
+	public int size;
+
+	@Benchmark
+	public int writeIntArray() {
+		int[] array = new int[size];
+		for (int n = 0; n < size; n++) {
+			array[n] = n * 1000;
+		}
+		return array[7];
+	}
+
+	@Benchmark
+	public int writeFloatArray() {
+		float[] array = new float[size];
+		for (int n = 0; n < size; n++) {
+			array[n] = n * 1000;
+		}
+		return (int) array[7];
+	}
+}
@@ -0,0 +1,54 @@
+package com.jtransc.benchmark.suites;
+
+import com.jtransc.annotation.JTranscKeep;
+import com.jtransc.benchmark.Benchmark;
+import com.jtransc.benchmark.Setup;
+
+@JTranscKeep
+public class InstanceOfBenchmark {
+	static private class Test1 {
+	}
+
+	static private class Test2 {
+	}
+
+	private Object test1;
+	private Object test2;
+
+	@Setup
+	public void setup() {
+		// Picked at runtime so the checks can't be folded
+		int rand = (int) (System.currentTimeMillis() % 2L);
+		test1 = genObj((rand + 0) % 2);
+		test2 = genObj((rand + 1) % 2);
+	}
+
+	@Benchmark
+	@SuppressWarnings("all")
+	public int instanceOfClasses() {
+		int m = 1;
+		Object test1 = this.test1;
+		Object test2 = this.test2;
+		for (int n = 1; n < 1000000; n++) {
+			if (test1 instanceof Test1) {
+				m += n - 1;
+			} else if (test1 instanceof Test2) {
+				m += n + 2;
+			}
+
+			if (test2 instanceof Test1) {
+				m += n - 3;
+			} else if (test2 instanceof Test2) {
+				m += n + 4;
+			}
+		}
+		return m;
+	}
+
+	static private Object genObj(int index) {
+		switch (index) {
+			case 0: return new Test1();
+			default: return new Test2();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.jtransc.benchmark.suites;
+
+import com.jtransc.annotation.JTranscKeep;
+import com.jtransc.benchmark.Benchmark;
+
+@JTranscKeep
+public class LoopsBenchmark {
+	@Benchmark
+	public int plainLoops() {
+		int m = 0;
+		for (int n = 0; n < 1000000; n++) {
+			m += n;
+		}
+		return m;
+	}
+
+	@Benchmark
+	public int longArithmetic() {
+		long m = 0;
+		for (int n = 0; n < 1000000; n++) {
+			m = (m ^ n) * 0x100000001B3L + (m >>> 7);
+		}
+		return (int) m;
+	}
+
+	@Benchmark
+	public int callStaticMult() {
+		int m = 0;
+		for (int n = 0; n < 1000000; n++) {
+			m += calcStatic(m, n);
+		}
+		return m;
+	}
+
+	@Benchmark
+	public int callInstanceMult() {
+		int m = 0;
+		for (int n = 0; n < 1000000; n++) {
+			m += calcMult(m, n);
+		}
+		return m;
+	}
+
+	@Benchmark
+	public int callInstanceDiv() {
+		int m = 1;
+		for (int n = 1; n < 1000000; n++) {
+			m += calcDiv(m, n);
+		}
+		return m;
+	}
+
+	static public int calcStatic(int a, int b) {
+		return (a + b) * (a + b);
+	}
+
+	private int calcMult(int a, int b) {
+		return (a + b) * (a + b);
+	}
+
+	private int calcDiv(int a, int b) {
+		return (a - b) / (a + b);
+	}
+}
@@ -0,0 +1,56 @@
+package com.jtransc.benchmark.suites;
+
+import com.jtransc.annotation.JTranscKeep;
+import com.jtransc.benchmark.Benchmark;
+import com.jtransc.simd.Float32x4;
+import com.jtransc.simd.MutableFloat32x4;
+import com.jtransc.simd.MutableMatrixFloat32x4x4;
+
+@JTranscKeep
+public class SimdBenchmark {
+	@Benchmark
+	public int simdMutable() {
+		MutableFloat32x4 a = new MutableFloat32x4();
+		MutableFloat32x4 b = new MutableFloat32x4(2f, 3f, 4f, 5f);
+
+		for (int n = 0; n < 1000000; n++) {
+			a.setToAdd(a, b);
+		}
+
+		return (int) a.getX() + (int) a.getY() + (int) a.getZ() + (int) a.getW();
+	}
+
+	@Benchmark
+	public int simdImmutable() {
+		Float32x4 a = Float32x4.create(0f, 0f, 0f, 0f);
+		Float32x4 b = Float32x4.create(2f, 3f, 4f, 5f);
+
+		for (int n = 0; n < 1000000; n++) {
+			a = Float32x4.add(a, b);
+		}
+
+		return (int) Float32x4.getX(a) + (int) Float32x4.getY(a) + (int) Float32x4.getZ(a) + (int) Float32x4.getW(a);
+	}
+
+	@Benchmark
+	public int simdMutableMatrixMult() {
+		MutableMatrixFloat32x4x4 a = new MutableMatrixFloat32x4x4().setTo(
+			1f, 9f, 1f, 7f,
+			3f, 2f, 4f, 5f,
+			3f, 7f, 3f, 3f,
+			3f, 8f, 4f, 4f
+		);
+		MutableMatrixFloat32x4x4 b = new MutableMatrixFloat32x4x4().setTo(
+			2f, 3f, 4f, 5f,
+			2f, 3f, 4f, 5f,
+			2f, 3f, 4f, 5f,
+			2f, 3f, 4f, 5f
+		);
+
+		for (int n = 0; n < 100000; n++) {
+			a.setToMul44(a, b);
+		}
+
+		return (int) a.getSumAll();
+	}
+}
@@ -0,0 +1,22 @@
+package com.jtransc.benchmark.suites;
+
+import com.jtransc.annotation.JTranscKeep;
+import com.jtransc.benchmark.Benchmark;
+import com.jtransc.benchmark.Param;
+
+@JTranscKeep
+public class StringBenchmark {
+	@Param({"100000"})
+	public int count;
+
+	@Benchmark
+	public int stringBuilder() {
+		StringBuilder out = new StringBuilder();
+
+		for (int n = 0; n < count; n++) {
+			out.append(n);
+		}
+
+		return out.toString().hashCode();
+	}
+}
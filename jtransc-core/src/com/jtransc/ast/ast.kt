@@ -37,7 +37,10 @@ import java.util.*
 
 data class ConfigCompile(val compile: Boolean = true)
 data class ConfigMinimizeNames(val minimizeNames: Boolean = false)
-data class ConfigTreeShaking(val treeShaking: Boolean = false, val trace: Boolean = false)
+// With rta, overriding methods are only kept in classes the program instantiates (rapid type analysis)
+data class ConfigTreeShaking(val treeShaking: Boolean = false, val trace: Boolean = false, val rta: Boolean = false)
+// Directory where decoded classes are cached between builds, disabled by default
+data class ConfigAstCache(val path: String? = null)
 //data class ConfigInitialSize(val width: Int = 1280, val height: Int = 720)
 
 data class AstBuildSettings(
@@ -297,8 +300,9 @@ class AstClass(
 	val methodsWithoutConstructors: List<AstMethod> by lazy { methods.filter { !it.isClassOrInstanceInit } }
 	val constructors: List<AstMethod> get() = methods.filter { it.isInstanceInit }
 	val methodsByName = hashMapOf<String, ArrayList<AstMethod>>()
-	val methodsByNameDescInterfaces = hashMapOf<AstMethodWithoutClassRef, AstMethod?>()
-	val methodsByNameDesc = hashMapOf<AstMethodWithoutClassRef, AstMethod?>()
+	// Lookups are cached here, and targets look methods up from several threads
+	val methodsByNameDescInterfaces: MutableMap<AstMethodWithoutClassRef, AstMethod?> = Collections.synchronizedMap(hashMapOf())
+	val methodsByNameDesc: MutableMap<AstMethodWithoutClassRef, AstMethod?> = Collections.synchronizedMap(hashMapOf())
 	//val fieldsByName = hashMapOf<String, AstField>()
 	val fieldsByInfo = hashMapOf<AstFieldWithoutClassRef, AstField>()
 	val fieldsByName = hashMapOf<String, AstField>()
@@ -530,7 +534,8 @@ data class AstReferences(
 	val program: AstProgram?,
 	val classes: Set<AstType.REF> = setOf(),
 	val methods: Set<AstMethodRef> = setOf(),
-	val fields: Set<AstFieldRef> = setOf()
+	val fields: Set<AstFieldRef> = setOf(),
+	val instantiated: Set<FqName> = setOf()
 ) {
 	val allClasses: Set<AstType.REF> by lazy {
 		classes + methods.flatMap { it.allClassRefs } + fields.flatMap { listOf(it.classRef) }
@@ -585,6 +590,7 @@ class AstField(
 ) : AstMember(containingClass, name, type, if (genericSignature != null) types.demangle(genericSignature) else type, modifiers.isStatic, modifiers.visibility, annotations), FieldRef {
 	val uniqueName = containingClass.uniqueNames.alloc(name)
 	val isFinal: Boolean = modifiers.isFinal
+	val isVolatile: Boolean = modifiers.isVolatile
 	override val ref: AstFieldRef by lazy { AstFieldRef(this.containingClass.name, this.name, this.type) }
 	val refWithoutClass: AstFieldWithoutClassRef by lazy { AstFieldWithoutClassRef(this.name, this.type) }
 	val hasConstantValue = constantValue != null
@@ -610,7 +616,9 @@ class AstMethod(
 ) : AstMember(containingClass, name, methodType, if (genericSignature != null) types.demangleMethod(genericSignature) else methodType, modifiers.isStatic, modifiers.visibility, annotations), MethodRef {
 	val isNative: Boolean = modifiers.isNative
 
-	val body: AstBody? by lazy { generateBody() }
+	private val bodyLazy = lazy { generateBody() }
+	val body: AstBody? by bodyLazy
+	val isBodyGenerated: Boolean get() = bodyLazy.isInitialized()
 	val hasBody: Boolean get() = body != null
 
 	val methodType: AstType.METHOD = methodType
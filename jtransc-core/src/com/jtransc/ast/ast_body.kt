@@ -336,7 +336,8 @@ abstract class AstExpr : AstElement, Cloneable<AstExpr> {
 		abstract val isSpecial: Boolean
 	}
 
-	class CALL_INSTANCE(obj: AstExpr, override val method: AstMethodRef, args: List<AstExpr>, override val isSpecial: Boolean = false) : CALL_BASE() {
+	// isDirect: the method is the only implementation that can be called, so it doesn't need a virtual dispatch
+	class CALL_INSTANCE(obj: AstExpr, override val method: AstMethodRef, args: List<AstExpr>, override val isSpecial: Boolean = false, val isDirect: Boolean = false) : CALL_BASE() {
 		val obj = obj.box
 		override val args = args.map { it.box }
 
@@ -10,6 +10,7 @@ import com.jtransc.text.StrReader
 import com.jtransc.text.readUntil
 import java.io.Serializable
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 
 interface AstType {
 	abstract class Primitive(underlyingClassStr: String, val ch: Char, val shortName: String) : AstType {
@@ -137,7 +138,8 @@ interface AstType {
 
 @Singleton
 class AstTypes {
-	private val AstTypeDemangleCache = hashMapOf<String, AstType>()
+	// Shared by the class loading workers
+	private val AstTypeDemangleCache = ConcurrentHashMap<String, AstType>()
 
 	fun ARRAY(element: AstType, count: Int): AstType.ARRAY = if (count <= 1) AstType.ARRAY(element) else ARRAY(AstType.ARRAY(element), count - 1)
 
@@ -154,10 +156,10 @@ class AstTypes {
 	}
 
 	fun demangle(desc: String): AstType {
-		if (desc !in AstTypeDemangleCache) {
-			AstTypeDemangleCache[desc] = this.readOne(StrReader(desc))
-		}
-		return AstTypeDemangleCache[desc]!!
+		val cached = AstTypeDemangleCache[desc]
+		if (cached != null) return cached
+		val type = this.readOne(StrReader(desc))
+		return AstTypeDemangleCache.putIfAbsent(desc, type) ?: type
 	}
 
 	fun demangleMethod(text: String): AstType.METHOD {
@@ -29,6 +29,7 @@ object AstDependencyAnalyzer {
 		val types = hashSetOf<FqName>()
 		val fields = hashSetOf<AstFieldRef>()
 		val methods = hashSetOf<AstMethodRef>()
+		val instantiated = hashSetOf<FqName>()
 
 		fun ana(type: AstType) = types.addAll(type.getRefTypesFqName())
 		fun ana(types: List<AstType>) = types.map { ana(it) }
@@ -46,6 +47,7 @@ object AstDependencyAnalyzer {
 				}
 				is AstExpr.NEW -> {
 					ana(expr.target)
+					instantiated.add(expr.target.name)
 				}
 				is AstExpr.NEW_ARRAY -> {
 					for (c in expr.counts) ana(c)
@@ -163,6 +165,7 @@ object AstDependencyAnalyzer {
 				}
 				is AstStm.SET_NEW_WITH_CONSTRUCTOR -> {
 					ana(stm.target)
+					instantiated.add(stm.target.name)
 					ana(stm.method.type)
 					for (arg in stm.args) {
 						ana(arg)
@@ -190,7 +193,8 @@ object AstDependencyAnalyzer {
 			program = program,
 			classes = types.map { AstType.REF(it) }.toSet(),
 			fields = fields.toSet(),
-			methods = methods.toSet()
+			methods = methods.toSet(),
+			instantiated = instantiated.toSet()
 		)
 	}
 }
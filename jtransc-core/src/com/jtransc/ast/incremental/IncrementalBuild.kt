@@ -0,0 +1,97 @@
+package com.jtransc.ast.incremental
+
+import com.jtransc.ast.AstClass
+import com.jtransc.ast.AstProgram
+import com.jtransc.ast.References
+import com.jtransc.crypto.digestHex
+import com.jtransc.json.Json
+import com.jtransc.log.log
+import com.jtransc.vfs.SyncVfsFile
+import java.security.MessageDigest
+import java.util.*
+
+data class ConfigIncremental(val incremental: Boolean = false)
+
+/**
+ * Tracks which classes changed since the previous build of the same target.
+ *
+ * Each class is fingerprinted by its bytecode and the members that survived tree shaking. A class is
+ * affected when its fingerprint changed or when any class it depends on, directly or transitively, is
+ * affected. Targets reuse the code generated for the other classes and call [save] once the output is written.
+ */
+class IncrementalBuild(val program: AstProgram, val folder: SyncVfsFile, val settingsKey: String) {
+	class ClassState(val fingerprint: String, val references: List<String>)
+
+	private val stateFile = folder["state.json"]
+
+	val current: Map<String, ClassState> = program.classes.associate { it.fqname to ClassState(fingerprint(it), references(it)) }
+	val previous: Map<String, ClassState> = load() ?: mapOf()
+	val removed: Set<String> = previous.keys - current.keys
+	val affected: Set<String> = computeAffected()
+	val fullBuild: Boolean get() = affected.size == current.size
+
+	fun isAffected(clazz: AstClass) = clazz.fqname in affected
+
+	fun save() {
+		folder.ensuredir()
+		stateFile.writeString(Json.encode(mapOf(
+			"settings" to settingsKey,
+			"classes" to current.mapValues { mapOf("fingerprint" to it.value.fingerprint, "references" to it.value.references) }
+		)))
+	}
+
+	private fun load(): Map<String, ClassState>? {
+		try {
+			if (!stateFile.exists) return null
+			val state = Json.decode(stateFile.readString())
+			if (state.getString("settings") != settingsKey) {
+				log("Incremental: settings changed, rebuilding everything")
+				return null
+			}
+			return state.getJsonObject("classes").map.entries.associate {
+				val clazz = it.value as Map<*, *>
+				"${it.key}" to ClassState("${clazz["fingerprint"]}", (clazz["references"] as List<*>).map { "$it" })
+			}
+		} catch (e: Throwable) {
+			log.warn("Incremental: can't read $stateFile, rebuilding everything: ${e.message}")
+			return null
+		}
+	}
+
+	private fun computeAffected(): Set<String> {
+		if (previous.isEmpty()) return current.keys
+
+		val dependants = hashMapOf<String, ArrayList<String>>()
+		for (states in listOf(previous, current)) {
+			for ((name, state) in states) for (ref in state.references) dependants.getOrPut(ref) { arrayListOf() } += name
+		}
+
+		val changed = current.keys.filter { previous[it]?.fingerprint != current[it]!!.fingerprint } + removed
+		val affected = hashSetOf<String>()
+		val queue = LinkedList(changed)
+		while (queue.isNotEmpty()) {
+			val name = queue.removeFirst()
+			if (affected.add(name)) queue += dependants[name] ?: listOf<String>()
+		}
+		affected.retainAll(current.keys)
+		log("Incremental: ${changed.size} changed classes, ${affected.size}/${current.size} classes to regenerate")
+		return affected
+	}
+
+	private fun fingerprint(clazz: AstClass): String {
+		val md = MessageDigest.getInstance("SHA1")
+		try {
+			md.update(program.getClassBytes(clazz.name))
+		} catch (e: Throwable) {
+			// Classes without bytecode are only fingerprinted by their members
+		}
+		for (field in clazz.fields) md.update("F${field.name}:${field.desc}\n".toByteArray())
+		for (method in clazz.methods) md.update("M${method.name}:${method.desc}:${method.bodyRef}\n".toByteArray())
+		return md.digestHex(byteArrayOf())
+	}
+
+	private fun references(clazz: AstClass): List<String> {
+		val refs = References.get(clazz).map { it.fqname } + clazz.methods.mapNotNull { it.bodyRef?.classRef?.fqname }
+		return refs.distinct().filter { it != clazz.fqname }
+	}
+}
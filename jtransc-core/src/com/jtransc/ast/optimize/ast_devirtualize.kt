@@ -0,0 +1,43 @@
+package com.jtransc.ast.optimize
+
+import com.jtransc.ast.*
+import com.jtransc.ast.treeshaking.ClassHierarchy
+import com.jtransc.log.log
+
+data class ConfigDevirtualization(val devirtualize: Boolean = false)
+
+/**
+ * Replaces virtual calls that can only reach one method with direct calls to it ([AstExpr.CALL_INSTANCE.isDirect]),
+ * so targets can call it without a virtual or interface dispatch.
+ */
+class AstDevirtualizer(val program: AstProgram, val hierarchy: ClassHierarchy = ClassHierarchy(program)) {
+	fun devirtualize() {
+		var virtual = 0
+		var direct = 0
+		val visitor = object : AstVisitor() {
+			override fun visit(expr: AstExpr.CALL_INSTANCE) {
+				super.visit(expr)
+				if (expr.isSpecial || expr.isDirect) return
+				virtual++
+				val method = hierarchy.getSingleImplementation(expr.method) ?: return
+				if (!canCallDirectly(method)) return
+				expr.box.value = AstExpr.CALL_INSTANCE(expr.obj.value, method.ref, expr.args.map { it.value }, isDirect = true)
+				direct++
+			}
+		}
+		for (clazz in program.classes) {
+			if (clazz.isNative) continue
+			for (method in clazz.methods) {
+				if (method.isNative || method.bodyRef != null) continue
+				visitor.visit(method.body ?: continue)
+			}
+		}
+		log("Devirtualization: $direct of $virtual virtual call sites devirtualized")
+	}
+
+	// Methods of native classes and methods mapped to other names are resolved by the target
+	private fun canCallDirectly(method: AstMethod): Boolean {
+		if (method.containingClass.isNative || method.containingClass.isInterface) return false
+		return method.nativeMethod == null && method.getterField == null && method.setterField == null
+	}
+}
@@ -0,0 +1,515 @@
+package com.jtransc.ast.optimize
+
+import com.jtransc.ast.*
+import com.jtransc.log.log
+import com.jtransc.types.nameType
+import java.util.*
+
+data class ConfigEscapeAnalysis(val escapeAnalysis: Boolean = false, val maxConstructorSize: Int = 64)
+
+/**
+ * Intra-procedural escape analysis with scalar replacement. Runs after inlining, which exposes the field
+ * accesses of short-lived objects to the methods that allocate them.
+ *
+ * Works on bodies made of plain statements, labels and gotos. The values held by locals are grouped following
+ * reaching definitions and copies between locals. A group is replaced when all its definitions are allocations
+ * of the same class or copies, and all its reads access fields or call a constructor that can be expanded
+ * (straight-line, without target specific bodies). Its fields are then kept in locals shared by all the objects
+ * of the group, which requires that two of them are never alive at the same time: after each constructor call,
+ * no local holding an older object of the group can be read.
+ *
+ * The constructor no longer initializes the class of a replaced allocation, so the body keeps a reference to each
+ * ancestor with a static initializer. Targets initialize the classes referenced by a method when it is entered.
+ */
+class AstScalarReplacement(val program: AstProgram, val config: ConfigEscapeAnalysis = ConfigEscapeAnalysis()) {
+	private val types = program.types
+
+	fun replace() {
+		var allocations = 0
+		var methods = 0
+		for (clazz in program.classes) {
+			for (method in clazz.methods) {
+				if (method.hasTargetBody()) continue
+				val body = method.body ?: continue
+				val replaced = BodyReplacer(method, body).replace()
+				if (replaced > 0) {
+					allocations += replaced
+					methods++
+				}
+			}
+		}
+		log("Escape analysis: $allocations allocations replaced in $methods methods")
+	}
+
+	private enum class UseKind { COPY, FIELD_READ, FIELD_WRITE, CONSTRUCTOR, OTHER }
+
+	// [expr] is the copied expression, the field access or the constructor call, and [stm] the statement using the local
+	private class Use(val local: AstLocal, val kind: UseKind, val expr: AstExpr, val stm: AstStm)
+
+	private fun AstExpr.local(): AstLocal? = when (this) {
+		is AstExpr.LOCAL -> local
+		is AstExpr.CAST -> expr.value.local()
+		else -> null
+	}
+
+	private fun uses(stm: AstStm): List<Use> {
+		val out = arrayListOf<Use>()
+		object : AstVisitor() {
+			override fun visit(stm: AstStm.SET_LOCAL) {
+				val source = stm.expr.value.local()
+				if (source != null && stm.local.type is AstType.REF) {
+					out += Use(source, UseKind.COPY, stm.expr.value, stm)
+				} else {
+					visit(stm.expr)
+				}
+			}
+
+			override fun visit(stm: AstStm.SET_FIELD_INSTANCE) {
+				val base = stm.left.value.local()
+				if (base != null) out += Use(base, UseKind.FIELD_WRITE, stm.left.value, stm) else visit(stm.left)
+				visit(stm.expr)
+			}
+
+			override fun visit(stm: AstStm.STM_EXPR) {
+				val call = stm.expr.value as? AstExpr.CALL_INSTANCE
+				val base = call?.obj?.value?.local()
+				if (call != null && base != null && call.isSpecial && call.method.isInstanceInit) {
+					out += Use(base, UseKind.CONSTRUCTOR, call, stm)
+					for (arg in call.args) visit(arg)
+				} else {
+					visit(stm.expr)
+				}
+			}
+
+			override fun visit(expr: AstExpr.FIELD_INSTANCE_ACCESS) {
+				val base = expr.expr.value.local()
+				if (base != null) out += Use(base, UseKind.FIELD_READ, expr, stm) else super.visit(expr)
+			}
+
+			override fun visit(expr: AstExpr.LOCAL) {
+				out += Use(expr.local, UseKind.OTHER, expr, stm)
+			}
+		}.visit(stm)
+		return out
+	}
+
+	private fun AstStm.isStructured(): Boolean = when (this) {
+		is AstStm.STMS, is AstStm.IF, is AstStm.IF_ELSE, is AstStm.WHILE, is AstStm.SWITCH, is AstStm.TRY_CATCH,
+		is AstStm.BREAK, is AstStm.CONTINUE, is AstStm.SET_NEW_WITH_CONSTRUCTOR -> true
+		else -> false
+	}
+
+	private fun AstStm.isJumpOrLabel(): Boolean = when (this) {
+		is AstStm.STM_LABEL, is AstStm.GOTO, is AstStm.IF_GOTO, is AstStm.SWITCH_GOTO,
+		is AstStm.RETURN, is AstStm.RETURN_VOID, is AstStm.THROW, is AstStm.RETHROW -> true
+		else -> false
+	}
+
+	private class Expansion(val args: List<Pair<AstLocal, AstExpr.Box>>, val stms: List<AstStm>)
+
+	private inner class BodyReplacer(val method: AstMethod, val body: AstBody) {
+		val stms = flattenStms(body.stm)
+		val n = stms.size
+		val newLocals = arrayListOf<AstLocal>()
+		val initializedClasses = LinkedHashSet<AstClass>()
+
+		val localIds = hashMapOf<AstLocal, Int>()
+		val localsById = arrayListOf<AstLocal>()
+		lateinit var uses: List<List<Use>>
+		lateinit var useDefs: List<IntArray>
+		lateinit var defsOf: List<BitSet>
+		lateinit var reachIn: Array<BitSet>
+		lateinit var reachOut: Array<BitSet>
+		lateinit var liveOut: Array<BitSet>
+		lateinit var groups: IntArray
+
+		fun replace(): Int {
+			if (stms.any { it.isStructured() }) return 0
+			val allocations = (0 until n).filter { allocatedClass(stms[it]) != null }
+			if (allocations.isEmpty()) return 0
+			if (!analyze()) return 0
+
+			val fieldReads = arrayListOf<Pair<AstExpr, AstLocal>>()
+			val replacements = hashMapOf<Int, () -> AstStm>()
+			var replaced = 0
+			for ((group, groupAllocations) in allocations.groupBy { find(it) }) {
+				if (replaceGroup(group, groupAllocations, fieldReads, replacements)) replaced += groupAllocations.size
+			}
+			if (replaced == 0) return 0
+
+			for ((read, slot) in fieldReads) read.box.value = AstExpr.LOCAL(slot)
+			val inits = initializedClasses.map { AstStm.STM_EXPR(AstExpr.LITERAL(it.astType, types)) }
+			body.stm = AstStm.STMS(inits + stms.mapIndexed { index, stm -> replacements[index]?.invoke() ?: stm }.flatMap { flattenStms(it) })
+			body.locals = body.locals + newLocals
+			relinkLocals(body)
+			body.locals = body.locals.filter { it.isUsed }
+			AstAnnotateExpressions.visit(body)
+			return replaced
+		}
+
+		private fun newLocal(type: AstType): AstLocal {
+			val local = AstLocal(newLocals.size, "s${nameType(type)}${newLocals.size}", type)
+			newLocals += local
+			return local
+		}
+
+		private fun localId(local: AstLocal): Int = localIds.getOrPut(local) {
+			localsById += local
+			localsById.size - 1
+		}
+
+		private fun defLocal(index: Int): AstLocal? = (stms[index] as? AstStm.SET_LOCAL)?.local?.local
+
+		// Reaching definitions and liveness of the locals. Definitions are the indices of the statements,
+		// and n + id the value a local has when entering the method.
+		private fun analyze(): Boolean {
+			val labels = hashMapOf<AstLabel, Int>()
+			for ((index, stm) in stms.withIndex()) if (stm is AstStm.STM_LABEL) labels[stm.label] = index
+
+			val successors = Array(n) { index ->
+				val stm = stms[index]
+				when (stm) {
+					is AstStm.GOTO -> listOf(labels[stm.label] ?: return false)
+					is AstStm.IF_GOTO -> listOf(index + 1, labels[stm.label] ?: return false)
+					is AstStm.SWITCH_GOTO -> (listOf(stm.default) + stm.cases.map { it.second }).map { labels[it] ?: return false }
+					is AstStm.RETURN, is AstStm.RETURN_VOID, is AstStm.THROW, is AstStm.RETHROW -> listOf()
+					else -> listOf(index + 1)
+				}.filter { it < n }
+			}
+			val handlers = Array(n) { arrayListOf<Int>() }
+			for (trap in body.traps) {
+				val start = labels[trap.start] ?: return false
+				val end = labels[trap.end] ?: return false
+				val handler = labels[trap.handler] ?: return false
+				for (index in start until end) handlers[index].add(handler)
+			}
+			val predecessors = Array(n) { arrayListOf<Int>() }
+			for (index in 0 until n) for (next in successors[index] + handlers[index]) predecessors[next].add(index)
+
+			uses = stms.map { uses(it) }
+			for (index in 0 until n) {
+				defLocal(index)?.let { localId(it) }
+				for (use in uses[index]) localId(use.local)
+			}
+			val locals = localIds.size
+			defsOf = (0 until locals).map { BitSet() }
+			for (index in 0 until n) defLocal(index)?.let { defsOf[localId(it)].set(index) }
+			for (id in 0 until locals) defsOf[id].set(n + id)
+
+			reachIn = Array(n) { BitSet() }
+			reachOut = Array(n) { BitSet() }
+			if (n > 0) reachIn[0].set(n, n + locals)
+			val queue = ArrayDeque<Int>((0 until n).toList())
+			val queued = BooleanArray(n) { true }
+			while (queue.isNotEmpty()) {
+				val index = queue.removeFirst()
+				queued[index] = false
+				val out = reachIn[index].clone() as BitSet
+				defLocal(index)?.let {
+					out.andNot(defsOf[localId(it)])
+					out.set(index)
+				}
+				reachOut[index] = out
+				fun propagate(next: Int, values: BitSet) {
+					if (merge(reachIn[next], values) && !queued[next]) {
+						queued[next] = true
+						queue.add(next)
+					}
+				}
+				for (next in successors[index]) propagate(next, out)
+				// Exceptions can be thrown before or after the statement stores its local
+				for (handler in handlers[index]) {
+					propagate(handler, reachIn[index])
+					propagate(handler, out)
+				}
+			}
+
+			val liveIn = Array(n) { BitSet() }
+			liveOut = Array(n) { BitSet() }
+			val liveQueue = ArrayDeque<Int>((0 until n).reversed().toList())
+			val liveQueued = BooleanArray(n) { true }
+			while (liveQueue.isNotEmpty()) {
+				val index = liveQueue.removeFirst()
+				liveQueued[index] = false
+				val out = BitSet()
+				for (next in successors[index] + handlers[index]) out.or(liveIn[next])
+				liveOut[index] = out
+				val live = out.clone() as BitSet
+				defLocal(index)?.let { live.clear(localId(it)) }
+				for (use in uses[index]) live.set(localId(use.local))
+				if (live != liveIn[index]) {
+					liveIn[index] = live
+					for (prev in predecessors[index]) {
+						if (!liveQueued[prev]) {
+							liveQueued[prev] = true
+							liveQueue.add(prev)
+						}
+					}
+				}
+			}
+
+			groups = IntArray(n + locals) { it }
+			useDefs = uses.map { IntArray(it.size) }
+			for (index in 0 until n) {
+				for ((useIndex, use) in uses[index].withIndex()) {
+					val defs = reachingDefs(index, use.local)
+					val first = defs.nextSetBit(0)
+					useDefs[index][useIndex] = first
+					if (first < 0) continue
+					var def = defs.nextSetBit(first + 1)
+					while (def >= 0) {
+						union(first, def)
+						def = defs.nextSetBit(def + 1)
+					}
+					if (use.kind == UseKind.COPY && defLocal(index) != null) union(first, index)
+				}
+			}
+			return true
+		}
+
+		private fun merge(target: BitSet, values: BitSet): Boolean {
+			val added = values.clone() as BitSet
+			added.andNot(target)
+			if (added.isEmpty) return false
+			target.or(added)
+			return true
+		}
+
+		private fun reachingDefs(index: Int, local: AstLocal): BitSet {
+			val defs = reachIn[index].clone() as BitSet
+			defs.and(defsOf[localId(local)])
+			return defs
+		}
+
+		private fun find(def: Int): Int {
+			var root = def
+			while (groups[root] != root) root = groups[root]
+			groups[def] = root
+			return root
+		}
+
+		private fun union(a: Int, b: Int) {
+			groups[find(a)] = find(b)
+		}
+
+		// The group of the value read by the use [useIndex] of the statement [index], or -1 when it is not reachable
+		private fun groupOf(index: Int, useIndex: Int): Int {
+			val def = useDefs[index][useIndex]
+			return if (def >= 0) find(def) else -1
+		}
+
+		private fun allocatedClass(stm: AstStm): AstClass? {
+			if (stm !is AstStm.SET_LOCAL) return null
+			var expr = stm.expr.value
+			while (expr is AstExpr.CAST) expr = expr.expr.value
+			if (expr !is AstExpr.NEW) return null
+			val clazz = try {
+				program[expr.target.name]
+			} catch (e: Throwable) {
+				return null
+			}
+			if (clazz.isInterface || clazz.isAbstract) return null
+			if (clazz.thisAndAncestors.any { it.isNative }) return null
+			return clazz
+		}
+
+		private fun resolveField(ref: AstFieldRef, clazz: AstClass): AstField? {
+			val field = try {
+				program[ref.containingClass][ref.withoutClass]
+			} catch (e: Throwable) {
+				return null
+			}
+			return if (!field.isStatic && field.containingClass in clazz.thisAndAncestors) field else null
+		}
+
+		private fun replaceGroup(group: Int, allocations: List<Int>, fieldReads: ArrayList<Pair<AstExpr, AstLocal>>, replacements: HashMap<Int, () -> AstStm>): Boolean {
+			val clazz = allocatedClass(stms[allocations.first()])!!
+			if (allocations.any { allocatedClass(stms[it]) != clazz }) return false
+
+			val copies = arrayListOf<Int>()
+			for (def in 0 until groups.size) {
+				if (find(def) != group || def in allocations) continue
+				if (def >= n) return false
+				val stm = stms[def] as AstStm.SET_LOCAL
+				if (stm.expr.value.local() == null) return false
+				copies += def
+			}
+
+			val slots = linkedMapOf<AstField, AstLocal>()
+			fun slot(field: AstField): AstLocal = slots.getOrPut(field) { newLocal(field.type) }
+
+			val groupFieldReads = arrayListOf<Pair<AstExpr, AstLocal>>()
+			val fieldWrites = hashMapOf<Int, AstLocal>()
+			val constructors = hashMapOf<Int, AstExpr.CALL_INSTANCE>()
+			for (index in 0 until n) {
+				for ((useIndex, use) in uses[index].withIndex()) {
+					if (groupOf(index, useIndex) != group) continue
+					when (use.kind) {
+						UseKind.COPY -> Unit
+						UseKind.FIELD_READ -> {
+							val field = resolveField((use.expr as AstExpr.FIELD_INSTANCE_ACCESS).field, clazz) ?: return false
+							groupFieldReads += use.expr to slot(field)
+						}
+						UseKind.FIELD_WRITE -> {
+							fieldWrites[index] = slot(resolveField((use.stm as AstStm.SET_FIELD_INSTANCE).field, clazz) ?: return false)
+						}
+						UseKind.CONSTRUCTOR -> constructors[index] = use.expr as AstExpr.CALL_INSTANCE
+						UseKind.OTHER -> return false
+					}
+				}
+			}
+
+			val expansions = hashMapOf<Int, Expansion>()
+			for (allocation in allocations) {
+				// The locals holding the new object until its constructor is called
+				val holders = hashSetOf(defLocal(allocation)!!)
+				var constructor = -1
+				for (index in allocation + 1 until n) {
+					val stm = stms[index]
+					if (stm.isJumpOrLabel()) return false
+					if (index in constructors && (constructors[index]!!.obj.value.local() in holders)) {
+						constructor = index
+						break
+					}
+					val local = defLocal(index) ?: continue
+					if ((stm as AstStm.SET_LOCAL).expr.value.local() in holders) holders += local else holders -= local
+				}
+				if (constructor < 0) return false
+
+				// The constructor overwrites the fields, so older objects of the group can't be read anymore
+				val live = liveOut[constructor]
+				var id = live.nextSetBit(0)
+				while (id >= 0) {
+					val local = localsById[id]
+					val defs = reachOut[constructor].clone() as BitSet
+					defs.and(defsOf[id])
+					var def = defs.nextSetBit(0)
+					while (def >= 0) {
+						if (find(def) == group && local !in holders) return false
+						def = defs.nextSetBit(def + 1)
+					}
+					id = live.nextSetBit(id + 1)
+				}
+
+				expansions[constructor] = expand(constructors[constructor]!!, clazz, ::slot) ?: return false
+			}
+			if (expansions.size != constructors.size) return false
+
+			fieldReads += groupFieldReads
+			// Allocating the object initializes the class and its ancestors
+			initializedClasses += clazz.thisAndAncestors.reversed().filter { it.hasStaticInit && it !in method.containingClass.thisAndAncestors }
+			for (index in allocations + copies) replacements[index] = { AstStm.NOP("scalar replacement") }
+			for ((index, slot) in fieldWrites) {
+				val stm = stms[index] as AstStm.SET_FIELD_INSTANCE
+				replacements[index] = { AstStmUtils.set(slot, stm.expr.value) }
+			}
+			for ((index, expansion) in expansions) {
+				replacements[index] = {
+					val args = expansion.args.map { AstStmUtils.set(it.first, it.second.value) }
+					val initialized = initializedSlots(expansion.stms)
+					val defaults = slots.filter { it.value !in initialized }.map { AstStmUtils.set(it.value, AstExpr.LITERAL(it.key.type.getNull(), types)) }
+					AstStm.STMS(args + defaults + expansion.stms)
+				}
+			}
+			return true
+		}
+
+		// Constructor statements with the fields of `this` replaced with [slot]. Arguments that are not trivial are
+		// evaluated into locals by the caller, since they can read fields of other objects of the same group.
+		private fun expand(call: AstExpr.CALL_INSTANCE, clazz: AstClass, slot: (AstField) -> AstLocal): Expansion? {
+			val callee = try {
+				program[call.method]
+			} catch (e: Throwable) {
+				null
+			} ?: return null
+			if (callee.containingClass !in clazz.thisAndAncestors) return null
+			if (callee.containingClass.fqname == "java.lang.Object") return Expansion(listOf(), listOf())
+			val calleeStms = constructorBody(callee) ?: return null
+
+			val temps = arrayListOf<Pair<AstLocal, AstExpr.Box>>()
+			val args = call.args.zip(callee.methodType.args).map {
+				val (box, arg) = it
+				if (box.value.isTrivial()) {
+					val value = box.value
+					{ copyTrivial(value, types) }
+				} else {
+					val temp = newLocal(arg.type)
+					temps += temp to box
+					{ AstExpr.LOCAL(temp) }
+				}
+			}
+
+			val self = AstLocal(-1, "this", clazz.astType)
+			val locals = hashMapOf<AstLocal, AstLocal>()
+			val cloner = Cloner(
+				types,
+				param = { AstExprUtils.fastcast(args[it.index](), it.type) },
+				self = { AstExpr.LOCAL(self) },
+				local = { locals.getOrPut(it) { newLocal(it.type) } }
+			)
+			val out = arrayListOf<AstStm>()
+			for (calleeStm in calleeStms) {
+				val stm = cloner.stm(calleeStm)
+				val selfUses = uses(stm).filter { it.local == self }
+				for (use in selfUses) {
+					when (use.kind) {
+						UseKind.FIELD_READ -> {
+							val field = resolveField((use.expr as AstExpr.FIELD_INSTANCE_ACCESS).field, clazz) ?: return null
+							use.expr.box.value = AstExpr.LOCAL(slot(field))
+						}
+						UseKind.FIELD_WRITE, UseKind.CONSTRUCTOR -> Unit
+						else -> return null
+					}
+				}
+				val stmUse = selfUses.firstOrNull { it.kind == UseKind.FIELD_WRITE || it.kind == UseKind.CONSTRUCTOR }
+				when (stmUse?.kind) {
+					UseKind.FIELD_WRITE -> {
+						val write = stm as AstStm.SET_FIELD_INSTANCE
+						out += AstStmUtils.set(slot(resolveField(write.field, clazz) ?: return null), write.expr.value)
+					}
+					UseKind.CONSTRUCTOR -> {
+						val expansion = expand(stmUse.expr as AstExpr.CALL_INSTANCE, clazz, slot) ?: return null
+						for ((temp, box) in expansion.args) out += AstStmUtils.set(temp, box.value)
+						out += expansion.stms
+					}
+					else -> out += stm
+				}
+			}
+			return Expansion(temps, out)
+		}
+
+		// Slots written by the constructor before anything reads them, which don't need their default value
+		private fun initializedSlots(stms: List<AstStm>): Set<AstLocal> {
+			val read = hashSetOf<AstLocal>()
+			val initialized = hashSetOf<AstLocal>()
+			val reads = object : AstVisitor() {
+				override fun visit(expr: AstExpr.LOCAL) {
+					read += expr.local
+				}
+			}
+			for (stm in stms) {
+				if (stm is AstStm.SET_LOCAL) {
+					reads.visit(stm.expr)
+					if (stm.local.local !in read) initialized += stm.local.local
+				} else {
+					reads.visit(stm)
+				}
+			}
+			return initialized
+		}
+
+		private fun constructorBody(method: AstMethod): List<AstStm>? {
+			if (method.hasTargetBody() || method.modifiers.isSynchronized) return null
+			val body = method.body ?: return null
+			if (body.traps.isNotEmpty()) return null
+			val stms = flattenStms(body.stm).filter { it !is AstStm.NOP && it !is AstStm.LINE }
+			if (stms.lastOrNull() !is AstStm.RETURN_VOID) return null
+			val counter = InlinableCounter(config.maxConstructorSize)
+			for (stm in stms.dropLast(1)) {
+				if (stm.isStructured()) return null
+				counter.visit(stm)
+			}
+			return if (counter.valid) stms.dropLast(1) else null
+		}
+	}
+}
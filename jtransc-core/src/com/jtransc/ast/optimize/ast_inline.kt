@@ -0,0 +1,509 @@
+package com.jtransc.ast.optimize
+
+import com.jtransc.annotation.JTranscInline
+import com.jtransc.annotation.JTranscKeep
+import com.jtransc.ast.*
+import com.jtransc.ast.treeshaking.ClassHierarchy
+import com.jtransc.error.invalidOp
+import com.jtransc.log.log
+import com.jtransc.types.nameType
+import java.util.*
+
+data class ConfigInlining(val inlining: Boolean = false, val maxSize: Int = 32)
+
+/**
+ * Whole program method inlining. Runs after tree shaking, so virtual calls can be bound when the
+ * program only contains one implementation of the method.
+ *
+ * Inlines calls to static, private, final and super methods, and virtual calls with a single implementation
+ * according to [ClassHierarchy]. Callees must be straight-line code returning at the end, without try/catch,
+ * synchronization or target specific bodies, and fit in [ConfigInlining.maxSize] nodes (four times that
+ * with @JTranscInline).
+ *
+ * Calls whose arguments are only locals and literals are replaced in place when the callee is a single
+ * return. Otherwise the call must be the first thing its statement evaluates: arguments are stored in new
+ * locals in order and the callee statements are placed before the statement. Instance calls are only
+ * inlined when the callee dereferences `this` before anything else can throw or have side effects, so
+ * null receivers still throw at the same point.
+ *
+ * [devirtualize] must be false when the classes are not all generated in the same build, since adding a
+ * subclass would invalidate the code of callers that are not regenerated.
+ */
+class AstInliner(val program: AstProgram, val config: ConfigInlining = ConfigInlining(), val devirtualize: Boolean = true) {
+	private val types = program.types
+
+	private val hierarchy by lazy { ClassHierarchy(program) }
+
+	fun inline() {
+		var calls = 0
+		var methods = 0
+		for (clazz in program.classes) {
+			for (method in clazz.methods) {
+				if (method.hasTargetBody()) continue
+				val body = method.body ?: continue
+				val inlined = MethodInliner(method, body).inline()
+				if (inlined > 0) {
+					calls += inlined
+					methods++
+				}
+			}
+		}
+		log("Inlining: $calls calls inlined in $methods methods")
+	}
+
+	private fun resolve(call: AstExpr.CALL_BASE): AstMethod? {
+		if (call.method.isClassOrInstanceInit) return null
+		val method = try {
+			program[call.method]
+		} catch (e: Throwable) {
+			null
+		} ?: return null
+		return when (call) {
+			is AstExpr.CALL_STATIC -> if (method.isStatic) method else null
+			is AstExpr.CALL_SUPER -> if (!method.isStatic) method else null
+			is AstExpr.CALL_INSTANCE -> when {
+				method.isStatic -> null
+				call.isSpecial || call.isDirect || method.modifiers.isPrivate || method.modifiers.isFinal || method.containingClass.modifiers.isFinal -> method
+				devirtualize -> hierarchy.getSingleImplementation(call.method)
+				else -> null
+			}
+			else -> null
+		}
+	}
+
+	private class Shape(val stms: List<AstStm>, val result: AstExpr?)
+
+	private fun shape(method: AstMethod, inlineHint: Boolean): Shape? {
+		if (method.isNative || method.modifiers.isAbstract || method.modifiers.isSynchronized || method.hasTargetBody()) return null
+		val body = method.body ?: return null
+		if (body.traps.isNotEmpty()) return null
+
+		val stms = arrayListOf<AstStm>()
+		fun flatten(stm: AstStm) {
+			when (stm) {
+				is AstStm.STMS -> for (child in stm.stms) flatten(child.value)
+				is AstStm.NOP, is AstStm.LINE -> Unit
+				else -> stms += stm
+			}
+		}
+		flatten(body.stm)
+
+		val last = stms.lastOrNull()
+		val result = when (last) {
+			is AstStm.RETURN -> last.retval.value
+			is AstStm.RETURN_VOID -> null
+			else -> return null
+		}
+		val counter = InlinableCounter(if (inlineHint) config.maxSize * 4 else config.maxSize)
+		for (stm in stms.dropLast(1)) counter.visit(stm)
+		if (result != null) counter.visit(result)
+		if (!counter.valid) return null
+		return Shape(stms.dropLast(1), result)
+	}
+
+	private inner class MethodInliner(val method: AstMethod, val body: AstBody) {
+		val newLocals = arrayListOf<AstLocal>()
+		var inlined = 0
+
+		fun inline(): Int {
+			val root = body.stm.box
+			process(root)
+			if (inlined > 0) {
+				body.stm = AstStm.STMS(flattenStms(root.value))
+				body.locals = body.locals + newLocals
+				relinkLocals(body)
+				AstAnnotateExpressions.visit(body)
+			}
+			return inlined
+		}
+
+		private fun newLocal(type: AstType): AstLocal {
+			val local = AstLocal(newLocals.size, "i${nameType(type)}${newLocals.size}", type)
+			newLocals += local
+			return local
+		}
+
+		private fun process(box: AstStm.Box) {
+			val stm = box.value
+			when (stm) {
+				is AstStm.STMS -> for (child in stm.stms.toList()) process(child)
+				is AstStm.WHILE -> {
+					// The condition is evaluated on every iteration, so nothing can be placed before it
+					inlineExprs(stm.cond)
+					process(stm.iter)
+				}
+				is AstStm.TRY_CATCH -> {
+					process(stm.trystm)
+					process(stm.catch)
+				}
+				is AstStm.IF -> {
+					processStm(box)
+					process(stm.strue)
+				}
+				is AstStm.IF_ELSE -> {
+					processStm(box)
+					process(stm.strue)
+					process(stm.sfalse)
+				}
+				is AstStm.SWITCH -> {
+					processStm(box)
+					process(stm.default)
+					for (case in stm.cases) process(case.second)
+				}
+				else -> processStm(box)
+			}
+		}
+
+		private fun processStm(box: AstStm.Box) {
+			val stm = box.value
+			for (expr in stm.exprs()) inlineExprs(expr)
+
+			val prefix = arrayListOf<AstStm>()
+			var keep = true
+			for (n in 0 until 8) {
+				val call = leadingCall(stm) ?: break
+				val result = inlineBefore(stm, call, prefix) ?: break
+				if (!result) {
+					keep = false
+					break
+				}
+			}
+			if (prefix.isNotEmpty()) {
+				box.value = AstStm.NOP("inlining")
+				box.value = AstStm.STMS(if (keep) prefix + stm else prefix)
+			}
+		}
+
+		// Direct expressions of a statement, without the ones of nested statements
+		private fun AstStm.exprs(): List<AstExpr.Box> = when (this) {
+			is AstStm.STM_EXPR -> listOf(expr)
+			is AstStm.SET_LOCAL -> listOf(expr)
+			is AstStm.SET_ARRAY -> listOf(array, index, expr)
+			is AstStm.SET_ARRAY_LITERALS -> listOf(array) + values
+			is AstStm.SET_FIELD_STATIC -> listOf(expr)
+			is AstStm.SET_FIELD_INSTANCE -> listOf(left, expr)
+			is AstStm.SET_NEW_WITH_CONSTRUCTOR -> args
+			is AstStm.IF -> listOf(cond)
+			is AstStm.IF_ELSE -> listOf(cond)
+			is AstStm.RETURN -> listOf(retval)
+			is AstStm.THROW -> listOf(value)
+			is AstStm.SWITCH -> listOf(subject)
+			is AstStm.IF_GOTO -> listOf(cond)
+			is AstStm.SWITCH_GOTO -> listOf(subject)
+			is AstStm.MONITOR_ENTER -> listOf(expr)
+			is AstStm.MONITOR_EXIT -> listOf(expr)
+			else -> listOf()
+		}
+
+		private fun AstExpr.children(): List<AstExpr.Box> = when (this) {
+			is AstExpr.BINOP -> listOf(left, right)
+			is AstExpr.UNOP -> listOf(right)
+			is AstExpr.CALL_INSTANCE -> listOf(obj) + args
+			is AstExpr.CALL_SUPER -> listOf(obj) + args
+			is AstExpr.CALL_STATIC -> args
+			is AstExpr.ARRAY_LENGTH -> listOf(array)
+			is AstExpr.ARRAY_ACCESS -> listOf(array, index)
+			is AstExpr.FIELD_INSTANCE_ACCESS -> listOf(expr)
+			is AstExpr.INSTANCE_OF -> listOf(expr)
+			is AstExpr.CAST -> listOf(expr)
+			is AstExpr.NEW_WITH_CONSTRUCTOR -> args
+			is AstExpr.NEW_ARRAY -> counts
+			else -> listOf()
+		}
+
+		// Replaces calls to single return methods with trivial arguments, anywhere in the expression
+		private fun inlineExprs(box: AstExpr.Box) {
+			for (child in box.value.children()) inlineExprs(child)
+			val call = box.value as? AstExpr.CALL_BASE ?: return
+			val callee = resolve(call) ?: return
+			if (callee == method || !initializesSameClasses(callee)) return
+			val shape = shape(callee, callee.isInline) ?: return
+			if (shape.stms.isNotEmpty() || shape.result == null) return
+			val receiver = call.receiver()
+			if (!(listOfNotNull(receiver) + call.args).all { it.value.isTrivial() }) return
+			if (receiver != null && !receiverChecked(receiver.value, shape)) return
+			val self = receiver?.let {
+				val cast = receiverNeedsCast(it.value, callee) ?: return
+				if (cast) AstExpr.CAST(copy(it.value), callee.containingClass.astType) else it.value
+			}
+
+			val cloner = cloner(callee, call.args.map { { copy(it.value) } }, self?.let { { copy(it) } })
+			box.value = AstExprUtils.fastcast(cloner.expr(shape.result), call.type)
+			inlined++
+		}
+
+		// Inlines the first call evaluated by the statement, adding the callee statements to [prefix].
+		// Returns false when the statement itself is no longer needed, and null when the call can't be inlined.
+		private fun inlineBefore(stm: AstStm, callBox: AstExpr.Box, prefix: ArrayList<AstStm>): Boolean? {
+			val call = callBox.value as AstExpr.CALL_BASE
+			val callee = resolve(call) ?: return null
+			if (callee == method || !initializesSameClasses(callee)) return null
+			val shape = shape(callee, callee.isInline) ?: return null
+			val dropStm = (stm is AstStm.STM_EXPR && stm.expr == callBox)
+			if (shape.result == null && !dropStm) return null
+			val receiver = call.receiver()
+			if (receiver != null && !receiverChecked(receiver.value, shape)) return null
+			val castReceiver = receiver?.let { receiverNeedsCast(it.value, callee) ?: return null } ?: false
+
+			// Arguments that are not trivial are evaluated once, in order
+			fun argument(box: AstExpr.Box, type: AstType): () -> AstExpr {
+				if (box.value.isTrivial()) {
+					val value = box.value
+					return { copy(value) }
+				}
+				val local = newLocal(type)
+				prefix += AstStmUtils.set(local, box.take())
+				return { AstExpr.LOCAL(local) }
+			}
+
+			val self = receiver?.let {
+				if (castReceiver) it.value = AstExpr.CAST(it.take(), callee.containingClass.astType)
+				argument(it, it.value.type)
+			}
+			val args = call.args.zip(callee.methodType.args).map { argument(it.first, it.second.type) }
+
+			val cloner = cloner(callee, args, self)
+			for (calleeStm in shape.stms) prefix += cloner.stm(calleeStm)
+			inlined++
+			if (shape.result == null) return false
+			callBox.value = AstExprUtils.fastcast(cloner.expr(shape.result), call.type)
+			return true
+		}
+
+		private fun cloner(callee: AstMethod, args: List<() -> AstExpr>, self: (() -> AstExpr)?): Cloner {
+			val locals = hashMapOf<AstLocal, AstLocal>()
+			return Cloner(
+				types,
+				param = { AstExprUtils.fastcast(args[it.index](), it.type) },
+				self = { self?.invoke() ?: invalidOp("Inlining: static method $callee uses this") },
+				local = { locals.getOrPut(it) { newLocal(it.type) } }
+			)
+		}
+
+		private fun AstExpr.CALL_BASE.receiver(): AstExpr.Box? = when (this) {
+			is AstExpr.CALL_INSTANCE -> obj
+			is AstExpr.CALL_SUPER -> obj
+			else -> null
+		}
+
+		// Whether the receiver has to be cast to the class of the callee, or null when its class is unknown
+		private fun receiverNeedsCast(receiver: AstExpr, callee: AstMethod): Boolean? {
+			val type = receiver.type as? AstType.REF ?: return null
+			val clazz = try {
+				program[type.name]
+			} catch (e: Throwable) {
+				return null
+			}
+			return callee.containingClass !in clazz.thisAndAncestors
+		}
+
+
+		private fun receiverChecked(receiver: AstExpr, shape: Shape): Boolean {
+			if (receiver is AstExpr.THIS) return true
+			for (stm in shape.stms) {
+				val first = stm.firstEffectDereferencesThis() ?: continue
+				return first
+			}
+			return shape.result?.firstEffectDereferencesThis() ?: false
+		}
+
+		// Calling a static method initializes its class, unless it was already initialized before this method runs
+		private fun initializesSameClasses(callee: AstMethod): Boolean {
+			return !callee.isStatic || !callee.containingClass.hasStaticInit || callee.containingClass in method.containingClass.thisAndAncestors
+		}
+	}
+
+	// The box of the first call that the statement evaluates, when everything evaluated before it is trivial
+	private fun leadingCall(stm: AstStm): AstExpr.Box? = when (stm) {
+		is AstStm.STM_EXPR -> leadingCall(stm.expr)
+		is AstStm.SET_LOCAL -> leadingCall(stm.expr)
+		is AstStm.RETURN -> leadingCall(stm.retval)
+		is AstStm.THROW -> leadingCall(stm.value)
+		is AstStm.IF -> leadingCall(stm.cond)
+		is AstStm.IF_ELSE -> leadingCall(stm.cond)
+		is AstStm.IF_GOTO -> leadingCall(stm.cond)
+		is AstStm.SWITCH -> leadingCall(stm.subject)
+		is AstStm.SWITCH_GOTO -> leadingCall(stm.subject)
+		is AstStm.SET_FIELD_STATIC -> leadingCall(stm.expr)
+		is AstStm.SET_FIELD_INSTANCE -> if (stm.left.value.isTrivial()) leadingCall(stm.expr) else leadingCall(stm.left)
+		is AstStm.SET_ARRAY -> when {
+			!stm.array.value.isTrivial() -> leadingCall(stm.array)
+			!stm.index.value.isTrivial() -> leadingCall(stm.index)
+			else -> leadingCall(stm.expr)
+		}
+		else -> null
+	}
+
+	private fun leadingCall(box: AstExpr.Box): AstExpr.Box? {
+		val expr = box.value
+		return when (expr) {
+			is AstExpr.CALL_BASE -> box
+			is AstExpr.CAST -> leadingCall(expr.expr)
+			is AstExpr.UNOP -> leadingCall(expr.right)
+			is AstExpr.BINOP -> when {
+				expr.op == AstBinop.BAND || expr.op == AstBinop.BOR -> leadingCall(expr.left)
+				expr.left.value.isTrivial() -> leadingCall(expr.right)
+				else -> leadingCall(expr.left)
+			}
+			is AstExpr.FIELD_INSTANCE_ACCESS -> leadingCall(expr.expr)
+			is AstExpr.ARRAY_LENGTH -> leadingCall(expr.array)
+			is AstExpr.ARRAY_ACCESS -> if (expr.array.value.isTrivial()) leadingCall(expr.index) else leadingCall(expr.array)
+			is AstExpr.INSTANCE_OF -> leadingCall(expr.expr)
+			else -> null
+		}
+	}
+
+	private fun copy(expr: AstExpr): AstExpr = copyTrivial(expr, types)
+
+	private fun AstExpr.Box.take(): AstExpr {
+		val expr = value
+		value = AstExpr.LITERAL(null, types)
+		return expr
+	}
+
+}
+
+internal fun AstMethod.hasTargetBody(): Boolean {
+	if (isNative || bodyRef != null || containingClass.isNative) return true
+	return annotations.any {
+		val name = it.type.name.fqname
+		name.startsWith("com.jtransc.") && name != JTranscInline::class.java.name && name != JTranscKeep::class.java.name
+	}
+}
+
+internal class InlinableCounter(val maxSize: Int) : AstVisitor() {
+	var size = 0
+	var valid = true
+
+	override fun visit(stm: AstStm?) {
+		if (!valid || stm == null) return
+		when (stm) {
+			is AstStm.STMS, is AstStm.NOP, is AstStm.LINE, is AstStm.STM_EXPR, is AstStm.SET_LOCAL,
+			is AstStm.SET_ARRAY, is AstStm.SET_ARRAY_LITERALS, is AstStm.SET_FIELD_STATIC, is AstStm.SET_FIELD_INSTANCE,
+			is AstStm.IF, is AstStm.IF_ELSE, is AstStm.WHILE, is AstStm.THROW -> Unit
+			else -> valid = false
+		}
+		if (++size > maxSize) valid = false
+		if (valid) super.visit(stm)
+	}
+
+	override fun visit(expr: AstExpr?) {
+		if (!valid || expr == null) return
+		// Super calls and caught exceptions depend on the method they are in
+		if (expr is AstExpr.CALL_SUPER || expr is AstExpr.CAUGHT_EXCEPTION) valid = false
+		if (++size > maxSize) valid = false
+		if (valid) super.visit(expr)
+	}
+}
+
+internal class Cloner(val types: AstTypes, val param: (AstArgument) -> AstExpr, val self: () -> AstExpr, val local: (AstLocal) -> AstLocal) {
+	fun stm(stm: AstStm): AstStm = when (stm) {
+		is AstStm.STMS -> AstStm.STMS(stm.stms.map { stm(it.value) })
+		is AstStm.NOP, is AstStm.LINE -> AstStm.NOP("inlined")
+		is AstStm.STM_EXPR -> AstStm.STM_EXPR(expr(stm.expr.value))
+		is AstStm.SET_LOCAL -> AstStm.SET_LOCAL(AstExpr.LOCAL(local(stm.local.local)), expr(stm.expr.value))
+		is AstStm.SET_ARRAY -> AstStm.SET_ARRAY(expr(stm.array.value), expr(stm.index.value), expr(stm.expr.value))
+		is AstStm.SET_ARRAY_LITERALS -> AstStm.SET_ARRAY_LITERALS(expr(stm.array.value), stm.startIndex, stm.values.map { expr(it.value).box })
+		is AstStm.SET_FIELD_STATIC -> AstStm.SET_FIELD_STATIC(stm.field, expr(stm.expr.value))
+		is AstStm.SET_FIELD_INSTANCE -> AstStm.SET_FIELD_INSTANCE(stm.field, expr(stm.left.value), expr(stm.expr.value))
+		is AstStm.IF -> AstStm.IF(expr(stm.cond.value), stm(stm.strue.value))
+		is AstStm.IF_ELSE -> AstStm.IF_ELSE(expr(stm.cond.value), stm(stm.strue.value), stm(stm.sfalse.value))
+		is AstStm.WHILE -> AstStm.WHILE(expr(stm.cond.value), stm(stm.iter.value))
+		is AstStm.THROW -> AstStm.THROW(expr(stm.value.value))
+		else -> invalidOp("Inlining: can't clone $stm")
+	}
+
+	fun expr(expr: AstExpr): AstExpr = when (expr) {
+		is AstExpr.THIS -> self()
+		is AstExpr.PARAM -> param(expr.argument)
+		is AstExpr.LOCAL -> AstExpr.LOCAL(local(expr.local))
+		is AstExpr.LITERAL -> AstExpr.LITERAL(expr.value, types)
+		is AstExpr.BINOP -> AstExpr.BINOP(expr.type, expr(expr.left.value), expr.op, expr(expr.right.value))
+		is AstExpr.UNOP -> AstExpr.UNOP(expr.op, expr(expr.right.value))
+		is AstExpr.CALL_INSTANCE -> AstExpr.CALL_INSTANCE(expr(expr.obj.value), expr.method, expr.args.map { expr(it.value) }, expr.isSpecial, expr.isDirect)
+		is AstExpr.CALL_STATIC -> AstExpr.CALL_STATIC(expr.clazz, expr.method, expr.args.map { expr(it.value) }, expr.isSpecial)
+		is AstExpr.ARRAY_LENGTH -> AstExpr.ARRAY_LENGTH(expr(expr.array.value))
+		is AstExpr.ARRAY_ACCESS -> AstExpr.ARRAY_ACCESS(expr(expr.array.value), expr(expr.index.value))
+		is AstExpr.FIELD_INSTANCE_ACCESS -> AstExpr.FIELD_INSTANCE_ACCESS(expr.field, expr(expr.expr.value))
+		is AstExpr.FIELD_STATIC_ACCESS -> AstExpr.FIELD_STATIC_ACCESS(expr.field)
+		is AstExpr.INSTANCE_OF -> AstExpr.INSTANCE_OF(expr(expr.expr.value), expr.checkType)
+		is AstExpr.CAST -> AstExpr.CAST(expr(expr.expr.value), expr.to)
+		is AstExpr.NEW -> AstExpr.NEW(expr.target)
+		is AstExpr.NEW_WITH_CONSTRUCTOR -> AstExpr.NEW_WITH_CONSTRUCTOR(expr.target, expr.method, expr.args.map { expr(it.value) })
+		is AstExpr.NEW_ARRAY -> AstExpr.NEW_ARRAY(expr.arrayType, expr.counts.map { expr(it.value) })
+		is AstExpr.METHOD_CLASS -> AstExpr.METHOD_CLASS(expr.methodInInterfaceRef, expr.methodToConvertRef)
+		is AstExpr.TERNARY -> AstExpr.TERNARY(expr(expr.cond), expr(expr.etrue), expr(expr.efalse), types)
+		else -> invalidOp("Inlining: can't clone $expr")
+	}
+}
+
+internal fun copyTrivial(expr: AstExpr, types: AstTypes): AstExpr = when (expr) {
+	is AstExpr.LITERAL -> AstExpr.LITERAL(expr.value, types)
+	is AstExpr.LOCAL -> AstExpr.LOCAL(expr.local)
+	is AstExpr.PARAM -> AstExpr.PARAM(expr.argument)
+	is AstExpr.THIS -> AstExpr.THIS(expr.ref)
+	is AstExpr.CAST -> AstExpr.CAST(copyTrivial(expr.expr.value, types), expr.to)
+	else -> invalidOp("Can't copy $expr")
+}
+
+internal fun flattenStms(stm: AstStm): List<AstStm> = if (stm is AstStm.STMS) stm.stms.flatMap { flattenStms(it.value) } else listOf(stm)
+
+// Expressions moved to other statements and removed statements leave stale reads and writes
+internal fun relinkLocals(body: AstBody) {
+	val writes = arrayListOf<AstStm.SET_LOCAL>()
+	val reads = arrayListOf<AstExpr.LOCAL>()
+	object : AstVisitor() {
+		override fun visit(stm: AstStm.SET_LOCAL) {
+			writes += stm
+			visit(stm.expr)
+		}
+
+		override fun visit(expr: AstExpr.LOCAL) {
+			reads += expr
+		}
+	}.visit(body)
+	for (local in body.locals + writes.map { it.local.local } + reads.map { it.local }) {
+		local.reads.clear()
+		local.writes.clear()
+	}
+	for (write in writes) write.local.local.write(write)
+	for (read in reads) read.local.read(read)
+}
+
+fun AstExpr.isTrivial(): Boolean = when (this) {
+	is AstExpr.LITERAL, is AstExpr.LOCAL, is AstExpr.PARAM, is AstExpr.THIS -> true
+	is AstExpr.CAST -> expr.value.isTrivial()
+	else -> false
+}
+
+// true when the first operation that can throw or have side effects dereferences `this`,
+// false when it is something else, and null when there is no such operation
+fun AstStm.firstEffectDereferencesThis(): Boolean? = when (this) {
+	is AstStm.STM_EXPR -> expr.value.firstEffectDereferencesThis()
+	is AstStm.SET_LOCAL -> expr.value.firstEffectDereferencesThis()
+	is AstStm.RETURN -> retval.value.firstEffectDereferencesThis()
+	is AstStm.SET_FIELD_INSTANCE -> left.value.firstEffectDereferencesThis() ?: expr.value.firstEffectDereferencesThis() ?: (left.value is AstExpr.THIS)
+	else -> false
+}
+
+fun AstExpr.firstEffectDereferencesThis(): Boolean? = when (this) {
+	is AstExpr.LITERAL, is AstExpr.LOCAL, is AstExpr.PARAM, is AstExpr.THIS -> null
+	is AstExpr.FIELD_INSTANCE_ACCESS -> expr.value.firstEffectDereferencesThis() ?: (expr.value is AstExpr.THIS)
+	is AstExpr.CALL_INSTANCE -> (listOf(obj) + args).map { it.value.firstEffectDereferencesThis() }.firstOrNull { it != null } ?: (obj.value is AstExpr.THIS)
+	is AstExpr.UNOP -> right.value.firstEffectDereferencesThis()
+	is AstExpr.INSTANCE_OF -> expr.value.firstEffectDereferencesThis()
+	is AstExpr.CAST -> expr.value.firstEffectDereferencesThis() ?: if (to is AstType.Primitive) null else false
+	is AstExpr.BINOP -> {
+		val left = left.value.firstEffectDereferencesThis()
+		val right = right.value.firstEffectDereferencesThis()
+		when {
+			left != null -> left
+			// The right side of && and || is not always evaluated
+			op == AstBinop.BAND || op == AstBinop.BOR -> if (right != null) false else null
+			right != null -> right
+			(op == AstBinop.DIV || op == AstBinop.REM) && (type == AstType.INT || type == AstType.LONG) -> false
+			else -> null
+		}
+	}
+	else -> false
+}
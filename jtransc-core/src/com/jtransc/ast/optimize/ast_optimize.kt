@@ -381,7 +381,7 @@ fun AstExpr.isPure(): Boolean = when (this) {
 	is AstExpr.TERNARY -> this.cond.isPure() && this.etrue.isPure() && this.efalse.isPure()
 	is AstExpr.CAUGHT_EXCEPTION -> true
 	is AstExpr.FIELD_STATIC_ACCESS -> true
-	is AstExpr.LITERAL -> true
+	is AstExpr.LITERAL -> this.value !is AstType // Class literals initialize their class on the targets
 	is AstExpr.LOCAL -> true
 	is AstExpr.NEW -> false
 	is AstExpr.NEW_WITH_CONSTRUCTOR -> false
@@ -394,21 +394,22 @@ fun AstExpr.isPure(): Boolean = when (this) {
 	}
 }
 
+// Bodies can be optimized from several threads while generating code
 object AstAnnotateExpressions : AstVisitor() {
-	private var stm: AstStm? = null
+	private val stm = ThreadLocal<AstStm?>()
 
 	fun visitExprWithStm(stm: AstStm?, box: AstExpr.Box) {
-		this.stm = stm
+		this.stm.set(stm)
 		visit(box)
 	}
 
 	override fun visit(stm: AstStm?) {
-		this.stm = stm
+		this.stm.set(stm)
 		super.visit(stm)
 	}
 
 	override fun visit(expr: AstExpr?) {
-		expr?.stm = stm
+		expr?.stm = stm.get()
 		super.visit(expr)
 	}
 }
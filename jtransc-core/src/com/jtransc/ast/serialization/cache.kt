@@ -0,0 +1,80 @@
+package com.jtransc.ast.serialization
+
+import com.jtransc.JTranscVersion
+import com.jtransc.ast.*
+import com.jtransc.crypto.digestHex
+import com.jtransc.injector.Injector
+import com.jtransc.injector.Singleton
+import com.jtransc.text.toHexString
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.security.MessageDigest
+import java.util.*
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Content-addressed cache of decoded classes. Entries are keyed by the SHA1 of the class bytes
+ * and live in a directory per JTransc version, [AstFormat.VERSION] and build of the decoder, so a class
+ * is only decoded from bytecode again when it changes or when the compiler changes.
+ *
+ * New entries are written by [flush], with the bodies decoded by then. Bodies that weren't needed
+ * are not stored and are decoded from bytecode when a cached class needs them.
+ */
+@Singleton
+class AstCache(val types: AstTypes, injector: Injector) {
+	val config = injector.get<ConfigAstCache>(default = { ConfigAstCache() })
+	val dir: File? by lazy { if (config.path != null) File(config.path, "${JTranscVersion.getVersion()}-${AstFormat.VERSION}-$decoderHash") else null }
+	val hits = AtomicInteger()
+	val misses = AtomicInteger()
+	private val pending = Collections.synchronizedList(arrayListOf<Pair<File, AstClass>>())
+
+	fun getOrGenerate(program: AstProgram, classBytes: ByteArray, generate: () -> AstClass, decodeBody: (methodId: Int) -> AstBody?): AstClass {
+		val dir = this.dir ?: return generate()
+		val file = File(dir, MessageDigest.getInstance("SHA1").digestHex(classBytes) + ".ast")
+		if (file.exists()) {
+			try {
+				val clazz = file.inputStream().buffered().use { AstRead(types, it).readClass(program, decodeBody) }
+				hits.incrementAndGet()
+				return clazz
+			} catch (e: Throwable) {
+				// Truncated or corrupted entry: decoded again and overwritten
+			}
+		}
+		misses.incrementAndGet()
+		val clazz = generate()
+		pending.add(file to clazz)
+		return clazz
+	}
+
+	// Must be called before the classes are modified
+	fun flush() {
+		val dir = this.dir ?: return
+		for ((file, clazz) in pending.toList()) write(dir, file, clazz)
+		pending.clear()
+	}
+
+	private fun write(dir: File, file: File, clazz: AstClass) {
+		// Methods that failed to decode are reported on every build instead of being cached without body
+		if (clazz.methods.any { it.modifiers.isConcrete && it.isBodyGenerated && it.body == null }) return
+		try {
+			val out = ByteArrayOutputStream()
+			AstWriter(out).apply { writeClass(clazz) }.flush()
+			dir.mkdirs()
+			// Renamed once complete, so concurrent builds never read partial entries
+			val temp = File(dir, "${file.name}.${Thread.currentThread().id}.${System.nanoTime()}.tmp")
+			temp.writeBytes(out.toByteArray())
+			if (!temp.renameTo(file)) temp.delete()
+		} catch (e: Throwable) {
+			// The cache is optional, the class was already generated
+		}
+	}
+
+	// Development builds keep the same version, so the decoder classes are part of the key
+	private val decoderHash: String by lazy {
+		val md = MessageDigest.getInstance("SHA1")
+		val location = File(AstCache::class.java.protectionDomain.codeSource.location.toURI())
+		val files = if (location.isDirectory) location.walkTopDown().filter { it.isFile }.sortedBy { it.path }.toList() else listOf(location)
+		for (file in files) md.update(file.readBytes())
+		md.digest().toHexString().substring(0, 8)
+	}
+}
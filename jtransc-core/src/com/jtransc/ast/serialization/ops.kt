@@ -1,5 +1,11 @@
 package com.jtransc.ast.serialization
 
+object AstFormat {
+	const val MAGIC = 0x4A544153 // JTAS
+	// Increment when the format or the AST generated from bytecode changes, so cached classes are discarded
+	const val VERSION = 2
+}
+
 object AstExprOp {
 	const val THIS = 0
 	const val LIT_REF_NULL = 1
@@ -17,7 +23,35 @@ object AstExprOp {
 	const val LIT_INT_BYTE = 13
 	const val LIT_INT_SHORT = 14
 	const val LIT_INT_INT = 15
+	const val LIT_CHAR = 16
+	const val LIT_LONG = 17
+	const val LIT_FLOAT = 18
+	const val LIT_DOUBLE = 19
+	const val LIT_STRING = 20
+	const val LIT_TYPE = 21
+	const val LIT_METHOD_HANDLE = 22
 
+	const val LOCAL = 30
+	const val PARAM = 31
+	const val CAUGHT_EXCEPTION = 32
+	const val UNOP = 33
+	const val CALL_INSTANCE = 34
+	const val CALL_SUPER = 35
+	const val CALL_STATIC = 36
+	const val ARRAY_LENGTH = 37
+	const val ARRAY_ACCESS = 38
+	const val FIELD_INSTANCE_ACCESS = 39
+	const val FIELD_STATIC_ACCESS = 40
+	const val INSTANCE_OF = 41
+	const val CAST = 42
+	const val NEW = 43
+	const val NEW_WITH_CONSTRUCTOR = 44
+	const val NEW_ARRAY = 45
+	const val METHOD_CLASS = 46
+	const val TERNARY = 47
+
+	// Followed by the result type and the operands, the operator is BIN_BASE + AstBinop.ordinal
+	const val BIN_BASE = 100
 	const val BIN_ADD = 100
 	const val BIN_SUB = 101
 	const val BIN_MUL = 102
@@ -31,4 +65,66 @@ object AstExprOp {
 
 object AstStmOp {
 	const val EXPR = 0
+	const val STMS = 1
+	const val NOP = 2
+	const val LINE = 3
+	const val SET_LOCAL = 4
+	const val SET_ARRAY = 5
+	const val SET_ARRAY_LITERALS = 6
+	const val SET_FIELD_STATIC = 7
+	const val SET_FIELD_INSTANCE = 8
+	const val SET_NEW_WITH_CONSTRUCTOR = 9
+	const val IF = 10
+	const val IF_ELSE = 11
+	const val WHILE = 12
+	const val RETURN = 13
+	const val RETURN_VOID = 14
+	const val THROW = 15
+	const val RETHROW = 16
+	const val TRY_CATCH = 17
+	const val BREAK = 18
+	const val CONTINUE = 19
+	const val SWITCH = 20
+	const val STM_LABEL = 21
+	const val SWITCH_GOTO = 22
+	const val IF_GOTO = 23
+	const val GOTO = 24
+	const val MONITOR_ENTER = 25
+	const val MONITOR_EXIT = 26
+}
+
+object AstTypeOp {
+	const val PRIMITIVE = 0
+	const val UNKNOWN = 1
+	const val NULL = 2
+	const val REF = 3
+	const val ARRAY = 4
+	const val METHOD = 5
+	const val GENERIC = 6
+	const val TYPE_PARAMETER = 7
+	const val GENERIC_STAR = 8
+	const val GENERIC_ITEM = 9
+	const val GENERIC_DESCRIPTOR = 10
+	const val GENERIC_LOWER_BOUND = 11
+	const val GENERIC_UPPER_BOUND = 12
+}
+
+// Annotation values, default tags and field constants
+object AstValueOp {
+	const val NULL = 0
+	const val BOOL = 1
+	const val BYTE = 2
+	const val SHORT = 3
+	const val CHAR = 4
+	const val INT = 5
+	const val LONG = 6
+	const val FLOAT = 7
+	const val DOUBLE = 8
+	const val STRING = 9
+	const val TYPE = 10
+	const val ASM_TYPE = 11
+	const val METHOD_HANDLE = 12
+	const val ENUM = 13
+	const val LIST = 14
+	const val ANNOTATION = 15
 }
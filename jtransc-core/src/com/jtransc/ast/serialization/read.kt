@@ -18,34 +18,296 @@ package com.jtransc.ast.serialization
 
 import com.jtransc.ast.*
 import com.jtransc.error.invalidOp
-import com.jtransc.error.noImpl
-import com.jtransc.io.i8
+import java.io.DataInputStream
 import java.io.InputStream
+import java.util.*
 
-class AstRead(val types: AstTypes) {
-	val current = FqName("java.lang.Object")
+/**
+ * Reads classes written by [AstWriter].
+ */
+class AstRead(val types: AstTypes, input: InputStream) {
+	val s = DataInputStream(input)
+
+	private val strings = arrayListOf<String>()
+	private val typeTable = arrayListOf<AstType>()
+	private val locals = arrayListOf<AstLocal>()
+	private val labels = arrayListOf<AstLabel>()
+
+	// Concrete methods written without body get it from decodeBody
+	fun readClass(program: AstProgram, decodeBody: (methodId: Int) -> AstBody? = { null }): AstClass {
+		if (s.readInt() != AstFormat.MAGIC) invalidOp("Not a serialized class")
+		if (readUInt() != AstFormat.VERSION) invalidOp("Unsupported serialized class version")
+		val clazz = AstClass(
+			source = readString()!!,
+			program = program,
+			name = FqName(readString()!!),
+			modifiers = AstModifiers(readUInt()),
+			extending = readString()?.let { FqName(it) },
+			implementing = readList { FqName(readString()!!) },
+			annotations = readAnnotations()
+		)
+		for (n in 0 until readUInt()) clazz.add(readMethod(clazz, decodeBody))
+		for (n in 0 until readUInt()) clazz.add(readField(clazz))
+		return clazz
+	}
+
+	fun readMethod(containingClass: AstClass, decodeBody: (methodId: Int) -> AstBody? = { null }): AstMethod {
+		val id = readUInt()
+		val name = readString()!!
+		val methodType = readType() as AstType.METHOD
+		val annotations = readAnnotations()
+		val parameterAnnotations = readList { readAnnotations() }
+		val signature = readString()!!
+		val genericSignature = readString()
+		val defaultTag = readValue()
+		val modifiers = AstModifiers(readUInt())
+		val bodyRef = readNullable { readMethodRef() }
+		val body = readNullable { readBody() }
+		return AstMethod(
+			id = id,
+			containingClass = containingClass,
+			annotations = annotations,
+			parameterAnnotations = parameterAnnotations,
+			name = name,
+			methodType = methodType,
+			signature = signature,
+			genericSignature = genericSignature,
+			defaultTag = defaultTag,
+			modifiers = modifiers,
+			types = types,
+			bodyRef = bodyRef,
+			generateBody = { body ?: if (modifiers.isConcrete) decodeBody(id) else null }
+		)
+	}
 
-	fun readBinop(s: InputStream, op:AstBinop): AstExpr {
-		val l = readExpr(s)
-		val r = readExpr(s)
-		return AstExpr.BINOP(l.type, l, AstBinop.ADD, r)
+	fun readField(containingClass: AstClass): AstField {
+		return AstField(
+			id = readUInt(),
+			containingClass = containingClass,
+			name = readString()!!,
+			type = readType()!!,
+			annotations = readAnnotations(),
+			desc = readString()!!,
+			genericSignature = readString(),
+			modifiers = AstModifiers(readUInt()),
+			constantValue = readValue(),
+			types = types
+		)
 	}
 
-	fun readStm(s: InputStream): AstStm {
-		return when (s.i8()) {
-			AstStmOp.EXPR -> AstStm.STM_EXPR(readExpr(s))
-			else -> noImpl
+	fun readBody(): AstBody {
+		locals.clear()
+		labels.clear()
+		val bodyLocals = readList { readLocal() }
+		val strictfp = s.readBoolean()
+		val traps = readList { AstTrap(readLabel(), readLabel(), readLabel(), readType() as AstType.REF) }
+		return AstBody(readStm(), bodyLocals, traps, AstBodyFlags(strictfp = strictfp, types = types))
+	}
+
+	fun readStm(): AstStm {
+		val op = s.readUnsignedByte()
+		return when (op) {
+			AstStmOp.EXPR -> AstStm.STM_EXPR(readExpr())
+			AstStmOp.STMS -> AstStm.STMS(readList { readStm() })
+			AstStmOp.NOP -> AstStm.NOP(readString()!!)
+			AstStmOp.LINE -> AstStm.LINE(readString()!!, readInt())
+			AstStmOp.SET_LOCAL -> {
+				val local = readLocal()
+				// Mirrors AstStmUtils.set: the target is a write, not a read
+				AstStm.SET_LOCAL(AstExpr.LOCAL(local), readExpr()).apply { local.write(this) }
+			}
+			AstStmOp.SET_ARRAY -> AstStm.SET_ARRAY(readExpr(), readExpr(), readExpr())
+			AstStmOp.SET_ARRAY_LITERALS -> AstStm.SET_ARRAY_LITERALS(readExpr(), readInt(), readList { readExpr().box })
+			AstStmOp.SET_FIELD_STATIC -> AstStm.SET_FIELD_STATIC(readFieldRef(), readExpr())
+			AstStmOp.SET_FIELD_INSTANCE -> AstStm.SET_FIELD_INSTANCE(readFieldRef(), readExpr(), readExpr())
+			AstStmOp.SET_NEW_WITH_CONSTRUCTOR -> AstStm.SET_NEW_WITH_CONSTRUCTOR(readExpr() as AstExpr.LocalExpr, readType() as AstType.REF, readMethodRef(), readList { readExpr() })
+			AstStmOp.IF -> AstStm.IF(readExpr(), readStm())
+			AstStmOp.IF_ELSE -> AstStm.IF_ELSE(readExpr(), readStm(), readStm())
+			AstStmOp.WHILE -> AstStm.WHILE(readExpr(), readStm())
+			AstStmOp.RETURN -> AstStm.RETURN(readExpr())
+			AstStmOp.RETURN_VOID -> AstStm.RETURN_VOID()
+			AstStmOp.THROW -> AstStm.THROW(readExpr())
+			AstStmOp.RETHROW -> AstStm.RETHROW()
+			AstStmOp.TRY_CATCH -> AstStm.TRY_CATCH(readStm(), readStm())
+			AstStmOp.BREAK -> AstStm.BREAK()
+			AstStmOp.CONTINUE -> AstStm.CONTINUE()
+			AstStmOp.SWITCH -> AstStm.SWITCH(readExpr(), readStm(), readList { Pair(readInt(), readStm()) })
+			AstStmOp.STM_LABEL -> AstStm.STM_LABEL(readLabel())
+			AstStmOp.SWITCH_GOTO -> AstStm.SWITCH_GOTO(readExpr(), readLabel(), readList { Pair(readInt(), readLabel()) })
+			AstStmOp.IF_GOTO -> AstStm.IF_GOTO(readLabel(), readExpr())
+			AstStmOp.GOTO -> AstStm.GOTO(readLabel())
+			AstStmOp.MONITOR_ENTER -> AstStm.MONITOR_ENTER(readExpr())
+			AstStmOp.MONITOR_EXIT -> AstStm.MONITOR_EXIT(readExpr())
+			else -> invalidOp("Invalid statement op $op")
 		}
 	}
 
-	fun readExpr(s: InputStream): AstExpr {
-		return when (s.i8()) {
-			AstExprOp.THIS -> AstExpr.THIS(current)
-			AstExprOp.LIT_BOOL_FALSE -> AstExpr.LITERAL(false, types)
+	fun readExpr(): AstExpr {
+		val op = s.readUnsignedByte()
+		if (op >= AstExprOp.BIN_BASE) {
+			val binop = AstBinop.values()[op - AstExprOp.BIN_BASE]
+			return AstExpr.BINOP(readType()!!, readExpr(), binop, readExpr())
+		}
+		return when (op) {
+			AstExprOp.THIS -> AstExpr.THIS(FqName(readString()!!))
+			AstExprOp.LIT_REF_NULL -> AstExpr.LITERAL(null, types)
 			AstExprOp.LIT_BOOL_TRUE -> AstExpr.LITERAL(true, types)
-			AstExprOp.BIN_ADD -> readBinop(s, AstBinop.ADD)
-			AstExprOp.BIN_SUB -> readBinop(s, AstBinop.SUB)
-			else -> noImpl
+			AstExprOp.LIT_BOOL_FALSE -> AstExpr.LITERAL(false, types)
+			AstExprOp.LIT_BYTE -> AstExpr.LITERAL(s.readByte(), types)
+			AstExprOp.LIT_SHORT -> AstExpr.LITERAL(s.readShort(), types)
+			AstExprOp.LIT_CHAR -> AstExpr.LITERAL(s.readChar(), types)
+			AstExprOp.LIT_INT_M1 -> AstExpr.LITERAL(-1, types)
+			AstExprOp.LIT_INT_0 -> AstExpr.LITERAL(0, types)
+			AstExprOp.LIT_INT_1 -> AstExpr.LITERAL(1, types)
+			AstExprOp.LIT_INT_2 -> AstExpr.LITERAL(2, types)
+			AstExprOp.LIT_INT_3 -> AstExpr.LITERAL(3, types)
+			AstExprOp.LIT_INT_4 -> AstExpr.LITERAL(4, types)
+			AstExprOp.LIT_INT_5 -> AstExpr.LITERAL(5, types)
+			AstExprOp.LIT_INT_BYTE -> AstExpr.LITERAL(s.readByte().toInt(), types)
+			AstExprOp.LIT_INT_SHORT -> AstExpr.LITERAL(s.readShort().toInt(), types)
+			AstExprOp.LIT_INT_INT -> AstExpr.LITERAL(s.readInt(), types)
+			AstExprOp.LIT_LONG -> AstExpr.LITERAL(s.readLong(), types)
+			AstExprOp.LIT_FLOAT -> AstExpr.LITERAL(java.lang.Float.intBitsToFloat(s.readInt()), types)
+			AstExprOp.LIT_DOUBLE -> AstExpr.LITERAL(java.lang.Double.longBitsToDouble(s.readLong()), types)
+			AstExprOp.LIT_STRING -> AstExpr.LITERAL(readString(), types)
+			AstExprOp.LIT_TYPE -> AstExpr.LITERAL(readType(), types)
+			AstExprOp.LIT_METHOD_HANDLE -> AstExpr.LITERAL(readMethodHandle(), types)
+			AstExprOp.LOCAL -> AstExprUtils.localRef(readLocal())
+			AstExprOp.PARAM -> AstExpr.PARAM(readArgument())
+			AstExprOp.CAUGHT_EXCEPTION -> AstExpr.CAUGHT_EXCEPTION(readType()!!)
+			AstExprOp.UNOP -> AstExpr.UNOP(AstUnop.values()[s.readUnsignedByte()], readExpr())
+			AstExprOp.CALL_INSTANCE -> AstExpr.CALL_INSTANCE(readExpr(), readMethodRef(), readList { readExpr() }, s.readBoolean())
+			AstExprOp.CALL_SUPER -> AstExpr.CALL_SUPER(readExpr(), FqName(readString()!!), readMethodRef(), readList { readExpr() }, s.readBoolean())
+			AstExprOp.CALL_STATIC -> AstExpr.CALL_STATIC(readType() as AstType.REF, readMethodRef(), readList { readExpr() }, s.readBoolean())
+			AstExprOp.ARRAY_LENGTH -> AstExpr.ARRAY_LENGTH(readExpr())
+			AstExprOp.ARRAY_ACCESS -> AstExpr.ARRAY_ACCESS(readExpr(), readExpr())
+			AstExprOp.FIELD_INSTANCE_ACCESS -> AstExpr.FIELD_INSTANCE_ACCESS(readFieldRef(), readExpr())
+			AstExprOp.FIELD_STATIC_ACCESS -> AstExpr.FIELD_STATIC_ACCESS(readFieldRef())
+			AstExprOp.INSTANCE_OF -> AstExpr.INSTANCE_OF(readExpr(), readType()!!)
+			AstExprOp.CAST -> AstExpr.CAST(readExpr(), readType()!!)
+			AstExprOp.NEW -> AstExpr.NEW(readType() as AstType.REF)
+			AstExprOp.NEW_WITH_CONSTRUCTOR -> AstExpr.NEW_WITH_CONSTRUCTOR(readType() as AstType.REF, readMethodRef(), readList { readExpr() })
+			AstExprOp.NEW_ARRAY -> AstExpr.NEW_ARRAY(readType() as AstType.ARRAY, readList { readExpr() })
+			AstExprOp.METHOD_CLASS -> AstExpr.METHOD_CLASS(readMethodRef(), readMethodRef())
+			AstExprOp.TERNARY -> AstExpr.TERNARY(readExpr(), readExpr(), readExpr(), types)
+			else -> invalidOp("Invalid expression op $op")
+		}
+	}
+
+	fun readValue(): Any? {
+		val op = s.readUnsignedByte()
+		return when (op) {
+			AstValueOp.NULL -> null
+			AstValueOp.BOOL -> s.readBoolean()
+			AstValueOp.BYTE -> s.readByte()
+			AstValueOp.SHORT -> s.readShort()
+			AstValueOp.CHAR -> s.readChar()
+			AstValueOp.INT -> readInt()
+			AstValueOp.LONG -> s.readLong()
+			AstValueOp.FLOAT -> java.lang.Float.intBitsToFloat(s.readInt())
+			AstValueOp.DOUBLE -> java.lang.Double.longBitsToDouble(s.readLong())
+			AstValueOp.STRING -> readString()
+			AstValueOp.TYPE -> readType()
+			AstValueOp.ASM_TYPE -> com.jtransc.org.objectweb.asm.Type.getType(readString())
+			AstValueOp.METHOD_HANDLE -> readMethodHandle()
+			AstValueOp.ENUM -> AstFieldWithoutTypeRef(FqName(readString()!!), readString()!!)
+			AstValueOp.LIST -> readList { readValue() }
+			AstValueOp.ANNOTATION -> readAnnotation()
+			else -> invalidOp("Invalid value op $op")
+		}
+	}
+
+	fun readAnnotations(): List<AstAnnotation> = readList { readAnnotation() }
+
+	fun readAnnotation(): AstAnnotation {
+		val type = readType() as AstType.REF
+		val runtimeVisible = s.readBoolean()
+		// Keeps the iteration order of the original map
+		val elements = linkedMapOf<String, Any?>()
+		for (n in 0 until readUInt()) {
+			val key = readString()!!
+			elements[key] = readValue()
+		}
+		return AstAnnotation(type, elements, runtimeVisible)
+	}
+
+	fun readMethodHandle(): AstMethodHandle {
+		return AstMethodHandle(readType() as AstType.METHOD, readMethodRef(), AstMethodHandle.Kind.fromId(readUInt()))
+	}
+
+	fun readMethodRef(): AstMethodRef = AstMethodRef(FqName(readString()!!), readString()!!, readType() as AstType.METHOD)
+
+	fun readFieldRef(): AstFieldRef = AstFieldRef(FqName(readString()!!), readString()!!, readType()!!)
+
+	fun readArgument(): AstArgument = AstArgument(readUInt(), readType()!!, readString()!!, s.readBoolean())
+
+	fun readLocal(): AstLocal = readInterned(locals) { AstLocal(readUInt(), readString()!!, readType()!!) }!!
+
+	fun readLabel(): AstLabel = readInterned(labels) { AstLabel(readString()!!) }!!
+
+	fun readType(): AstType? = readInterned(typeTable) {
+		val op = s.readUnsignedByte()
+		when (op) {
+			AstTypeOp.PRIMITIVE -> types.demangle(s.readUnsignedByte().toChar().toString())
+			AstTypeOp.UNKNOWN -> AstType.UNKNOWN
+			AstTypeOp.NULL -> AstType.NULL
+			AstTypeOp.REF -> AstType.REF(readString()!!)
+			AstTypeOp.ARRAY -> AstType.ARRAY(readType()!!)
+			AstTypeOp.METHOD -> AstType.METHOD(readType()!!, readList { readArgument() }, s.readBoolean(), readTypePairs())
+			AstTypeOp.GENERIC -> AstType.GENERIC(
+				readType() as AstType.REF,
+				readList { AstType.GENERIC_SUFFIX(readString(), readNullable { readList { readType()!! } }) },
+				s.readBoolean()
+			)
+			AstTypeOp.TYPE_PARAMETER -> AstType.TYPE_PARAMETER(readString()!!)
+			AstTypeOp.GENERIC_STAR -> AstType.GENERIC_STAR
+			AstTypeOp.GENERIC_ITEM -> AstType.GENERIC_ITEM
+			AstTypeOp.GENERIC_DESCRIPTOR -> AstType.GENERIC_DESCRIPTOR(readType()!!, readTypePairs())
+			AstTypeOp.GENERIC_LOWER_BOUND -> AstType.GENERIC_LOWER_BOUND(readType()!!)
+			AstTypeOp.GENERIC_UPPER_BOUND -> AstType.GENERIC_UPPER_BOUND(readType()!!)
+			else -> invalidOp("Invalid type op $op")
 		}
 	}
-}
\ No newline at end of file
+
+	private fun readTypePairs(): List<Pair<String, AstType>> = readList { Pair(readString()!!, readType()!!) }
+
+	fun readString(): String? = readInterned(strings) {
+		val chars = CharArray(readUInt())
+		for (n in 0 until chars.size) chars[n] = readUInt().toChar()
+		String(chars)
+	}
+
+	private inline fun <T> readInterned(table: MutableList<T>, read: () -> T): T? {
+		val id = readUInt()
+		return when (id) {
+			0 -> null
+			1 -> read().apply { table.add(this) }
+			else -> table[id - 2]
+		}
+	}
+
+	private inline fun <T> readNullable(read: () -> T): T? = if (s.readBoolean()) read() else null
+
+	private inline fun <T> readList(read: () -> T): List<T> {
+		val count = readUInt()
+		val out = ArrayList<T>(count)
+		for (n in 0 until count) out.add(read())
+		return out
+	}
+
+	fun readUInt(): Int {
+		var out = 0
+		var shift = 0
+		while (true) {
+			val b = s.readUnsignedByte()
+			out = out or ((b and 0x7F) shl shift)
+			if ((b and 0x80) == 0) return out
+			shift += 7
+		}
+	}
+
+	fun readInt(): Int {
+		val v = readUInt()
+		return (v ushr 1) xor -(v and 1)
+	}
+}
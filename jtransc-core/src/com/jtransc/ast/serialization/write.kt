@@ -16,86 +16,625 @@
 
 package com.jtransc.ast.serialization
 
-import com.jtransc.ast.AstBinop
-import com.jtransc.ast.AstExpr
-import com.jtransc.ast.AstStm
-import com.jtransc.error.noImpl
-import com.jtransc.io.i16
-import com.jtransc.io.i32
-import com.jtransc.io.i8
+import com.jtransc.ast.*
+import com.jtransc.error.invalidOp
+import java.io.DataOutputStream
 import java.io.OutputStream
+import java.util.*
 
-class AstWriter {
-	fun writeStm(stm: AstStm.Box, s: OutputStream) {
-		writeStm(stm.value, s)
+/**
+ * Writes classes in a compact binary format that [AstRead] can load back without decoding bytecode.
+ *
+ * Strings, types, locals and labels are written once and then referenced by index:
+ * 0 is null, 1 means that a new value follows and n >= 2 references the value n - 2.
+ */
+class AstWriter(out: OutputStream) {
+	val s = DataOutputStream(out)
+
+	private val strings = hashMapOf<String, Int>()
+	private val types = IdentityHashMap<AstType, Int>()
+	private val locals = IdentityHashMap<AstLocal, Int>()
+	private val labels = IdentityHashMap<AstLabel, Int>()
+
+	fun flush() = s.flush()
+
+	fun writeClass(clazz: AstClass) {
+		s.writeInt(AstFormat.MAGIC)
+		writeUInt(AstFormat.VERSION)
+		writeString(clazz.source)
+		writeString(clazz.name.fqname)
+		writeUInt(clazz.modifiers.acc)
+		writeString(clazz.extending?.fqname)
+		writeList(clazz.implementing) { writeString(it.fqname) }
+		writeAnnotations(clazz.annotations)
+		writeList(clazz.methods) { writeMethod(it) }
+		writeList(clazz.fields) { writeField(it) }
+	}
+
+	fun writeMethod(method: AstMethod) {
+		writeUInt(method.id)
+		writeString(method.name)
+		writeType(method.methodType)
+		writeAnnotations(method.annotations)
+		writeList(method.parameterAnnotations) { writeAnnotations(it) }
+		writeString(method.signature)
+		writeString(method.genericSignature)
+		writeValue(method.defaultTag)
+		writeUInt(method.modifiers.acc)
+		writeNullable(method.bodyRef) { writeMethodRef(it) }
+		// Doesn't force the generation of the body
+		writeNullable(if (method.isBodyGenerated) method.body else null) { writeBody(it) }
+	}
+
+	fun writeField(field: AstField) {
+		writeUInt(field.id)
+		writeString(field.name)
+		writeType(field.type)
+		writeAnnotations(field.annotations)
+		writeString(field.desc)
+		writeString(field.genericSignature)
+		writeUInt(field.modifiers.acc)
+		writeValue(field.constantValue)
 	}
 
-	fun writeExpr(expr: AstExpr.Box, s: OutputStream) {
-		writeExpr(expr.value, s)
+	fun writeBody(body: AstBody) {
+		locals.clear()
+		labels.clear()
+		writeList(body.locals) { writeLocal(it) }
+		s.writeBoolean(body.flags.strictfp)
+		writeList(body.traps) {
+			writeLabel(it.start)
+			writeLabel(it.end)
+			writeLabel(it.handler)
+			writeType(it.exception)
+		}
+		writeStm(body.stm)
+	}
+
+	fun writeStm(stm: AstStm.Box) {
+		writeStm(stm.value)
+	}
+
+	fun writeExpr(expr: AstExpr.Box) {
+		writeExpr(expr.value)
 	}
 
-	fun writeStm(stm: AstStm, s: OutputStream) {
+	fun writeStm(stm: AstStm) {
 		when (stm) {
 			is AstStm.STM_EXPR -> {
-				s.i8(AstStmOp.EXPR)
-				writeExpr(stm.expr.value, s)
+				s.writeByte(AstStmOp.EXPR)
+				writeExpr(stm.expr)
+			}
+			is AstStm.STMS -> {
+				s.writeByte(AstStmOp.STMS)
+				writeList(stm.stms) { writeStm(it) }
+			}
+			is AstStm.NOP -> {
+				s.writeByte(AstStmOp.NOP)
+				writeString(stm.reason)
+			}
+			is AstStm.LINE -> {
+				s.writeByte(AstStmOp.LINE)
+				writeString(stm.file)
+				writeInt(stm.line)
+			}
+			is AstStm.SET_LOCAL -> {
+				s.writeByte(AstStmOp.SET_LOCAL)
+				writeLocal(stm.local.local)
+				writeExpr(stm.expr)
+			}
+			is AstStm.SET_ARRAY -> {
+				s.writeByte(AstStmOp.SET_ARRAY)
+				writeExpr(stm.array)
+				writeExpr(stm.index)
+				writeExpr(stm.expr)
+			}
+			is AstStm.SET_ARRAY_LITERALS -> {
+				s.writeByte(AstStmOp.SET_ARRAY_LITERALS)
+				writeExpr(stm.array)
+				writeInt(stm.startIndex)
+				writeList(stm.values) { writeExpr(it) }
+			}
+			is AstStm.SET_FIELD_STATIC -> {
+				s.writeByte(AstStmOp.SET_FIELD_STATIC)
+				writeFieldRef(stm.field)
+				writeExpr(stm.expr)
+			}
+			is AstStm.SET_FIELD_INSTANCE -> {
+				s.writeByte(AstStmOp.SET_FIELD_INSTANCE)
+				writeFieldRef(stm.field)
+				writeExpr(stm.left)
+				writeExpr(stm.expr)
+			}
+			is AstStm.SET_NEW_WITH_CONSTRUCTOR -> {
+				s.writeByte(AstStmOp.SET_NEW_WITH_CONSTRUCTOR)
+				writeExpr(stm.local)
+				writeType(stm.target)
+				writeMethodRef(stm.method)
+				writeList(stm.args) { writeExpr(it) }
+			}
+			is AstStm.IF -> {
+				s.writeByte(AstStmOp.IF)
+				writeExpr(stm.cond)
+				writeStm(stm.strue)
+			}
+			is AstStm.IF_ELSE -> {
+				s.writeByte(AstStmOp.IF_ELSE)
+				writeExpr(stm.cond)
+				writeStm(stm.strue)
+				writeStm(stm.sfalse)
+			}
+			is AstStm.WHILE -> {
+				s.writeByte(AstStmOp.WHILE)
+				writeExpr(stm.cond)
+				writeStm(stm.iter)
+			}
+			is AstStm.RETURN -> {
+				s.writeByte(AstStmOp.RETURN)
+				writeExpr(stm.retval)
+			}
+			is AstStm.RETURN_VOID -> s.writeByte(AstStmOp.RETURN_VOID)
+			is AstStm.THROW -> {
+				s.writeByte(AstStmOp.THROW)
+				writeExpr(stm.value)
+			}
+			is AstStm.RETHROW -> s.writeByte(AstStmOp.RETHROW)
+			is AstStm.TRY_CATCH -> {
+				s.writeByte(AstStmOp.TRY_CATCH)
+				writeStm(stm.trystm)
+				writeStm(stm.catch)
+			}
+			is AstStm.BREAK -> s.writeByte(AstStmOp.BREAK)
+			is AstStm.CONTINUE -> s.writeByte(AstStmOp.CONTINUE)
+			is AstStm.SWITCH -> {
+				s.writeByte(AstStmOp.SWITCH)
+				writeExpr(stm.subject)
+				writeStm(stm.default)
+				writeList(stm.cases) {
+					writeInt(it.first)
+					writeStm(it.second)
+				}
+			}
+			is AstStm.STM_LABEL -> {
+				s.writeByte(AstStmOp.STM_LABEL)
+				writeLabel(stm.label)
+			}
+			is AstStm.SWITCH_GOTO -> {
+				s.writeByte(AstStmOp.SWITCH_GOTO)
+				writeExpr(stm.subject)
+				writeLabel(stm.default)
+				writeList(stm.cases) {
+					writeInt(it.first)
+					writeLabel(it.second)
+				}
+			}
+			is AstStm.IF_GOTO -> {
+				s.writeByte(AstStmOp.IF_GOTO)
+				writeLabel(stm.label)
+				writeExpr(stm.cond)
 			}
-			else -> noImpl
+			is AstStm.GOTO -> {
+				s.writeByte(AstStmOp.GOTO)
+				writeLabel(stm.label)
+			}
+			is AstStm.MONITOR_ENTER -> {
+				s.writeByte(AstStmOp.MONITOR_ENTER)
+				writeExpr(stm.expr)
+			}
+			is AstStm.MONITOR_EXIT -> {
+				s.writeByte(AstStmOp.MONITOR_EXIT)
+				writeExpr(stm.expr)
+			}
+			else -> invalidOp("Can't serialize statement $stm")
 		}
 	}
 
-	fun writeExpr(expr: AstExpr, s: OutputStream) {
+	fun writeExpr(expr: AstExpr) {
 		when (expr) {
-			is AstExpr.THIS -> s.i8(AstExprOp.THIS)
-			is AstExpr.LITERAL -> {
-				val value = expr.value
+			is AstExpr.THIS -> {
+				s.writeByte(AstExprOp.THIS)
+				writeString(expr.ref.fqname)
+			}
+			is AstExpr.LOCAL -> {
+				s.writeByte(AstExprOp.LOCAL)
+				writeLocal(expr.local)
+			}
+			is AstExpr.PARAM -> {
+				s.writeByte(AstExprOp.PARAM)
+				writeArgument(expr.argument)
+			}
+			is AstExpr.LITERAL -> writeLiteral(expr.value)
+			is AstExpr.CAUGHT_EXCEPTION -> {
+				s.writeByte(AstExprOp.CAUGHT_EXCEPTION)
+				writeType(expr.type)
+			}
+			is AstExpr.BINOP -> {
+				s.writeByte(AstExprOp.BIN_BASE + expr.op.ordinal)
+				writeType(expr.type)
+				writeExpr(expr.left)
+				writeExpr(expr.right)
+			}
+			is AstExpr.UNOP -> {
+				s.writeByte(AstExprOp.UNOP)
+				s.writeByte(expr.op.ordinal)
+				writeExpr(expr.right)
+			}
+			is AstExpr.CALL_INSTANCE -> {
+				s.writeByte(AstExprOp.CALL_INSTANCE)
+				writeExpr(expr.obj)
+				writeMethodRef(expr.method)
+				writeList(expr.args) { writeExpr(it) }
+				s.writeBoolean(expr.isSpecial)
+			}
+			is AstExpr.CALL_SUPER -> {
+				s.writeByte(AstExprOp.CALL_SUPER)
+				writeExpr(expr.obj)
+				writeString(expr.target.fqname)
+				writeMethodRef(expr.method)
+				writeList(expr.args) { writeExpr(it) }
+				s.writeBoolean(expr.isSpecial)
+			}
+			is AstExpr.CALL_STATIC -> {
+				s.writeByte(AstExprOp.CALL_STATIC)
+				writeType(expr.clazz)
+				writeMethodRef(expr.method)
+				writeList(expr.args) { writeExpr(it) }
+				s.writeBoolean(expr.isSpecial)
+			}
+			is AstExpr.ARRAY_LENGTH -> {
+				s.writeByte(AstExprOp.ARRAY_LENGTH)
+				writeExpr(expr.array)
+			}
+			is AstExpr.ARRAY_ACCESS -> {
+				s.writeByte(AstExprOp.ARRAY_ACCESS)
+				writeExpr(expr.array)
+				writeExpr(expr.index)
+			}
+			is AstExpr.FIELD_INSTANCE_ACCESS -> {
+				s.writeByte(AstExprOp.FIELD_INSTANCE_ACCESS)
+				writeFieldRef(expr.field)
+				writeExpr(expr.expr)
+			}
+			is AstExpr.FIELD_STATIC_ACCESS -> {
+				s.writeByte(AstExprOp.FIELD_STATIC_ACCESS)
+				writeFieldRef(expr.field)
+			}
+			is AstExpr.INSTANCE_OF -> {
+				s.writeByte(AstExprOp.INSTANCE_OF)
+				writeExpr(expr.expr)
+				writeType(expr.checkType)
+			}
+			is AstExpr.CAST -> {
+				s.writeByte(AstExprOp.CAST)
+				writeExpr(expr.expr)
+				writeType(expr.to)
+			}
+			is AstExpr.NEW -> {
+				s.writeByte(AstExprOp.NEW)
+				writeType(expr.target)
+			}
+			is AstExpr.NEW_WITH_CONSTRUCTOR -> {
+				s.writeByte(AstExprOp.NEW_WITH_CONSTRUCTOR)
+				writeType(expr.target)
+				writeMethodRef(expr.method)
+				writeList(expr.args) { writeExpr(it) }
+			}
+			is AstExpr.NEW_ARRAY -> {
+				s.writeByte(AstExprOp.NEW_ARRAY)
+				writeType(expr.arrayType)
+				writeList(expr.counts) { writeExpr(it) }
+			}
+			is AstExpr.METHOD_CLASS -> {
+				s.writeByte(AstExprOp.METHOD_CLASS)
+				writeMethodRef(expr.methodInInterfaceRef)
+				writeMethodRef(expr.methodToConvertRef)
+			}
+			is AstExpr.TERNARY -> {
+				s.writeByte(AstExprOp.TERNARY)
+				writeExpr(expr.cond)
+				writeExpr(expr.etrue)
+				writeExpr(expr.efalse)
+			}
+			else -> invalidOp("Can't serialize expression $expr")
+		}
+	}
+
+	private fun writeLiteral(value: Any?) {
+		when (value) {
+			null -> s.writeByte(AstExprOp.LIT_REF_NULL)
+			is Boolean -> s.writeByte(if (value) AstExprOp.LIT_BOOL_TRUE else AstExprOp.LIT_BOOL_FALSE)
+			is Byte -> {
+				s.writeByte(AstExprOp.LIT_BYTE)
+				s.writeByte(value.toInt())
+			}
+			is Short -> {
+				s.writeByte(AstExprOp.LIT_SHORT)
+				s.writeShort(value.toInt())
+			}
+			is Char -> {
+				s.writeByte(AstExprOp.LIT_CHAR)
+				s.writeChar(value.toInt())
+			}
+			is Int -> {
 				when (value) {
-					null -> s.i8(AstExprOp.LIT_REF_NULL)
-					is Boolean -> s.i8(if (value) AstExprOp.LIT_BOOL_TRUE else AstExprOp.LIT_BOOL_FALSE)
-					is Byte -> {
-						s.i8(AstExprOp.LIT_BYTE)
-						s.i8(value.toInt())
-					}
-					is Short -> {
-						s.i8(AstExprOp.LIT_SHORT)
-						s.i16(value.toInt())
-					}
-					is Int -> {
-						when (value) {
-							-1 -> s.i8(AstExprOp.LIT_INT_M1)
-							0 -> s.i8(AstExprOp.LIT_INT_0)
-							1 -> s.i8(AstExprOp.LIT_INT_1)
-							2 -> s.i8(AstExprOp.LIT_INT_2)
-							3 -> s.i8(AstExprOp.LIT_INT_3)
-							4 -> s.i8(AstExprOp.LIT_INT_4)
-							5 -> s.i8(AstExprOp.LIT_INT_5)
-							else -> {
-								if (value.toByte().toInt() == value) {
-									s.i8(AstExprOp.LIT_INT_BYTE)
-									s.i8(value)
-								} else if (value.toShort().toInt() == value) {
-									s.i8(AstExprOp.LIT_INT_SHORT)
-									s.i16(value)
-								} else {
-									s.i8(AstExprOp.LIT_INT_INT)
-									s.i32(value)
-								}
-							}
+					-1 -> s.writeByte(AstExprOp.LIT_INT_M1)
+					0 -> s.writeByte(AstExprOp.LIT_INT_0)
+					1 -> s.writeByte(AstExprOp.LIT_INT_1)
+					2 -> s.writeByte(AstExprOp.LIT_INT_2)
+					3 -> s.writeByte(AstExprOp.LIT_INT_3)
+					4 -> s.writeByte(AstExprOp.LIT_INT_4)
+					5 -> s.writeByte(AstExprOp.LIT_INT_5)
+					else -> {
+						if (value.toByte().toInt() == value) {
+							s.writeByte(AstExprOp.LIT_INT_BYTE)
+							s.writeByte(value)
+						} else if (value.toShort().toInt() == value) {
+							s.writeByte(AstExprOp.LIT_INT_SHORT)
+							s.writeShort(value)
+						} else {
+							s.writeByte(AstExprOp.LIT_INT_INT)
+							s.writeInt(value)
 						}
 					}
-					else -> noImpl
 				}
 			}
-			is AstExpr.BINOP -> {
-				when (expr.op) {
-					AstBinop.ADD -> s.i8(AstExprOp.BIN_ADD)
-					AstBinop.SUB -> s.i8(AstExprOp.BIN_SUB)
-					else -> noImpl
+			is Long -> {
+				s.writeByte(AstExprOp.LIT_LONG)
+				s.writeLong(value)
+			}
+			is Float -> {
+				s.writeByte(AstExprOp.LIT_FLOAT)
+				s.writeInt(java.lang.Float.floatToRawIntBits(value))
+			}
+			is Double -> {
+				s.writeByte(AstExprOp.LIT_DOUBLE)
+				s.writeLong(java.lang.Double.doubleToRawLongBits(value))
+			}
+			is String -> {
+				s.writeByte(AstExprOp.LIT_STRING)
+				writeString(value)
+			}
+			is AstType -> {
+				s.writeByte(AstExprOp.LIT_TYPE)
+				writeType(value)
+			}
+			is AstMethodHandle -> {
+				s.writeByte(AstExprOp.LIT_METHOD_HANDLE)
+				writeMethodHandle(value)
+			}
+			else -> invalidOp("Can't serialize literal $value")
+		}
+	}
+
+	fun writeValue(value: Any?) {
+		when (value) {
+			null -> s.writeByte(AstValueOp.NULL)
+			is Boolean -> {
+				s.writeByte(AstValueOp.BOOL)
+				s.writeBoolean(value)
+			}
+			is Byte -> {
+				s.writeByte(AstValueOp.BYTE)
+				s.writeByte(value.toInt())
+			}
+			is Short -> {
+				s.writeByte(AstValueOp.SHORT)
+				s.writeShort(value.toInt())
+			}
+			is Char -> {
+				s.writeByte(AstValueOp.CHAR)
+				s.writeChar(value.toInt())
+			}
+			is Int -> {
+				s.writeByte(AstValueOp.INT)
+				writeInt(value)
+			}
+			is Long -> {
+				s.writeByte(AstValueOp.LONG)
+				s.writeLong(value)
+			}
+			is Float -> {
+				s.writeByte(AstValueOp.FLOAT)
+				s.writeInt(java.lang.Float.floatToRawIntBits(value))
+			}
+			is Double -> {
+				s.writeByte(AstValueOp.DOUBLE)
+				s.writeLong(java.lang.Double.doubleToRawLongBits(value))
+			}
+			is String -> {
+				s.writeByte(AstValueOp.STRING)
+				writeString(value)
+			}
+			is AstType -> {
+				s.writeByte(AstValueOp.TYPE)
+				writeType(value)
+			}
+			is com.jtransc.org.objectweb.asm.Type -> {
+				s.writeByte(AstValueOp.ASM_TYPE)
+				writeString(value.descriptor)
+			}
+			is AstMethodHandle -> {
+				s.writeByte(AstValueOp.METHOD_HANDLE)
+				writeMethodHandle(value)
+			}
+			is AstFieldWithoutTypeRef -> {
+				s.writeByte(AstValueOp.ENUM)
+				writeString(value.containingClass.fqname)
+				writeString(value.name)
+			}
+			is List<*> -> {
+				s.writeByte(AstValueOp.LIST)
+				writeList(value) { writeValue(it) }
+			}
+			is AstAnnotation -> {
+				s.writeByte(AstValueOp.ANNOTATION)
+				writeAnnotation(value)
+			}
+			else -> invalidOp("Can't serialize value $value")
+		}
+	}
+
+	fun writeAnnotations(annotations: List<AstAnnotation>) {
+		writeList(annotations) { writeAnnotation(it) }
+	}
+
+	fun writeAnnotation(annotation: AstAnnotation) {
+		writeType(annotation.type)
+		s.writeBoolean(annotation.runtimeVisible)
+		writeList(annotation.elements.entries.toList()) {
+			writeString(it.key)
+			writeValue(it.value)
+		}
+	}
+
+	fun writeMethodHandle(handle: AstMethodHandle) {
+		writeType(handle.type)
+		writeMethodRef(handle.methodRef)
+		writeUInt(handle.kind.id)
+	}
+
+	fun writeMethodRef(ref: AstMethodRef) {
+		writeString(ref.containingClass.fqname)
+		writeString(ref.name)
+		writeType(ref.type)
+	}
+
+	fun writeFieldRef(ref: AstFieldRef) {
+		writeString(ref.containingClass.fqname)
+		writeString(ref.name)
+		writeType(ref.type)
+	}
+
+	fun writeArgument(arg: AstArgument) {
+		writeUInt(arg.index)
+		writeType(arg.type)
+		writeString(arg.name)
+		s.writeBoolean(arg.optional)
+	}
+
+	fun writeLocal(local: AstLocal): Unit = writeInterned(locals, local) {
+		writeUInt(it.index)
+		writeString(it.name)
+		writeType(it.type)
+	}
+
+	fun writeLabel(label: AstLabel): Unit = writeInterned(labels, label) {
+		writeString(it.name)
+	}
+
+	fun writeType(type: AstType?): Unit = writeInterned(types, type) {
+		when (it) {
+			is AstType.Primitive -> {
+				s.writeByte(AstTypeOp.PRIMITIVE)
+				s.writeByte(it.ch.toInt())
+			}
+			is AstType.UNKNOWN -> s.writeByte(AstTypeOp.UNKNOWN)
+			is AstType.NULL -> s.writeByte(AstTypeOp.NULL)
+			is AstType.REF -> {
+				s.writeByte(AstTypeOp.REF)
+				writeString(it.fqname)
+			}
+			is AstType.ARRAY -> {
+				s.writeByte(AstTypeOp.ARRAY)
+				writeType(it.element)
+			}
+			is AstType.METHOD -> {
+				s.writeByte(AstTypeOp.METHOD)
+				writeType(it.ret)
+				writeList(it.args) { writeArgument(it) }
+				s.writeBoolean(it.dummy)
+				writeTypePairs(it.paramTypes)
+			}
+			is AstType.GENERIC -> {
+				s.writeByte(AstTypeOp.GENERIC)
+				writeType(it.type)
+				writeList(it.suffixes) {
+					writeString(it.id)
+					writeNullable(it.params) { writeList(it) { writeType(it) } }
 				}
-				writeExpr(expr.left.value, s)
-				writeExpr(expr.right.value, s)
+				s.writeBoolean(it.dummy)
+			}
+			is AstType.TYPE_PARAMETER -> {
+				s.writeByte(AstTypeOp.TYPE_PARAMETER)
+				writeString(it.id)
+			}
+			is AstType.GENERIC_STAR -> s.writeByte(AstTypeOp.GENERIC_STAR)
+			is AstType.GENERIC_ITEM -> s.writeByte(AstTypeOp.GENERIC_ITEM)
+			is AstType.GENERIC_DESCRIPTOR -> {
+				s.writeByte(AstTypeOp.GENERIC_DESCRIPTOR)
+				writeType(it.element)
+				writeTypePairs(it.types)
 			}
-			else -> noImpl
+			is AstType.GENERIC_LOWER_BOUND -> {
+				s.writeByte(AstTypeOp.GENERIC_LOWER_BOUND)
+				writeType(it.element)
+			}
+			is AstType.GENERIC_UPPER_BOUND -> {
+				s.writeByte(AstTypeOp.GENERIC_UPPER_BOUND)
+				writeType(it.element)
+			}
+			else -> invalidOp("Can't serialize type $it")
+		}
+	}
+
+	private fun writeTypePairs(pairs: List<Pair<String, AstType>>) {
+		writeList(pairs) {
+			writeString(it.first)
+			writeType(it.second)
+		}
+	}
+
+	fun writeString(str: String?) {
+		if (str == null) {
+			writeUInt(0)
+			return
+		}
+		val id = strings[str]
+		if (id != null) {
+			writeUInt(id + 2)
+		} else {
+			// Chars instead of UTF-8 so unpaired surrogates in string literals survive
+			writeUInt(1)
+			writeUInt(str.length)
+			for (c in str) writeUInt(c.toInt())
+			strings[str] = strings.size
+		}
+	}
+
+	private inline fun <T> writeInterned(table: MutableMap<T, Int>, value: T?, write: (T) -> Unit) {
+		if (value == null) {
+			writeUInt(0)
+			return
+		}
+		val id = table[value]
+		if (id != null) {
+			writeUInt(id + 2)
+		} else {
+			writeUInt(1)
+			write(value)
+			// Registered after its content, in the same order the reader does
+			table[value] = table.size
 		}
 	}
-}
\ No newline at end of file
+
+	private inline fun <T> writeNullable(value: T?, write: (T) -> Unit) {
+		s.writeBoolean(value != null)
+		if (value != null) write(value)
+	}
+
+	private inline fun <T> writeList(list: List<T>, write: (T) -> Unit) {
+		writeUInt(list.size)
+		for (item in list) write(item)
+	}
+
+	fun writeUInt(value: Int) {
+		var v = value
+		while ((v and 0x7F.inv()) != 0) {
+			s.writeByte((v and 0x7F) or 0x80)
+			v = v ushr 7
+		}
+		s.writeByte(v)
+	}
+
+	fun writeInt(value: Int) = writeUInt((value shl 1) xor (value shr 31))
+}
@@ -0,0 +1,71 @@
+package com.jtransc.ast.treeshaking
+
+import com.jtransc.ast.*
+
+/**
+ * Class hierarchy analysis. Only valid for closed programs (after tree shaking), where every class that can be
+ * instantiated is part of the program.
+ *
+ * Interfaces that are targets of lambdas, or any interface when the program uses proxies, can be implemented
+ * by objects created by the runtime, so calls on them are never resolved. The same happens with Object and the
+ * interfaces implemented by arrays.
+ */
+class ClassHierarchy(val program: AstProgram) {
+	val tree = ClassTree(program).apply {
+		for (clazz in program.classes) add(clazz)
+	}
+
+	private val OPEN_TYPES = setOf("java.lang.Object", "java.lang.Cloneable", "java.io.Serializable")
+
+	private val usesProxies: Boolean by lazy {
+		val proxy = "java.lang.reflect.Proxy".fqname
+		(proxy in program) && program[proxy].methods.any { it.name == "newProxyInstance" }
+	}
+
+	private val lambdaInterfaces: Set<FqName> by lazy {
+		val out = hashSetOf<FqName>()
+		val visitor = object : AstVisitor() {
+			override fun visit(expr: AstExpr.METHOD_CLASS) {
+				super.visit(expr)
+				out += expr.methodInInterfaceRef.containingClass
+			}
+		}
+		for (clazz in program.classes) for (method in clazz.methods) visitor.visit(method.body ?: continue)
+		out
+	}
+
+	private val implementationsCache = hashMapOf<AstMethodRef, List<AstMethod>?>()
+
+	fun isOpen(clazz: AstClass): Boolean = when {
+		clazz.fqname in OPEN_TYPES -> true
+		clazz.isInterface -> usesProxies || clazz.name in lambdaInterfaces
+		else -> false
+	}
+
+	fun getConcreteClasses(clazz: AstClass): List<AstClass> {
+		return (listOf(clazz) + tree.getAllDescendants(clazz)).filter { !it.isInterface && !it.isAbstract }
+	}
+
+	/**
+	 * The methods that a virtual call to [ref] can execute, or null when they are not all known.
+	 */
+	fun getImplementations(ref: AstMethodRef): List<AstMethod>? = implementationsCache.getOrPut(ref) {
+		// Classes only referenced from code that is never executed can be removed by tree shaking
+		if (ref.containingClass !in program) return@getOrPut null
+		val clazz = program[ref.containingClass]
+		val declared = program[ref]
+		if (declared != null && !declared.containingClass.isInterface && !declared.modifiers.isAbstract) {
+			if (declared.modifiers.isPrivate || declared.modifiers.isFinal || clazz.modifiers.isFinal) return@getOrPut listOf(declared)
+		}
+		if (isOpen(clazz)) return@getOrPut null
+		val methods = getConcreteClasses(clazz).map {
+			// Default methods are not found here, so calls that could reach them are not resolved
+			val method = it.getMethodInAncestors(ref.withoutClass) ?: return@getOrPut null
+			if (method.isStatic || method.modifiers.isAbstract) return@getOrPut null
+			method
+		}
+		methods.distinct()
+	}
+
+	fun getSingleImplementation(ref: AstMethodRef): AstMethod? = getImplementations(ref)?.singleOrNull()
+}
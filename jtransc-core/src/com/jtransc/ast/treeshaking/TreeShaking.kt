@@ -13,6 +13,15 @@ class ClassTree(val program: AstProgram) {
 
 	fun getChildren(clazz: AstClass): ArrayList<AstClass> = childrenList.getOrPut(clazz) { arrayListOf() }
 	fun getDescendants(clazz: AstClass): List<AstClass> = getChildren(clazz) + getChildren(clazz).flatMap { getChildren(it) }
+	fun getAllDescendants(clazz: AstClass): Set<AstClass> {
+		val out = LinkedHashSet<AstClass>()
+		val queue = ArrayDeque<AstClass>(getChildren(clazz))
+		while (queue.isNotEmpty()) {
+			val child = queue.removeFirst()
+			if (out.add(child)) queue += getChildren(child)
+		}
+		return out
+	}
 
 	fun add(clazz: AstClass) {
 		if (clazz.extending != null) getChildren(program[clazz.extending]) += clazz
@@ -27,42 +36,128 @@ class ClassTree(val program: AstProgram) {
 	}
 }
 
-fun TreeShaking(program: AstProgram, target: String, trace: Boolean): AstProgram {
+// Tables of a class of the original program, indexed by its dense id
+private class ShakingClass(val id: Int, val old: AstClass) {
+	var newclazz: AstClass? = null
+	// Children in the shaked program
+	val children = arrayListOf<ShakingClass>()
+	// Ancestors followed by all their interfaces
+	var hierarchy: List<ShakingClass>? = null
+	val instantiatedSubtypes = arrayListOf<AstClass>()
+	val keptVirtualMethods = arrayListOf<AstMethodWithoutClassRef>()
+}
+
+private val REFLECT_CONSTRUCTOR = FqName("java.lang.reflect.Constructor")
+
+fun TreeShaking(program: AstProgram, target: String, trace: Boolean, rta: Boolean = false): AstProgram {
 	val SHAKING_TRACE = trace
 
 	val main = program[program.entrypoint].getMethodSure("main", AstTypeBuild { METHOD(VOID, ARRAY(STRING)) }.desc)
 
 	class TreeShakingClass(val oldprogram: AstProgram, val target: String) {
 		val newprogram = AstProgram(program.configResourcesVfs, program.configEntrypoint, program.types)
-		val processed = hashSetOf<Any>()
-		val newclasses = hashMapOf<FqName, AstClass>()
-		val classtree = ClassTree(newprogram)
+
+		val classIds = hashMapOf<FqName, Int>()
+		val classes = arrayListOf<ShakingClass>()
+		val methodIds = hashMapOf<AstMethodRef, Int>()
+		val fieldIds = hashMapOf<AstFieldRef, Int>()
+		val initializedClasses = BitSet()
+		val instantiatedClasses = BitSet()
+		val processedMethods = BitSet()
+		val processedFields = BitSet()
+		// Classes with a kept constructor, instantiated through reflection once Constructor.newInstance is kept
+		val constructedClasses = arrayListOf<FqName>()
+		var reflectiveInstantiation = false
+
+		fun classOf(fqname: FqName): ShakingClass {
+			val id = classIds[fqname]
+			if (id != null) return classes[id]
+			val info = ShakingClass(classes.size, oldprogram[fqname])
+			classIds[fqname] = info.id
+			classes += info
+			return info
+		}
+
+		fun hierarchyOf(info: ShakingClass): List<ShakingClass> {
+			if (info.hierarchy == null) {
+				info.hierarchy = (info.old.ancestors + info.old.allInterfacesInAncestors).map { classOf(it.name) }
+			}
+			return info.hierarchy!!
+		}
+
+		// Same order as the previous ClassTree.getDescendants: children and then the children of each child
+		fun descendantsOf(info: ShakingClass): List<ShakingClass> {
+			val out = ArrayList<ShakingClass>(info.children)
+			for (child in info.children) out += child.children
+			return out
+		}
+
+		// Explicit call stack, so long dependency chains don't need a deep thread stack. A frame runs its steps in order
+		// and the calls queued by a step run to completion before the next one, so items are visited in the same
+		// order a recursive traversal would visit them.
+		val stack = arrayListOf<ArrayDeque<() -> Unit>>()
+		val calls = arrayListOf<ArrayDeque<() -> Unit>>()
+		var frame = ArrayDeque<() -> Unit>()
+
+		fun call(steps: List<() -> Unit>) {
+			calls += ArrayDeque(steps)
+		}
+
+		fun call(vararg steps: () -> Unit): Unit = call(steps.asList())
+
+		// Skips the remaining steps of the running frame
+		fun ret(): Unit = frame.clear()
+
+		fun run() {
+			while (true) {
+				for (n in calls.size - 1 downTo 0) stack += calls[n]
+				calls.clear()
+				if (stack.isEmpty()) break
+				frame = stack[stack.size - 1]
+				val step = frame.pollFirst()
+				if (step == null) {
+					stack.removeAt(stack.size - 1)
+				} else {
+					step()
+				}
+			}
+		}
 
 		fun addTemplateReferences(template: String, templateReason: String) {
+			val steps = arrayListOf<() -> Unit>()
 			for (ref in GetTemplateReferences(oldprogram, template)) {
-				if (SHAKING_TRACE) println("TEMPLATEREF: $ref")
-				when (ref) {
-					is CommonTagHandler.CLASS -> addBasicClass(ref.clazz.name, reason = "template $templateReason")
-					is CommonTagHandler.SINIT -> addBasicClass(ref.method.containingClass.name, reason = "template $templateReason")
-					is CommonTagHandler.CONSTRUCTOR -> addMethod(ref.method.ref, reason = "template $templateReason")
-					is CommonTagHandler.FIELD -> addField(ref.field.ref, reason = "template $templateReason")
-					is CommonTagHandler.METHOD -> addMethod(ref.method.ref, reason = "template $templateReason")
+				steps.add {
+					if (SHAKING_TRACE) println("TEMPLATEREF: $ref")
+					when (ref) {
+						is CommonTagHandler.CLASS -> {
+							addBasicClass(ref.clazz.name, reason = "template $templateReason")
+							addInstantiatedClass(ref.clazz.name, reason = "template $templateReason")
+						}
+						is CommonTagHandler.SINIT -> addBasicClass(ref.method.containingClass.name, reason = "template $templateReason")
+						is CommonTagHandler.CONSTRUCTOR -> {
+							addMethod(ref.method.ref, reason = "template $templateReason")
+							addInstantiatedClass(ref.method.containingClass.name, reason = "template $templateReason")
+						}
+						is CommonTagHandler.FIELD -> addField(ref.field.ref, reason = "template $templateReason")
+						is CommonTagHandler.METHOD -> addMethod(ref.method.ref, reason = "template $templateReason")
+					}
 				}
 			}
+			call(steps)
 		}
 
 		fun addFullClass(fqname: FqName, reason: Any? = null) {
 			val oldclazz = program[fqname]
-			//val newclazz = addBasicClass(fqname)
 			for (method in oldclazz.methods) addMethod(method.ref, reason = "fullclass $fqname")
 			for (field in oldclazz.fields) addField(field.ref, reason = "fullclass $fqname")
 		}
 
 		private fun _addMiniBasicClass(fqname: FqName, reason: Any? = null): AstClass {
-			if (fqname !in newclasses) {
+			val info = classOf(fqname)
+			if (info.newclazz == null) {
 				if (SHAKING_TRACE) println("_addMiniBasicClass: $fqname. Reason: $reason")
 
-				val oldclazz = program[fqname]
+				val oldclazz = info.old
 				val newclazz = AstClass(
 					source = oldclazz.source,
 					program = newprogram,
@@ -73,86 +168,90 @@ fun TreeShaking(program: AstProgram, target: String, trace: Boolean): AstProgram
 					annotations = oldclazz.annotations
 				)
 
-				newclasses[fqname] = newclazz
+				info.newclazz = newclazz
 
 				newprogram.add(newclazz)
 
 				for (impl in oldclazz.implementing) _addMiniBasicClass(impl, reason = "implementing $fqname")
-				if (oldclazz.extending != null) _addMiniBasicClass(oldclazz.extending, reason = "extending $fqname") else null
+				if (oldclazz.extending != null) _addMiniBasicClass(oldclazz.extending, reason = "extending $fqname")
 
-				classtree.add(newclazz)
+				for (parent in listOf(oldclazz.extending).filterNotNull() + oldclazz.implementing) classOf(parent).children += info
 			}
-			return newclasses[fqname]!!
+			return info.newclazz!!
 		}
 
-		val initializedClasses = hashSetOf<FqName>()
-
-		fun addBasicClass(fqname: FqName, reason: String): AstClass {
-			if (fqname !in initializedClasses) {
-				initializedClasses += fqname
-				if (SHAKING_TRACE) println("addBasicClass: $fqname. Reason: $reason")
-
-				val oldclazz = program[fqname]
-				val newclazz = _addMiniBasicClass(fqname)
-
-				for (impl in oldclazz.implementing) addBasicClass(impl, reason = "implementing $fqname")
-				if (oldclazz.extending != null) addBasicClass(oldclazz.extending, reason = "extending $fqname") else null
-
-				if (oldclazz.annotationsList.contains<JTranscKeep>()) {
-					addFullClass(fqname, reason = "$fqname+@JTranscKeep")
-				}
-
-				for (field in oldclazz.fields) {
-					if (field.annotationsList.contains<JTranscKeep>()) addField(field.ref, reason = "<field>@JTranscKeep")
-				}
+		fun addBasicClass(fqname: FqName, reason: String): Unit = call({
+			val info = classOf(fqname)
+			if (initializedClasses[info.id]) return@call ret()
+			initializedClasses.set(info.id)
+			if (SHAKING_TRACE) println("addBasicClass: $fqname. Reason: $reason")
+
+			val oldclazz = info.old
+			_addMiniBasicClass(fqname)
+
+			for (impl in oldclazz.implementing) addBasicClass(impl, reason = "implementing $fqname")
+			if (oldclazz.extending != null) addBasicClass(oldclazz.extending, reason = "extending $fqname")
+		}, {
+			val info = classOf(fqname)
+			val oldclazz = info.old
+			val newclazz = info.newclazz!!
+
+			if (oldclazz.annotationsList.contains<JTranscKeep>()) {
+				addFullClass(fqname, reason = "$fqname+@JTranscKeep")
+				addInstantiatedClass(fqname, reason = "$fqname+@JTranscKeep")
+			}
 
-				for (method in oldclazz.methods) {
-					if (method.annotationsList.contains<JTranscKeep>()) addMethod(method.ref, reason = "<method>@JTranscKeep")
-				}
+			for (field in oldclazz.fields) {
+				if (field.annotationsList.contains<JTranscKeep>()) addField(field.ref, reason = "<field>@JTranscKeep")
+			}
 
-				// Add static constructors
-				for (method in oldclazz.methods.filter { it.isClassInit }) {
-					addMethod(method.ref, reason = "static constructor <clinit> fqname")
+			for (method in oldclazz.methods) {
+				if (method.annotationsList.contains<JTranscKeep>()) {
+					addMethod(method.ref, reason = "<method>@JTranscKeep")
+					if (method.isInstanceInit) addInstantiatedClass(fqname, reason = "<init>@JTranscKeep")
 				}
+			}
 
-				addAnnotations(newclazz.annotationsList, reason = "class $fqname")
+			// Add static constructors
+			for (method in oldclazz.methods.filter { it.isClassInit }) {
+				addMethod(method.ref, reason = "static constructor <clinit> fqname")
+			}
 
-				//if (newclazz.fqname == "java.lang.Object") {
-				//	invalidOp
-				//}
+			addAnnotations(newclazz.annotationsList, reason = "class $fqname")
 
-				JTranscAddFileList::class.java
+			JTranscAddFileList::class.java
 
-				//for (file in newclazz.annotationsList.getAllTyped<JTranscAddFile>()) {
-				for (file in newclazz.annotationsList.getTypedList(JTranscAddFileList::value)) {
-					if (file.process && file.target == target) {
-						val possibleFiles = listOf(file.prepend, file.append, file.prependAppend)
-						for (pf in possibleFiles.filter { !it.isNullOrEmpty() }) {
-							val filecontent = program.resourcesVfs[pf].readString()
-							addTemplateReferences(filecontent, templateReason = "JTranscAddFileList: $pf")
-						}
+			for (file in newclazz.annotationsList.getTypedList(JTranscAddFileList::value)) {
+				if (file.process && file.target == target) {
+					val possibleFiles = listOf(file.prepend, file.append, file.prependAppend)
+					for (pf in possibleFiles.filter { !it.isNullOrEmpty() }) {
+						val filecontent = program.resourcesVfs[pf].readString()
+						addTemplateReferences(filecontent, templateReason = "JTranscAddFileList: $pf")
 					}
 				}
-
-				checkTreeNewClass(newclazz)
 			}
-			return newclasses[fqname]!!
-		}
+		}, {
+			checkTreeNewClass(classOf(fqname))
+		})
 
-		fun addField(fieldRef: AstFieldRef, reason: String) {
-			if (fieldRef in processed) return
+		fun addField(fieldRef: AstFieldRef, reason: String): Unit = call({
+			val id = fieldIds.getOrPut(fieldRef) { fieldIds.size }
+			if (processedFields[id]) return@call ret()
 			if (SHAKING_TRACE) println("addField: $fieldRef. Reason: $reason")
-			processed += fieldRef
+			processedFields.set(id)
 			val oldfield = oldprogram[fieldRef]
-			val oldfieldRef = oldfield.ref
-			val oldfield2 = oldfield.containingClass[oldfieldRef.withoutClass]
+			val oldfield2 = oldfield.containingClass[oldfield.ref.withoutClass]
 
 			addBasicClass(fieldRef.containingClass, reason = "field $fieldRef")
-			val newclazz = addBasicClass(oldfield2.containingClass.name, reason = "field $fieldRef")
+			addBasicClass(oldfield2.containingClass.name, reason = "field $fieldRef")
+		}, {
+			val oldfield = oldprogram[fieldRef]
+			val oldfield2 = oldfield.containingClass[oldfield.ref.withoutClass]
+			val newclazz = classOf(oldfield2.containingClass.name).newclazz!!
 
 			if (oldfield2.refWithoutClass in newclazz.fieldsByInfo) {
 				// Already added
-				return
+				return@call ret()
 			}
 
 			val newfield = AstField(
@@ -174,7 +273,7 @@ fun TreeShaking(program: AstProgram, target: String, trace: Boolean): AstProgram
 			for (type in newfield.type.getRefTypesFqName()) {
 				addBasicClass(type, reason = "field $fieldRef")
 			}
-		}
+		})
 
 		fun addAnnotations(annotations: AstAnnotationList, reason: String) {
 			for (annotation in annotations.list) {
@@ -185,93 +284,152 @@ fun TreeShaking(program: AstProgram, target: String, trace: Boolean): AstProgram
 		}
 
 		fun addMethod(methodRef: AstMethodRef, reason: String) {
-			if (methodRef in processed) return
-			if (SHAKING_TRACE) println("methodRef: $methodRef. Reason: $reason")
-			processed += methodRef
-			val oldmethod = program[methodRef]!!
-			val oldclazz = program[methodRef]!!.containingClass
-			val newclazz = addBasicClass(methodRef.containingClass, reason)
-			val newmethod = AstMethod(
-				containingClass = newclazz,
-				id = oldmethod.id,
-				name = oldmethod.name,
-				methodType = oldmethod.methodType,
-				annotations = oldmethod.annotations,
-				signature = oldmethod.signature,
-				genericSignature = oldmethod.genericSignature,
-				defaultTag = oldmethod.defaultTag,
-				modifiers = oldmethod.modifiers,
-				generateBody = oldmethod.generateBody,
-				bodyRef = oldmethod.bodyRef,
-				parameterAnnotations = oldmethod.parameterAnnotations,
-				types = newprogram.types
-			)
-			//println("    -> ${oldmethod.dependencies.classes}")
-
-			//if (methodRef.name == "testStaticTest1") println(methodRef)
+			var newmethod: AstMethod? = null
+			call({
+				val id = methodIds.getOrPut(methodRef) { methodIds.size }
+				if (processedMethods[id]) return@call ret()
+				if (SHAKING_TRACE) println("methodRef: $methodRef. Reason: $reason")
+				processedMethods.set(id)
+				program[methodRef]!!
+				addBasicClass(methodRef.containingClass, reason)
+			}, {
+				val oldmethod = program[methodRef]!!
+				val newclazz = classOf(methodRef.containingClass).newclazz!!
+				val method = AstMethod(
+					containingClass = newclazz,
+					id = oldmethod.id,
+					name = oldmethod.name,
+					methodType = oldmethod.methodType,
+					annotations = oldmethod.annotations,
+					signature = oldmethod.signature,
+					genericSignature = oldmethod.genericSignature,
+					defaultTag = oldmethod.defaultTag,
+					modifiers = oldmethod.modifiers,
+					generateBody = oldmethod.generateBody,
+					bodyRef = oldmethod.bodyRef,
+					parameterAnnotations = oldmethod.parameterAnnotations,
+					types = newprogram.types
+				)
+				newmethod = method
 
-			newclazz.add(newmethod)
+				newclazz.add(method)
 
-			for (ref in methodRef.type.getRefTypesFqName()) addBasicClass(ref, reason = "$methodRef")
+				for (ref in methodRef.type.getRefTypesFqName()) addBasicClass(ref, reason = "$methodRef")
 
-			var dependenciesInBody = true
+				var dependenciesInBody = true
 
-			JTranscMethodBodyList::class.java // @HACK intelliJ remove JTranscMethodBodyList with just JTranscMethodBodyList::value
+				JTranscMethodBodyList::class.java // @HACK intelliJ remove JTranscMethodBodyList with just JTranscMethodBodyList::value
 
-			for (methodBody in newmethod.annotationsList.getTypedList(JTranscMethodBodyList::value)) {
-				if (methodBody.target == target) {
-					addTemplateReferences(methodBody.value.joinToString("\n"), "methodBody=$newmethod")
-					if (methodBody.cond.isNullOrEmpty()) {
-						dependenciesInBody = false
+				for (methodBody in method.annotationsList.getTypedList(JTranscMethodBodyList::value)) {
+					if (methodBody.target == target) {
+						addTemplateReferences(methodBody.value.joinToString("\n"), "methodBody=$method")
+						if (methodBody.cond.isNullOrEmpty()) {
+							dependenciesInBody = false
+						}
 					}
 				}
-			}
 
-			if (dependenciesInBody) {
-				for (dep in oldmethod.bodyDependencies.classes) addBasicClass(dep.name, reason = "dependenciesInBody $methodRef")
-				for (dep in oldmethod.bodyDependencies.fields) addField(dep, reason = "dependenciesInBody $methodRef")
-				for (dep in oldmethod.bodyDependencies.methods) addMethod(dep, reason = "dependenciesInBody $methodRef")
-			}
+				if (dependenciesInBody) {
+					for (dep in oldmethod.bodyDependencies.classes) addBasicClass(dep.name, reason = "dependenciesInBody $methodRef")
+					for (dep in oldmethod.bodyDependencies.fields) addField(dep, reason = "dependenciesInBody $methodRef")
+					for (dep in oldmethod.bodyDependencies.methods) addMethod(dep, reason = "dependenciesInBody $methodRef")
+					for (dep in oldmethod.bodyDependencies.instantiated) addInstantiatedClass(dep, reason = "dependenciesInBody $methodRef")
+				}
 
-			addAnnotations(newmethod.annotationsList, reason = "method $methodRef")
-			for (paramAnnotation in newmethod.parameterAnnotations) {
-				addAnnotations(AstAnnotationList(paramAnnotation), reason = "method $methodRef")
-			}
+				addAnnotations(method.annotationsList, reason = "method $methodRef")
+				for (paramAnnotation in method.parameterAnnotations) {
+					addAnnotations(AstAnnotationList(paramAnnotation), reason = "method $methodRef")
+				}
+			}, {
+				val oldmethod = program[methodRef]!!
+				if (rta && !oldmethod.isStatic && !oldmethod.isClassOrInstanceInit) {
+					val nameDesc = methodRef.withoutClass
+					val info = classOf(methodRef.containingClass)
+					info.keptVirtualMethods += nameDesc
+					for (clazz in info.instantiatedSubtypes.toList()) addVirtualTarget(clazz, nameDesc)
+				}
+				if (rta && oldmethod.isInstanceInit) {
+					val clazz = oldmethod.containingClass
+					if (!clazz.isAbstract && !clazz.isInterface) {
+						constructedClasses += clazz.name
+						if (reflectiveInstantiation) addInstantiatedClass(clazz.name, reason = "reflection $methodRef")
+					}
+				}
+				if (rta && !reflectiveInstantiation && methodRef.containingClass == REFLECT_CONSTRUCTOR && methodRef.name == "newInstance") {
+					reflectiveInstantiation = true
+					for (fqname in constructedClasses.toList()) addInstantiatedClass(fqname, reason = "reflection $methodRef")
+				}
+			}, {
+				checkTreeNewMethod(newmethod!!)
+			})
+		}
 
-			checkTreeNewMethod(newmethod)
+		// Rapid type analysis: a kept virtual method is only propagated to the classes instantiated by the program
+		// (allocated in a kept body, referenced from a template, kept with @JTranscKeep or with a kept constructor
+		// when the program instantiates classes through reflection) that inherit it
+		fun addInstantiatedClass(fqname: FqName, reason: String): Unit = call({
+			val info = classOf(fqname)
+			if (!rta || instantiatedClasses[info.id]) return@call ret()
+			instantiatedClasses.set(info.id)
+			if (SHAKING_TRACE) println("addInstantiatedClass: $fqname. Reason: $reason")
+			addBasicClass(fqname, reason)
+		}, {
+			val info = classOf(fqname)
+			val types = listOf(info) + hierarchyOf(info)
+			for (type in types) type.instantiatedSubtypes += info.old
+			call(types.map { type ->
+				{ for (nameDesc in type.keptVirtualMethods.toList()) addVirtualTarget(info.old, nameDesc) }
+			})
+		})
+
+		// Adds the implementation a call to nameDesc dispatches to on instances of clazz
+		private fun addVirtualTarget(clazz: AstClass, nameDesc: AstMethodWithoutClassRef) {
+			val method = clazz.getMethodInAncestors(nameDesc)
+			if (method != null) {
+				addMethod(method.ref, "rta ${clazz.name}")
+			} else {
+				// Default methods
+				for (iface in clazz.allInterfacesInAncestors) {
+					val imethod = iface.getMethod(nameDesc)
+					if (imethod != null) addMethod(imethod.ref, "rta ${clazz.name}")
+				}
+			}
 		}
 
 		// This should propagate methods to ancestors and descendants
 		// @TODO: We should really include ancestors? Even when they are not referenced? For now, let's play it safe.
-		private fun checkTreeNewClass(newclazz: AstClass) {
+		private fun checkTreeNewClass(info: ShakingClass) {
+			// Overrides are added when the class is instantiated
+			if (rta) return
+
 			// ancestors are known (descendants may not have been built completely)
-			val relatedClasses = listOf(newclazz) + newclazz.ancestors + newclazz.allInterfacesInAncestors + classtree.getDescendants(newclazz)
+			val relatedClasses = listOf(info) + hierarchyOf(info) + descendantsOf(info)
 
-			val methodRefs = arrayListOf<AstMethodWithoutClassRef>()
+			val methodRefs = LinkedHashSet<AstMethodWithoutClassRef>()
 
 			for (relatedClass in relatedClasses) {
-				for (newmethod in relatedClass.methods) {
+				for (newmethod in relatedClass.newclazz!!.methods) {
 					if (!newmethod.isClassOrInstanceInit) methodRefs += newmethod.ref.nameDesc
 				}
 			}
 
 			for (relatedClass in relatedClasses) {
 				for (mref in methodRefs) {
-					val rmethod = oldprogram[relatedClass.name].getMethod(mref)
-					if (rmethod != null) addMethod(rmethod.ref, "checkTreeNewClass $newclazz")
+					val rmethod = relatedClass.old.getMethod(mref)
+					if (rmethod != null) addMethod(rmethod.ref, "checkTreeNewClass ${info.newclazz}")
 				}
 			}
 		}
 
 		//
 		private fun checkTreeNewMethod(newmethod: AstMethod) {
-			val newclazz = newmethod.containingClass
-			val relatedClasses = listOf(newclazz) + newclazz.ancestors + newclazz.allInterfacesInAncestors + classtree.getDescendants(newclazz)
-			//val relatedClasses = newclazz.ancestors + classtree.getDescendants(newclazz)
+			val info = classOf(newmethod.containingClass.name)
 			// ancestors are known (descendants may not have been built completely)
+			val descendants = if (rta) listOf() else descendantsOf(info)
+			val relatedClasses = listOf(info) + hierarchyOf(info) + descendants
 
 			for (relatedClass in relatedClasses) {
-				val rmethod = oldprogram[relatedClass.name].getMethod(newmethod.name, newmethod.desc)
+				val rmethod = relatedClass.old.getMethod(newmethod.name, newmethod.desc)
 				if (rmethod != null) addMethod(rmethod.ref, "checkTreeNewMethod $newmethod")
 			}
 		}
@@ -290,5 +448,7 @@ fun TreeShaking(program: AstProgram, target: String, trace: Boolean): AstProgram
 		}
 	}
 
+	shaking.run()
+
 	return shaking.newprogram;
-}
\ No newline at end of file
+}
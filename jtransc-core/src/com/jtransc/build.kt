@@ -17,6 +17,15 @@
 package com.jtransc
 
 import com.jtransc.ast.*
+import com.jtransc.ast.incremental.ConfigIncremental
+import com.jtransc.ast.incremental.IncrementalBuild
+import com.jtransc.ast.optimize.AstDevirtualizer
+import com.jtransc.ast.optimize.AstInliner
+import com.jtransc.ast.optimize.AstScalarReplacement
+import com.jtransc.ast.optimize.ConfigDevirtualization
+import com.jtransc.ast.optimize.ConfigEscapeAnalysis
+import com.jtransc.ast.optimize.ConfigInlining
+import com.jtransc.ast.serialization.AstCache
 import com.jtransc.ast.treeshaking.TreeShaking
 import com.jtransc.error.InvalidOperationException
 import com.jtransc.error.invalidOp
@@ -24,12 +33,14 @@ import com.jtransc.gen.GenTargetDescriptor
 import com.jtransc.gen.GenTargetSubDescriptor
 import com.jtransc.injector.Injector
 import com.jtransc.input.AsmToAst
+import com.jtransc.input.AsmToAstPrefetcher
 import com.jtransc.io.ProcessResult2
 import com.jtransc.log.log
 import com.jtransc.maven.MavenLocalRepository
 import com.jtransc.time.measureProcess
 import com.jtransc.time.measureTime
 import com.jtransc.vfs.LocalVfs
+import com.jtransc.vfs.LocalVfsEnsureDirs
 import com.jtransc.vfs.MergedLocalAndJars
 import com.jtransc.vfs.SyncVfsFile
 import java.io.File
@@ -53,6 +64,8 @@ data class ConfigEntryPoint(val entrypoint: FqName)
 data class ConfigMainClass(val mainClass: String)
 data class ConfigInitialClasses(val initialClasses: List<String>)
 data class ConfigResourcesVfs(val resourcesVfs: SyncVfsFile)
+// Threads used to load classes while generating the AST, 1 loads them serially
+data class ConfigThreads(val threads: Int = Runtime.getRuntime().availableProcessors())
 
 data class ConfigOutputFile(val output: String) {
 	val outputFileBaseName by lazy { File(output).name }
@@ -81,7 +94,10 @@ class JTranscBuild(
 
 	class Result(val process: ProcessResult2)
 
-	private fun _buildAndRun(captureRunOutput: Boolean = true, run: Boolean = false): Result {
+	/**
+	 * Maps the settings of the build and generates the AST of the classes reachable from the entry point, before tree shaking.
+	 */
+	fun generateBaseProgram(captureRunOutput: Boolean = false, run: Boolean = false): AstProgram {
 		val classPaths2 = (settings.rtAndRtCore + target.extraLibraries.flatMap { MavenLocalRepository.locateJars(it) } + configClassPaths.classPaths).distinct()
 
 		log("AllBuild.build(): language=$target, subtarget=$subtarget, entryPoint=$entryPoint, output=$output, targetDirectory=$targetDirectory")
@@ -127,13 +143,17 @@ class JTranscBuild(
 			else -> invalidOp("Unsupported backend")
 		}
 
-		val programBase = measureProcess("Generating AST") {
+		return measureProcess("Generating AST") {
 			generateProgram()
 		}
+	}
+
+	private fun _buildAndRun(captureRunOutput: Boolean = true, run: Boolean = false): Result {
+		val programBase = generateBaseProgram(captureRunOutput, run)
 
 		val configTreeShaking = injector.get<ConfigTreeShaking>()
 		val program = if (configTreeShaking.treeShaking) {
-			TreeShaking(programBase, target.name, configTreeShaking.trace)
+			TreeShaking(programBase, target.name, configTreeShaking.trace, configTreeShaking.rta)
 		} else {
 			programBase
 		}
@@ -141,6 +161,46 @@ class JTranscBuild(
 		injector.mapInstance(program)
 		injector.mapInstance(program, AstResolver::class.java)
 
+		val configInlining = injector.get<ConfigInlining>(default = { ConfigInlining() })
+		val configEscapeAnalysis = injector.get<ConfigEscapeAnalysis>(default = { ConfigEscapeAnalysis() })
+		var incremental = false
+
+		if (injector.get<ConfigIncremental>(default = { ConfigIncremental() }).incremental) {
+			if (target.supportsIncremental) {
+				incremental = true
+				val minimizeNames = injector.get<ConfigMinimizeNames>(default = { ConfigMinimizeNames() }).minimizeNames
+				val settingsKey = listOf(JTranscVersion.getVersion(), target.name, subtarget, entryPoint, settings, minimizeNames, configTreeShaking, configInlining, configEscapeAnalysis).joinToString("|")
+				injector.mapInstance(measureProcess("Computing incremental changes") {
+					IncrementalBuild(program, LocalVfsEnsureDirs(File("$targetDirectory/jtransc-incremental/${target.name}")), settingsKey)
+				})
+			} else {
+				log("Target ${target.name} doesn't support incremental builds, generating everything")
+			}
+		}
+
+		// After computing the incremental changes, so they are based on the calls and not on the inlined code
+		if (configInlining.inlining) {
+			measureProcess("Inlining methods") {
+				AstInliner(program, configInlining, devirtualize = !incremental).inline()
+			}
+		}
+
+		if (injector.get<ConfigDevirtualization>(default = { ConfigDevirtualization() }).devirtualize) {
+			if (incremental) {
+				log("Devirtualization is not available in incremental builds")
+			} else {
+				measureProcess("Devirtualizing calls") {
+					AstDevirtualizer(program).devirtualize()
+				}
+			}
+		}
+
+		if (configEscapeAnalysis.escapeAnalysis) {
+			measureProcess("Replacing non escaping allocations") {
+				AstScalarReplacement(program, configEscapeAnalysis).replace()
+			}
+		}
+
 		//val programDced = measureProcess("Simplifying AST") { SimpleDCE(program, programDependencies) }
 		return target.build(injector)
 	}
@@ -163,27 +223,44 @@ class JTranscBuild(
 		)
 		val program = injector.get<AstProgram>()
 
+		val threads = injector.get<ConfigThreads>(default = { ConfigThreads() }).threads
+		val prefetcher = if (threads > 1 && generator is AsmToAst) AsmToAstPrefetcher(generator, program, threads) else null
+
 		// Preprocesses classes
 		classNames.forEach { program.addReference(AstType.REF(it), AstType.REF(it)) }
+		classNames.forEach { prefetcher?.prefetch(AstType.REF(it)) }
 
-		log("Processing classes...")
+		log("Processing classes... (threads: ${if (prefetcher != null) threads else 1})")
 
 		val (elapsed) = measureTime {
-			while (program.hasClassToGenerate()) {
-				val className = program.readClassToGenerate()
+			try {
+				while (program.hasClassToGenerate()) {
+					val className = program.readClassToGenerate()
 
-				val time = measureTime {
 					try {
-						val generatedClass = generator.generateClass(program, className.name)
-						for (ref in References.get(generatedClass)) program.addReference(ref, className)
+						// Classes are decoded ahead by the prefetcher, but registered here in discovery order
+						val decoded = prefetcher?.take(className)
+						val decodedClass = decoded?.clazz
+						if (decoded != null && decodedClass != null) {
+							program.add(decodedClass)
+							for (ref in decoded.references) program.addReference(ref, className)
+						} else {
+							val generatedClass = generator.generateClass(program, className.name)
+							for (ref in References.get(generatedClass)) program.addReference(ref, className)
+						}
 					}catch (e: InvalidOperationException) {
 						System.err.println("ERROR! : " + e.message)
 					}
 				}
-
-				//println("Ok(${time.time})");
+			} finally {
+				prefetcher?.shutdown()
 			}
 
+			// Before adding the dummy methods below
+			val cache = injector.get<AstCache>()
+			cache.flush()
+			if (cache.dir != null) log("AST cache: ${cache.hits} hits, ${cache.misses} misses (${cache.dir})")
+
 			// Reference default methods
 			for (clazz in program.classes) {
 				for (method in clazz.allDirectInterfaces.flatMap { it.methods }) {
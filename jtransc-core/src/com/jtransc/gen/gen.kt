@@ -60,6 +60,8 @@ abstract class GenTargetDescriptor {
 	abstract fun getProcessor(injector: Injector): GenTargetProcessor
 	open fun getTargetByExtension(ext: String): String? = null
 	abstract val runningAvailable: Boolean
+	// Whether the processor reuses code from previous builds when ConfigIncremental is enabled
+	open val supportsIncremental: Boolean = false
 
 	fun build(injector: Injector): JTranscBuild.Result {
 		val captureRunOutput = injector.get<ConfigCaptureRunOutput>().captureRunOutput
@@ -1,6 +1,7 @@
 package com.jtransc.input
 
 import com.jtransc.ast.*
+import com.jtransc.ast.serialization.AstCache
 import com.jtransc.ds.Concat
 import com.jtransc.ds.cast
 import com.jtransc.ds.createPairs
@@ -65,13 +66,26 @@ fun MethodNode.visibility() = if (this.access hasFlag Opcodes.ACC_PUBLIC) {
 fun MethodNode.astRef(clazz: AstType.REF, types:AstTypes) = AstMethodRef(clazz.name, this.name, types.demangleMethod(this.desc))
 
 @Singleton
-class AsmToAst(val types: AstTypes) : AstClassGenerator {
+class AsmToAst(val types: AstTypes, val cache: AstCache) : AstClassGenerator {
 	override fun generateClass(program: AstProgram, fqname: FqName): AstClass {
-		val cr = try {
-			ClassReader(program.getClassBytes(fqname))
+		val classBytes = try {
+			program.getClassBytes(fqname)
 		} catch (e: IOException) {
 			invalidOp("Can't find class $fqname")
 		}
+		val astClass = decodeClass(program, classBytes)
+		program.add(astClass)
+		return astClass
+	}
+
+	// Doesn't register the class in the program, so it is safe to call from several threads
+	fun decodeClass(program: AstProgram, classBytes: ByteArray): AstClass {
+		val bytecode = lazy { decodeBytecode(program, classBytes) }
+		return cache.getOrGenerate(program, classBytes, { bytecode.value }, { id -> bytecode.value.methods.first { it.id == id }.body })
+	}
+
+	private fun decodeBytecode(program: AstProgram, classBytes: ByteArray): AstClass {
+		val cr = ClassReader(classBytes)
 		val classNode = ClassNode()
 		cr.accept(classNode, ClassReader.SKIP_FRAMES)
 
@@ -89,8 +103,6 @@ class AsmToAst(val types: AstTypes) : AstClassGenerator {
 			extending = if (classNode.hasSuperclass() && !classNode.isInterface()) FqName.fromInternal(classNode.superName) else null,
 			implementing = classNode.getInterfaces().map { FqName.fromInternal(it) }
 		)
-		program.add(astClass)
-
 
 		classNode.getMethods().withIndex().forEach { astClass.add(generateMethod(astClass, it.value, it.index)) }
 		classNode.getFields().withIndex().forEach { astClass.add(generateField(astClass, it.value, it.index)) }
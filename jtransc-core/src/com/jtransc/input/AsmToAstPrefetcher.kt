@@ -0,0 +1,51 @@
+package com.jtransc.input
+
+import com.jtransc.ast.AstClass
+import com.jtransc.ast.AstProgram
+import com.jtransc.ast.AstType
+import com.jtransc.ast.References
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+
+/**
+ * Reads, decodes and scans classes for references on a work-stealing pool, following references
+ * as soon as they are discovered.
+ *
+ * Workers never modify the [AstProgram]. The caller registers classes and references in its own
+ * discovery order using [take], so the resulting program is the same as the one generated serially.
+ */
+class AsmToAstPrefetcher(val generator: AsmToAst, val program: AstProgram, threads: Int) {
+	class Decoded(val clazz: AstClass?, val references: List<AstType.REF>)
+
+	private val pool = ForkJoinPool(threads)
+	private val tasks = ConcurrentHashMap<AstType.REF, ForkJoinTask<Decoded>>()
+	private val taken = ForkJoinTask.adapt(Callable { Decoded(null, listOf()) })
+
+	fun prefetch(ref: AstType.REF) {
+		if (!tasks.containsKey(ref)) tasks.computeIfAbsent(ref) { pool.submit(Callable { decode(ref) }) }
+	}
+
+	// A null class means that decoding failed and the class should be generated serially to report the error
+	fun take(ref: AstType.REF): Decoded {
+		prefetch(ref)
+		// Keeps the key so the class is not decoded again, but releases the decoded result
+		return tasks.put(ref, taken)!!.join()
+	}
+
+	fun shutdown() {
+		pool.shutdownNow()
+	}
+
+	private fun decode(ref: AstType.REF): Decoded {
+		return try {
+			val clazz = generator.decodeClass(program, program.resourcesVfs[ref.name.internalFqname + ".class"].readBytes())
+			val references = References.get(clazz).toList()
+			for (reference in references) prefetch(reference)
+			Decoded(clazz, references)
+		} catch (e: Throwable) {
+			Decoded(null, listOf())
+		}
+	}
+}
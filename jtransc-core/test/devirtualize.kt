@@ -0,0 +1,60 @@
+import com.jtransc.ConfigEntryPoint
+import com.jtransc.ConfigResourcesVfs
+import com.jtransc.ast.*
+import com.jtransc.ast.optimize.AstDevirtualizer
+import com.jtransc.vfs.MemoryVfs
+import org.junit.Assert
+import org.junit.Test
+
+class DevirtualizeTest {
+	val types = AstTypes()
+	val program = AstProgram(ConfigResourcesVfs(MemoryVfs()), ConfigEntryPoint("Main".fqname), types)
+	val valueType = AstType.METHOD(AstType.INT, listOf())
+
+	init {
+		clazz("Base", null, AstModifiers.ACC_PUBLIC, "value" to 0, "fixed" to AstModifiers.ACC_FINAL)
+		clazz("Sub", "Base", AstModifiers.ACC_PUBLIC, "value" to 0)
+		clazz("Leaf", null, AstModifiers.ACC_PUBLIC, "value" to 0)
+		clazz("Sealed", null, AstModifiers.ACC_PUBLIC or AstModifiers.ACC_FINAL, "value" to 0)
+	}
+
+	@Test fun testEffectivelyFinal() {
+		// Leaf has no subclasses in the program
+		Assert.assertEquals(AstMethodRef("Leaf".fqname, "value", valueType), devirtualize("Leaf", "value"))
+	}
+
+	@Test fun testFinal() {
+		Assert.assertEquals(AstMethodRef("Sealed".fqname, "value", valueType), devirtualize("Sealed", "value"))
+		Assert.assertEquals(AstMethodRef("Base".fqname, "fixed", valueType), devirtualize("Base", "fixed"))
+	}
+
+	@Test fun testOverridden() {
+		// Sub overrides Base.value, so the call stays virtual
+		Assert.assertNull(devirtualize("Base", "value"))
+		Assert.assertEquals(AstMethodRef("Sub".fqname, "value", valueType), devirtualize("Sub", "value"))
+	}
+
+	// The method a call on a receiver of type [receiver] is bound to, or null when the call is still virtual
+	private fun devirtualize(receiver: String, name: String): AstMethodRef? {
+		val main = clazz("Main${program.classes.size}", null, AstModifiers.ACC_PUBLIC)
+		val call = AstExpr.CALL_INSTANCE(AstExpr.PARAM(AstArgument(0, AstType.REF(receiver))), AstMethodRef(receiver.fqname, name, valueType), listOf())
+		val body = AstBody(AstStm.STMS(AstStm.STM_EXPR(call), AstStm.RETURN_VOID()), listOf(), listOf(), AstBodyFlags(strictfp = true, types = types))
+		val type = AstType.METHOD(AstType.VOID, listOf(AstType.REF(receiver)))
+		main.add(AstMethod(main, 0, "test", type, listOf(), type.mangle(), null, null, AstModifiers.withFlags(AstModifiers.ACC_PUBLIC, AstModifiers.ACC_STATIC), { body }, types = types))
+
+		AstDevirtualizer(program).devirtualize()
+
+		val result = ((body.stm as AstStm.STMS).stms[0].value as AstStm.STM_EXPR).expr.value as AstExpr.CALL_INSTANCE
+		return if (result.isDirect) result.method else null
+	}
+
+	private fun clazz(name: String, extending: String?, flags: Int, vararg methods: Pair<String, Int>): AstClass {
+		val clazz = AstClass("$name.java", program, name.fqname, AstModifiers.withFlags(flags), extending?.fqname)
+		for ((id, method) in methods.withIndex()) {
+			val body = AstBody(AstStm.RETURN(AstExpr.LITERAL(id, types)), listOf(), listOf(), AstBodyFlags(strictfp = true, types = types))
+			clazz.add(AstMethod(clazz, id, method.first, valueType, listOf(), valueType.mangle(), null, null, AstModifiers.withFlags(AstModifiers.ACC_PUBLIC, method.second), { body }, types = types))
+		}
+		program.add(clazz)
+		return clazz
+	}
+}
@@ -0,0 +1,146 @@
+import com.jtransc.ConfigEntryPoint
+import com.jtransc.ConfigResourcesVfs
+import com.jtransc.ast.*
+import com.jtransc.ast.optimize.AstScalarReplacement
+import com.jtransc.types.dump
+import com.jtransc.vfs.MemoryVfs
+import org.junit.Assert
+import org.junit.Test
+
+class ScalarReplacementTest {
+	val types = AstTypes()
+	val program = AstProgram(ConfigResourcesVfs(MemoryVfs()), ConfigEntryPoint("Main".fqname), types)
+	val main = clazz("Main", AstModifiers.ACC_PUBLIC)
+	val vec = vectorClass("Vec", AstType.INT, listOf("x", "y"), staticInit = false)
+	val float32x4 = vectorClass("com.jtransc.simd.Float32x4", AstType.FLOAT, listOf("x", "y", "z", "w"), staticInit = true)
+	val use = method(main, "use", AstType.METHOD(AstType.VOID, listOf(vec.astType)), AstModifiers.ACC_NATIVE) { null }
+	val store = field(main, "store", vec.astType, AstModifiers.ACC_STATIC)
+
+	@Test fun testReplaced() {
+		val v = AstLocal(0, "v", vec.astType)
+		val body = replace(AstType.INT, listOf(v),
+			AstStmUtils.set(v, AstExpr.NEW(vec.astType)),
+			construct(vec, v, 1.lit, 2.lit),
+			AstStm.RETURN(add(AstType.INT, v.field(vec, "x"), v.field(vec, "y")))
+		)
+		Assert.assertEquals(listOf("int sI0;", "int sI1;", "NOP(scalar replacement)", "sI0 = 1;", "sI1 = 2;", "return (sI0 + sI1);"), body.dumpLines())
+	}
+
+	@Test fun testLoopCarried() {
+		// acc = new Vec(0, 0); for (i = 0; i < 10; i++) acc = new Vec(acc.x + i, acc.y + 1); return acc.x;
+		val acc = AstLocal(0, "acc", vec.astType)
+		val next = AstLocal(1, "next", vec.astType)
+		val i = AstLocal(2, "i", AstType.INT)
+		val loop = AstLabel("loop")
+		val end = AstLabel("end")
+		val body = replace(AstType.INT, listOf(acc, next, i),
+			AstStmUtils.set(acc, AstExpr.NEW(vec.astType)),
+			construct(vec, acc, 0.lit, 0.lit),
+			AstStmUtils.set(i, 0.lit),
+			AstStm.STM_LABEL(loop),
+			AstStm.IF_GOTO(end, AstExpr.BINOP(AstType.BOOL, AstExpr.LOCAL(i), AstBinop.GE, 10.lit)),
+			AstStmUtils.set(next, AstExpr.NEW(vec.astType)),
+			construct(vec, next, add(AstType.INT, acc.field(vec, "x"), AstExpr.LOCAL(i)), add(AstType.INT, acc.field(vec, "y"), 1.lit)),
+			AstStmUtils.set(acc, AstExpr.LOCAL(next)),
+			AstStmUtils.set(i, add(AstType.INT, AstExpr.LOCAL(i), 1.lit)),
+			AstStm.GOTO(loop),
+			AstStm.STM_LABEL(end),
+			AstStm.RETURN(acc.field(vec, "x"))
+		)
+		val lines = body.dumpLines()
+		Assert.assertFalse(lines.toString(), lines.any { "new " in it || "acc" in it || "next" in it })
+		Assert.assertTrue(lines.toString(), "return sI0;" in lines)
+	}
+
+	@Test fun testEscapeThroughCall() {
+		val v = AstLocal(0, "v", vec.astType)
+		assertKept(AstStm.STM_EXPR(AstExpr.CALL_STATIC(main.astType, use.ref, listOf(AstExpr.LOCAL(v)))), AstStm.RETURN_VOID(), v = v)
+	}
+
+	@Test fun testEscapeThroughStore() {
+		val v = AstLocal(0, "v", vec.astType)
+		assertKept(AstStm.SET_FIELD_STATIC(store.ref, AstExpr.LOCAL(v)), AstStm.RETURN_VOID(), v = v)
+	}
+
+	@Test fun testEscapeThroughReturn() {
+		val v = AstLocal(0, "v", vec.astType)
+		assertKept(AstStm.RETURN(AstExpr.LOCAL(v)), v = v, ret = vec.astType)
+	}
+
+	@Test fun testFloat32x4Chain() {
+		// Float32x4.add(Float32x4.create(1, 2, 3, 4), ...) once inlined: its static initializer must still run
+		val a = AstLocal(0, "a", float32x4.astType)
+		val b = AstLocal(1, "b", float32x4.astType)
+		val lanes = listOf("x", "y", "z", "w")
+		val body = replace(AstType.FLOAT, listOf(a, b),
+			AstStmUtils.set(a, AstExpr.NEW(float32x4.astType)),
+			construct(float32x4, a, 1f.lit, 2f.lit, 3f.lit, 4f.lit),
+			AstStmUtils.set(b, AstExpr.NEW(float32x4.astType)),
+			construct(float32x4, b, *lanes.map { add(AstType.FLOAT, a.field(float32x4, it), a.field(float32x4, it)) }.toTypedArray()),
+			AstStm.RETURN(add(AstType.FLOAT, b.field(float32x4, "x"), b.field(float32x4, "w")))
+		)
+		val lines = body.dumpLines()
+		Assert.assertFalse(lines.toString(), lines.any { "new " in it })
+		Assert.assertEquals(AstExpr.LITERAL(float32x4.astType, types).exprDump(), lines.first { !it.startsWith("float ") })
+	}
+
+	private fun assertKept(vararg stms: AstStm, v: AstLocal, ret: AstType = AstType.VOID) {
+		val lines = replace(ret, listOf(v), AstStmUtils.set(v, AstExpr.NEW(vec.astType)), construct(vec, v, 1.lit, 2.lit), *stms).dumpLines()
+		Assert.assertTrue(lines.toString(), lines.any { "new " in it })
+	}
+
+	private fun replace(ret: AstType, locals: List<AstLocal>, vararg stms: AstStm): AstBody {
+		val body = AstBody(AstStm.STMS(stms.toList()), locals, listOf(), AstBodyFlags(strictfp = true, types = types))
+		method(main, "test${main.methods.size}", AstType.METHOD(ret, listOf()), AstModifiers.ACC_STATIC) { body }
+		AstScalarReplacement(program).replace()
+		return body
+	}
+
+	private fun construct(clazz: AstClass, local: AstLocal, vararg args: AstExpr): AstStm {
+		val constructor = clazz.methods.first { it.isInstanceInit }
+		return AstStm.STM_EXPR(AstExpr.CALL_INSTANCE(AstExpr.LOCAL(local), constructor.ref, args.toList(), isSpecial = true))
+	}
+
+	private fun vectorClass(name: String, type: AstType, lanes: List<String>, staticInit: Boolean): AstClass {
+		val clazz = clazz(name, AstModifiers.ACC_PUBLIC or AstModifiers.ACC_FINAL)
+		val fields = lanes.map { field(clazz, it, type, AstModifiers.ACC_FINAL) }
+		val self = AstExpr.THIS(clazz.name)
+		method(clazz, "<init>", AstType.METHOD(AstType.VOID, lanes.map { type }), 0) {
+			val sets = fields.withIndex().map { AstStm.SET_FIELD_INSTANCE(it.value.ref, self, AstExpr.PARAM(AstArgument(it.index, type))) }
+			AstBody(AstStm.STMS(sets + AstStm.RETURN_VOID()), listOf(), listOf(), AstBodyFlags(strictfp = true, types = types))
+		}
+		if (staticInit) method(clazz, "<clinit>", AstType.METHOD(AstType.VOID, listOf()), AstModifiers.ACC_STATIC) {
+			AstBody(AstStm.RETURN_VOID(), listOf(), listOf(), AstBodyFlags(strictfp = true, types = types))
+		}
+		return clazz
+	}
+
+	private fun clazz(name: String, flags: Int): AstClass {
+		val clazz = AstClass("$name.java", program, name.fqname, AstModifiers.withFlags(flags))
+		program.add(clazz)
+		return clazz
+	}
+
+	private fun field(clazz: AstClass, name: String, type: AstType, flags: Int): AstField {
+		val field = AstField(clazz.fields.size, clazz, name, type, AstModifiers.withFlags(AstModifiers.ACC_PUBLIC, flags), type.mangle(), listOf(), null, types = types)
+		clazz.add(field)
+		return field
+	}
+
+	private fun method(clazz: AstClass, name: String, type: AstType.METHOD, flags: Int, body: () -> AstBody?): AstMethod {
+		val method = AstMethod(clazz, clazz.methods.size, name, type, listOf(), type.mangle(), null, null, AstModifiers.withFlags(AstModifiers.ACC_PUBLIC, flags), body, types = types)
+		clazz.add(method)
+		return method
+	}
+
+	private fun AstLocal.field(clazz: AstClass, name: String) = AstExpr.FIELD_INSTANCE_ACCESS(clazz.fields.first { it.name == name }.ref, AstExpr.LOCAL(this))
+
+	private fun add(type: AstType, left: AstExpr, right: AstExpr) = AstExpr.BINOP(type, left, AstBinop.ADD, right)
+
+	private fun AstBody.dumpLines() = dump(this).toString().split('\n').map { it.trim() }.filter { it.isNotEmpty() && it != "{" && it != "}" }
+
+	private fun AstExpr.exprDump() = dump(this) + ";"
+
+	private val Int.lit: AstExpr get() = AstExpr.LITERAL(this, types)
+	private val Float.lit: AstExpr get() = AstExpr.LITERAL(this, types)
+}
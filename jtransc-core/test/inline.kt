@@ -0,0 +1,94 @@
+import com.jtransc.ConfigEntryPoint
+import com.jtransc.ConfigResourcesVfs
+import com.jtransc.ast.*
+import com.jtransc.ast.optimize.AstInliner
+import com.jtransc.ast.optimize.firstEffectDereferencesThis
+import com.jtransc.ast.optimize.isTrivial
+import com.jtransc.types.dump
+import com.jtransc.vfs.MemoryVfs
+import org.junit.Assert
+import org.junit.Test
+
+class InlineTest {
+	val types = AstTypes()
+	val clazz = "Test".fqname
+	val field = AstFieldRef(clazz, "field", AstType.INT)
+	val local = AstExpr.LOCAL(AstLocal(0, "test", AstType.INT))
+
+	@Test fun testTrivial() {
+		Assert.assertTrue(local.isTrivial())
+		Assert.assertTrue(AstExpr.CAST(AstExpr.THIS(clazz), AstType.OBJECT).isTrivial())
+		Assert.assertFalse(AstExpr.FIELD_INSTANCE_ACCESS(field, AstExpr.THIS(clazz)).isTrivial())
+	}
+
+	@Test fun testDereferencesThis() {
+		val thisField = AstExpr.FIELD_INSTANCE_ACCESS(field, AstExpr.THIS(clazz))
+		Assert.assertEquals(true, thisField.firstEffectDereferencesThis())
+		Assert.assertEquals(true, AstExpr.BINOP(AstType.INT, local, AstBinop.ADD, thisField).firstEffectDereferencesThis())
+		Assert.assertEquals(null, AstExpr.BINOP(AstType.INT, local, AstBinop.ADD, 1.lit).firstEffectDereferencesThis())
+		// Division by zero throws before this is dereferenced
+		Assert.assertEquals(false, AstExpr.BINOP(AstType.INT, AstExpr.BINOP(AstType.INT, 1.lit, AstBinop.DIV, local), AstBinop.ADD, thisField).firstEffectDereferencesThis())
+		Assert.assertEquals(false, AstExpr.BINOP(AstType.BOOL, AstExpr.BINOP(AstType.BOOL, local, AstBinop.EQ, 1.lit), AstBinop.BAND, AstExpr.BINOP(AstType.BOOL, thisField, AstBinop.EQ, 1.lit)).firstEffectDereferencesThis())
+		Assert.assertEquals(true, AstStm.SET_FIELD_INSTANCE(field, AstExpr.THIS(clazz), local).firstEffectDereferencesThis())
+		Assert.assertEquals(false, AstStm.SET_FIELD_STATIC(field, local).firstEffectDereferencesThis())
+	}
+
+	@Test fun testInlineTrivialArguments() {
+		val program = program()
+		val caller = program.method("caller", listOf(AstType.INT), AstType.INT) {
+			AstStm.RETURN(call(twice, AstExpr.PARAM(AstArgument(0, AstType.INT))))
+		}
+		AstInliner(program).inline()
+		Assert.assertEquals(listOf("return (p0 + p0);"), caller.dumpLines())
+	}
+
+	@Test fun testInlineArgumentWithSideEffects() {
+		val program = program()
+		val caller = program.method("caller", listOf(), AstType.INT) {
+			AstStm.RETURN(call(twice, call(effect)))
+		}
+		AstInliner(program).inline()
+		// effect() is evaluated once, before the inlined body, although twice uses its parameter two times
+		Assert.assertEquals(listOf("int iI0;", "iI0 = Test.effect();", "return (iI0 + iI0);"), caller.dumpLines())
+	}
+
+	@Test fun testInlineStatements() {
+		val program = program()
+		val caller = program.method("caller", listOf(), AstType.VOID) {
+			AstStm.STMS(AstStm.STM_EXPR(call(store, call(effect))), AstStm.RETURN_VOID())
+		}
+		AstInliner(program).inline()
+		Assert.assertEquals(listOf("int iI0;", "iI0 = Test.effect();", "Test.field = (iI0 + 1);", "return;"), caller.dumpLines())
+	}
+
+	private val twice = AstMethodRef(clazz, "twice", AstType.METHOD(AstType.INT, listOf(AstType.INT)))
+	private val store = AstMethodRef(clazz, "store", AstType.METHOD(AstType.VOID, listOf(AstType.INT)))
+	private val effect = AstMethodRef(clazz, "effect", AstType.METHOD(AstType.INT, listOf()))
+
+	private fun program(): AstProgram {
+		val program = AstProgram(ConfigResourcesVfs(MemoryVfs()), ConfigEntryPoint(clazz), types)
+		program.add(AstClass("Test.java", program, clazz, AstModifiers.withFlags(AstModifiers.ACC_PUBLIC)))
+		val p0 = { AstExpr.PARAM(AstArgument(0, AstType.INT)) }
+		program.method("twice", listOf(AstType.INT), AstType.INT) { AstStm.RETURN(AstExpr.BINOP(AstType.INT, p0(), AstBinop.ADD, p0())) }
+		program.method("store", listOf(AstType.INT), AstType.VOID) {
+			AstStm.STMS(AstStm.SET_FIELD_STATIC(AstFieldRef(clazz, "field", AstType.INT), AstExpr.BINOP(AstType.INT, p0(), AstBinop.ADD, 1.lit)), AstStm.RETURN_VOID())
+		}
+		program.method("effect", listOf(), AstType.INT, AstModifiers.ACC_NATIVE) { null }
+		return program
+	}
+
+	private fun AstProgram.method(name: String, args: List<AstType>, ret: AstType, extraFlags: Int = 0, stm: () -> AstStm?): AstMethod {
+		val clazz = this[this@InlineTest.clazz]
+		val type = AstType.METHOD(ret, args)
+		val body = lazy { stm()?.let { AstBody(it, listOf(), listOf(), AstBodyFlags(strictfp = true, types = types)) } }
+		val method = AstMethod(clazz, clazz.methods.size, name, type, listOf(), type.mangle(), null, null, AstModifiers.withFlags(AstModifiers.ACC_PUBLIC, AstModifiers.ACC_STATIC, extraFlags), { body.value }, types = types)
+		clazz.add(method)
+		return method
+	}
+
+	private fun call(method: AstMethodRef, vararg args: AstExpr) = AstExpr.CALL_STATIC(AstType.REF(clazz), method, args.toList())
+
+	private fun AstMethod.dumpLines() = dump(body!!).toString().split('\n').map { it.trim() }.filter { it.isNotEmpty() && it != "{" && it != "}" }
+
+	private val Int.lit: AstExpr get() = AstExpr.LITERAL(this, types)
+}
@@ -0,0 +1,59 @@
+import com.jtransc.ConfigEntryPoint
+import com.jtransc.ConfigResourcesVfs
+import com.jtransc.ast.*
+import com.jtransc.ast.serialization.AstRead
+import com.jtransc.ast.serialization.AstWriter
+import com.jtransc.types.dump
+import com.jtransc.vfs.MemoryVfs
+import org.junit.Assert
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+
+class SerializationTest {
+	val types = AstTypes()
+	val flags = AstBodyFlags(strictfp = true, types = types)
+
+	private fun roundtrip(body: AstBody): AstBody {
+		val out = ByteArrayOutputStream()
+		AstWriter(out).apply { writeBody(body) }.flush()
+		return AstRead(types, ByteArrayInputStream(out.toByteArray())).readBody()
+	}
+
+	@Test fun testBody() {
+		val local = AstLocal(0, "a", AstType.LONG)
+		val label = AstLabel("label1")
+		val field = AstFieldRef("Class1".fqname, "array", AstType.ARRAY(AstType.INT))
+		val method = AstMethodRef("Class1".fqname, "test", AstType.METHOD(AstType.VOID, listOf(AstType.STRING, AstType.CHAR)))
+		val body = AstBody(AstStm.STMS(
+			AstStmUtils.set(local, AstExpr.LITERAL(0x123456789L, types)),
+			AstStm.STM_LABEL(label),
+			AstStm.SET_ARRAY(AstExpr.FIELD_STATIC_ACCESS(field), AstExpr.LITERAL(-7, types), AstExpr.ARRAY_LENGTH(AstExpr.FIELD_STATIC_ACCESS(field))),
+			AstStm.STM_EXPR(AstExpr.CALL_STATIC(AstType.REF("Class1"), method, listOf(AstExpr.LITERAL("\uD800hello", types), AstExpr.LITERAL('c', types)))),
+			AstStm.IF_GOTO(label, AstExpr.BINOP(AstType.BOOL, AstExprUtils.localRef(local), AstBinop.LT, AstExpr.LITERAL(10L, types))),
+			AstStm.RETURN(AstExpr.CAST(AstExprUtils.localRef(local), AstType.DOUBLE))
+		), listOf(local), listOf(), flags)
+
+		val read = roundtrip(body)
+		Assert.assertEquals(dump(body).toString(), dump(read).toString())
+		Assert.assertEquals(listOf(local), read.locals)
+		Assert.assertEquals(1, read.locals[0].writesCount)
+		Assert.assertEquals(2, read.locals[0].readCount)
+		Assert.assertTrue(read.flags.strictfp)
+	}
+
+	@Test fun testBodyNotGenerated() {
+		val program = AstProgram(ConfigResourcesVfs(MemoryVfs()), ConfigEntryPoint("Class1".fqname), types)
+		val clazz = AstClass("Class1.java", program, "Class1".fqname, AstModifiers.withFlags(AstModifiers.ACC_PUBLIC))
+		val body = AstBody(AstStm.RETURN_VOID(), listOf(), listOf(), flags)
+		var generated = 0
+		clazz.add(AstMethod(clazz, 0, "test", AstType.METHOD(AstType.VOID, listOf()), listOf(), "()V", null, null, AstModifiers.withFlags(AstModifiers.ACC_PUBLIC), { generated++; body }, types = types))
+
+		val out = ByteArrayOutputStream()
+		AstWriter(out).apply { writeClass(clazz) }.flush()
+		Assert.assertEquals(0, generated)
+
+		val read = AstRead(types, ByteArrayInputStream(out.toByteArray())).readClass(program) { id -> if (id == 0) body else null }
+		Assert.assertEquals(dump(body).toString(), dump(read.methods[0].body!!).toString())
+	}
+}
@@ -16,8 +16,16 @@ abstract class CommonNames(
 	val program: AstResolver,
 	val keywords: Set<String> = setOf()
 ) {
-	lateinit var currentClass: FqName
-	lateinit var currentMethod: AstMethodRef
+	// Class and method being generated by each thread
+	private val currentClassLocal = ThreadLocal<FqName>()
+	private val currentMethodLocal = ThreadLocal<AstMethodRef>()
+
+	var currentClass: FqName
+		get() = currentClassLocal.get()
+		set(value) = currentClassLocal.set(value)
+	var currentMethod: AstMethodRef
+		get() = currentMethodLocal.get()
+		set(value) = currentMethodLocal.set(value)
 	enum class StringPoolType { GLOBAL, PER_CLASS }
 
 	abstract val stringPoolType: StringPoolType
@@ -27,19 +35,26 @@ abstract class CommonNames(
 		private val stringIds = hashMapOf<String, Int>()
 		private var valid = false
 		private var cachedEntries = listOf<StringInPool>()
-		fun alloc(str: String): Int {
-			return stringIds.getOrPut(str) {
+		fun alloc(str: String): Int = synchronized(this) {
+			stringIds.getOrPut(str) {
 				valid = false
 				lastId++
 			}
 		}
 
-		fun getAllSorted(): List<StringInPool> {
+		// Keeps the ids of a previous build, new strings are allocated after them
+		fun preload(id: Int, str: String) = synchronized(this) {
+			stringIds[str] = id
+			lastId = Math.max(lastId, id + 1)
+			valid = false
+		}
+
+		fun getAllSorted(): List<StringInPool> = synchronized(this) {
 			if (!valid) {
 				cachedEntries = stringIds.entries.map { StringInPool(it.value, it.key) }.sortedBy { it.id }.toList()
 				valid = true
 			}
-			return cachedEntries
+			cachedEntries
 		}
 	}
 
@@ -47,7 +62,7 @@ abstract class CommonNames(
 		val usedNames = hashSetOf<String>()
 		val allocatedNames = hashMapOf<Any, String>()
 
-		fun allocate(key: Any, requestedName: () -> String): String {
+		fun allocate(key: Any, requestedName: () -> String): String = synchronized(this) {
 			if (key !in allocatedNames) {
 				var finalName = requestedName()
 				while (finalName in usedNames) {
@@ -56,7 +71,7 @@ abstract class CommonNames(
 				usedNames += finalName
 				allocatedNames[key] = finalName
 			}
-			return allocatedNames[key]!!
+			allocatedNames[key]!!
 		}
 	}
 
@@ -67,15 +82,29 @@ abstract class CommonNames(
 
 	data class StringInPool(val id: Int, val str: String)
 
-	fun getClassNameAllocator(clazz: FqName) = perClassNameAllocator.getOrPut(clazz) { PerClassNameAllocator() }
+	fun getClassNameAllocator(clazz: FqName) = synchronized(perClassNameAllocator) { perClassNameAllocator.getOrPut(clazz) { PerClassNameAllocator() } }
 
-	private fun getPerClassStrings(clazz: FqName) = stringPoolPerClass.getOrPut(clazz) { StringPool() }
+	private fun getPerClassStrings(clazz: FqName) = synchronized(stringPoolPerClass) { stringPoolPerClass.getOrPut(clazz) { StringPool() } }
+
+	/**
+	 * Allocates the names of [clazz] and its members, so they don't depend on the order the code using them is generated in.
+	 */
+	open fun preallocate(clazz: AstClass) {
+		getNativeName(clazz.name)
+		for (field in clazz.fields) getNativeName(field)
+		for (method in clazz.methods) getNativeName(method)
+	}
 
 	fun getGlobalStrings(): List<StringInPool> = when (stringPoolType) {
 		StringPoolType.GLOBAL -> stringPoolGlobal.getAllSorted()
 		else -> invalidOp("This target doesn't support global string pool")
 	}
 
+	fun preloadGlobalStrings(strings: List<StringInPool>) = when (stringPoolType) {
+		StringPoolType.GLOBAL -> for (e in strings) stringPoolGlobal.preload(e.id, e.str)
+		else -> invalidOp("This target doesn't support global string pool")
+	}
+
 	fun getClassStrings(clazz: FqName): List<StringInPool> = when (stringPoolType) {
 		StringPoolType.PER_CLASS -> getPerClassStrings(clazz).getAllSorted()
 		else -> invalidOp("This target doesn't support per class string pool")
@@ -126,7 +155,7 @@ abstract class CommonNames(
 
 	val normalizeNameCache = hashMapOf<String, String>()
 
-	fun normalizeName(name: String): String {
+	fun normalizeName(name: String): String = synchronized(normalizeNameCache) {
 		if (name.isNullOrEmpty()) return ""
 		if (name !in normalizeNameCache) {
 			val chars = name.toCharArray()
@@ -138,7 +167,7 @@ abstract class CommonNames(
 			if (chars[0].isDigit()) chars[0] = '_'
 			normalizeNameCache[name] = String(chars)
 		}
-		return normalizeNameCache[name]!!
+		normalizeNameCache[name]!!
 	}
 
 	open fun getNativeName(local: LocalParamRef): String = normalizeName(local.name)
@@ -6,6 +6,7 @@ import com.jtransc.ast.template.CommonTagHandler
 import com.jtransc.error.invalidOp
 import com.jtransc.injector.Injector
 import com.jtransc.injector.Singleton
+import com.jtransc.log.log
 import com.jtransc.template.Minitemplate
 import com.jtransc.vfs.LocalVfs
 import com.jtransc.vfs.MergeVfs
@@ -59,6 +60,7 @@ open class CommonProgramTemplate(val injector: Injector) {
 	)
 
 	fun setInfoAfterBuildingSource() {
+		log.info("Templates: ${templates.misses} parsed, ${templates.hits} reused")
 		params["entryPointFile"] = injector.get<ConfigEntryPointFile>().entryPointFile
 		params["entryPointClass"] = names.buildTemplateClass(injector.get<ConfigEntryPointClass>().entryPointClass)
 	}
@@ -78,14 +80,26 @@ open class CommonProgramTemplate(val injector: Injector) {
 		return out
 	}
 
+	// Classes whose static members or class object are used directly by templates, without initializing them first
+	val staticallyReferencedClasses = hashSetOf<FqName>()
+
 	private fun evalReference(type: String, desc: String): String {
 		val ref = CommonTagHandler.getRef(program, type, desc, params)
 		return when (ref) {
 			is CommonTagHandler.SINIT -> names.buildStaticInit(ref.method.containingClass);
 			is CommonTagHandler.CONSTRUCTOR -> names.buildConstructor(ref.method)
-			is CommonTagHandler.METHOD -> names.buildMethod(ref.method, static = ref.isStatic)
-			is CommonTagHandler.FIELD -> names.buildField(ref.field, static = ref.isStatic)
-			is CommonTagHandler.CLASS -> names.buildTemplateClass(ref.clazz)
+			is CommonTagHandler.METHOD -> {
+				if (ref.isStatic) staticallyReferencedClasses += ref.method.containingClass.name
+				names.buildMethod(ref.method, static = ref.isStatic)
+			}
+			is CommonTagHandler.FIELD -> {
+				if (ref.isStatic) staticallyReferencedClasses += ref.field.containingClass.name
+				names.buildField(ref.field, static = ref.isStatic)
+			}
+			is CommonTagHandler.CLASS -> {
+				staticallyReferencedClasses += ref.clazz.name
+				names.buildTemplateClass(ref.clazz)
+			}
 			else -> invalidOp("Unsupported result")
 		}
 	}
@@ -119,14 +133,16 @@ open class CommonProgramTemplate(val injector: Injector) {
 		)
 	)
 
+	val templates = Minitemplate.Cache(miniConfig)
+
 	fun gen(template: String): String = gen(template, extra = hashMapOf())
 
-	fun gen(template: String, extra: HashMap<String, Any?> = hashMapOf()): String = Minitemplate(template, miniConfig).invoke(HashMap(params + extra))
+	fun gen(template: String, extra: HashMap<String, Any?> = hashMapOf()): String = templates[template].invoke(HashMap(params + extra))
 
-	fun gen(template: String, process: Boolean): String = if (process) Minitemplate(template, miniConfig).invoke(params) else template
+	fun gen(template: String, process: Boolean): String = if (process) templates[template].invoke(params) else template
 
 	fun gen(template: String, context: AstGenContext, type: String): String {
 		//System.out.println("WARNING: templates not implemented! : $type : $context : $template");
-		return Minitemplate(template, miniConfig).invoke(params)
+		return templates[template].invoke(params)
 	}
 }
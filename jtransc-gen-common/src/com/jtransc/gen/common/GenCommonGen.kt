@@ -1,6 +1,7 @@
 package com.jtransc.gen.common
 
 import com.jtransc.ConfigOutputFile
+import com.jtransc.ConfigThreads
 import com.jtransc.annotation.JTranscInvisible
 import com.jtransc.annotation.JTranscInvisibleExternal
 import com.jtransc.ast.*
@@ -15,6 +16,8 @@ import com.jtransc.injector.Injector
 import com.jtransc.text.Indenter
 import com.jtransc.vfs.SyncVfsFile
 import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ForkJoinPool
 
 class ConfigSrcFolder(val srcFolder: SyncVfsFile)
 
@@ -36,10 +39,26 @@ open class GenCommonGen(val injector: Injector) {
 	val configOutputFile2: ConfigOutputFile2 = injector.get()
 	val outputFileBaseName = configOutputFile.outputFileBaseName
 	val outputFile = configOutputFile.output
+	val threads = injector.get<ConfigThreads>(default = { ConfigThreads() }).threads
 
 	val types: AstTypes = program.types
-	val context = AstGenContext()
-	val refs = References()
+
+	// State of the body being generated. Each thread generating bodies has its own one
+	class GenState {
+		val context = AstGenContext()
+		var refs = References()
+		lateinit var mutableBody: MutableBody
+		lateinit var stm: AstStm
+		val trapsByStart = hashMapOf<AstLabel, ArrayList<AstTrap>>()
+		val trapsByEnd = hashMapOf<AstLabel, ArrayList<AstTrap>>()
+	}
+
+	private val state = object : ThreadLocal<GenState>() {
+		override fun initialValue() = GenState()
+	}
+
+	val context: AstGenContext get() = state.get().context
+	val refs: References get() = state.get().refs
 
 	val JAVA_LANG_OBJECT = names.nativeName<java.lang.Object>()
 	val JAVA_LANG_CLASS = names.nativeName<java.lang.Class<*>>()
@@ -182,8 +201,16 @@ open class GenCommonGen(val injector: Injector) {
 
 	fun String.template(type: String = "template"): String = templateString.gen(this, context, type)
 
-	lateinit var mutableBody: MutableBody
-	lateinit var stm: AstStm
+	var mutableBody: MutableBody
+		get() = state.get().mutableBody
+		set(value) {
+			state.get().mutableBody = value
+		}
+	var stm: AstStm
+		get() = state.get().stm
+		set(value) {
+			state.get().stm = value
+		}
 
 	fun AstExpr.genExpr(): String = genExpr2(this)
 	fun AstExpr.Box.genExpr(): String = genExpr2(this.value)
@@ -209,6 +236,12 @@ open class GenCommonGen(val injector: Injector) {
 	fun getFilesToCopy(target: String) = program.classes.flatMap { it.annotationsList.getTypedList(com.jtransc.annotation.JTranscAddFileList::value).filter { it.target == target || it.target == "all" } }.sortedBy { it.priority }
 
 	fun AstExpr.genNotNull(): String = genExpr2(this)
+	// Receivers that can't be null, so their null checks can be skipped
+	fun AstExpr.isNotNull(): Boolean = when (this) {
+		is AstExpr.THIS, is AstExpr.NEW, is AstExpr.NEW_WITH_CONSTRUCTOR -> true
+		is AstExpr.CAST -> this.expr.value.isNotNull()
+		else -> false
+	}
 	//fun AstBody.genBody(): Indenter = genBody2(this)
 	//fun AstBody.genBodyWithFeatures(): Indenter = features.apply(this, featureSet, settings, types).genBody()
 
@@ -217,13 +250,119 @@ open class GenCommonGen(val injector: Injector) {
 
 
 	open fun genBody2WithFeatures(body: AstBody): Indenter {
+		val prepared = preparedBodies[context.method]
+		if (prepared != null && prepared.body === body) {
+			preparedBodies.remove(context.method)
+			refs.addAll(prepared.refs)
+			return prepared.text
+		}
+		return applyFeatures(body).genBody()
+	}
+
+	open fun applyFeatures(body: AstBody): AstBody {
 		//return if (ENABLE_HXCPP_GOTO_HACK && (tinfo.subtarget in setOf("cpp", "windows", "linux", "mac", "android"))) {
-		//	features.apply(body, (featureSet + setOf(GotosFeature)), settings, types).genBody()
+		//	features.apply(body, (featureSet + setOf(GotosFeature)), settings, types)
 		//} else {
-		return features.apply(body, featureSet, settings, types).genBody()
+		return features.apply(body, featureSet, settings, types)
 		//}
 	}
 
+	private class PreparedBody(val body: AstBody, val text: Indenter, val refs: References)
+
+	// Bodies generated by [prepareBodies], by the method they were generated for
+	private val preparedBodies = IdentityHashMap<AstMethod, PreparedBody>()
+
+	private val AstMethod.javaBody: AstBody? get() = this.body ?: this.bodyRef?.let { program[it]?.body }
+
+	fun AstMethod.hasDefaultNativeBody(target: String): Boolean {
+		return this.annotationsList.getTypedList(com.jtransc.annotation.JTranscMethodBodyList::value).any { it.target == target && it.cond == "" }
+	}
+
+	/**
+	 * Generates the bodies of the methods of [classes] before writing the classes, in parallel when there are several threads.
+	 *
+	 * Member names and pooled strings are allocated first, in the order of [classes], so generating a body doesn't allocate
+	 * anything and the output doesn't depend on the number of threads. Each thread generates bodies with its own state,
+	 * and the classes take them in order while they are written. Methods with a default native body for [target] don't use
+	 * their Java body, so it is only generated if it is asked for.
+	 */
+	fun prepareBodies(classes: List<AstClass>, target: String) {
+		val methods = arrayListOf<AstMethod>()
+		for (clazz in classes) {
+			if (clazz.implCode != null) continue
+			for (method in clazz.methods) {
+				if (method.javaBody != null && !method.hasDefaultNativeBody(target)) methods += method
+			}
+		}
+		val pool = if (threads > 1) ForkJoinPool(threads) else null
+		try {
+			// Bodies can be shared by several methods, but features are applied once
+			val bodies = Collections.newSetFromMap(IdentityHashMap<AstBody, Boolean>())
+			for (method in methods) bodies += method.javaBody!!
+			val bodyList = bodies.toList()
+			val transformed = IdentityHashMap<AstBody, AstBody>()
+			for ((body, result) in bodyList.zip(runAll(pool, bodyList) { applyFeatures(it) })) transformed[body] = result ?: continue
+
+			for (clazz in LinkedHashSet(classes + program.classes)) names.preallocate(clazz)
+			for (method in methods) {
+				setCurrentClass(method.containingClass)
+				setCurrentMethod(method)
+				preallocateBody(transformed[method.javaBody!!] ?: continue)
+			}
+
+			val ready = methods.filter { transformed[it.javaBody!!] != null }
+			for ((method, prepared) in ready.zip(runAll(pool, ready) { prepareBody(it, transformed[it.javaBody!!]!!) })) {
+				preparedBodies[method] = prepared ?: continue
+			}
+		} finally {
+			pool?.shutdown()
+		}
+	}
+
+	// Runs [task] for each item, on the [pool] if there is one. Items that fail give null and are handled again
+	// while writing their class, so the error is reported there
+	private fun <T, R : Any> runAll(pool: ForkJoinPool?, items: List<T>, task: (T) -> R): List<R?> {
+		fun attempt(item: T): R? = try {
+			task(item)
+		} catch (e: Throwable) {
+			null
+		}
+		if (pool == null) return items.map { attempt(it) }
+		return items.map { item -> pool.submit(Callable { attempt(item) }) }.map { it.join() }
+	}
+
+	private fun prepareBody(method: AstMethod, body: AstBody): PreparedBody {
+		val state = this.state.get()
+		val outerRefs = state.refs
+		state.refs = References()
+		try {
+			setCurrentClass(method.containingClass)
+			setCurrentMethod(method)
+			return PreparedBody(method.javaBody!!, body.genBody(), state.refs)
+		} finally {
+			state.refs = outerRefs
+		}
+	}
+
+	/**
+	 * Allocates what generating [body] allocates, for the current class and method.
+	 */
+	fun preallocateBody(body: AstBody) {
+		object : AstVisitor() {
+			override fun visit(expr: AstExpr?) {
+				if (expr != null) preallocateExpr(expr)
+				super.visit(expr)
+			}
+		}.visit(body)
+	}
+
+	open fun preallocateExpr(expr: AstExpr) {
+		if (expr is AstExpr.LITERAL) {
+			val value = expr.value
+			if (value is String) names.allocString(context.clazz.name, value)
+		}
+	}
+
 	// @TODO: Remove this from here, so new targets don't have to do this too!
 	// @TODO: AstFieldRef should be fine already, so fix it in asm_ast!
 	fun fixField(field: AstFieldRef): AstFieldRef = program[field].ref
@@ -232,8 +371,8 @@ open class GenCommonGen(val injector: Injector) {
 
 	val allAnnotationTypes = program.allAnnotations.flatMap { it.getAllDescendantAnnotations() }.map { it.type }.distinct().map { program[it.name] }.toSet()
 
-	val trapsByStart = hashMapOf<AstLabel, ArrayList<AstTrap>>()
-	val trapsByEnd = hashMapOf<AstLabel, ArrayList<AstTrap>>()
+	val trapsByStart: HashMap<AstLabel, ArrayList<AstTrap>> get() = state.get().trapsByStart
+	val trapsByEnd: HashMap<AstLabel, ArrayList<AstTrap>> get() = state.get().trapsByEnd
 
 	open fun genBody2(body: AstBody): Indenter {
 		val method = context.method
@@ -632,7 +771,16 @@ open class GenCommonGen(val injector: Injector) {
 	open fun genStmThrow(stm: AstStm.THROW) = indent { line("throw ${stm.value.genExpr()};") }
 	open fun genStmRethrow(stm: AstStm.RETHROW) = indent { line("""throw J__i__exception__;""") }
 	open fun genStmStms(stm: AstStm.STMS) = indent { for (s in stm.stms) line(s.genStm()) }
-	open fun genStmExpr(stm: AstStm.STM_EXPR) = Indenter.single("${stm.expr.genExpr()};")
+	open fun genStmExpr(stm: AstStm.STM_EXPR): Indenter {
+		val expr = stm.expr.value
+		val value = (expr as? AstExpr.LITERAL)?.value
+		// A class literal alone (left by escape analysis) only initializes the class at the method entry
+		if (value is AstType) {
+			genLiteralType(value)
+			return Indenter.EMPTY
+		}
+		return Indenter.single("${expr.genExpr()};")
+	}
 	open fun genStmReturnVoid(stm: AstStm.RETURN_VOID) = Indenter.single(if (context.method.methodVoidReturnThis) "return this;" else "return;")
 	open fun genStmReturnValue(stm: AstStm.RETURN) = Indenter.single("return ${stm.retval.genExpr()};")
 	open fun genStmWhile(stm: AstStm.WHILE) = indent {
@@ -1021,6 +1169,14 @@ open class GenCommonGen(val injector: Injector) {
 
 	class References {
 		var _usedDependencies = hashSetOf<AstType.REF>()
+		// Ids of the pooled strings used
+		val strings = hashSetOf<Int>()
+
+		fun addAll(other: References) {
+			_usedDependencies.addAll(other._usedDependencies)
+			strings.addAll(other.strings)
+		}
+
 		fun add(type: AstType?) {
 			when (type) {
 				null -> Unit
@@ -0,0 +1,49 @@
+package com.jtransc.gen.common
+
+// Selected with the "stringTableCompress" extra setting ("false" stores every literal whole)
+data class ConfigStringTable(val compress: Boolean = true)
+
+/**
+ * String literals of a program stored in a single blob, so targets can build their strings the first time they are used.
+ *
+ * Entries are sorted by content and [ids] holds the pool id of each one. The characters of entry n are
+ * data[ends[n - 1] until ends[n]], preceded by the first prefixes[n] characters of entry n - 1 when compressed.
+ * Every [RESTART] entries the whole string is stored, so decoding never goes back more than [RESTART] - 1 entries.
+ * Shared prefixes only cover ASCII characters, so they have the same length on targets using UTF-8 strings.
+ */
+class StringTable(strings: List<CommonNames.StringInPool>, val compress: Boolean) {
+	companion object {
+		const val RESTART = 16
+	}
+
+	val ids = IntArray(strings.size)
+	val prefixes = IntArray(strings.size)
+	val ends = IntArray(strings.size)
+	val data: String
+
+	init {
+		val sorted = strings.sortedBy { it.str }
+		val out = StringBuilder()
+		var prev = ""
+		for ((n, e) in sorted.withIndex()) {
+			val prefix = if (compress && n % RESTART != 0) sharedPrefix(prev, e.str) else 0
+			out.append(e.str, prefix, e.str.length)
+			ids[n] = e.id
+			prefixes[n] = prefix
+			ends[n] = out.length
+			prev = e.str
+		}
+		data = out.toString()
+	}
+
+	val size: Int get() = ids.size
+
+	fun suffix(n: Int): String = data.substring(if (n > 0) ends[n - 1] else 0, ends[n])
+
+	private fun sharedPrefix(a: String, b: String): Int {
+		val max = Math.min(a.length, b.length)
+		var n = 0
+		while (n < max && a[n] == b[n] && a[n] < '\u0080') n++
+		return n
+	}
+}
@@ -0,0 +1,81 @@
+package com.jtransc.gen.common
+
+import org.junit.Assert
+import org.junit.Test
+
+class StringTableTest {
+	// Same decoding as __rawString in js/Runtime.js and HaxeStringTable.raw
+	fun raw(table: StringTable, n: Int): String {
+		val prefix = if (table.compress) table.prefixes[n] else 0
+		return if (prefix > 0) raw(table, n - 1).substring(0, prefix) + table.suffix(n) else table.suffix(n)
+	}
+
+	fun assertRoundTrip(strings: List<String>, compress: Boolean): StringTable {
+		val pool = strings.withIndex().map { CommonNames.StringInPool(it.index * 3 + 1, it.value) }
+		val table = StringTable(pool, compress)
+		Assert.assertEquals(strings.size, table.size)
+		val decoded = (0 until table.size).associateBy({ table.ids[it] }, { raw(table, it) })
+		Assert.assertEquals(pool.associateBy({ it.id }, { it.str }), decoded)
+		for (n in 0 until table.size) {
+			if (!compress || n % StringTable.RESTART == 0) Assert.assertEquals(0, table.prefixes[n])
+		}
+		return table
+	}
+
+	fun assertRoundTrip(strings: List<String>): StringTable {
+		assertRoundTrip(strings, compress = false)
+		return assertRoundTrip(strings, compress = true)
+	}
+
+	@Test fun testEmptyTable() {
+		val table = assertRoundTrip(listOf())
+		Assert.assertEquals(0, table.size)
+		Assert.assertEquals("", table.data)
+	}
+
+	@Test fun testEmptyStrings() {
+		assertRoundTrip(listOf(""))
+		assertRoundTrip(listOf("", "a", "ab", ""))
+	}
+
+	@Test fun testNoSharedPrefix() {
+		val strings = listOf("hello", "world", "jtransc", "abc", "xyz")
+		val table = assertRoundTrip(strings)
+		Assert.assertTrue(table.prefixes.all { it == 0 })
+		Assert.assertEquals(strings.sorted().joinToString(""), table.data)
+	}
+
+	@Test fun testLongSharedPrefixes() {
+		val base = "java.lang.reflect.".repeat(20)
+		val strings = (0 until 100).map { "$base$it" } + (0 until 40).map { base.substring(0, it * 5) }
+		val table = assertRoundTrip(strings)
+		Assert.assertTrue(table.prefixes.max()!! >= base.length)
+		Assert.assertTrue(table.data.length < strings.sumBy { it.length } / 4)
+	}
+
+	@Test fun testNonAscii() {
+		val strings = listOf(
+			"\u00e1rbol", "\u00e1rboles", "\u00e1\u00e9", "caf\u00e9", "caf\u00e9s", "caf\u00e8",
+			"\u65e5\u672c\u8a9e", "\u65e5\u672c",
+			"\ud83d\ude00", "\ud83d\ude01", "a\ud83d\ude00b", "a\ud83d\ude00c", "a\ud83d\ude01"
+		)
+		val table = assertRoundTrip(strings)
+		// Shared prefixes stop before the first non-ASCII character, so surrogate pairs are never split
+		for (n in 0 until table.size) Assert.assertTrue(raw(table, n).substring(0, table.prefixes[n]).all { it < '\u0080' })
+	}
+
+	@Test fun testSeparatorsAndEscapes() {
+		assertRoundTrip(listOf(
+			",", ",,", "a,b", "a,c", "\"", "\"\"", "\\", "\\\\", "\\n", "\n", "\r\n", "\t", "\u0000", "a\u0000b", "a\u0000c",
+			"'", "</script>", "\u2028", "\u2029", "\${x}", "{% CLASS java.lang.String %}"
+		))
+	}
+
+	@Test fun testRestarts() {
+		val strings = (0 until StringTable.RESTART * 3 + 5).map { "prefix$it" }
+		val table = assertRoundTrip(strings)
+		for (n in 0 until table.size) {
+			if (n % StringTable.RESTART == 0) Assert.assertEquals(raw(table, n), table.suffix(n))
+		}
+	}
+}
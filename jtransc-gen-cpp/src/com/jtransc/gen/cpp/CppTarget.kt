@@ -12,6 +12,7 @@ import com.jtransc.ast.feature.GotosFeature
 import com.jtransc.ast.feature.OptimizeFeature
 import com.jtransc.ast.feature.SimdFeature
 import com.jtransc.ast.feature.SwitchesFeature
+import com.jtransc.env.OS
 import com.jtransc.error.InvalidOperationException
 import com.jtransc.error.invalidOp
 import com.jtransc.gen.GenTargetDescriptor
@@ -22,6 +23,7 @@ import com.jtransc.injector.Singleton
 import com.jtransc.io.ProcessResult2
 import com.jtransc.target.Cpp
 import com.jtransc.text.Indenter
+import com.jtransc.text.IndenterWriter
 import com.jtransc.text.quote
 import com.jtransc.text.uquote
 import com.jtransc.vfs.LocalVfs
@@ -45,6 +47,18 @@ const val TRACING_JUST_ENTER = false
 
 data class ConfigCppOutput(val cppOutput: SyncVfsFile)
 
+enum class CppMemory { REFCOUNT, GC }
+
+// Selected with the "cppMemory" extra setting: "refcount" (std::shared_ptr, default) or "gc" (tracing mark & sweep)
+data class ConfigCppMemory(val memory: CppMemory)
+
+enum class CppStrings { LAZY, STATIC }
+
+// Selected with the "cppStrings" extra setting: "lazy" (default, literals are built the first time they are used) or
+// "static" (literals are built at startup from static data with their hash precomputed), and "cppCompactStrings":
+// "true" stores char arrays with Latin-1 contents using one byte per char
+data class ConfigCppStrings(val literals: CppStrings = CppStrings.LAZY, val compact: Boolean = false)
+
 // @TODO: http://en.cppreference.com/w/cpp/language/eval_order
 // @TODO: Use std::array to ensure it is deleted
 object CppTarget : GenTargetDescriptor() {
@@ -62,6 +76,15 @@ object CppTarget : GenTargetDescriptor() {
 		val configOutputFile = injector.get<ConfigOutputFile>()
 		val targetFolder = LocalVfsEnsureDirs(File("${configTargetDirectory.targetDirectory}/jtransc-cpp"))
 		injector.mapInstance(ConfigFeatureSet(CppFeatures))
+		injector.mapInstance(injector.get<ConfigCppMemory>(default = {
+			ConfigCppMemory(if (settings.extra["cppMemory"] == "gc") CppMemory.GC else CppMemory.REFCOUNT)
+		}))
+		injector.mapInstance(injector.get<ConfigCppStrings>(default = {
+			ConfigCppStrings(
+				literals = if (settings.extra["cppStrings"] == "static") CppStrings.STATIC else CppStrings.LAZY,
+				compact = settings.extra["cppCompactStrings"] == "true"
+			)
+		}))
 		injector.mapImpl<CommonNames, CppNames>()
 		injector.mapInstance(CommonGenFolders(settings.assets.map { LocalVfs(it) }))
 		injector.mapInstance(ConfigTargetFolder(targetFolder))
@@ -110,6 +133,7 @@ class CppGenTargetProcessor(
 		cmdAndArgs += "-Wno-parentheses-equality"
 		cmdAndArgs += "-Wimplicitly-unsigned-literal"
 		cmdAndArgs += "-frtti"
+		if (!OS.isWindows) cmdAndArgs += "-pthread"
 		cmdAndArgs += configOutputFile.output
 		for (lib in injector.get<ConfigLibraries>().libs) {
 			cmdAndArgs += "-l$lib"
@@ -136,6 +160,9 @@ class CppGenTargetProcessor(
 @Singleton
 class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 	override val allowAssignItself = true
+	val gc = injector.get<ConfigCppMemory>().memory == CppMemory.GC
+	val strings = injector.get<ConfigCppStrings>()
+	val staticStrings = strings.literals == CppStrings.STATIC
 	var lastClassId = 1
 	val idsToClass = hashMapOf<Int, FqName>()
 	val classesToId = hashMapOf<FqName, Int>()
@@ -148,6 +175,31 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 		return classesToId[fqname]!!
 	}
 
+	// Class ids are assigned in the order of [classesInIdOrder], so the ids of the descendants of a class
+	// follow its own one and testing for a class is a range check
+	private val lastDescendantIds = hashMapOf<AstClass, Int>()
+
+	fun getLastDescendantId(clazz: AstClass): Int = lastDescendantIds.getOrPut(clazz) {
+		val ids = (subclasses[clazz] ?: listOf<AstClass>()).map { getLastDescendantId(it) } + (if (clazz.isNative) listOf() else listOf(getClassId(clazz.name)))
+		ids.max() ?: 0
+	}
+
+	// Index of each interface in the bitset of implemented interfaces of the classes
+	val interfaceIndices by lazy {
+		ordereredClasses.filter { it.isInterface && !it.isNative }.withIndex().map { it.value.name to it.index }.toMap()
+	}
+
+	fun getInterfaceBits(clazz: AstClass): List<Int> {
+		val indices = clazz.allInterfacesInAncestors.map { interfaceIndices[it.name] }.filterNotNull()
+		val bits = IntArray(if (indices.isEmpty()) 0 else (indices.max()!! / 32) + 1)
+		for (index in indices) bits[index / 32] = bits[index / 32] or (1 shl (index % 32))
+		return bits.toList()
+	}
+
+	val arrayDescIds = LinkedHashMap<String, Int>()
+
+	fun getArrayDescId(desc: String): Int = arrayDescIds.getOrPut(desc) { arrayDescIds.size + 1 }
+
 	fun generateTypeTableHeader() = Indenter.gen {
 		line("struct REFLECT_CONSTRUCTOR", after2 = ";") {
 			line("const wchar_t *desc;")
@@ -171,7 +223,10 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 
 		line("struct TYPE_INFO", after2 = ";") {
 			line("const int flags;")
-			line("const int *subtypes;")
+			line("const int lastDescendant;")
+			line("const int interfaceIndex;")
+			line("const int interfaceWords;")
+			line("const uint32_t *interfaceBits;")
 			line("const wchar_t *tname;")
 			line("const int constructorsSize;")
 			line("const REFLECT_CONSTRUCTOR* constructors;")
@@ -189,15 +244,13 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 			line("const int *interfaces;")
 		}
 
-		line("struct TYPE_TABLE { static int count; static TYPE_INFO TABLE[$lastClassId]; };")
-
-		line("const int TABLE_INFO_NULL[1] = {0};")
+		line("struct TYPE_TABLE { static int count; static TYPE_INFO TABLE[$lastClassId]; static int arrayDescCount; static const wchar_t *ARRAY_DESCS[]; };")
 	}
 
 	fun generateTypeTableFooter() = Indenter.gen {
-		for (clazz in ordereredClasses) {
-			val ids = (clazz.thisAndAncestors + clazz.allInterfacesInAncestors).distinct().map { classesToId[it.name] }.filterNotNull() + listOf(0)
-			line("const int ${clazz.cppName}::TABLE_INFO[] = { ${ids.joinToString(", ")} };")
+		for (clazz in ordereredClasses.filter { !it.isNative }) {
+			val bits = getInterfaceBits(clazz)
+			line("const uint32_t ${clazz.cppName}::INTERFACE_BITS[] = { ${(if (bits.isEmpty()) listOf(0) else bits).map { "0x%08X".format(it) }.joinToString(", ")} };")
 		}
 
 		for (clazz in ordereredClasses) {
@@ -211,6 +264,9 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 			line("const int ${clazz.cppName}::SUPER = $superId;")
 		}
 
+		line("int TYPE_TABLE::arrayDescCount = ${arrayDescIds.size + 1};")
+		line("const wchar_t *TYPE_TABLE::ARRAY_DESCS[] = { NULL${arrayDescIds.keys.map { ", L" + it.quote() }.joinToString("")} };")
+
 		line("int TYPE_TABLE::count = $lastClassId;")
 		line("TYPE_INFO TYPE_TABLE::TABLE[$lastClassId] =", after2 = ";") {
 			for (n in 0 until lastClassId) {
@@ -222,7 +278,10 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 					line("{")
 					indent {
 						line(".flags = 0,")
-						line(".subtypes = 0,")
+						line(".lastDescendant = 0,")
+						line(".interfaceIndex = -1,")
+						line(".interfaceWords = 0,")
+						line(".interfaceBits = 0,")
 						line(".tname = 0,")
 						line(".constructorsSize = 0,")
 						line(".constructors = 0,")
@@ -244,25 +303,23 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 		//line("""REFLECT_CONSTRUCTOR testConstructor = { L"()V", 0, [](std::vector<SOBJ> args) { return SOBJ(new java_lang_Object()); } };""")
 	}
 
-	val ordereredClasses = Unit.let {
-		// (program.classes.filter { it.isInterface } + program.classes.filter { !it.isInterface }.flatMap {
-		//	listOf(it) + it.thisAndAncestors.reversed()
-		//}).distinct()
-		val childrenMap = hashMapOf<AstClass, ArrayList<AstClass>>()
+	val subclasses = hashMapOf<AstClass, ArrayList<AstClass>>().apply {
 		for (current in program.classes) {
 			val parent = current.parentClass
-			if (parent != null) {
-				val list = childrenMap.getOrPut(parent) { arrayListOf() }
-				list += current
-			}
+			if (parent != null) getOrPut(parent) { arrayListOf() } += current
 		}
+	}
 
+	val ordereredClasses = Unit.let {
+		// (program.classes.filter { it.isInterface } + program.classes.filter { !it.isInterface }.flatMap {
+		//	listOf(it) + it.thisAndAncestors.reversed()
+		//}).distinct()
 		val out = LinkedHashSet<AstClass>()
 
 		fun explore(classes: List<AstClass>) {
 			if (classes.isNotEmpty()) {
 				for (clazz in classes) out += clazz
-				explore(classes.flatMap { childrenMap[it] ?: arrayListOf() }.filter { it !in out })
+				explore(classes.flatMap { subclasses[it] ?: arrayListOf() }.filter { it !in out })
 			}
 		}
 
@@ -272,6 +329,22 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 		out.toList()
 	}
 
+	// Depth first pre-order, so each class is followed by all its descendants
+	val classesInIdOrder = Unit.let {
+		val out = LinkedHashSet<AstClass>()
+
+		fun explore(clazz: AstClass) {
+			if (clazz in out) return
+			out += clazz
+			for (child in subclasses[clazz] ?: listOf<AstClass>()) explore(child)
+		}
+
+		val roots = program.classes.filter { it.parentClass == null }.sortedBy { it.fqname != "java.lang.Object" }
+		for (root in roots) explore(root)
+
+		out.toList()
+	}
+
 	override fun genBodyTrapsPrefix(): Indenter = indent { line("SOBJ J__exception__ = null;") }
 
 	override fun genStmTryCatch(stm: AstStm.TRY_CATCH): Indenter = Indenter.gen {
@@ -301,6 +374,8 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 			"JA_L" to "SOBJ"
 		)
 
+		for (clazz in classesInIdOrder.filter { !it.isNative }) getClassId(clazz.name)
+
 		val mainClassFq = program.entrypoint
 		val entryPointClass = FqName(mainClassFq.fqname)
 		val entryPointFilePath = entryPointClass.targetFilePath
@@ -350,17 +425,98 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 						line("void *_data;")
 						line("int length;")
 						line("int elementSize;")
+						line("bool owned;")
 						line("std::wstring desc;")
-						line("JA_0(int len, int esize, std::wstring d) : length(len), elementSize(esize), desc(d) {")
+						line("int descId;")
+						if (strings.compact) {
+							// Char arrays start with a Latin-1 buffer that is kept until the array is destroyed, since other
+							// threads may still be reading it once the array is inflated and the widened buffer is published
+							line("uint8_t *_latin1 = nullptr;")
+							line("std::atomic<uint16_t*> _wide;")
+							line("std::atomic<bool> _inflating;")
+						}
+						line("JA_0(int len, int esize, std::wstring d) : length(len), elementSize(esize), desc(d), descId(-1) {")
 						indent {
-							line("this->__INSTANCE_CLASS_ID = 1;")
+							line("this->__INSTANCE_CLASS_ID = ${getClassId(clazz.name)};")
 							line("this->_data = (void*)::malloc(esize * (len + 1));")
 							line("::memset(this->_data, 0, (len + 1) * esize);")
+							line("this->owned = true;")
+							if (strings.compact) line("this->_wide = nullptr; this->_inflating = false;")
+							if (gc) line("GC::external(esize * (len + 1));")
 						}
 						line("};")
-						line("~JA_0() { ::free(_data); }")
+						// Data not owned by the array: static string literals and mapped files
+						line("JA_0(const void *data, int len, int esize, std::wstring d) : length(len), elementSize(esize), desc(d), descId(-1) {")
+						indent {
+							line("this->__INSTANCE_CLASS_ID = ${getClassId(clazz.name)};")
+							line("this->_data = (void*)data;")
+							line("this->owned = false;")
+							if (strings.compact) line("this->_wide = nullptr; this->_inflating = false;")
+						}
+						line("};")
+						if (strings.compact) {
+							line("~JA_0() { if (owned) ::free(_data); if (_latin1 != nullptr) ::free(_wide.load()); }")
+						} else {
+							line("~JA_0() { if (owned) ::free(_data); }")
+						}
 						line("void *getOffsetPtr(int offset) { return ((char *)_data) + offset * elementSize; }")
+						if (strings.compact) {
+							line("bool isChars() { return _latin1 != nullptr || _wide.load(std::memory_order_relaxed) != nullptr; }")
+							line("uint16_t getChar(int offset)") {
+								line("auto wide = _wide.load(std::memory_order_acquire);")
+								line("return (wide != nullptr) ? wide[offset] : _latin1[offset];")
+							}
+							line("void setChar(int offset, uint16_t v)") {
+								line("auto wide = _wide.load(std::memory_order_acquire);")
+								line("if (wide == nullptr)") {
+									line("if (v >= 256) return (void)(inflate()[offset] = v);")
+									line("_latin1[offset] = (uint8_t)v;")
+									// Pairs with the fence in inflate: either the copy sees this store, or this store sees the inflation
+									line("std::atomic_thread_fence(std::memory_order_seq_cst);")
+									line("if (!_inflating.load(std::memory_order_relaxed)) return;")
+									line("wide = inflate();")
+								}
+								line("wide[offset] = v;")
+							}
+							// Compact char arrays use two bytes per char from the first time they store one outside Latin-1
+							line("uint16_t *inflate()") {
+								line("static std::mutex lock;")
+								line("std::lock_guard<std::mutex> guard(lock);")
+								line("auto wide = _wide.load(std::memory_order_relaxed);")
+								line("if (wide != nullptr) return wide;")
+								line("_inflating.store(true, std::memory_order_relaxed);")
+								line("std::atomic_thread_fence(std::memory_order_seq_cst);")
+								line("wide = (uint16_t*)::malloc(sizeof(uint16_t) * (length + 1));")
+								line("for (int n = 0; n <= length; n++) wide[n] = _latin1[n];")
+								if (gc) line("GC::external(sizeof(uint16_t) * (length + 1));")
+								line("_wide.store(wide, std::memory_order_release);")
+								line("return wide;")
+							}
+						}
 						line("static void copy(JA_0* src, int srcpos, JA_0* dst, int dstpos, int len)") {
+							if (strings.compact) {
+								line("if (src->isChars())") {
+									line("auto from = src->_wide.load(std::memory_order_acquire);")
+									line("auto to = dst->_wide.load(std::memory_order_acquire);")
+									line("if (from != nullptr && to != nullptr)") {
+										line("::memmove(to + dstpos, from + srcpos, len * sizeof(uint16_t));")
+									}
+									line("else if (from == nullptr && to == nullptr)") {
+										line("::memmove(dst->_latin1 + dstpos, src->_latin1 + srcpos, len);")
+										line("std::atomic_thread_fence(std::memory_order_seq_cst);")
+										line("if (!dst->_inflating.load(std::memory_order_relaxed)) return;")
+										line("to = dst->inflate();")
+										line("for (int n = 0; n < len; n++) to[dstpos + n] = dst->_latin1[dstpos + n];")
+									}
+									line("else if (src == dst && dstpos > srcpos)") {
+										line("for (int n = len - 1; n >= 0; n--) dst->setChar(dstpos + n, src->getChar(srcpos + n));")
+									}
+									line("else") {
+										line("for (int n = 0; n < len; n++) dst->setChar(dstpos + n, src->getChar(srcpos + n));")
+									}
+									line("return;")
+								}
+							}
 							line("::memmove(dst->getOffsetPtr(dstpos), src->getOffsetPtr(srcpos), len * src->elementSize);")
 						}
 						line("virtual SOBJ M_getClass___Ljava_lang_Class_();")
@@ -369,13 +525,28 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 
 					for ((name, type) in arrayTypes) {
 						val c = name.substring(name.length - 1)
+						// Object arrays are stored as heap references
+						val storage = if (name == "JA_L") "FOBJ" else type
 						if (name == "JA_Z") {
 							line("""struct JA_Z : public JA_B { public: JA_Z(int size, std::wstring desc = L"[Z") : JA_B(size, desc) { }; };""")
 						} else {
 							line("struct $name : public JA_0 { public:")
 							indent {
-								line("""$name(int size, std::wstring desc = L"[$c") : JA_0(size, sizeof($type), desc)""", after2 = ";") {
+								val compact = strings.compact && name == "JA_C"
+								val elementSize = if (compact) "sizeof(uint8_t)" else "sizeof($storage)"
+								line("""$name(int size, std::wstring desc = L"[$c") : JA_0(size, $elementSize, desc)""", after2 = ";") {
 									//line("this->__INSTANCE_CLASS_ID = ${getClassId(name.fqname)};")
+									if (compact) line("this->_latin1 = (uint8_t*)this->_data;")
+								}
+								if (name == "JA_B") {
+									line("""JA_B(void *data, int size) : JA_0(data, size, sizeof(int8_t), L"[B") { };""")
+								}
+								if (staticStrings && name == "JA_C") {
+									line("""JA_C(const void *data, int size, int esize) : JA_0(data, size, esize, L"[C")""", after2 = ";") {
+										if (compact) {
+											line("if (esize == sizeof(uint8_t)) this->_latin1 = (uint8_t*)data; else this->_wide = (uint16_t*)data;")
+										}
+									}
 								}
 								line("""inline void checkBounds(int offset)""", after2 = ";") {
 									line("""if (offset < 0 || offset >= length)""") {
@@ -392,12 +563,13 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 									line("""return SOBJ(out);""")
 								}
 
-								if (CHECK_ARRAYS) {
-									line("""inline void fastSet(int offset, $type v) { checkBounds(offset); (($type*)(this->_data))[offset] = v; };""")
-									line("""inline $type fastGet(int offset) { checkBounds(offset); return (($type*)(this->_data))[offset]; }""")
+								val check = if (CHECK_ARRAYS) "checkBounds(offset); " else ""
+								if (compact) {
+									line("""inline void fastSet(int offset, $type v) { ${check}setChar(offset, v); };""")
+									line("""inline $type fastGet(int offset) { ${check}return getChar(offset); }""")
 								} else {
-									line("""inline void fastSet(int offset, $type v) { (($type*)(this->_data))[offset] = v; };""")
-									line("""inline $type fastGet(int offset) { return (($type*)(this->_data))[offset]; }""")
+									line("""inline void fastSet(int offset, $type v) { ${check}(($storage*)(this->_data))[offset] = v; };""")
+									line("""inline $type fastGet(int offset) { ${check}return (($storage*)(this->_data))[offset]; }""")
 								}
 
 								line("""void set(int offset, $type v) { checkBounds(offset); fastSet(offset, v); };""")
@@ -405,7 +577,13 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 
 								//line("void setArray(int start, std::vector<$type> arrays)") {
 								line("void setArray(int start, int size, const $type *arrays)") {
-									line("for (int n = 0; n < size; n++) this->set(start + n, arrays[n]);")
+									if (compact || name == "JA_L") {
+										line("for (int n = 0; n < size; n++) this->set(start + n, arrays[n]);")
+									} else {
+										line("if (size <= 0) return;")
+										line("checkBounds(start); checkBounds(start + size - 1);")
+										line("::memcpy(getOffsetPtr(start), arrays, size * sizeof($storage));")
+									}
 								}
 
 								line("static $name *fromVector($type *data, int count)", after2 = ";") {
@@ -415,6 +593,8 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 								}
 
 								if (name == "JA_L") {
+									if (gc) line("virtual void __GC_trace() { for (int n = 0; n < this->length; n++) GC::mark(((FOBJ*)(this->_data))[n]); }")
+
 									line("std::vector<SOBJ> getVector()") {
 										line("int len = this->length;")
 										line("std::vector<SOBJ> out(len);")
@@ -459,61 +639,94 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 			}
 		}
 
-		val impls = Indenter.gen {
-			for (clazz in ordereredClasses.filter { !it.isNative }) {
-				if (clazz.implCode != null) {
-					line(clazz.implCode!!)
-				} else {
-					line(writeClassImpl(clazz))
+		prepareBodies(classesInIdOrder.filter { !it.isNative }, "cpp")
+
+		// Class implementations are streamed to a temporary file instead of being kept in memory,
+		// and copied in place of CLASSES_IMPL once the rest of Base.cpp (that needs all the strings) is rendered
+		val implsFile = File.createTempFile("jtransc-classes", ".cpp")
+		try {
+			val impls = implsFile.bufferedWriter(Charsets.UTF_8).use { writer ->
+				val impls = IndenterWriter(writer)
+				for (clazz in ordereredClasses.filter { !it.isNative }) {
+					if (clazz.implCode != null) {
+						impls.write(Indenter.single(clazz.implCode!!))
+					} else {
+						impls.write(writeClassImpl(clazz))
+					}
 				}
+				impls
 			}
-		}
 
-		val STRINGS = Indenter.gen {
-			// {{ STRINGS }}
-			for (gs in names.getGlobalStrings()) {
-				line("""STRINGLIT   STRINGLIT_${gs.id} = { L${gs.str.uquote()}, ${gs.str.length}, false, 0 };""")
+			val STRINGS = Indenter.gen {
+				// {{ STRINGS }}
+				for (gs in names.getGlobalStrings()) {
+					if (staticStrings) {
+						val type = if (strings.compact && gs.str.all { it.toInt() < 256 }) "uint8_t" else "uint16_t"
+						val data = (gs.str.map { it.toInt() } + 0).joinToString(", ")
+						line("""static const $type STRINGDATA_${gs.id}[] = { $data };""")
+						line("""STATICSTR   STRINGLIT_${gs.id}(STRINGDATA_${gs.id}, ${gs.str.length}, ${gs.str.hashCode()});""")
+					} else {
+						line("""STRINGLIT   STRINGLIT_${gs.id} = { L${gs.str.uquote()}, ${gs.str.length} };""")
+					}
+				}
 			}
-		}
-
-		val CLASSES_IMPL = Indenter.gen {
-			// {{ CLASSES_IMPL2 }}
-			line(impls)
-		}
 
-		val TYPE_TABLE_FOOTER = Indenter.gen {
-			// {{ TYPE_TABLE_FOOTER }}
-			line(generateTypeTableFooter())
-		}
+			val GC_STATICS = Indenter.gen {
+				// {{ GC_STATICS }}
+				if (gc) line(writeGcStatics())
+			}
 
-		val MAIN = Indenter.gen {
-			// {{ MAIN }}
-			line(writeMain())
-		}
+			val TYPE_TABLE_FOOTER = Indenter.gen {
+				// {{ TYPE_TABLE_FOOTER }}
+				line(generateTypeTableFooter())
+			}
 
-		val classesIndenter = Indenter.gen {
-			if (settings.debug) {
-				line("#define DEBUG 1")
-			} else {
-				line("#define RELEASE 1")
+			val MAIN = Indenter.gen {
+				// {{ MAIN }}
+				line(writeMain())
 			}
-			if (TRACING_JUST_ENTER) line("#define TRACING_JUST_ENTER")
-			if (TRACING) line("#define TRACING")
-			line(templateString.gen(program.resourcesVfs["cpp/Base.cpp"].readString(), extra = hashMapOf(
+
+			val CLASSES_IMPL_MARKER = "/* ## CLASSES_IMPL ## */"
+
+			val base = templateString.gen(program.resourcesVfs["cpp/Base.cpp"].readString(), extra = hashMapOf(
 				"HEADER" to HEADER.toString(),
 				"CLASS_REFERENCES" to CLASS_REFERENCES.toString(),
 				"TYPE_TABLE_HEADERS" to TYPE_TABLE_HEADERS.toString(),
 				"ARRAY_TYPES" to ARRAY_TYPES.toString(),
 				"ARRAY_HEADERS" to ARRAY_HEADERS.toString(),
-				"CLASSES_IMPL" to CLASSES_IMPL.toString(),
+				"CLASSES_IMPL" to CLASSES_IMPL_MARKER,
 				"STRINGS" to STRINGS.toString(),
+				"GC_STATICS" to GC_STATICS.toString(),
 				"TYPE_TABLE_FOOTER" to TYPE_TABLE_FOOTER.toString(),
 				"MAIN" to MAIN.toString()
-			)))
-		}
+			))
+			val baseParts = base.split(CLASSES_IMPL_MARKER)
+			if (baseParts.size != 2) invalidOp("cpp/Base.cpp must include {{ CLASSES_IMPL }} once")
 
+			val defines = Indenter.gen {
+				if (settings.debug) {
+					line("#define DEBUG 1")
+				} else {
+					line("#define RELEASE 1")
+				}
+				if (TRACING_JUST_ENTER) line("#define TRACING_JUST_ENTER")
+				if (TRACING) line("#define TRACING")
+				if (gc) line("#define JTRANSC_GC 1")
+				if (staticStrings) line("#define JTRANSC_STATIC_STRINGS 1")
+				if (strings.compact) line("#define JTRANSC_COMPACT_STRINGS 1")
+			}
 
-		output[outputFile] = classesIndenter.toString()
+			output[outputFile].openWriter().use { writer ->
+				val out = IndenterWriter(writer)
+				out.write(defines)
+				writer.write(baseParts[0])
+				implsFile.bufferedReader(Charsets.UTF_8).use { out.writeRaw(it, impls.line) }
+				writer.write(baseParts[1])
+				writer.write("\n")
+			}
+		} finally {
+			implsFile.delete()
+		}
 
 		injector.mapInstance(ConfigEntryPointClass(entryPointClass))
 		injector.mapInstance(ConfigEntryPointFile(entryPointFilePath))
@@ -526,8 +739,21 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 	val AstType.REF.cppName: String get() = names.getClassFqNameForCalling(this.name)
 	val AstMethod.cppName: String get() = names.getNativeName(this)
 	val AstField.cppName: String get() = names.getNativeName(this)
+	val AstClass.hasStaticSynchronizedMethods: Boolean get() = methods.any { it.isStatic && it.modifiers.isSynchronized }
 	val AstType.cppString: String get() = names.getTypeStringForCpp(this)
 	val AstType.underlyingCppString: String get() = getUnderlyingType(this)
+	// Volatile primitives are C++ volatile, so loops polling them reload them on every iteration
+	val AstField.cppFieldType: String get() = if (type is AstType.Reference) (if (isWeak) "WOBJ" else "FOBJ") else if (isVolatile) "volatile ${type.cppString}" else type.cppString
+
+	fun writeGcStatics(): Indenter = Indenter.gen {
+		line("void GC::traceStatics()") {
+			for (clazz in ordereredClasses.filter { !it.isNative }) {
+				for (field in clazz.fields.filter { it.isStatic && it.type is AstType.Reference && !it.isWeak }) {
+					line("GC::mark(${clazz.cppName}::${field.cppName});")
+				}
+			}
+		}
+	}
 
 	fun writeMain(): Indenter = Indenter.gen {
 		line("int main(int argc, char *argv[])") {
@@ -553,6 +779,7 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 			line("catch (...)") {
 				line("""std::wcout << L"ERROR unhandled unknown exception\n";""")
 			}
+			line("N::waitThreads();")
 			line("return 0;")
 		}
 	}
@@ -570,7 +797,7 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 		val parts = if (clazz.isInterface) {
 			""
 		} else if (clazz.fqname == "java.lang.Object") {
-			"public std::enable_shared_from_this<java_lang_Object>"
+			if (gc) "" else "public std::enable_shared_from_this<java_lang_Object>"
 		} else {
 			directExtendingAndImplementing.map { "public ${it.cppName}" }.joinToString(", ")
 		}
@@ -584,7 +811,17 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 
 			if (clazz.fqname == "java.lang.Object") {
 				line("int __INSTANCE_CLASS_ID;")
-				line("SOBJ sptr() { return shared_from_this(); };")
+				line("std::atomic<intptr_t> __monitor;")
+				if (gc) {
+					line("bool __GC_marked;")
+					line("SOBJ sptr() { return SOBJ(this); };")
+					line("virtual ~java_lang_Object() { N::monitorFree(this->__monitor); };")
+					line("static void *operator new(size_t size) { return GC::alloc(size); };")
+					line("static void operator delete(void *ptr) { GC::free(ptr); };")
+				} else {
+					line("SOBJ sptr() { return shared_from_this(); };")
+					line("~java_lang_Object() { N::monitorFree(this->__monitor); };")
+				}
 				//line("""~${clazz.cppName}() { printf("%p: %d\n", this, this->__INSTANCE_CLASS_ID); ((java_lang_Object*)this)->M_finalize___V(); }""")
 				//line("""~${clazz.cppName}() { (dynamic_cast<java_lang_Object*>(this))->M_finalize___V(); }""") // @TODO: This is not working!
 			}
@@ -593,15 +830,24 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 				val normalStatic = if (field.isStatic) "static " else ""
 				//val add = if (field.isStatic) ""
 				val add = ""
-				val btype = field.type.cppString
-				val type = if (btype == "SOBJ" && field.isWeak) "WOBJ" else btype
-				line("$normalStatic$type ${field.jsName}$add;")
+				line("$normalStatic${field.cppFieldType} ${field.jsName}$add;")
+			}
+
+			// Pointer map: references held by instances of this class (weak fields are not traced)
+			val referenceFields = clazz.fields.filter { !it.isStatic && it.type is AstType.Reference && !it.isWeak }
+			if (gc && !clazz.isInterface && (referenceFields.isNotEmpty() || clazz.parentClass == null)) {
+				line("virtual void __GC_trace()") {
+					if (clazz.parentClass != null) line("${clazz.parentClass!!.cppName}::__GC_trace();")
+					for (field in referenceFields) line("GC::mark(this->${field.jsName});")
+				}
 			}
 
 			// constructor
 			line("${clazz.cppName}() ") {
 				if (!clazz.isInterface) {
 					line("this->__INSTANCE_CLASS_ID = ${getClassId(clazz.name)};")
+					if (clazz.parentClass == null) line("this->__monitor.store(0, std::memory_order_relaxed);")
+					if (gc && clazz.parentClass == null) line("this->__GC_marked = false;")
 					for (field in clazz.fields.filter { !it.isStatic }) {
 						val cst = if (field.hasConstantValue) names.escapeConstant(field.constantValue) else "0"
 						line("this->${field.jsName} = $cst;")
@@ -626,11 +872,15 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 					line("virtual ${parentMethod.returnTypeWithThis.cppString} ${parentMethod.cppName}($argsString) { $returnStr this->${callingMethod.cppName}($argsCallString); }")
 				}
 			}
-			line("static bool SI_once;")
+			line("static JT_CLASS_INIT SI_state;")
 			line("static void SI();")
+			if (clazz.hasStaticSynchronizedMethods) {
+				line("static std::atomic<java_lang_Object*> CLASS_OBJECT;")
+				line("static std::atomic<intptr_t> &CLASS_MONITOR();")
+			}
 
 			val ids = (clazz.thisAndAncestors + clazz.allInterfacesInAncestors).distinct().map { classesToId[it.name] }.filterNotNull() + listOf(0)
-			line("static const int TABLE_INFO[${ids.size}];")
+			line("static const uint32_t INTERFACE_BITS[${Math.max(getInterfaceBits(clazz).size, 1)}];")
 			line("static const int SUPER;")
 			line("static const int INTERFACES_COUNT;")
 			line("static const int INTERFACES[${ids.size}];")
@@ -746,7 +996,10 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 		//line("const TYPE_INFO ${clazz.cppName}::INFO = { ${clazz.cppName}::TABLE_INFO, ${clazz.cppName}::NAME, ${clazz.constructors.size}, ${clazz.cppName}::CONSTRUCTORS, ${clazz.methodsWithoutConstructors.size}, ${clazz.cppName}::METHODS, ${clazz.cppName}::DYNAMIC_NEW, ${clazz.cppName}::DYNAMIC_INVOKE, ${clazz.cppName}::SUPER, ${clazz.cppName}::INTERFACES_COUNT, ${clazz.cppName}::INTERFACES };")
 		line("const TYPE_INFO ${clazz.cppName}::INFO = ", after2 = ";") {
 			line(".flags = ${clazz.modifiers.acc},")
-			line(".subtypes = ${clazz.cppName}::TABLE_INFO,")
+			line(".lastDescendant = ${getLastDescendantId(clazz)},")
+			line(".interfaceIndex = ${interfaceIndices[clazz.name] ?: -1},")
+			line(".interfaceWords = ${getInterfaceBits(clazz).size},")
+			line(".interfaceBits = ${clazz.cppName}::INTERFACE_BITS,")
 			line(".tname = ${clazz.cppName}::NAME,")
 			line(".constructorsSize = ${clazz.constructors.size},")
 			line(".constructors = ${clazz.cppName}::CONSTRUCTORS,")
@@ -783,22 +1036,46 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 			}
 		}
 
-		line("bool ${clazz.cppName}::SI_once = false;")
+		if (clazz.hasStaticSynchronizedMethods) {
+			// Static synchronized methods lock the monitor of the class object, the same one synchronized (X.class) takes.
+			// Class objects are kept by the class cache, so the pointer stays valid.
+			line("std::atomic<java_lang_Object*> ${clazz.cppName}::CLASS_OBJECT(NULL);")
+			line("std::atomic<intptr_t> &${clazz.cppName}::CLASS_MONITOR()") {
+				line("java_lang_Object *obj = CLASS_OBJECT.load(std::memory_order_acquire);")
+				line("if (obj == NULL)") {
+					line("obj = ${names.escapeConstant(clazz.astType)}.get();")
+					line("CLASS_OBJECT.store(obj, std::memory_order_release);")
+				}
+				line("return obj->__monitor;")
+			}
+		}
+		line("JT_CLASS_INIT ${clazz.cppName}::SI_state;")
 		line("void ${clazz.cppName}::SI() {")
 		indent {
-			line("if (SI_once) return;")
+			line("if (SI_state.done()) return;")
+			line("if (!SI_state.begin(L${clazz.name.fqname.uquote()})) return;")
 			line("""TRACE_REGISTER("${clazz.cppName}::SI");""")
-			line("SI_once = true;")
-			for (field in clazz.fields.filter { it.isStatic }) {
-				if (field.isStatic) {
-					val cst = if (field.hasConstantValue) names.escapeConstant(field.constantValue) else "0"
-					line("${clazz.cppName}::${field.cppName} = $cst;")
+			line("try") {
+				for (field in clazz.fields.filter { it.isStatic }) {
+					if (field.isStatic) {
+						val cst = if (field.hasConstantValue) names.escapeConstant(field.constantValue) else "0"
+						line("${clazz.cppName}::${field.cppName} = $cst;")
+					}
 				}
-			}
 
-			for (ci in clazz.methods.filter { it.isClassInit }) {
-				line("${ci.cppName}();")
+				for (ci in clazz.methods.filter { it.isClassInit }) {
+					line("${ci.cppName}();")
+				}
 			}
+			line("catch (SOBJ error)") {
+				line("SI_state.finish(false);")
+				line("throw N::initializerError(error);")
+			}
+			line("catch (...)") {
+				line("SI_state.finish(false);")
+				line("throw;")
+			}
+			line("SI_state.finish(true);")
 		}
 		line("};")
 	}
@@ -806,18 +1083,18 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 	fun writeField(field: AstField): Indenter = Indenter.gen {
 		val clazz = field.containingClass
 		if (field.isStatic) {
-			line("${field.type.cppString} ${clazz.cppName}::${field.cppName} = 0;")
+			line("${field.cppFieldType} ${clazz.cppName}::${field.cppName} = 0;")
 		}
 	}
 
 	val FEATURE_FOR_FUNCTION_WITH_TRAPS = setOf(OptimizeFeature, SwitchesFeature, SimdFeature)
 	val FEATURE_FOR_FUNCTION_WITHOUT_TRAPS = (FEATURE_FOR_FUNCTION_WITH_TRAPS + GotosFeature).toSet()
 
-	override fun genBody2WithFeatures(body: AstBody): Indenter {
+	override fun applyFeatures(body: AstBody): AstBody {
 		if (body.traps.isNotEmpty()) {
-			return features.apply(body, FEATURE_FOR_FUNCTION_WITH_TRAPS, settings, types).genBody()
+			return features.apply(body, FEATURE_FOR_FUNCTION_WITH_TRAPS, settings, types)
 		} else {
-			return features.apply(body, FEATURE_FOR_FUNCTION_WITHOUT_TRAPS, settings, types).genBody()
+			return features.apply(body, FEATURE_FOR_FUNCTION_WITHOUT_TRAPS, settings, types)
 		}
 	}
 
@@ -838,6 +1115,14 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 
 			line("""const wchar_t *FUNCTION_NAME = L"${method.containingClass.name}::${method.name}::${method.desc}";""")
 			line("""TRACE_REGISTER(FUNCTION_NAME);""")
+			if (gc) {
+				// Constructors are called on objects that are not referenced by any handle yet
+				if (method.isInstanceInit) line("SOBJ __GC_this(this);")
+				line("GC_SAFEPOINT();")
+			}
+			if (method.modifiers.isSynchronized) {
+				line("JT_SYNCHRONIZED __synchronized(${if (method.isStatic) "${clazz.cppName}::CLASS_MONITOR()" else "this->__monitor"});")
+			}
 
 			setCurrentMethod(method)
 			val body = method.body
@@ -913,6 +1198,18 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 
 	override fun genExprCallBaseInstance(e2: AstExpr.CALL_INSTANCE, clazz: AstType.REF, refMethodClass: AstClass, method: AstMethodRef, methodAccess: String, args: List<String>): String {
 		//return "((${refMethodClass.cppName}*)(${e2.obj.genNotNull()}.get()))$methodAccess(${args.joinToString(", ")})"
+		if (e2.isDirect) {
+			// Qualified calls don't go through the vtable
+			val directMethod = refMethodClass[method.withoutClass] ?: invalidOp("Can't find method : $method")
+			val directAccess = "->${refMethodClass.ref.cppName}::${directMethod.cppName}"
+			val isThisClass = refMethodClass in mutableBody.method.containingClass.thisAndAncestors
+			return if (isThisOrThisWithCast(e2.obj.value) && isThisClass) {
+				"this$directAccess(${args.joinToString(", ")})"
+			} else {
+				// Direct calls only target class methods (never interfaces), and classes extend java_lang_Object without virtual bases
+				"(static_cast<${refMethodClass.cppName}*>(N::ensureNpe(${e2.obj.genNotNull()}, FUNCTION_NAME).get()))$directAccess(${args.joinToString(", ")})"
+			}
+		}
 		if (isThisOrThisWithCast(e2.obj.value)) {
 			return "this$methodAccess(${args.joinToString(", ")})"
 		} else {
@@ -960,6 +1257,20 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 		return "this->sptr()"
 	}
 
+	// Loops poll on every iteration, so a thread spinning without calls doesn't keep the others stopped at a safepoint.
+	// Labels are the targets of the backward gotos of loops that weren't rebuilt as while.
+	override fun genStmWhile(stm: AstStm.WHILE): Indenter = if (!gc) super.genStmWhile(stm) else indent {
+		line("while (${stm.cond.genExpr()})") {
+			line("GC_SAFEPOINT();")
+			line(stm.iter.genStm())
+		}
+	}
+
+	override fun genStmLabel(stm: AstStm.STM_LABEL): Indenter = if (!gc) super.genStmLabel(stm) else indent {
+		line(super.genStmLabel(stm))
+		line("GC_SAFEPOINT();")
+	}
+
 	override fun genStmSetFieldInstance(stm: AstStm.SET_FIELD_INSTANCE): Indenter {
 		return super.genStmSetFieldInstance(stm)
 	}
@@ -1001,7 +1312,24 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 	override fun N_obj_ne(l: String, r: String) = "(($l) != ($r))"
 
 	override fun genStmSetFieldStaticActual(stm: AstStm.SET_FIELD_STATIC, left: String, field: AstFieldRef, right: String): Indenter = indent {
-		line("$left = (${field.type.cppString})($right);")
+		if (field.isAtomicReference) {
+			line("std::atomic_store(&$left, (${field.type.cppString})($right));")
+		} else {
+			line("$left = (${field.type.cppString})($right);")
+		}
+	}
+
+	// Without the gc, references are std::shared_ptr, which can't be read and written from several threads at once.
+	// Volatile reference fields go through the atomic shared_ptr functions, so they can be used to publish objects.
+	val AstFieldRef.isAtomicReference: Boolean get() {
+		if (gc || type !is AstType.Reference) return false
+		val field = program[this]
+		return field.isVolatile && !field.isWeak
+	}
+
+	override fun genExprFieldStaticAccess(e: AstExpr.FIELD_STATIC_ACCESS): String {
+		val access = super.genExprFieldStaticAccess(e)
+		return if (e.field.isAtomicReference) "std::atomic_load(&$access)" else access
 	}
 
 	override fun genStmReturnVoid(stm: AstStm.RETURN_VOID): Indenter = Indenter.gen {
@@ -1012,18 +1340,34 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 		line("return (${context.method.returnTypeWithThis.cppString})${stm.retval.genExpr()};")
 	}
 
+	override fun preallocateExpr(expr: AstExpr) {
+		super.preallocateExpr(expr)
+		// Class and array descriptor ids of the checks
+		if (expr is AstExpr.INSTANCE_OF) N_is("", expr.checkType)
+	}
+
 	override fun N_is(a: String, b: AstType): String = when (b) {
-		is AstType.REF -> N_func("is", "($a), ${getClassId(b.name)}")
-		is AstType.ARRAY -> N_func("isArray", "($a), L${b.mangle().quote()}")
+		is AstType.REF -> {
+			val clazz = if (b.name in program) program[b.name] else null
+			if (clazz == null || clazz.isNative) {
+				N_func("is", "($a), ${getClassId(b.name)}")
+			} else if (clazz.isInterface) {
+				N_func("isInterface", "($a), ${interfaceIndices[clazz.name]}")
+			} else {
+				N_func("isClass", "($a), ${getClassId(clazz.name)}, ${getLastDescendantId(clazz)}")
+			}
+		}
+		is AstType.ARRAY -> N_func("isArray", "($a), ${getArrayDescId(b.mangle())}")
 		else -> N_func("isUnknown", """$a, "Unsupported $b"""")
 	}
 
 	override fun genExprFieldInstanceAccess(e: AstExpr.FIELD_INSTANCE_ACCESS): String {
-		if (isThisOrThisWithCast(e.expr.value)) {
-			return names.buildInstanceField("this", fixField(e.field))
+		val access = if (isThisOrThisWithCast(e.expr.value)) {
+			names.buildInstanceField("this", fixField(e.field))
 		} else {
-			return names.buildInstanceField("((" + e.field.containingTypeRef.underlyingCppString + ")(N::ensureNpe(" + e.expr.genNotNull() + ", FUNCTION_NAME).get()))", fixField(e.field))
+			names.buildInstanceField("((" + e.field.containingTypeRef.underlyingCppString + ")(N::ensureNpe(" + e.expr.genNotNull() + ", FUNCTION_NAME).get()))", fixField(e.field))
 		}
+		return if (e.field.isAtomicReference) "std::atomic_load(&$access)" else access
 	}
 
 	override fun actualSetField(stm: AstStm.SET_FIELD_INSTANCE, _left: String, _right: String): String {
@@ -1034,7 +1378,7 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 		}
 		val right = "(${stm.field.type.cppString})((${stm.field.type.cppString})(" + stm.expr.genExpr() + "))"
 
-		return "$left = $right;"
+		return if (stm.field.isAtomicReference) "std::atomic_store(&$left, $right);" else "$left = $right;"
 	}
 
 	override fun actualSetLocal(stm: AstStm.SET_LOCAL, localName: String, exprStr: String): String {
@@ -1090,6 +1434,14 @@ class GenCppGen(injector: Injector) : GenCommonGen(injector) {
 		//line("}")
 	}
 
+	override fun genStmMonitorEnter(stm: AstStm.MONITOR_ENTER) = indent {
+		line("N::monitorEnter(N::ensureNpe(${stm.expr.genExpr()}, FUNCTION_NAME)->__monitor);")
+	}
+
+	override fun genStmMonitorExit(stm: AstStm.MONITOR_EXIT) = indent {
+		line("N::monitorExit(N::ensureNpe(${stm.expr.genExpr()}, FUNCTION_NAME)->__monitor);")
+	}
+
 	override fun genStmThrow(stm: AstStm.THROW): Indenter = Indenter.gen {
 		//line("""std::wcout << L"THROWING! ${context.clazz}:${context.method.name}" << L"\n";""")
 		line(super.genStmThrow(stm))
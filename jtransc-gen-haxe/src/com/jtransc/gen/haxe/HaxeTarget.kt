@@ -70,6 +70,7 @@ object HaxeTarget : GenTargetDescriptor() {
 			.filterNotNull()
 
 		injector.mapInstance(ConfigFeatureSet(HaxeFeatures))
+		injector.mapInstance(injector.get<ConfigStringTable>(default = { ConfigStringTable(settings.extra["stringTableCompress"] != "false") }))
 
 		injector.mapInstance(ConfigHaxeAddSubtarget(availableHaxeSubtargets.last { it.name == actualSubtargetName || actualSubtargetName in it.alias }))
 
@@ -349,6 +350,7 @@ class HaxeNames(
 			"HAXE_CLASS_INIT", // Information about the class
 			"HAXE_CLASS_NAME", // Information about the class
 			"HaxeNatives", // used for HaxeNatives
+			"HaxeStringTable", // string literals
 			"unix",
 			"OVERFLOW", // iphone sdk
 			"UNDERFLOW" // iphone sdk
@@ -357,7 +359,7 @@ class HaxeNames(
 		val HaxeKeywordsWithToStringAndHashCode: Set<String> = HaxeKeywords + HaxeSpecial + setOf("toString", "hashCode")
 	}
 
-	override val stringPoolType: StringPoolType = StringPoolType.PER_CLASS
+	override val stringPoolType: StringPoolType = StringPoolType.GLOBAL
 
 	override fun buildConstructor(method: AstMethod): String = "new ${getClassFqName(method.containingClass.name)}().${getHaxeMethodName(method)}"
 
@@ -407,14 +409,16 @@ class HaxeNames(
 	fun allocMemberName(): String = HaxeKeywordsWithToStringAndHashCode.runUntilNotInSet { MinimizedNames.getIdNameById(minMemberLastId++) }
 
 	fun getHaxeMethodName(method: AstMethod): String = getHaxeMethodName(method.ref)
-	fun getHaxeMethodName(method: AstMethodRef): String {
+
+	// Names are looked up from the threads generating bodies
+	fun getHaxeMethodName(method: AstMethodRef): String = synchronized(this) {
 		val realmethod = program[method] ?: invalidOp("Can't find method $method")
 		val realclass = realmethod.containingClass
 		val methodWithoutClass = method.withoutClass
 
 		val objectToCache: Any = if (method.isClassOrInstanceInit) method else methodWithoutClass
 
-		return if (realclass.isNative) {
+		if (realclass.isNative) {
 			// No cache
 			realmethod.nativeName ?: method.name
 		} else {
@@ -449,9 +453,9 @@ class HaxeNames(
 
 	override fun getDefault(type: AstType): Any? = type.getNull()
 
-	private fun _getHaxeFqName(name: FqName): FqName {
+	private fun _getHaxeFqName(name: FqName): FqName = synchronized(this) {
 		val realclass = if (name in program) program[name]!! else null
-		return classNames.getOrPut2(name) {
+		classNames.getOrPut2(name) {
 			if (realclass?.nativeName != null) {
 				FqName(realclass!!.nativeName!!)
 			} else if (ENABLED_MINIFY_CLASSES && !realclass.keepName) {
@@ -473,7 +477,7 @@ class HaxeNames(
 		return clazz?.nativeName ?: getGeneratedFqName(name).fqname
 	}
 
-	override fun getFieldName(field: AstFieldRef): String {
+	override fun getFieldName(field: AstFieldRef): String = synchronized(this) {
 		val realfield = program[field]
 		val realclass = program[field.containingClass]
 		//val keyToUse = if (realfield.keepName) field else field.name
@@ -482,7 +486,7 @@ class HaxeNames(
 
 		val normalizedFieldName = normalizeName(field.name)
 
-		return if (realclass.isNative) {
+		if (realclass.isNative) {
 			// No cache
 			realfield?.nativeName ?: normalizedFieldName
 		} else {
@@ -572,22 +576,24 @@ class HaxeNames(
 @Singleton
 class GenHaxeGen(injector: Injector) : GenCommonGen(injector) {
 	val subtarget = injector.get<ConfigSubtarget>().subtarget
+	val stringTable = injector.get<ConfigStringTable>()
 
 	companion object {
 		//const val ENABLE_HXCPP_GOTO_HACK = true
 		const val ENABLE_HXCPP_GOTO_HACK = false
 	}
 
-	override fun genBody2WithFeatures(body: AstBody): Indenter {
+	override fun applyFeatures(body: AstBody): AstBody {
 		return if (ENABLE_HXCPP_GOTO_HACK && (subtarget in setOf("cpp", "windows", "linux", "mac", "android"))) {
-			features.apply(body, (featureSet + setOf(GotosFeature)), settings, types).genBody()
+			features.apply(body, (featureSet + setOf(GotosFeature)), settings, types)
 		} else {
-			features.apply(body, featureSet, settings, types).genBody()
+			features.apply(body, featureSet, settings, types)
 		}
 	}
 
 	internal fun _write() {
 		val vfs = srcFolder
+		prepareBodies(program.classes.filter { !it.isNative }, "haxe")
 		for (clazz in program.classes.filter { !it.isNative }) {
 			if (clazz.implCode != null) {
 				vfs[clazz.name.haxeFilePath] = clazz.implCode!!
@@ -665,6 +671,37 @@ class GenHaxeGen(injector: Injector) : GenCommonGen(injector) {
 			//line(annotationProxyTypes)
 		}
 
+		val table = StringTable(names.getGlobalStrings(), stringTable.compress)
+		vfs["HaxeStringTable.hx"] = Indenter.genString {
+			line("class HaxeStringTable") {
+				line("static private var ids:Array<Int> = [${table.ids.joinToString(", ")}];")
+				line("static private var prefixes:Array<Int> = " + (if (table.compress) "[${table.prefixes.joinToString(", ")}];" else "null;"))
+				line("static private var parts:Array<String> = [${(0 until table.size).joinToString(", ") { table.suffix(it).quote() }}];")
+				line("static private var index:Map<Int, Int> = null;")
+				line("static private var strings = new haxe.ds.Vector<$JAVA_LANG_STRING>(${(table.ids.max() ?: -1) + 1});")
+				line("")
+				line("// Literals are read directly by id once built, like S[id] on the js target")
+				line("static public inline function get(id:Int):$JAVA_LANG_STRING") {
+					line("var str = strings[id];")
+					line("return (str != null) ? str : build(id);")
+				}
+				line("")
+				line("// Builds the String of a literal the first time it is used, see StringTable")
+				line("static private function build(id:Int):$JAVA_LANG_STRING") {
+					line("if (index == null)") {
+						line("index = new Map<Int, Int>();")
+						line("for (n in 0 ... ids.length) index.set(ids[n], n);")
+					}
+					line("return strings[id] = N.strLit(raw(index.get(id)));")
+				}
+				line("")
+				line("static private function raw(n:Int):String") {
+					line("var prefix = (prefixes != null) ? prefixes[n] : 0;")
+					line("return (prefix > 0) ? raw(n - 1).substr(0, prefix) + parts[n] : parts[n];")
+				}
+			}
+		}
+
 		injector.mapInstance(ConfigEntryPointClass(entryPointClass))
 		injector.mapInstance(ConfigEntryPointFile(entryPointFilePath))
 		//injector.mapInstance(ConfigHaxeVfs(vfs))
@@ -781,6 +818,13 @@ class GenHaxeGen(injector: Injector) : GenCommonGen(injector) {
 			}
 		} + ")"	}
 
+	override fun genExprCallBaseInstance(e2: AstExpr.CALL_INSTANCE, clazz: AstType.REF, refMethodClass: AstClass, method: AstMethodRef, methodAccess: String, args: List<String>): String {
+		if (!e2.isDirect || e2.obj.value is AstExpr.THIS) return super.genExprCallBaseInstance(e2, clazz, refMethodClass, method, methodAccess, args)
+		// Typed as the class instead of an interface or an ancestor
+		val obj = if (e2.obj.value.isNotNull()) e2.obj.genNotNull() else "N.checkNotNull(${e2.obj.genNotNull()})"
+		return "${N_c(obj, e2.obj.type, refMethodClass.astType)}$methodAccess(${args.joinToString(", ")})"
+	}
+
 	override fun N_AGET_T(arrayType: AstType.ARRAY, elementType: AstType, array: String, index: String): String {
 		val get = when (elementType) {
 			AstType.BOOL -> "getBool"
@@ -815,11 +859,8 @@ class GenHaxeGen(injector: Injector) : GenCommonGen(injector) {
 		line(names.getClassStaticInit(clazzRef, reasons.joinToString(", ")))
 	}
 
-	private fun getStringId(id: Int) = "__str$id"
-	private fun getStringId(clazz: FqName, str: String) = getStringId(names.allocString(clazz, str))
-
 	override fun genExprThis(e: AstExpr.THIS): String = "this"
-	override fun genLiteralString(v: String): String = getStringId(context.clazz.name, v)
+	override fun genLiteralString(v: String): String = "HaxeStringTable.get(${names.allocString(context.clazz.name, v)})"
 
 	override fun genExprArrayLength(e: AstExpr.ARRAY_LENGTH): String {
 		val type = e.array.type
@@ -1011,18 +1052,11 @@ class GenHaxeGen(injector: Injector) : GenCommonGen(injector) {
 
 		fun addClassInit(clazz: AstClass) = Indenter.gen {
 			line("static public var SII = false;");
-			for (e in names.getClassStrings(clazz.name)) {
-				line("static private var ${getStringId(e.id)}:$JAVA_LANG_STRING;")
-			}
 
 			line("static public function SI()") {
 				line("if (SII) return;")
 				line("SII = true;")
 
-				for (e in names.getClassStrings(clazz.name)) {
-					line("${getStringId(e.id)} = ${names.escapeConstant(e.str)};")
-				}
-
 				if (clazz.hasStaticInit) {
 					val methodName = clazz.staticInitMethod!!.targetName
 					line("$methodName();")
@@ -0,0 +1,73 @@
+package com.jtransc.gen.js
+
+import com.jtransc.ast.AstClass
+import com.jtransc.ast.FqName
+import com.jtransc.ast.References
+import java.util.*
+
+// Selected with the "jsSplit" extra setting. chunkSize is the approximate amount of code per chunk in characters.
+data class ConfigJsSplit(val split: Boolean = false, val chunkSize: Int = 256 * 1024)
+
+/**
+ * Splits the classes of a program between the main file and chunks loaded the first time one of their classes is used.
+ *
+ * The main file contains the eager classes (the entry point, the classes it references and the ones the runtime uses
+ * directly) with all their ancestors. The rest are grouped following their references, so classes used together
+ * usually end in the same chunk.
+ */
+class JsChunks(val classes: List<AstClass>, val sizes: Map<AstClass, Int>, val chunkSize: Int) {
+	class Result(val main: List<AstClass>, val chunks: List<List<AstClass>>)
+
+	private val classesByName = classes.associateBy { it.name }
+	private val indices = classes.withIndex().associate { it.value to it.index }
+	private val references = hashMapOf<AstClass, List<AstClass>>()
+
+	private fun referencesOf(clazz: AstClass): List<AstClass> = references.getOrPut(clazz) {
+		References.get(clazz).mapNotNull { classesByName[it.name] }.distinct()
+	}
+
+	fun split(eager: Set<FqName>): Result {
+		val main = hashSetOf<AstClass>()
+
+		fun addMain(clazz: AstClass?) {
+			if (clazz == null || clazz.name !in classesByName || !main.add(clazz)) return
+			addMain(clazz.parentClass)
+			for (it in clazz.directInterfaces) addMain(it)
+		}
+
+		for (name in eager) addMain(classesByName[name])
+
+		// Visit the rest in order of distance to the main classes
+		val order = LinkedHashSet<AstClass>()
+		val queue: Queue<AstClass> = LinkedList(main)
+		while (queue.isNotEmpty()) {
+			for (ref in referencesOf(queue.remove())) {
+				if (ref !in main && order.add(ref)) queue += ref
+			}
+		}
+		order += classes.filter { it !in main }
+
+		val chunks = arrayListOf<List<AstClass>>()
+		val assigned = hashSetOf<AstClass>()
+		var chunk = arrayListOf<AstClass>()
+		var size = 0
+		for (seed in order) {
+			val pending: Queue<AstClass> = LinkedList(listOf(seed))
+			while (pending.isNotEmpty()) {
+				val clazz = pending.remove()
+				if (clazz in main || !assigned.add(clazz)) continue
+				chunk.add(clazz)
+				size += sizes[clazz] ?: 0
+				if (size >= chunkSize) {
+					chunks += chunk.sortedBy { indices[it] }
+					chunk = arrayListOf()
+					size = 0
+				}
+				pending += referencesOf(clazz)
+			}
+		}
+		if (chunk.isNotEmpty()) chunks += chunk.sortedBy { indices[it] }
+
+		return Result(classes.filter { it in main }, chunks)
+	}
+}
@@ -0,0 +1,93 @@
+package com.jtransc.gen.js
+
+import com.jtransc.ast.AstClass
+import com.jtransc.ast.AstStm
+import com.jtransc.ast.incremental.IncrementalBuild
+import com.jtransc.gen.common.CommonNames
+import com.jtransc.json.Json
+import com.jtransc.log.log
+import com.jtransc.text.Indenter
+
+/**
+ * Stores the javascript generated for each class between incremental builds. Fragments keep the
+ * source line markers for sourcemaps and the ids of the pooled strings they use, so reused classes
+ * keep pointing to the same strings.
+ */
+class JsIncremental(val incremental: IncrementalBuild, val names: CommonNames, val reuse: Boolean) {
+	class Fragment(val code: String, val marks: List<Pair<Int, AstStm.LINE>>, val strings: Set<Int>) {
+		fun toIndenter(): Indenter = Indenter.gen {
+			val lines = code.split('\n').dropLast(1)
+			var markIndex = 0
+			for ((index, line) in lines.withIndex()) {
+				while (markIndex < marks.size && marks[markIndex].first <= index) mark(marks[markIndex++].second)
+				line(line)
+			}
+			while (markIndex < marks.size) mark(marks[markIndex++].second)
+		}
+
+		companion object {
+			fun fromIndenter(indenter: Indenter, strings: Set<Int>): Fragment {
+				val marks = arrayListOf<Pair<Int, AstStm.LINE>>()
+				val code = StringBuilder()
+				indenter.writeTo(code) { line, data -> if (data is AstStm.LINE) marks += line to data }
+				return Fragment(code.toString(), marks, strings)
+			}
+		}
+	}
+
+	private val folder = incremental.folder
+	private val stringsFile = folder["strings.json"]
+	private var reused = 0
+
+	init {
+		if (reuse) {
+			try {
+				if (stringsFile.exists) {
+					val strings = (Json.decodeAny(stringsFile.readString()) as List<*>).map { it as List<*> }
+					names.preloadGlobalStrings(strings.map { CommonNames.StringInPool((it[0] as Number).toInt(), it[1] as String) })
+				}
+			} catch (e: Throwable) {
+				log.warn("Incremental: can't read $stringsFile: ${e.message}")
+			}
+		}
+	}
+
+	private fun codeFile(name: String) = folder["classes/$name.js"]
+	private fun infoFile(name: String) = folder["classes/$name.json"]
+
+	fun canReuse(clazz: AstClass): Boolean = reuse && !incremental.isAffected(clazz)
+
+	fun get(clazz: AstClass): Fragment? {
+		if (!canReuse(clazz)) return null
+		try {
+			val info = infoFile(clazz.fqname)
+			if (!info.exists) return null
+			val json = Json.decode(info.readString())
+			val marks = json.getArray("marks").map { it as List<*> }.map {
+				(it[0] as Number).toInt() to AstStm.LINE(it[1] as String, (it[2] as Number).toInt())
+			}
+			reused++
+			return Fragment(codeFile(clazz.fqname).readString(), marks, json.getArray("strings").map { (it as Number).toInt() }.toSet())
+		} catch (e: Throwable) {
+			return null
+		}
+	}
+
+	fun put(clazz: AstClass, fragment: Fragment) {
+		codeFile(clazz.fqname).ensureParentDir().writeString(fragment.code)
+		infoFile(clazz.fqname).writeString(Json.encode(mapOf(
+			"marks" to fragment.marks.map { listOf(it.first, it.second.file, it.second.line) },
+			"strings" to fragment.strings.sorted()
+		)))
+	}
+
+	fun save(strings: List<CommonNames.StringInPool>) {
+		for (name in incremental.removed) {
+			codeFile(name).removeIfExists()
+			infoFile(name).removeIfExists()
+		}
+		stringsFile.writeString(Json.encodeAny(strings.map { listOf(it.id, it.str) }))
+		incremental.save()
+		log("Incremental: reused $reused classes")
+	}
+}
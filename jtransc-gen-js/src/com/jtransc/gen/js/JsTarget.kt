@@ -2,17 +2,21 @@ package com.jtransc.gen.js
 
 import com.jtransc.ConfigOutputFile
 import com.jtransc.ConfigTargetDirectory
+import com.jtransc.annotation.JTranscAddFileList
 import com.jtransc.annotation.JTranscAddMembersList
 import com.jtransc.annotation.JTranscCustomMainList
 import com.jtransc.annotation.JTranscMethodBodyList
 import com.jtransc.ast.*
 import com.jtransc.ast.feature.SwitchesFeature
+import com.jtransc.ast.incremental.ConfigIncremental
+import com.jtransc.ast.incremental.IncrementalBuild
 import com.jtransc.ds.Allocator
 import com.jtransc.ds.getOrPut2
 import com.jtransc.error.invalidOp
 import com.jtransc.error.unexpected
 import com.jtransc.gen.GenTargetDescriptor
 import com.jtransc.gen.GenTargetProcessor
+import com.jtransc.gen.MinimizedNames
 import com.jtransc.gen.common.*
 import com.jtransc.injector.Injector
 import com.jtransc.injector.Singleton
@@ -22,6 +26,7 @@ import com.jtransc.log.log
 import com.jtransc.sourcemaps.Sourcemaps
 import com.jtransc.target.Js
 import com.jtransc.text.Indenter
+import com.jtransc.text.IndenterWriter
 import com.jtransc.text.quote
 import com.jtransc.vfs.ExecOptions
 import com.jtransc.vfs.LocalVfs
@@ -38,12 +43,18 @@ object JsTarget : GenTargetDescriptor() {
 	override val extraLibraries = listOf<String>()
 	override val extraClasses = listOf<String>()
 	override val runningAvailable: Boolean = true
+	override val supportsIncremental: Boolean = true
 	override fun getProcessor(injector: Injector): GenTargetProcessor {
 		val settings = injector.get<AstBuildSettings>()
 		val configTargetDirectory = injector.get<ConfigTargetDirectory>()
 		val configOutputFile = injector.get<ConfigOutputFile>()
 		val targetFolder = LocalVfsEnsureDirs(File("${configTargetDirectory.targetDirectory}/jtransc-js"))
 		injector.mapInstance(ConfigFeatureSet(JsFeatures))
+		injector.mapInstance(injector.get<ConfigJsLong>(default = {
+			ConfigJsLong(if (settings.extra["jsLong"] == "bigint") JsLong.BIGINT else JsLong.EMULATED)
+		}))
+		injector.mapInstance(injector.get<ConfigJsSplit>(default = { ConfigJsSplit(settings.extra["jsSplit"] == "true") }))
+		injector.mapInstance(injector.get<ConfigStringTable>(default = { ConfigStringTable(settings.extra["stringTableCompress"] != "false") }))
 		injector.mapImpl<CommonNames, JsNames>()
 		injector.mapInstance(CommonGenFolders(settings.assets.map { LocalVfs(it) }))
 		injector.mapInstance(ConfigTargetFolder(targetFolder))
@@ -61,6 +72,11 @@ object JsTarget : GenTargetDescriptor() {
 
 data class ConfigJavascriptOutput(val javascriptOutput: SyncVfsFile)
 
+enum class JsLong { EMULATED, BIGINT }
+
+// Selected with the "jsLong" extra setting: "emulated" (com.jtransc.lang.Int64 objects, default) or "bigint" (native BigInt values)
+data class ConfigJsLong(val long: JsLong)
+
 val JsFeatures = setOf(SwitchesFeature)
 
 @Singleton
@@ -105,9 +121,29 @@ class JsGenTargetProcessor(
 	override fun run(redirect: Boolean): ProcessResult2 = ProcessResult2(0)
 }
 
+val JsKeywords = setOf(
+	"arguments", "await", "break", "case", "catch", "class", "const", "continue", "debugger", "default", "delete", "do",
+	"else", "enum", "eval", "export", "extends", "false", "finally", "for", "function", "if", "implements", "import",
+	"in", "instanceof", "interface", "let", "new", "null", "package", "private", "protected", "public", "return",
+	"static", "super", "switch", "this", "throw", "true", "try", "typeof", "undefined", "var", "void", "while", "with", "yield"
+)
+
+// Properties of the generated objects and classes that members can't shadow
+val JsSpecial = setOf(
+	"name", "length", "caller", "call", "apply", "bind", "constructor", "prototype", "__proto__",
+	"toString", "valueOf", "hasOwnProperty", "SI"
+)
+
 @Singleton
-class JsNames(program: AstResolver, configMinimizeNames: ConfigMinimizeNames) : CommonNames(program, keywords = setOf("name", "constructor", "prototype", "__proto__")) {
+class JsNames(private val jsProgram: AstProgram, configMinimizeNames: ConfigMinimizeNames, configJsLong: ConfigJsLong) : CommonNames(jsProgram, keywords = setOf("name", "constructor", "prototype", "__proto__")) {
 	val minimize: Boolean = configMinimizeNames.minimizeNames
+	val bigint: Boolean = configJsLong.long == JsLong.BIGINT
+
+	override fun N_lnew(value: Long): String = if (bigint) (if (value < 0) "(${value}n)" else "${value}n") else super.N_lnew(value)
+
+	override fun escapeConstantRef(value: Any?, type: AstType): String {
+		return if (bigint && value is Long) N_lnew(value) else super.escapeConstantRef(value, type)
+	}
 
 	override val stringPoolType: StringPoolType = StringPoolType.GLOBAL
 
@@ -116,7 +152,7 @@ class JsNames(program: AstResolver, configMinimizeNames: ConfigMinimizeNames) :
 	override fun buildMethod(method: AstMethod, static: Boolean): String {
 		val clazz = getClassFqNameForCalling(method.containingClass.name)
 		val name = getJsMethodName(method)
-		return if (static) "$clazz[${name.quote()}]" else name
+		return if (static) "$clazz${access(name)}" else name
 	}
 
 	override fun buildStaticInit(clazz: AstClass): String = getClassStaticInit(clazz.ref, "template sinit")
@@ -124,13 +160,72 @@ class JsNames(program: AstResolver, configMinimizeNames: ConfigMinimizeNames) :
 	override fun buildConstructor(method: AstMethod): String {
 		val clazz = getClassFqNameForCalling(method.containingClass.name)
 		val methodName = getJsMethodName(method)
-		return "new $clazz()[${methodName.quote()}]"
+		return "new $clazz()${access(methodName)}"
+	}
+
+	private var minMemberLastId: Int = 0
+	private val minMethodNames = hashMapOf<Any, String>()
+	private val minFieldNames = hashMapOf<AstFieldRef, String>()
+
+	// Minimized name -> member, written next to the program when minimizing
+	val minimizedMembers = LinkedHashMap<String, String>()
+
+	// Identifiers and string literals of the native code of the program. Members named there keep their names,
+	// and minimized names never take one of them.
+	private val nativeNames: Set<String> by lazy {
+		val code = arrayListOf<String>()
+		for (clazz in jsProgram.classes) {
+			for (file in clazz.annotationsList.getTypedList(JTranscAddFileList::value).filter { it.target == "js" || it.target == "all" }) {
+				for (path in listOf(file.prepend, file.append, file.prependAppend, if (file.src.endsWith(".js")) file.src else "")) {
+					if (path.isNotEmpty()) code += jsProgram.resourcesVfs[path].readString()
+				}
+			}
+			code += clazz.annotationsList.getTypedList(JTranscCustomMainList::value).filter { it.target == "js" }.map { it.value }
+			code += clazz.annotationsList.getTypedList(JTranscAddMembersList::value).filter { it.target == "js" }.flatMap { it.value.toList() }
+			for (method in clazz.methods) {
+				code += method.annotationsList.getTypedList(JTranscMethodBodyList::value).filter { it.target == "js" }.flatMap { it.value.toList() }
+			}
+		}
+		val out = hashSetOf<String>()
+		for (str in code) {
+			for (token in Regex("[\\w$]+").findAll(str)) out += token.value
+			for (literal in Regex("\"([^\"]*)\"|'([^']*)'").findAll(str)) out += literal.groupValues[1] + literal.groupValues[2]
+		}
+		out
+	}
+
+	// Methods sharing a signature share their name, so overrides must keep it when any of them does
+	private val keptMethodNames: Set<String> by lazy {
+		jsProgram.classes.flatMap { it.methods }.filter { it.keepName }.map { getDefaultMethodName(it.ref) }.toHashSet()
 	}
 
+	private fun allocMemberName(): String {
+		while (true) {
+			val name = MinimizedNames.getIdNameById(minMemberLastId++)
+			if (name !in JsKeywords && name !in JsSpecial && name !in nativeNames) return name
+		}
+	}
+
+	private val identifierRegex = Regex("^[A-Za-z_$][\\w$]*$")
+
+	// Minimized names are plain identifiers and use dot access
+	private fun access(name: String): String = if (minimize && identifierRegex.matches(name)) ".$name" else "[${name.quote()}]"
+
 	private val fieldNames = hashMapOf<Any?, String>()
 	private val cachedFieldNames = hashMapOf<AstFieldRef, String>()
 
-	fun getNativeName(field: AstField): String {
+	// Names are looked up from the threads generating bodies
+	fun getNativeName(field: AstField): String = synchronized(this) {
+		val name = getDefaultFieldName(field)
+		if (!minimize || field.keepName || name in nativeNames) return name
+		minFieldNames.getOrPut(field.ref) {
+			val minName = allocMemberName()
+			minimizedMembers[minName] = "${field.ref.containingClass}:${field.name}"
+			minName
+		}
+	}
+
+	private fun getDefaultFieldName(field: AstField): String {
 		//"_" + field.uniqueName
 
 		val fieldRef = field.ref
@@ -163,11 +258,21 @@ class JsNames(program: AstResolver, configMinimizeNames: ConfigMinimizeNames) :
 	override fun getNativeName(method: MethodRef): String = getJsMethodName(method.ref)
 	override fun getNativeName(local: LocalParamRef): String = super.getNativeName(local)
 	override fun getNativeName(clazz: FqName): String = getClassFqNameForCalling(clazz)
-	override fun buildAccessName(name: String, static: Boolean): String = "[" + name.quote() + "]"
+	override fun buildAccessName(name: String, static: Boolean): String = access(name)
 
 	fun getJsMethodName(method: MethodRef): String = getJsMethodName(method.ref)
 
-	fun getJsMethodName(method: AstMethodRef): String {
+	fun getJsMethodName(method: AstMethodRef): String = synchronized(this) {
+		val name = getDefaultMethodName(method)
+		if (!minimize || name in nativeNames || name in keptMethodNames) return name
+		minMethodNames.getOrPut(if (method.isInstanceInit) method else method.withoutClass) {
+			val minName = allocMemberName()
+			minimizedMembers[minName] = name
+			minName
+		}
+	}
+
+	private fun getDefaultMethodName(method: AstMethodRef): String {
 		return if (method.isInstanceInit) {
 			"${method.classRef.fqname}${method.name}${method.desc}"
 		} else {
@@ -183,7 +288,7 @@ class JsNames(program: AstResolver, configMinimizeNames: ConfigMinimizeNames) :
 	fun getJsGeneratedFqPackage(fqName: FqName): String = fqName.fqname
 	override fun getGeneratedFqName(name: FqName): FqName = name
 	override fun getGeneratedSimpleClassName(name: FqName): String = name.fqname
-	override fun getTargetMethodAccess(refMethod: AstMethod, static: Boolean): String = "[" + getNativeName(refMethod).quote() + "]"
+	override fun getTargetMethodAccess(refMethod: AstMethod, static: Boolean): String = access(getNativeName(refMethod))
 }
 
 @Singleton
@@ -192,6 +297,14 @@ class GenJsGen(injector: Injector) : GenCommonGen(injector) {
 	val _JTranscCustomMainList = JTranscCustomMainList::class.java
 	val _JTranscMethodBodyList = JTranscMethodBodyList::class.java
 	val _JTranscAddMembersList = JTranscAddMembersList::class.java
+	val bigint = injector.get<ConfigJsLong>().long == JsLong.BIGINT
+	val split = injector.get<ConfigJsSplit>()
+	val stringTable = injector.get<ConfigStringTable>()
+	val jsNames = names as JsNames
+
+	init {
+		templateString.params["jsBigInt"] = bigint
+	}
 
 	internal fun _write(output: SyncVfsFile) {
 		val resourcesVfs = program.resourcesVfs
@@ -229,103 +342,211 @@ class GenJsGen(injector: Injector) : GenCommonGen(injector) {
 			ConcatFile(process(prepend), process(append))
 		}
 
-		val classesIndenter = arrayListOf<Indenter>()
+		val incremental = if (injector.get<ConfigIncremental>(default = { ConfigIncremental() }).incremental) {
+			// Minimized names are allocated for the whole program, and split builds need the templates of every class to choose the eager ones
+			JsIncremental(injector.get<IncrementalBuild>(), names, reuse = !injector.get<ConfigMinimizeNames>().minimizeNames && !split.split)
+		} else {
+			null
+		}
+		val usedStrings = hashSetOf<Int>()
 
-		val indenterPerClass = hashMapOf<AstClass, Indenter>()
+		prepareBodies(program.classes.filter { !it.isNative && incremental?.canReuse(it) != true }, "js")
 
-		for (clazz in program.classes.filter { !it.isNative }) {
-			val indenter = if (clazz.implCode != null) {
-				Indenter.gen { line(clazz.implCode!!) }
+		val sources = Allocator<String>()
+		val mappings = hashMapOf<Int, Sourcemaps.MappingItem>()
+		val classMappings = arrayListOf<Pair<Int, AstStm.LINE>>()
+		val classSizes = arrayListOf<Pair<AstClass, Long>>()
+		val lazyClasses = arrayListOf<Pair<AstClass, String>>()
+
+		// The string table goes before the classes but is only complete once they are generated,
+		// so classes are streamed to a temporary file and copied after it
+		val classesFile = File.createTempFile("jtransc-classes", ".js")
+		try {
+			val classesWriter = classesFile.bufferedWriter(Charsets.UTF_8).use { writer ->
+				val classesWriter = IndenterWriter(writer, { line, data ->
+					if (settings.debug && data is AstStm.LINE) classMappings += line to data
+				})
+				val fragments = LinkedHashMap<AstClass, JsIncremental.Fragment>()
+				for (clazz in program.classes.filter { !it.isNative }) {
+					fun generate() = if (clazz.implCode != null) {
+						Indenter.gen { line(clazz.implCode!!) }
+					} else {
+						writeClass(clazz)
+					}
+
+					val indenter = if (incremental != null) {
+						val fragment = incremental.get(clazz) ?: run {
+							refs.strings.clear()
+							val fragment = JsIncremental.Fragment.fromIndenter(generate(), refs.strings.toSet())
+							incremental.put(clazz, fragment)
+							fragment
+						}
+						usedStrings += fragment.strings
+						fragment.toIndenter()
+					} else {
+						generate()
+					}
+					if (split.split) {
+						val fragment = JsIncremental.Fragment.fromIndenter(indenter, setOf())
+						fragments[clazz] = fragment
+						classSizes += clazz to fragment.code.length.toLong()
+					} else {
+						val start = classesWriter.length
+						classesWriter.write(indenter)
+						classSizes += clazz to (classesWriter.length - start)
+					}
+				}
+				if (split.split) {
+					val chunks = JsChunks(fragments.keys.toList(), fragments.mapValues { it.value.code.length }, split.chunkSize)
+						.split(getEagerClasses(concatFilesTrans.flatMap { listOf(it.prepend, it.append) }.filterNotNull()))
+					for (clazz in chunks.main) classesWriter.write(fragments[clazz]!!.toIndenter())
+					val chunkBaseName = File(outputFileBaseName).nameWithoutExtension
+					for ((index, chunk) in chunks.chunks.withIndex()) {
+						val chunkName = "$chunkBaseName.chunk$index.js"
+						output[chunkName].openWriter().use { chunkWriter ->
+							for (clazz in chunk) {
+								chunkWriter.write(fragments[clazz]!!.code)
+								lazyClasses += clazz to chunkName
+							}
+						}
+					}
+					log("Split: ${chunks.main.size} classes in $outputFileBaseName, ${lazyClasses.size} in ${chunks.chunks.size} chunks")
+				}
+				classesWriter
+			}
+
+			val strings = if (incremental != null) {
+				names.getGlobalStrings().filter { it.id in usedStrings }
 			} else {
-				writeClass(clazz)
+				names.getGlobalStrings()
 			}
-			indenterPerClass[clazz] = indenter
-			classesIndenter.add(indenter)
-		}
+			incremental?.save(strings)
 
-		val SHOW_SIZE_REPORT = true
-		if (SHOW_SIZE_REPORT) {
-			for ((clazz, text) in indenterPerClass.toList().map { it.first to it.second.toString() }.sortedBy { it.second.length })
-				println("CLASS SIZE: ${clazz.fqname} : ${text.length}")
-		}
+			val SHOW_SIZE_REPORT = true
+			if (SHOW_SIZE_REPORT) {
+				for ((clazz, size) in classSizes.sortedBy { it.second }) println("CLASS SIZE: ${clazz.fqname} : $size")
+			}
 
-		val mainClassFq = program.entrypoint
-		val mainClass = mainClassFq.targetClassFqName
-		//val mainMethod = program[mainClassFq].getMethod("main", AstType.build { METHOD(VOID, ARRAY(STRING)) }.desc)!!.jsName
-		val mainMethod = "main"
-		val entryPointClass = FqName(mainClassFq.fqname + "_EntryPoint")
-		val entryPointFilePath = entryPointClass.targetFilePath
-		val entryPointFqName = entryPointClass.targetGeneratedFqName
-		val entryPointSimpleName = entryPointClass.targetGeneratedSimpleClassName
-		val entryPointPackage = entryPointFqName.packagePath
-
-		val customMain = program.allAnnotationsList.getTypedList(JTranscCustomMainList::value).firstOrNull { it.target == "js" }?.value
-
-		val plainMain = Indenter.genString { line("program.registerMainClass('{{ mainClass }}');") }
-
-		log("Using ... " + if (customMain != null) "customMain" else "plainMain")
-
-		templateString.setExtraData(mapOf(
-			"entryPointPackage" to entryPointPackage,
-			"entryPointSimpleName" to entryPointSimpleName,
-			"mainClass" to mainClass,
-			"mainClass2" to mainClassFq.fqname,
-			"mainMethod" to mainMethod
-		))
-
-		val strs = Indenter.gen {
-			line("program.registerStrings({")
-			indent { for (e in names.getGlobalStrings()) line("${e.id} : ${e.str.quote()},") }
-			line("});");
-		}
+			val mainClassFq = program.entrypoint
+			val mainClass = mainClassFq.targetClassFqName
+			//val mainMethod = program[mainClassFq].getMethod("main", AstType.build { METHOD(VOID, ARRAY(STRING)) }.desc)!!.jsName
+			val mainMethod = "main"
+			val entryPointClass = FqName(mainClassFq.fqname + "_EntryPoint")
+			val entryPointFilePath = entryPointClass.targetFilePath
+			val entryPointFqName = entryPointClass.targetGeneratedFqName
+			val entryPointSimpleName = entryPointClass.targetGeneratedSimpleClassName
+			val entryPointPackage = entryPointFqName.packagePath
+
+			val customMain = program.allAnnotationsList.getTypedList(JTranscCustomMainList::value).firstOrNull { it.target == "js" }?.value
+
+			val plainMain = Indenter.genString { line("program.registerMainClass('{{ mainClass }}');") }
+
+			log("Using ... " + if (customMain != null) "customMain" else "plainMain")
+
+			templateString.setExtraData(mapOf(
+				"entryPointPackage" to entryPointPackage,
+				"entryPointSimpleName" to entryPointSimpleName,
+				"mainClass" to mainClass,
+				"mainClass2" to mainClassFq.fqname,
+				"mainMethod" to mainMethod
+			))
+
+			val table = StringTable(strings, stringTable.compress)
+			val strs = Indenter.gen {
+				line("program.registerStrings(")
+				indent {
+					line("[${table.ids.joinToString(",")}],")
+					line(if (table.compress) "[${table.prefixes.joinToString(",")}]," else "null,")
+					line("[${table.ends.joinToString(",")}],")
+					line(table.data.quote())
+				}
+				line(");")
+			}
 
-		val out = Indenter.gen {
-			if (settings.debug) line("//# sourceMappingURL=program.js.map")
-			for (f in concatFilesTrans) if (f.prepend != null) line(f.prepend)
-			line(strs.toString())
-			for (indent in classesIndenter) line(indent)
-			line(templateString.gen(customMain ?: plainMain, context, "customMain"))
-			for (f in concatFilesTrans.reversed()) if (f.append != null) line(f.append)
-		}
+			val header = Indenter.gen {
+				if (settings.debug) line("//# sourceMappingURL=program.js.map")
+				for (f in concatFilesTrans) if (f.prepend != null) line(f.prepend)
+				line(strs.toString())
+				for ((clazz, chunkName) in lazyClasses) {
+					val name = names.getClassFqNameForCalling(clazz.name)
+					line("var $name = program.lazyType(${clazz.name.targetGeneratedSimpleClassName.quote()}, ${chunkName.quote()}, function(c) { $name = c; });")
+				}
+			}
 
-		val sources = Allocator<String>()
-		val mappings = hashMapOf<Int, Sourcemaps.MappingItem>()
+			val footer = Indenter.gen {
+				line(templateString.gen(customMain ?: plainMain, context, "customMain"))
+				for (f in concatFilesTrans.reversed()) if (f.append != null) line(f.append)
+			}
 
-		val source = out.toString { sb, line, data ->
-			if (settings.debug && data is AstStm.LINE) {
-				//println("MARKER: ${sb.length}, $line, $data, ${clazz.source}")
+			fun addMapping(line: Int, data: AstStm.LINE) {
 				mappings[line] = Sourcemaps.MappingItem(
 					sourceIndex = sources.allocateOnce(data.file),
 					sourceLine = data.line,
 					sourceColumn = 0,
 					targetColumn = 0
 				)
-				//clazzName.internalFqname + ".java"
 			}
-		}
 
-		val sourceMap = if (settings.debug) Sourcemaps.encodeFile(sources.array, mappings) else null
-		// Generate source
-		//println("outputFileBaseName:$outputFileBaseName")
-		output[outputFileBaseName] = source
-		if (sourceMap != null) output[outputFileBaseName + ".map"] = sourceMap
+			// Generate source
+			//println("outputFileBaseName:$outputFileBaseName")
+			output[outputFileBaseName].openWriter().use { writer ->
+				val out = IndenterWriter(writer, { line, data -> if (settings.debug && data is AstStm.LINE) addMapping(line, data) })
+				out.write(header)
+				val classesLine = out.line
+				for ((line, data) in classMappings) addMapping(classesLine + line, data)
+				classesFile.bufferedReader(Charsets.UTF_8).use { out.writeRaw(it, classesWriter.line) }
+				out.write(footer)
+			}
+
+			val sourceMap = if (settings.debug) Sourcemaps.encodeFile(sources.array, mappings) else null
+			if (sourceMap != null) output[outputFileBaseName + ".map"] = sourceMap
+			if (jsNames.minimize) output[outputFileBaseName + ".names"] = jsNames.minimizedMembers.map { "${it.key}\t${it.value}\n" }.joinToString("")
 
-		injector.mapInstance(ConfigEntryPointClass(entryPointClass))
-		injector.mapInstance(ConfigEntryPointFile(entryPointFilePath))
-		injector.mapInstance(ConfigJavascriptOutput(output[outputFile]))
+			injector.mapInstance(ConfigEntryPointClass(entryPointClass))
+			injector.mapInstance(ConfigEntryPointFile(entryPointFilePath))
+			injector.mapInstance(ConfigJavascriptOutput(output[outputFile]))
+		} finally {
+			classesFile.delete()
+		}
+	}
+
+	// Classes the main file needs loaded: the code using them directly doesn't go through SI() first
+	private fun getEagerClasses(runtimeCode: List<String>): Set<FqName> {
+		val classesByName = program.classes.associateBy { names.getClassFqNameForCalling(it.name) }
+		val eager = hashSetOf<FqName>()
+		val entryPoint = program[program.entrypoint]
+		eager += entryPoint.name
+		eager += com.jtransc.ast.References.get(entryPoint).map { it.name }
+		eager += templateString.staticallyReferencedClasses
+		val nativeCode = runtimeCode + program.classes.flatMap { clazz ->
+			clazz.annotationsList.getTypedList(JTranscAddMembersList::value).filter { it.target == "js" }.flatMap { it.value.toList() } +
+				clazz.methods.flatMap { it.annotationsList.getTypedList(JTranscMethodBodyList::value).filter { it.target == "js" }.flatMap { it.value.toList() } }
+		}
+		for (code in nativeCode) {
+			for (token in Regex("[\\w$]+").findAll(code)) eager += classesByName[token.value]?.name ?: continue
+		}
+		return eager
 	}
 
 	fun annotation(a: AstAnnotation): String {
-		fun escapeValue(it: Any?): String {
+		fun escapeValue(it: Any?, type: AstType?): String {
 			return when (it) {
 				null -> "null"
 				is AstAnnotation -> annotation(it)
-				is Pair<*, *> -> escapeValue(it.second)
+				is Pair<*, *> -> escapeValue(it.second, type)
 				is AstFieldRef -> names.buildStaticField(it)
 				is AstFieldWithoutTypeRef -> names.buildStaticField(program[it].ref)
 				is String -> "N.boxString(${it.quote()})"
 				is Boolean, is Byte, is Short, is Char, is Int, is Long, is Float, is Double -> names.escapeConstant(it)
-				is List<*> -> "[" + it.map { escapeValue(it) }.joinToString(", ") + "]"
+				is List<*> -> {
+					val element = (type as? AstType.ARRAY)?.element
+					val items = "[" + it.map { escapeValue(it, element) }.joinToString(", ") + "]"
+					when {
+						type !is AstType.ARRAY -> items
+						element is AstType.Primitive -> "${type.targetTypeNew}.fromArray($items)"
+						else -> "JA_L.fromArray($items, ${type.mangle().quote()})"
+					}
+				}
 				is com.jtransc.org.objectweb.asm.Type -> "N.resolveClass(" + it.descriptor.quote() + ")"
 				else -> invalidOp("GenJsGen.annotation.escapeValue: Don't know how to handle value ${it.javaClass.name} : ${it.toBetterString()} while generating $context")
 			}
@@ -333,7 +554,7 @@ class GenJsGen(injector: Injector) : GenCommonGen(injector) {
 		//val itStr = a.elements.map { it.key.quote() + ": " + escapeValue(it.value) }.joinToString(", ")
 		val annotation = program.get3(a.type)
 		val itStr = annotation.methods.map {
-			escapeValue(if (it.name in a.elements) a.elements[it.name]!! else it.defaultTag)
+			escapeValue(if (it.name in a.elements) a.elements[it.name]!! else it.defaultTag, it.methodType.ret)
 		}.joinToString(", ")
 		//return "new ${names.getFullAnnotationProxyName(a.type)}([$itStr])"
 		return "R.createAnnotation(${names.getClassFqNameForCalling(a.type.name)}, [$itStr])"
@@ -411,7 +632,6 @@ class GenJsGen(injector: Injector) : GenCommonGen(injector) {
 	override fun N_i2s(str: String) = "(($str)<<16>>16)"
 	override fun N_f2i(str: String) = "(($str)|0)"
 	override fun N_i2i(str: String) = N_i(str)
-	override fun N_i2j(str: String) = "N.i2j($str)"
 	override fun N_i2f(str: String) = "Math.fround(+($str))"
 	override fun N_i2d(str: String) = "+($str)"
 	override fun N_f2f(str: String) = "Math.fround($str)"
@@ -419,21 +639,45 @@ class GenJsGen(injector: Injector) : GenCommonGen(injector) {
 	override fun N_d2f(str: String) = "Math.fround(+($str))"
 	override fun N_d2i(str: String) = "(($str)|0)"
 	override fun N_d2d(str: String) = "+($str)"
-	override fun N_l2i(str: String) = "N.l2i($str)"
 	override fun N_l2l(str: String) = "($str)"
-	override fun N_l2f(str: String) = "Math.fround(N.l2d($str))"
-	override fun N_l2d(str: String) = "N.l2d($str)"
 	override fun N_getFunction(str: String) = "N.getFunction($str)"
 	override fun N_c(str: String, from: AstType, to: AstType) = "($str)"
-	override fun N_lneg(str: String) = "N.lneg($str)"
-	override fun N_linv(str: String) = "N.linv($str)"
 	override fun N_ineg(str: String) = "-($str)"
 	override fun N_iinv(str: String) = "~($str)"
 	override fun N_fneg(str: String) = "-($str)"
 	override fun N_dneg(str: String) = "-($str)"
 	override fun N_znot(str: String) = "!($str)"
 	override fun N_imul(l: String, r: String): String = "Math.imul($l, $r)"
-	override fun genLiteralString(v: String): String = "S[" + names.allocString(context.clazz.name, v) + "]"
+
+	// BigInt longs: arithmetic is emitted inline so optimizing engines can keep the values unboxed
+	private fun N_lwrap(str: String) = "BigInt.asIntN(64, $str)"
+
+	override fun N_i2j(str: String) = if (bigint) "BigInt($str)" else "N.i2j($str)"
+	override fun N_l2i(str: String) = if (bigint) "Number(BigInt.asIntN(32, $str))" else "N.l2i($str)"
+	override fun N_l2f(str: String) = if (bigint) "Math.fround(Number($str))" else "Math.fround(N.l2d($str))"
+	override fun N_l2d(str: String) = if (bigint) "Number($str)" else "N.l2d($str)"
+	override fun N_lneg(str: String) = if (bigint) N_lwrap("-($str)") else "N.lneg($str)"
+	override fun N_linv(str: String) = if (bigint) "(~($str))" else "N.linv($str)"
+	override fun N_ladd(l: String, r: String) = if (bigint) N_lwrap("($l) + ($r)") else super.N_ladd(l, r)
+	override fun N_lsub(l: String, r: String) = if (bigint) N_lwrap("($l) - ($r)") else super.N_lsub(l, r)
+	override fun N_lmul(l: String, r: String) = if (bigint) N_lwrap("($l) * ($r)") else super.N_lmul(l, r)
+	override fun N_leq(l: String, r: String) = if (bigint) "(($l) == ($r))" else super.N_leq(l, r)
+	override fun N_lne(l: String, r: String) = if (bigint) "(($l) != ($r))" else super.N_lne(l, r)
+	override fun N_lge(l: String, r: String) = if (bigint) "(($l) >= ($r))" else super.N_lge(l, r)
+	override fun N_lle(l: String, r: String) = if (bigint) "(($l) <= ($r))" else super.N_lle(l, r)
+	override fun N_llt(l: String, r: String) = if (bigint) "(($l) < ($r))" else super.N_llt(l, r)
+	override fun N_lgt(l: String, r: String) = if (bigint) "(($l) > ($r))" else super.N_lgt(l, r)
+	override fun N_land(l: String, r: String) = if (bigint) "(($l) & ($r))" else super.N_land(l, r)
+	override fun N_lor(l: String, r: String) = if (bigint) "(($l) | ($r))" else super.N_lor(l, r)
+	override fun N_lxor(l: String, r: String) = if (bigint) "(($l) ^ ($r))" else super.N_lxor(l, r)
+	override fun N_lshl(l: String, r: String) = if (bigint) N_lwrap("($l) << BigInt(($r) & 63)") else super.N_lshl(l, r)
+	override fun N_lshr(l: String, r: String) = if (bigint) "(($l) >> BigInt(($r) & 63))" else super.N_lshr(l, r)
+	override fun N_lushr(l: String, r: String) = if (bigint) N_lwrap("BigInt.asUintN(64, $l) >> BigInt(($r) & 63)") else super.N_lushr(l, r)
+	override fun genLiteralString(v: String): String {
+		val id = names.allocString(context.clazz.name, v)
+		refs.strings += id
+		return "(S[$id] || __S($id))"
+	}
 
 	override fun genExprMethodClass(e: AstExpr.METHOD_CLASS): String {
 		val methodInInterfaceRef = e.methodInInterfaceRef
@@ -458,6 +702,15 @@ class GenJsGen(injector: Injector) : GenCommonGen(injector) {
 		} + ")"
 	}
 
+	override fun genExprCallBaseInstance(e2: AstExpr.CALL_INSTANCE, clazz: AstType.REF, refMethodClass: AstClass, method: AstMethodRef, methodAccess: String, args: List<String>): String {
+		if (!e2.isDirect) return super.genExprCallBaseInstance(e2, clazz, refMethodClass, method, methodAccess, args)
+		val base = names.getClassFqNameForCalling(refMethodClass.name) + ".prototype"
+		// Function.call doesn't fail on a null receiver like a property access does
+		val obj = if (e2.obj.value.isNotNull()) e2.obj.genNotNull() else "N.checkNotNull(${e2.obj.genNotNull()})"
+		val argsString = (listOf(obj) + args).joinToString(", ")
+		return "$base$methodAccess.call($argsString)"
+	}
+
 	override fun genExprCallBaseSuper(e2: AstExpr.CALL_SUPER, clazz: AstType.REF, refMethodClass: AstClass, method: AstMethodRef, methodAccess: String, args: List<String>): String {
 		val superMethod = refMethodClass[method.withoutClass] ?: invalidOp("Can't find super for method : $method")
 		val base = names.getClassFqNameForCalling(superMethod.containingClass.name) + ".prototype"
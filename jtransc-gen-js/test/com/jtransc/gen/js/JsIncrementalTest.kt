@@ -0,0 +1,58 @@
+package com.jtransc.gen.js
+
+import com.jtransc.ConfigEntryPoint
+import com.jtransc.ConfigResourcesVfs
+import com.jtransc.ast.*
+import com.jtransc.ast.incremental.IncrementalBuild
+import com.jtransc.gen.common.CommonNames
+import com.jtransc.text.Indenter
+import com.jtransc.vfs.MemoryVfs
+import com.jtransc.vfs.SyncVfsFile
+import org.junit.Assert
+import org.junit.Test
+
+class JsIncrementalTest {
+	val types = AstTypes()
+	val folder = MemoryVfs()
+
+	private fun program(class2Methods: List<String>): AstProgram {
+		val program = AstProgram(ConfigResourcesVfs(MemoryVfs()), ConfigEntryPoint("Class1".fqname), types)
+		for ((name, methods) in listOf("Class1" to listOf("test"), "Class2" to class2Methods)) {
+			val clazz = AstClass("$name.java", program, name.fqname, AstModifiers.withFlags(AstModifiers.ACC_PUBLIC))
+			for ((id, method) in methods.withIndex()) {
+				clazz.add(AstMethod(clazz, id, method, AstType.METHOD(AstType.VOID, listOf()), listOf(), "()V", null, null, AstModifiers.withFlags(AstModifiers.ACC_PUBLIC), { null }, types = types))
+			}
+			program.add(clazz)
+		}
+		return program
+	}
+
+	private fun incremental(program: AstProgram, folder: SyncVfsFile) = JsIncremental(
+		IncrementalBuild(program, folder, "settings"),
+		JsNames(program, ConfigMinimizeNames(false), ConfigJsLong(JsLong.EMULATED)),
+		reuse = true
+	)
+
+	private fun fragment(code: String, strings: Set<Int>) = JsIncremental.Fragment.fromIndenter(Indenter.gen {
+		mark(AstStm.LINE("$code.java", 10))
+		line(code)
+	}, strings)
+
+	@Test fun testReuseUnchangedClass() {
+		val program1 = program(listOf("test"))
+		val incremental1 = incremental(program1, folder)
+		for (clazz in program1.classes) Assert.assertNull(incremental1.get(clazz))
+		incremental1.put(program1["Class1".fqname], fragment("class1", setOf(0)))
+		incremental1.put(program1["Class2".fqname], fragment("class2", setOf(1)))
+		incremental1.save(listOf(CommonNames.StringInPool(0, "a"), CommonNames.StringInPool(1, "b")))
+
+		val program2 = program(listOf("test", "test2"))
+		val incremental2 = incremental(program2, folder)
+		val reused = incremental2.get(program2["Class1".fqname])!!
+		val expected = fragment("class1", setOf(0))
+		Assert.assertEquals(expected.code, reused.code)
+		Assert.assertEquals(expected.marks.map { Triple(it.first, it.second.file, it.second.line) }, reused.marks.map { Triple(it.first, it.second.file, it.second.line) })
+		Assert.assertEquals(setOf(0), reused.strings)
+		Assert.assertNull(incremental2.get(program2["Class2".fqname]))
+	}
+}
@@ -74,6 +74,12 @@ open class JTranscGradleExtension(val project: Project) {
 	var analyzer: Boolean? = null
 	var mainClassName: String? = null
 	var treeshaking: Boolean? = null
+	var treeshakingRta: Boolean? = null
+	var incremental: Boolean? = null
+	var astCache: String? = null
+	var inlining: Boolean? = null
+	var devirtualize: Boolean? = null
+	var escapeAnalysis: Boolean? = null
 
 	/*
 	Alias for:
@@ -2,6 +2,10 @@ package com.jtransc.gradle.tasks
 
 import com.jtransc.*
 import com.jtransc.ast.*
+import com.jtransc.ast.incremental.ConfigIncremental
+import com.jtransc.ast.optimize.ConfigDevirtualization
+import com.jtransc.ast.optimize.ConfigEscapeAnalysis
+import com.jtransc.ast.optimize.ConfigInlining
 import com.jtransc.error.invalidOp
 import com.jtransc.gradle.JTranscGradleExtension
 import com.jtransc.gradle.get
@@ -22,6 +26,12 @@ open class AbstractJTranscGradleTask : DefaultTask() {
 	var debug: Boolean? = null
 	var compile: Boolean? = null
 	var treeshaking: Boolean? = null
+	var treeshakingRta: Boolean? = null
+	var incremental: Boolean? = null
+	var astCache: String? = null
+	var inlining: Boolean? = null
+	var devirtualize: Boolean? = null
+	var escapeAnalysis: Boolean? = null
 	var analyzer: Boolean? = null
 	var orientation: String? = null
 	var icon: String? = null
@@ -108,7 +118,12 @@ open class AbstractJTranscGradleTask : DefaultTask() {
 		injector.mapInstance(BuildBackend.ASM)
 		injector.mapInstance(ConfigMinimizeNames(minimizedNames ?: extension.minimizeNames ?: false))
 		injector.mapInstance(ConfigCompile(compile ?: true))
-		injector.mapInstance(ConfigTreeShaking(treeshaking ?: extension.treeshaking ?: false))
+		injector.mapInstance(ConfigTreeShaking(treeshaking ?: extension.treeshaking ?: false, rta = treeshakingRta ?: extension.treeshakingRta ?: false))
+		injector.mapInstance(ConfigIncremental(incremental ?: extension.incremental ?: false))
+		injector.mapInstance(ConfigAstCache((astCache ?: extension.astCache)?.let { project.file(it).absolutePath }))
+		injector.mapInstance(ConfigInlining(inlining ?: extension.inlining ?: false))
+		injector.mapInstance(ConfigDevirtualization(devirtualize ?: extension.devirtualize ?: false))
+		injector.mapInstance(ConfigEscapeAnalysis(escapeAnalysis ?: extension.escapeAnalysis ?: false))
 
 		injector.mapInstances(
 			ConfigClassPaths(
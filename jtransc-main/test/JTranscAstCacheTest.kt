@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import big.HelloWorldTest
+import com.jtransc.ast.ConfigAstCache
+import com.jtransc.ast.serialization.AstCache
+import com.jtransc.gen.common.ConfigOutputFile2
+import com.jtransc.gen.js.JsTarget
+import com.jtransc.injector.Injector
+import org.junit.Assert
+import org.junit.Test
+
+class JTranscAstCacheTest : JTranscTestBase() {
+	class Build(val injector: Injector, val output: String) {
+		val cache = injector.get<AstCache>()
+		val source = injector.get<ConfigOutputFile2>().file.readText()
+	}
+
+	fun build(cacheDir: String): Build {
+		val injector = Injector()
+		val output = runClass(HelloWorldTest::class.java, lang = "js", minimize = false, analyze = null, target = JsTarget, configs = listOf(ConfigAstCache(cacheDir)), injector = injector)
+		return Build(injector, output)
+	}
+
+	@Test fun testSecondBuildReadsTheCache() {
+		val cacheDir = createTempDir("jtransc-ast-cache")
+		try {
+			val first = build(cacheDir.absolutePath)
+			Assert.assertEquals(0, first.cache.hits.get())
+			Assert.assertTrue(first.cache.misses.get() > 0)
+
+			val second = build(cacheDir.absolutePath)
+			Assert.assertTrue(second.cache.hits.get() > 0)
+			Assert.assertEquals(first.cache.misses.get(), second.cache.hits.get() + second.cache.misses.get())
+
+			Assert.assertEquals(normalize(first.output), normalize(second.output))
+			Assert.assertEquals(first.source, second.source)
+		} finally {
+			cacheDir.deleteRecursively()
+		}
+	}
+}
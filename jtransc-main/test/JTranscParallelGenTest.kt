@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import big.BigTest
+import com.jtransc.ConfigThreads
+import com.jtransc.gen.GenTargetDescriptor
+import com.jtransc.gen.common.ConfigOutputFile2
+import com.jtransc.gen.cpp.CppTarget
+import com.jtransc.gen.haxe.HaxeTarget
+import com.jtransc.gen.js.JsTarget
+import com.jtransc.injector.Injector
+import org.junit.Assert
+import org.junit.Test
+
+class JTranscParallelGenTest : JTranscTestBase() {
+	fun build(target: GenTargetDescriptor, lang: String, minimize: Boolean, threads: Int): String {
+		val injector = Injector()
+		runClass(BigTest::class.java, lang = lang, minimize = minimize, analyze = null, target = target, configs = listOf(ConfigThreads(threads)), injector = injector)
+		return injector.get<ConfigOutputFile2>().file.readText()
+	}
+
+	fun assertSameOutput(target: GenTargetDescriptor, lang: String, minimize: Boolean) {
+		val serial = build(target, lang, minimize, threads = 1)
+		val parallel = build(target, lang, minimize, threads = 4)
+		Assert.assertEquals(serial, parallel)
+	}
+
+	@Test fun testJs() = assertSameOutput(JsTarget, "js", minimize = false)
+	@Test fun testJsMinimized() = assertSameOutput(JsTarget, "js", minimize = true)
+	@Test fun testCpp() = assertSameOutput(CppTarget, "cpp", minimize = false)
+	@Test fun testHaxeJs() = assertSameOutput(HaxeTarget, "js", minimize = true)
+}
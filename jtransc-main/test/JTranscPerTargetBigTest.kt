@@ -17,9 +17,25 @@
 import big.BigTest
 import big.HelloWorldKotlinTest
 import big.HelloWorldTest
+import com.jtransc.gen.cpp.ConfigCppMemory
+import com.jtransc.gen.cpp.ConfigCppStrings
+import com.jtransc.gen.cpp.CppMemory
+import com.jtransc.gen.cpp.CppStrings
+import com.jtransc.gen.common.ConfigStringTable
 import com.jtransc.gen.cpp.CppTarget
 import com.jtransc.gen.haxe.HaxeTarget
+import com.jtransc.gen.js.ConfigJsLong
+import com.jtransc.gen.js.ConfigJsSplit
+import com.jtransc.gen.js.JsLong
 import com.jtransc.gen.js.JsTarget
+import javatest.lang.ClassInitTest
+import javatest.lang.CompactCharsTest
+import javatest.lang.ExecutorsTest
+import javatest.lang.SafepointsTest
+import javatest.lang.StringLiteralsTest
+import javatest.lang.ThreadsTest
+import javatest.misc.CyclesTest
+import javatest.utils.ArrayIntrinsicsTest
 import javatest.utils.KotlinInheritanceTest
 import org.junit.Test
 
@@ -30,21 +46,47 @@ class JTranscPerTargetBigTest : JTranscTestBase() {
 	override val TREESHAKING_TRACE = false
 
 	@Test fun testPlainCpp() = testClass<BigTest>(minimize = false, target = CppTarget, log = null, debug = true)
+	@Test fun testPlainCppGc() = testClass<BigTest>(minimize = false, target = CppTarget, log = null, debug = true, configs = listOf(ConfigCppMemory(CppMemory.GC)))
+	@Test fun testCyclesCppGc() = testClass<CyclesTest>(minimize = false, target = CppTarget, log = null, debug = true, configs = listOf(ConfigCppMemory(CppMemory.GC)))
+	@Test fun testPlainCppStaticStrings() = testClass<BigTest>(minimize = false, target = CppTarget, log = null, debug = true, configs = listOf(ConfigCppStrings(CppStrings.STATIC)))
+	@Test fun testPlainCppCompactStrings() = testClass<BigTest>(minimize = false, target = CppTarget, log = null, debug = true, configs = listOf(ConfigCppStrings(compact = true)))
+	@Test fun testCompactCharsCpp() = testClass<CompactCharsTest>(minimize = false, target = CppTarget, log = null, debug = true, configs = listOf(ConfigCppStrings(compact = true)))
 
 	//@Test fun testPlainJs() = testClass<BigTest>(minimize = false, target = JsTarget, log = null)
 	@Test fun testPlainJs() = testClass<BigTest>(minimize = false, target = JsTarget, log = true)
+	@Test fun testPlainJsMinimized() = testClass<BigTest>(minimize = true, target = JsTarget, log = null)
+	@Test fun testPlainJsBigInt() = testClass<BigTest>(minimize = false, target = JsTarget, log = null, configs = listOf(ConfigJsLong(JsLong.BIGINT)))
+	// Small chunks, so most classes are only loaded when SI() or Class.forName first needs them
+	@Test fun testPlainJsSplit() = testClass<BigTest>(minimize = false, target = JsTarget, log = null, configs = listOf(ConfigJsSplit(true, chunkSize = 8 * 1024)))
 
 	@Test fun testKotlinInheritanceTestCpp() = testClass<KotlinInheritanceTest>(minimize = false, target = CppTarget, log = null, debug = true)
 	@Test fun testKotlinInheritanceTestJs() = testClass<KotlinInheritanceTest>(minimize = false, target = JsTarget, log = true)
 
 
 	@Test fun testHelloWorldJs() = testClass<HelloWorldTest>(minimize = false, target = JsTarget, log = true)
+	@Test fun testHelloWorldJsMinimized() = testClass<HelloWorldTest>(minimize = true, target = JsTarget, log = true)
 	@Test fun testHelloWorldCpp() = testClass<HelloWorldTest>(minimize = false, target = CppTarget, log = true, debug = true)
 	@Test fun testHelloWorldCppRelease() = testClass<HelloWorldTest>(minimize = false, target = CppTarget, log = true, debug = false)
 
 	@Test fun testHelloWorldKotlinTestJs() = testClass<HelloWorldKotlinTest>(minimize = false, target = JsTarget, log = true)
 	@Test fun testHelloWorldKotlinTestCpp() = testClass<HelloWorldKotlinTest>(minimize = false, target = CppTarget, log = true, debug = true)
 
+	@Test fun testThreadsCpp() = testClass<ThreadsTest>(minimize = false, target = CppTarget, log = null, debug = true)
+	@Test fun testThreadsCppGc() = testClass<ThreadsTest>(minimize = false, target = CppTarget, log = null, debug = true, configs = listOf(ConfigCppMemory(CppMemory.GC)))
+	@Test fun testSafepointsCppGc() = testClass<SafepointsTest>(minimize = false, target = CppTarget, log = null, debug = true, configs = listOf(ConfigCppMemory(CppMemory.GC)))
+	@Test fun testClassInitCpp() = testClass<ClassInitTest>(minimize = false, target = CppTarget, log = null, debug = true)
+
+	@Test fun testExecutorsJs() = testClass<ExecutorsTest>(minimize = false, target = JsTarget, log = null)
+
+	@Test fun testArrayIntrinsicsJs() = testClass<ArrayIntrinsicsTest>(minimize = false, target = JsTarget, log = null)
+	@Test fun testArrayIntrinsicsJsBigInt() = testClass<ArrayIntrinsicsTest>(minimize = false, target = JsTarget, log = null, configs = listOf(ConfigJsLong(JsLong.BIGINT)))
+	@Test fun testArrayIntrinsicsCpp() = testClass<ArrayIntrinsicsTest>(minimize = false, target = CppTarget, log = null, debug = true)
+	@Test fun testArrayIntrinsicsCppCompactStrings() = testClass<ArrayIntrinsicsTest>(minimize = false, target = CppTarget, log = null, debug = true, configs = listOf(ConfigCppStrings(compact = true)))
+
+	@Test fun testStringLiteralsJs() = testClass<StringLiteralsTest>(minimize = false, target = JsTarget, log = null)
+	@Test fun testStringLiteralsJsUncompressed() = testClass<StringLiteralsTest>(minimize = false, target = JsTarget, log = null, configs = listOf(ConfigStringTable(compress = false)))
+	@Test fun testStringLiteralsHaxeJs() = testClass<StringLiteralsTest>(minimize = true, target = HaxeTarget, lang = "js", log = null)
+
 
 	//@Test fun testHelloWorldCpp() = testClass<HelloWorldTest>(minimize = false, target = CppTarget, log = true, debug = false)
 
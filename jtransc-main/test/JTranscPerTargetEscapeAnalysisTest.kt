@@ -0,0 +1,30 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import big.BigTest
+import com.jtransc.gen.js.JsTarget
+import javatest.misc.ValueObjectsTest
+import org.junit.Test
+
+class JTranscPerTargetEscapeAnalysisTest : JTranscTestBase() {
+	override val TREESHAKING = true
+	override val INLINING = true
+	override val DEVIRTUALIZE = true
+	override val ESCAPE_ANALYSIS = true
+
+	@Test fun testValueObjectsJs() = testClass<ValueObjectsTest>(minimize = false, target = JsTarget, log = true)
+	@Test fun testPlainJs() = testClass<BigTest>(minimize = false, target = JsTarget, log = true)
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import big.BigTest
+import big.HelloWorldKotlinTest
+import big.HelloWorldTest
+import com.jtransc.gen.js.JsTarget
+import javatest.utils.KotlinInheritanceTest
+import org.junit.Test
+
+class JTranscPerTargetRtaTest : JTranscTestBase() {
+	override val TREESHAKING = true
+	override val TREESHAKING_RTA = true
+
+	@Test fun testPlainJs() = testClass<BigTest>(minimize = false, target = JsTarget, log = true)
+	@Test fun testKotlinInheritanceTestJs() = testClass<KotlinInheritanceTest>(minimize = false, target = JsTarget, log = true)
+	@Test fun testHelloWorldJs() = testClass<HelloWorldTest>(minimize = false, target = JsTarget, log = true)
+	@Test fun testHelloWorldKotlinTestJs() = testClass<HelloWorldKotlinTest>(minimize = false, target = JsTarget, log = true)
+}
@@ -19,6 +19,9 @@ import com.jtransc.ast.AstBuildSettings
 import com.jtransc.ast.AstTypes
 import com.jtransc.ast.ConfigMinimizeNames
 import com.jtransc.ast.ConfigTreeShaking
+import com.jtransc.ast.optimize.ConfigDevirtualization
+import com.jtransc.ast.optimize.ConfigEscapeAnalysis
+import com.jtransc.ast.optimize.ConfigInlining
 import com.jtransc.error.invalidOp
 import com.jtransc.gen.GenTargetDescriptor
 import com.jtransc.gen.js.JsTarget
@@ -35,6 +38,10 @@ import java.io.File
 open class JTranscTestBase {
 	open val TREESHAKING = true
 	open val TREESHAKING_TRACE = false
+	open val TREESHAKING_RTA = false
+	open val INLINING = false
+	open val DEVIRTUALIZE = false
+	open val ESCAPE_ANALYSIS = false
 	companion object {
 		val BACKEND = BuildBackend.ASM
 		const val MINIMIZE = true
@@ -63,11 +70,12 @@ open class JTranscTestBase {
 		target: GenTargetDescriptor? = null,
 		debug: Boolean? = null,
 		log: Boolean? = null,
+		configs: List<Any> = listOf(),
 		noinline transformer: (String) -> String = { it },
 		noinline transformerOut: (String) -> String = { it }
 	) {
 		com.jtransc.log.log.setTempLogger({ content, level -> if (log ?: DEBUG) println(content) }) {
-			testClass(minimize = minimize, analyze = analyze, lang = lang, clazz = T::class.java, transformer = transformer, transformerOut = transformerOut, target = target, debug = debug)
+			testClass(minimize = minimize, analyze = analyze, lang = lang, clazz = T::class.java, transformer = transformer, transformerOut = transformerOut, target = target, debug = debug, configs = configs)
 		}
 	}
 
@@ -86,11 +94,12 @@ open class JTranscTestBase {
 	fun <T : Any> testClass(
 		minimize: Boolean? = null, analyze: Boolean? = null, lang: String, clazz: Class<T>, debug: Boolean? = null, target: GenTargetDescriptor? = null,
 		transformer: (String) -> String,
-		transformerOut: (String) -> String
+		transformerOut: (String) -> String,
+		configs: List<Any> = listOf()
 	) {
 		println(clazz.name)
 		val expected = transformer(ClassUtils.callMain(clazz))
-		val result = transformerOut(runClass(clazz, minimize = minimize, analyze = analyze, lang = lang, target = target, debug = debug))
+		val result = transformerOut(runClass(clazz, minimize = minimize, analyze = analyze, lang = lang, target = target, debug = debug, configs = configs))
 		Assert.assertEquals(normalize(expected), normalize(result))
 	}
 
@@ -120,9 +129,21 @@ open class JTranscTestBase {
 		clazz: Class<T>, lang: String, minimize: Boolean?,
 		analyze: Boolean?, debug: Boolean? = null,
 		//target: GenTargetDescriptor = HaxeTarget
-		target: GenTargetDescriptor? = null
+		target: GenTargetDescriptor? = null,
+		// Target specific settings (ConfigCppMemory, ConfigJsLong...)
+		configs: List<Any> = listOf(),
+		injector: Injector = Injector()
 	): String {
-		val injector = Injector()
+		return createBuild(clazz, lang, minimize, analyze, debug, target, configs, injector).buildAndRunCapturingOutput().process.outerr
+	}
+
+	fun createBuild(
+		clazz: Class<*>, lang: String, minimize: Boolean?,
+		analyze: Boolean?, debug: Boolean? = null,
+		target: GenTargetDescriptor? = null,
+		configs: List<Any> = listOf(),
+		injector: Injector = Injector()
+	): JTranscBuild {
 		val projectRoot = locateProjectRoot()
 
 		//val threadId = Thread.currentThread().id
@@ -137,7 +158,11 @@ open class JTranscTestBase {
 
 		injector.mapImpl<AstTypes, AstTypes>()
 		injector.mapInstance(ConfigMinimizeNames(minimize ?: MINIMIZE))
-		injector.mapInstance(ConfigTreeShaking(TREESHAKING, TREESHAKING_TRACE))
+		injector.mapInstance(ConfigTreeShaking(TREESHAKING, TREESHAKING_TRACE, TREESHAKING_RTA))
+		injector.mapInstance(ConfigInlining(INLINING))
+		injector.mapInstance(ConfigDevirtualization(DEVIRTUALIZE))
+		injector.mapInstance(ConfigEscapeAnalysis(ESCAPE_ANALYSIS))
+		for (config in configs) injector.mapInstance(config)
 
 		return JTranscBuild(
 			injector = injector,
@@ -160,7 +185,7 @@ open class JTranscTestBase {
 					projectRoot["jtransc-rt-core/build/resources/main"].realpathOS
 				)
 			)
-		).buildAndRunCapturingOutput().process.outerr
+		)
 	}
 
 	val types = ThreadLocal.withInitial { AstTypes() }
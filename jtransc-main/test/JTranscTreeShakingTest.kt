@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import big.BigTest
+import com.jtransc.ast.AstProgram
+import com.jtransc.ast.treeshaking.TreeShaking
+import com.jtransc.gen.GenTargetDescriptor
+import com.jtransc.gen.cpp.CppTarget
+import com.jtransc.gen.js.JsTarget
+import com.jtransc.injector.Injector
+import javatest.utils.KotlinInheritanceTest
+import org.junit.Assert
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.PrintStream
+
+// Checks that the worklist tree shaker keeps the same classes, fields and methods as the recursive one
+// and traces them in the same order
+class JTranscTreeShakingTest : JTranscTestBase() {
+	val TRACE_PREFIXES = listOf("TEMPLATEREF: ", "_addMiniBasicClass: ", "addBasicClass: ", "addField: ", "methodRef: ", "addInstantiatedClass: ")
+
+	class Shaken(val trace: List<String>, val kept: List<String>)
+
+	fun generateBaseProgram(clazz: Class<*>, target: GenTargetDescriptor, lang: String): AstProgram {
+		return createBuild(clazz, lang = lang, minimize = false, analyze = null, target = target, injector = Injector()).generateBaseProgram()
+	}
+
+	fun dump(program: AstProgram): List<String> {
+		val out = arrayListOf<String>()
+		for (clazz in program.classes) {
+			out += "class ${clazz.name}"
+			for (field in clazz.fields) out += "  field ${field.ref}"
+			for (method in clazz.methods) out += "  method ${method.ref}"
+		}
+		return out
+	}
+
+	fun shake(shaker: () -> AstProgram): Shaken {
+		val bytes = ByteArrayOutputStream()
+		val oldOut = System.out
+		var program: AstProgram? = null
+		var error: Throwable? = null
+		System.setOut(PrintStream(bytes, true, "UTF-8"))
+		try {
+			// The recursive shaker needs a deep stack
+			val thread = Thread(null, {
+				try {
+					program = shaker()
+				} catch (t: Throwable) {
+					error = t
+				}
+			}, "tree-shaking", 1024L * 1024L * 1024L)
+			thread.start()
+			thread.join()
+		} finally {
+			System.setOut(oldOut)
+		}
+		if (error != null) throw error!!
+		val trace = bytes.toString("UTF-8").lines().filter { line -> TRACE_PREFIXES.any { line.startsWith(it) } }
+		return Shaken(trace, dump(program!!))
+	}
+
+	fun assertSameShaking(clazz: Class<*>, target: GenTargetDescriptor, lang: String, rta: Boolean) {
+		val program = generateBaseProgram(clazz, target, lang)
+		val expected = shake { LegacyTreeShaking(program, target.name, trace = true, rta = rta) }
+		val result = shake { TreeShaking(program, target.name, trace = true, rta = rta) }
+
+		Assert.assertTrue(expected.kept.contains("class ${clazz.name}"))
+		Assert.assertTrue(expected.trace.isNotEmpty())
+		Assert.assertEquals(expected.kept.joinToString("\n"), result.kept.joinToString("\n"))
+		Assert.assertEquals(expected.trace.joinToString("\n"), result.trace.joinToString("\n"))
+	}
+
+	@Test fun testBigTestJs() = assertSameShaking(BigTest::class.java, JsTarget, "js", rta = false)
+	@Test fun testBigTestJsRta() = assertSameShaking(BigTest::class.java, JsTarget, "js", rta = true)
+	@Test fun testBigTestCpp() = assertSameShaking(BigTest::class.java, CppTarget, "cpp", rta = false)
+	@Test fun testBigTestCppRta() = assertSameShaking(BigTest::class.java, CppTarget, "cpp", rta = true)
+	@Test fun testKotlinInheritanceTestJs() = assertSameShaking(KotlinInheritanceTest::class.java, JsTarget, "js", rta = false)
+	@Test fun testKotlinInheritanceTestJsRta() = assertSameShaking(KotlinInheritanceTest::class.java, JsTarget, "js", rta = true)
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.jtransc.annotation.JTranscAddFileList
+import com.jtransc.annotation.JTranscKeep
+import com.jtransc.annotation.JTranscMethodBodyList
+import com.jtransc.ast.*
+import com.jtransc.ast.template.CommonTagHandler
+import com.jtransc.ast.treeshaking.ClassTree
+import com.jtransc.ast.treeshaking.GetTemplateReferences
+import java.util.*
+
+// Recursive tree shaker that com.jtransc.ast.treeshaking.TreeShaking replaced, kept as a reference for JTranscTreeShakingTest.
+// Needs a deep thread stack on big programs.
+fun LegacyTreeShaking(program: AstProgram, target: String, trace: Boolean, rta: Boolean = false): AstProgram {
+	val SHAKING_TRACE = trace
+	val REFLECT_CONSTRUCTOR = FqName("java.lang.reflect.Constructor")
+
+	val main = program[program.entrypoint].getMethodSure("main", AstTypeBuild { METHOD(VOID, ARRAY(STRING)) }.desc)
+
+	class TreeShakingClass(val oldprogram: AstProgram, val target: String) {
+		val newprogram = AstProgram(program.configResourcesVfs, program.configEntrypoint, program.types)
+		val processed = hashSetOf<Any>()
+		val newclasses = hashMapOf<FqName, AstClass>()
+		val classtree = ClassTree(newprogram)
+
+		fun addTemplateReferences(template: String, templateReason: String) {
+			for (ref in GetTemplateReferences(oldprogram, template)) {
+				if (SHAKING_TRACE) println("TEMPLATEREF: $ref")
+				when (ref) {
+					is CommonTagHandler.CLASS -> {
+						addBasicClass(ref.clazz.name, reason = "template $templateReason")
+						addInstantiatedClass(ref.clazz.name, reason = "template $templateReason")
+					}
+					is CommonTagHandler.SINIT -> addBasicClass(ref.method.containingClass.name, reason = "template $templateReason")
+					is CommonTagHandler.CONSTRUCTOR -> {
+						addMethod(ref.method.ref, reason = "template $templateReason")
+						addInstantiatedClass(ref.method.containingClass.name, reason = "template $templateReason")
+					}
+					is CommonTagHandler.FIELD -> addField(ref.field.ref, reason = "template $templateReason")
+					is CommonTagHandler.METHOD -> addMethod(ref.method.ref, reason = "template $templateReason")
+				}
+			}
+		}
+
+		fun addFullClass(fqname: FqName, reason: Any? = null) {
+			val oldclazz = program[fqname]
+			//val newclazz = addBasicClass(fqname)
+			for (method in oldclazz.methods) addMethod(method.ref, reason = "fullclass $fqname")
+			for (field in oldclazz.fields) addField(field.ref, reason = "fullclass $fqname")
+		}
+
+		private fun _addMiniBasicClass(fqname: FqName, reason: Any? = null): AstClass {
+			if (fqname !in newclasses) {
+				if (SHAKING_TRACE) println("_addMiniBasicClass: $fqname. Reason: $reason")
+
+				val oldclazz = program[fqname]
+				val newclazz = AstClass(
+					source = oldclazz.source,
+					program = newprogram,
+					name = fqname,
+					modifiers = oldclazz.modifiers,
+					extending = oldclazz.extending,
+					implementing = oldclazz.implementing,
+					annotations = oldclazz.annotations
+				)
+
+				newclasses[fqname] = newclazz
+
+				newprogram.add(newclazz)
+
+				for (impl in oldclazz.implementing) _addMiniBasicClass(impl, reason = "implementing $fqname")
+				if (oldclazz.extending != null) _addMiniBasicClass(oldclazz.extending, reason = "extending $fqname") else null
+
+				classtree.add(newclazz)
+			}
+			return newclasses[fqname]!!
+		}
+
+		val initializedClasses = hashSetOf<FqName>()
+
+		fun addBasicClass(fqname: FqName, reason: String): AstClass {
+			if (fqname !in initializedClasses) {
+				initializedClasses += fqname
+				if (SHAKING_TRACE) println("addBasicClass: $fqname. Reason: $reason")
+
+				val oldclazz = program[fqname]
+				val newclazz = _addMiniBasicClass(fqname)
+
+				for (impl in oldclazz.implementing) addBasicClass(impl, reason = "implementing $fqname")
+				if (oldclazz.extending != null) addBasicClass(oldclazz.extending, reason = "extending $fqname") else null
+
+				if (oldclazz.annotationsList.contains<JTranscKeep>()) {
+					addFullClass(fqname, reason = "$fqname+@JTranscKeep")
+					addInstantiatedClass(fqname, reason = "$fqname+@JTranscKeep")
+				}
+
+				for (field in oldclazz.fields) {
+					if (field.annotationsList.contains<JTranscKeep>()) addField(field.ref, reason = "<field>@JTranscKeep")
+				}
+
+				for (method in oldclazz.methods) {
+					if (method.annotationsList.contains<JTranscKeep>()) {
+						addMethod(method.ref, reason = "<method>@JTranscKeep")
+						if (method.isInstanceInit) addInstantiatedClass(fqname, reason = "<init>@JTranscKeep")
+					}
+				}
+
+				// Add static constructors
+				for (method in oldclazz.methods.filter { it.isClassInit }) {
+					addMethod(method.ref, reason = "static constructor <clinit> fqname")
+				}
+
+				addAnnotations(newclazz.annotationsList, reason = "class $fqname")
+
+				//if (newclazz.fqname == "java.lang.Object") {
+				//	invalidOp
+				//}
+
+				JTranscAddFileList::class.java
+
+				//for (file in newclazz.annotationsList.getAllTyped<JTranscAddFile>()) {
+				for (file in newclazz.annotationsList.getTypedList(JTranscAddFileList::value)) {
+					if (file.process && file.target == target) {
+						val possibleFiles = listOf(file.prepend, file.append, file.prependAppend)
+						for (pf in possibleFiles.filter { !it.isNullOrEmpty() }) {
+							val filecontent = program.resourcesVfs[pf].readString()
+							addTemplateReferences(filecontent, templateReason = "JTranscAddFileList: $pf")
+						}
+					}
+				}
+
+				checkTreeNewClass(newclazz)
+			}
+			return newclasses[fqname]!!
+		}
+
+		fun addField(fieldRef: AstFieldRef, reason: String) {
+			if (fieldRef in processed) return
+			if (SHAKING_TRACE) println("addField: $fieldRef. Reason: $reason")
+			processed += fieldRef
+			val oldfield = oldprogram[fieldRef]
+			val oldfieldRef = oldfield.ref
+			val oldfield2 = oldfield.containingClass[oldfieldRef.withoutClass]
+
+			addBasicClass(fieldRef.containingClass, reason = "field $fieldRef")
+			val newclazz = addBasicClass(oldfield2.containingClass.name, reason = "field $fieldRef")
+
+			if (oldfield2.refWithoutClass in newclazz.fieldsByInfo) {
+				// Already added
+				return
+			}
+
+			val newfield = AstField(
+				containingClass = newclazz,
+				id = oldfield.id,
+				name = oldfield.name,
+				type = oldfield.type,
+				annotations = oldfield.annotations,
+				genericSignature = oldfield.genericSignature,
+				modifiers = oldfield.modifiers,
+				types = newprogram.types,
+				desc = oldfield.desc,
+				constantValue = oldfield.constantValue
+			)
+			newclazz.add(newfield)
+
+			addAnnotations(newfield.annotationsList, reason = "field $fieldRef")
+
+			for (type in newfield.type.getRefTypesFqName()) {
+				addBasicClass(type, reason = "field $fieldRef")
+			}
+		}
+
+		fun addAnnotations(annotations: AstAnnotationList, reason: String) {
+			for (annotation in annotations.list) {
+				for (ref in annotation.getRefTypesFqName()) {
+					addBasicClass(ref, "annotation $reason")
+				}
+			}
+		}
+
+		fun addMethod(methodRef: AstMethodRef, reason: String) {
+			if (methodRef in processed) return
+			if (SHAKING_TRACE) println("methodRef: $methodRef. Reason: $reason")
+			processed += methodRef
+			val oldmethod = program[methodRef]!!
+			val oldclazz = program[methodRef]!!.containingClass
+			val newclazz = addBasicClass(methodRef.containingClass, reason)
+			val newmethod = AstMethod(
+				containingClass = newclazz,
+				id = oldmethod.id,
+				name = oldmethod.name,
+				methodType = oldmethod.methodType,
+				annotations = oldmethod.annotations,
+				signature = oldmethod.signature,
+				genericSignature = oldmethod.genericSignature,
+				defaultTag = oldmethod.defaultTag,
+				modifiers = oldmethod.modifiers,
+				generateBody = oldmethod.generateBody,
+				bodyRef = oldmethod.bodyRef,
+				parameterAnnotations = oldmethod.parameterAnnotations,
+				types = newprogram.types
+			)
+			//println("    -> ${oldmethod.dependencies.classes}")
+
+			//if (methodRef.name == "testStaticTest1") println(methodRef)
+
+			newclazz.add(newmethod)
+
+			for (ref in methodRef.type.getRefTypesFqName()) addBasicClass(ref, reason = "$methodRef")
+
+			var dependenciesInBody = true
+
+			JTranscMethodBodyList::class.java // @HACK intelliJ remove JTranscMethodBodyList with just JTranscMethodBodyList::value
+
+			for (methodBody in newmethod.annotationsList.getTypedList(JTranscMethodBodyList::value)) {
+				if (methodBody.target == target) {
+					addTemplateReferences(methodBody.value.joinToString("\n"), "methodBody=$newmethod")
+					if (methodBody.cond.isNullOrEmpty()) {
+						dependenciesInBody = false
+					}
+				}
+			}
+
+			if (dependenciesInBody) {
+				for (dep in oldmethod.bodyDependencies.classes) addBasicClass(dep.name, reason = "dependenciesInBody $methodRef")
+				for (dep in oldmethod.bodyDependencies.fields) addField(dep, reason = "dependenciesInBody $methodRef")
+				for (dep in oldmethod.bodyDependencies.methods) addMethod(dep, reason = "dependenciesInBody $methodRef")
+				for (dep in oldmethod.bodyDependencies.instantiated) addInstantiatedClass(dep, reason = "dependenciesInBody $methodRef")
+			}
+
+			addAnnotations(newmethod.annotationsList, reason = "method $methodRef")
+			for (paramAnnotation in newmethod.parameterAnnotations) {
+				addAnnotations(AstAnnotationList(paramAnnotation), reason = "method $methodRef")
+			}
+
+			if (rta && !oldmethod.isStatic && !oldmethod.isClassOrInstanceInit) {
+				val nameDesc = methodRef.withoutClass
+				keptVirtualMethods.getOrPut(methodRef.containingClass) { arrayListOf() } += nameDesc
+				for (clazz in instantiatedSubtypes[methodRef.containingClass]?.toList() ?: listOf()) addVirtualTarget(clazz, nameDesc)
+			}
+			if (rta && oldmethod.isInstanceInit) {
+				val clazz = oldmethod.containingClass
+				if (!clazz.isAbstract && !clazz.isInterface) {
+					constructedClasses += clazz.name
+					if (reflectiveInstantiation) addInstantiatedClass(clazz.name, reason = "reflection $methodRef")
+				}
+			}
+			if (rta && !reflectiveInstantiation && methodRef.containingClass == REFLECT_CONSTRUCTOR && methodRef.name == "newInstance") {
+				reflectiveInstantiation = true
+				for (fqname in constructedClasses.toList()) addInstantiatedClass(fqname, reason = "reflection $methodRef")
+			}
+
+			checkTreeNewMethod(newmethod)
+		}
+
+		// Rapid type analysis: a kept virtual method is only propagated to the classes instantiated by the program
+		// (allocated in a kept body, referenced from a template or kept with @JTranscKeep) that inherit it
+		val instantiated = hashSetOf<FqName>()
+		val instantiatedSubtypes = hashMapOf<FqName, ArrayList<AstClass>>()
+		val keptVirtualMethods = hashMapOf<FqName, ArrayList<AstMethodWithoutClassRef>>()
+		// Classes with a kept constructor, instantiated through reflection once Constructor.newInstance is kept
+		val constructedClasses = arrayListOf<FqName>()
+		var reflectiveInstantiation = false
+
+		fun addInstantiatedClass(fqname: FqName, reason: String) {
+			if (!rta || fqname in instantiated) return
+			instantiated += fqname
+			if (SHAKING_TRACE) println("addInstantiatedClass: $fqname. Reason: $reason")
+			addBasicClass(fqname, reason)
+
+			val oldclazz = program[fqname]
+			val types = listOf(oldclazz) + oldclazz.ancestors + oldclazz.allInterfacesInAncestors
+			for (type in types) instantiatedSubtypes.getOrPut(type.name) { arrayListOf() } += oldclazz
+			for (type in types) {
+				for (nameDesc in keptVirtualMethods[type.name]?.toList() ?: listOf()) addVirtualTarget(oldclazz, nameDesc)
+			}
+		}
+
+		// Adds the implementation a call to nameDesc dispatches to on instances of clazz
+		private fun addVirtualTarget(clazz: AstClass, nameDesc: AstMethodWithoutClassRef) {
+			val method = clazz.getMethodInAncestors(nameDesc)
+			if (method != null) {
+				addMethod(method.ref, "rta ${clazz.name}")
+			} else {
+				// Default methods
+				for (iface in clazz.allInterfacesInAncestors) {
+					val imethod = iface.getMethod(nameDesc)
+					if (imethod != null) addMethod(imethod.ref, "rta ${clazz.name}")
+				}
+			}
+		}
+
+		// This should propagate methods to ancestors and descendants
+		// @TODO: We should really include ancestors? Even when they are not referenced? For now, let's play it safe.
+		private fun checkTreeNewClass(newclazz: AstClass) {
+			// Overrides are added when the class is instantiated
+			if (rta) return
+
+			// ancestors are known (descendants may not have been built completely)
+			val relatedClasses = listOf(newclazz) + newclazz.ancestors + newclazz.allInterfacesInAncestors + classtree.getDescendants(newclazz)
+
+			val methodRefs = arrayListOf<AstMethodWithoutClassRef>()
+
+			for (relatedClass in relatedClasses) {
+				for (newmethod in relatedClass.methods) {
+					if (!newmethod.isClassOrInstanceInit) methodRefs += newmethod.ref.nameDesc
+				}
+			}
+
+			for (relatedClass in relatedClasses) {
+				for (mref in methodRefs) {
+					val rmethod = oldprogram[relatedClass.name].getMethod(mref)
+					if (rmethod != null) addMethod(rmethod.ref, "checkTreeNewClass $newclazz")
+				}
+			}
+		}
+
+		//
+		private fun checkTreeNewMethod(newmethod: AstMethod) {
+			val newclazz = newmethod.containingClass
+			val descendants = if (rta) listOf() else classtree.getDescendants(newclazz)
+			val relatedClasses = listOf(newclazz) + newclazz.ancestors + newclazz.allInterfacesInAncestors + descendants
+			//val relatedClasses = newclazz.ancestors + classtree.getDescendants(newclazz)
+			// ancestors are known (descendants may not have been built completely)
+
+			for (relatedClass in relatedClasses) {
+				val rmethod = oldprogram[relatedClass.name].getMethod(newmethod.name, newmethod.desc)
+				if (rmethod != null) addMethod(rmethod.ref, "checkTreeNewMethod $newmethod")
+			}
+		}
+	}
+
+	// The unshaked program should be cached, in a per class basis, since it doesn't have information about other classes.
+	val shaking = TreeShakingClass(oldprogram = program, target = target)
+	shaking.addMethod(main.ref, "<ENTRY>")
+	//shaking.addMethod(program[FqName("java.lang.reflect.InvocationHandler")].getMethods("invoke").first().ref, "<ENTRY>")
+
+	when (target) {
+	// HACK
+		"cpp" -> {
+			val filecontent = program.resourcesVfs["cpp/Base.cpp"].readString()
+			shaking.addTemplateReferences(filecontent, templateReason = "<base target>: cpp/Base.cpp")
+		}
+	}
+
+	return shaking.newprogram;
+}
\ No newline at end of file
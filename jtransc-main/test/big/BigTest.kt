@@ -20,6 +20,7 @@ import jtransc.bug.*
 import jtransc.java8.DefaultMethodsTest
 import jtransc.java8.Java8Test
 import jtransc.jtransc.FastMemoryTest
+import jtransc.jtransc.MemAllocatorTest
 import jtransc.jtransc.SimdTest
 import jtransc.rt.test.*
 
@@ -32,6 +33,7 @@ object BigTest {
 		CopyTest.main(args)
 		FastMemoryTest.main(args)
 		FastMemoryTest.main(args)
+		MemAllocatorTest.main(args)
 		MultidimensionalArrayTest.main(args)
 		KotlinCollections.main(args)
 		//KotlinInheritanceTest.main(args)
@@ -0,0 +1,93 @@
+package javatest.lang;
+
+// Static initializers that run other threads, wait for each other or fail
+public class ClassInitTest {
+	static public void main(String[] args) throws Throwable {
+		initializerStartsThreadTest();
+		concurrentInitTest();
+		failingInitializerTest();
+	}
+
+	static private class Other {
+		static final String NAME = new StringBuilder("other").reverse().toString();
+	}
+
+	static private class StartsThread {
+		static final String VALUE;
+
+		static {
+			final String[] out = new String[1];
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					// Another class and a string literal, initialized while StartsThread is being initialized
+					out[0] = Other.NAME + ":" + "literal from a thread";
+				}
+			});
+			thread.start();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			VALUE = out[0];
+		}
+	}
+
+	static private void initializerStartsThreadTest() {
+		System.out.println("ClassInitTest.initializerStartsThreadTest:");
+		System.out.println(StartsThread.VALUE);
+	}
+
+	static private class Slow {
+		static final int VALUE;
+
+		static {
+			try {
+				Thread.sleep(50L);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			VALUE = 42;
+		}
+	}
+
+	static private void concurrentInitTest() throws InterruptedException {
+		System.out.println("ClassInitTest.concurrentInitTest:");
+		final int[] values = new int[4];
+		Thread[] threads = new Thread[values.length];
+		for (int n = 0; n < threads.length; n++) {
+			final int id = n;
+			threads[n] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					values[id] = Slow.VALUE;
+				}
+			});
+		}
+		for (Thread thread : threads) thread.start();
+		for (Thread thread : threads) thread.join();
+		for (int value : values) System.out.println(value);
+	}
+
+	static private class Failing {
+		static final int VALUE = fail();
+
+		static private int fail() {
+			throw new IllegalStateException("failing initializer");
+		}
+	}
+
+	static private void failingInitializerTest() {
+		System.out.println("ClassInitTest.failingInitializerTest:");
+		for (int n = 0; n < 2; n++) {
+			try {
+				System.out.println(Failing.VALUE);
+			} catch (ExceptionInInitializerError e) {
+				System.out.println("ExceptionInInitializerError:" + e.getCause().getMessage());
+			} catch (NoClassDefFoundError e) {
+				System.out.println("NoClassDefFoundError");
+			}
+		}
+	}
+}
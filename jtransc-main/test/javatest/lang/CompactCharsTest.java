@@ -0,0 +1,69 @@
+package javatest.lang;
+
+// With compact strings on C++, char arrays start with one byte per char and are widened by the first store that
+// doesn't fit. Here the widening happens while other threads are storing to the same array.
+public class CompactCharsTest {
+	static public void main(String[] args) throws Throwable {
+		concurrentInflationTest();
+		arraycopyTest();
+		stringsTest();
+	}
+
+	static private void concurrentInflationTest() throws InterruptedException {
+		System.out.println("CompactCharsTest.concurrentInflationTest:");
+		final int parts = 4;
+		final int partSize = 4096;
+		int errors = 0;
+		for (int round = 0; round < 20; round++) {
+			final char[] chars = new char[parts * partSize];
+			Thread[] threads = new Thread[parts];
+			for (int n = 0; n < parts; n++) {
+				final int part = n;
+				threads[n] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						int start = part * partSize;
+						for (int m = 0; m < partSize; m++) {
+							// A single char outside Latin-1, in the middle of the second part
+							chars[start + m] = (part == 1 && m == partSize / 2) ? '\u4e2d' : (char) ('a' + (m % 26));
+						}
+					}
+				});
+			}
+			for (Thread thread : threads) thread.start();
+			for (Thread thread : threads) thread.join();
+			for (int n = 0; n < chars.length; n++) {
+				int m = n % partSize;
+				char expected = (n / partSize == 1 && m == partSize / 2) ? '\u4e2d' : (char) ('a' + (m % 26));
+				if (chars[n] != expected) errors++;
+			}
+		}
+		System.out.println("errors:" + errors);
+	}
+
+	static private void arraycopyTest() {
+		System.out.println("CompactCharsTest.arraycopyTest:");
+		char[] latin1 = "hello world".toCharArray();
+		char[] wide = "\u00e1\u4e2d\u00e9".toCharArray();
+		char[] out = new char[latin1.length + wide.length];
+		System.arraycopy(latin1, 0, out, 0, latin1.length);
+		System.arraycopy(wide, 0, out, latin1.length, wide.length);
+		System.arraycopy(out, 0, out, 2, 5);
+		System.out.println((int) out[out.length - 2]);
+		System.out.println(new String(out, 0, latin1.length));
+		System.out.println(new String(out).hashCode());
+	}
+
+	static private void stringsTest() {
+		System.out.println("CompactCharsTest.stringsTest:");
+		String latin1 = "caf\u00e9";
+		String wide = "\u4e2d\u6587";
+		String mixed = latin1 + wide;
+		System.out.println(mixed.length());
+		System.out.println(mixed.hashCode());
+		System.out.println(mixed.indexOf('\u6587'));
+		System.out.println(mixed.substring(0, 4).equals(latin1));
+		System.out.println((int) mixed.charAt(3));
+		System.out.println(mixed.toUpperCase().hashCode());
+	}
+}
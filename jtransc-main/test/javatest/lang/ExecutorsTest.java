@@ -0,0 +1,129 @@
+package javatest.lang;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Tasks are classes and not lambdas, so they can be sent to the workers on js
+public class ExecutorsTest {
+	static public void main(String[] args) throws Throwable {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			submitTest(executor);
+			arrayTest(executor);
+			exceptionTest(executor);
+			invokeAllTest(executor);
+			invokeAllTimeoutTest(executor);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	static private void submitTest(ExecutorService executor) throws Exception {
+		System.out.println("ExecutorsTest.submitTest:");
+		List<Future<Long>> futures = new ArrayList<>();
+		for (int n = 1; n <= 4; n++) futures.add(executor.submit(new SumTask(n * 1000)));
+		for (Future<Long> future : futures) System.out.println(future.get());
+		System.out.println(futures.get(0).isDone());
+	}
+
+	static private void arrayTest(ExecutorService executor) throws Exception {
+		System.out.println("ExecutorsTest.arrayTest:");
+		int[] input = new int[100];
+		for (int n = 0; n < input.length; n++) input[n] = n;
+		int[] output = executor.submit(new SquareTask(input)).get();
+		long sum = 0;
+		for (int v : output) sum += v;
+		System.out.println(output.length);
+		System.out.println(output[99]);
+		System.out.println(sum);
+		System.out.println(input[99]);
+	}
+
+	static private void exceptionTest(ExecutorService executor) throws Exception {
+		System.out.println("ExecutorsTest.exceptionTest:");
+		Future<Long> future = executor.submit(new FailingTask());
+		try {
+			System.out.println(future.get());
+		} catch (ExecutionException e) {
+			System.out.println("ExecutionException");
+		}
+		System.out.println(executor.submit(new SumTask(10)).get());
+	}
+
+	static private void invokeAllTest(ExecutorService executor) throws Exception {
+		System.out.println("ExecutorsTest.invokeAllTest:");
+		List<Callable<Long>> tasks = new ArrayList<>();
+		for (int n = 1; n <= 3; n++) tasks.add(new SumTask(n * 10));
+		for (Future<Long> future : executor.invokeAll(tasks, 60, TimeUnit.SECONDS)) {
+			System.out.println(future.isCancelled() + ":" + future.get());
+		}
+	}
+
+	static private void invokeAllTimeoutTest(ExecutorService executor) throws Exception {
+		System.out.println("ExecutorsTest.invokeAllTimeoutTest:");
+		List<Callable<Long>> tasks = new ArrayList<>();
+		tasks.add(new SpinTask(3000));
+		for (Future<Long> future : executor.invokeAll(tasks, 100, TimeUnit.MILLISECONDS)) {
+			System.out.println(future.isDone() + ":" + future.isCancelled());
+		}
+	}
+
+	static public class SumTask implements Callable<Long> {
+		private final int count;
+
+		public SumTask(int count) {
+			this.count = count;
+		}
+
+		@Override
+		public Long call() {
+			long sum = 0;
+			for (int n = 0; n <= count; n++) sum += n;
+			return sum;
+		}
+	}
+
+	static public class SquareTask implements Callable<int[]> {
+		private final int[] values;
+
+		public SquareTask(int[] values) {
+			this.values = values;
+		}
+
+		@Override
+		public int[] call() {
+			int[] out = new int[values.length];
+			for (int n = 0; n < values.length; n++) out[n] = values[n] * values[n];
+			return out;
+		}
+	}
+
+	static public class FailingTask implements Callable<Long> {
+		@Override
+		public Long call() {
+			throw new IllegalStateException("failing task");
+		}
+	}
+
+	static public class SpinTask implements Callable<Long> {
+		private final long millis;
+
+		public SpinTask(long millis) {
+			this.millis = millis;
+		}
+
+		@Override
+		public Long call() {
+			long end = System.currentTimeMillis() + millis;
+			long count = 0;
+			while (System.currentTimeMillis() < end) count++;
+			return count;
+		}
+	}
+}
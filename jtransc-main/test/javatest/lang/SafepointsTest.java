@@ -0,0 +1,60 @@
+package javatest.lang;
+
+// Collections stop every thread at a safepoint, including threads in loops that make no calls
+public class SafepointsTest {
+	static public void main(String[] args) throws Throwable {
+		spinningThreadTest();
+		allocatingLoopTest();
+	}
+
+	static private volatile boolean stop = false;
+
+	static private long allocate(int rounds) {
+		long total = 0;
+		for (int n = 0; n < rounds; n++) {
+			Object[] items = new Object[1024];
+			items[n % items.length] = items;
+			total += items.length;
+		}
+		return total;
+	}
+
+	static private void spinningThreadTest() throws InterruptedException {
+		System.out.println("SafepointsTest.spinningThreadTest:");
+		final long[] spins = new long[1];
+		Thread spinner = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				long count = 0;
+				while (!stop) count++;
+				spins[0] = count;
+			}
+		});
+		spinner.start();
+		// Well over the collection threshold, so collections start while the other thread spins
+		System.out.println(allocate(20000));
+		stop = true;
+		spinner.join();
+		System.out.println(spins[0] >= 0);
+	}
+
+	static private void allocatingLoopTest() throws InterruptedException {
+		System.out.println("SafepointsTest.allocatingLoopTest:");
+		final int[] sizes = new int[1];
+		Thread allocator = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				int size = 0;
+				for (int n = 0; n < 200000; n++) {
+					int[] array = new int[64];
+					size += array.length;
+				}
+				sizes[0] = size;
+			}
+		});
+		allocator.start();
+		System.out.println(allocate(20000));
+		allocator.join();
+		System.out.println(sizes[0]);
+	}
+}
@@ -0,0 +1,50 @@
+package javatest.lang;
+
+// Literals that end up next to each other in the string table of the js and haxe targets.
+// Non-ASCII characters are printed as char codes, so the output doesn't depend on the console encoding.
+public class StringLiteralsTest {
+	static public void main(String[] args) {
+		System.out.println("StringLiteralsTest:");
+		print(new String[] {
+			"",
+			"a", "ab", "abc", "abd", "abcd",
+			"java.lang.reflect.Constructor",
+			"java.lang.reflect.Field",
+			"java.lang.reflect.InvocationHandler",
+			"java.lang.reflect.InvocationTargetException",
+			"java.lang.reflect.Method",
+			"java.lang.reflect.Modifier",
+			"java.lang.reflect.Proxy",
+			"java.lang.reflect.Type",
+			"java.lang.reflect.TypeVariable",
+			"java.lang.reflect.UndeclaredThrowableException",
+			"java.lang.reflect.WildcardType",
+			"java.lang.reflect.Array",
+			"java.lang.reflect.AccessibleObject",
+			"java.lang.reflect.AnnotatedElement",
+			"java.lang.reflect.Executable",
+			"java.lang.reflect.GenericArrayType",
+			"java.lang.reflect.Member",
+			"java.lang.reflect.ParameterizedType",
+			"\u00e1rbol", "\u00e1rboles", "caf\u00e9", "caf\u00e9s", "caf\u00e8",
+			"\u65e5\u672c\u8a9e", "\u65e5\u672c",
+			"\ud83d\ude00", "\ud83d\ude01", "a\ud83d\ude00b", "a\ud83d\ude00c",
+			",", "a,b", "a,c", "\"", "\"\"", "\\", "\\\\", "\\n", "\n", "\r\n", "\t", "\u0000", "a\u0000b",
+			"'", "</script>", "\u2028", "${x}", "{% CLASS java.lang.String %}", "%s %d"
+		});
+		System.out.println("java.lang.reflect.Proxy".substring(18));
+	}
+
+	static private void print(String[] literals) {
+		for (int n = 0; n < literals.length; n++) {
+			String str = literals[n];
+			StringBuilder out = new StringBuilder();
+			out.append(n).append(':').append(str.length()).append(':').append(str.hashCode()).append(':');
+			for (int m = 0; m < str.length(); m++) {
+				char c = str.charAt(m);
+				if (c >= 32 && c < 127) out.append(c); else out.append("\\").append((int) c);
+			}
+			System.out.println(out);
+		}
+	}
+}
@@ -0,0 +1,258 @@
+package javatest.lang;
+
+public class ThreadsTest {
+	static public void main(String[] args) throws Throwable {
+		contendedSynchronizedTest();
+		waitNotifyTest();
+		interruptSleepTest();
+		interruptWaitTest();
+		illegalMonitorStateTest();
+		volatilePublishTest();
+		allocatingThreadsTest();
+		staticSynchronizedTest();
+	}
+
+	static private int counter = 0;
+
+	static private void contendedSynchronizedTest() throws InterruptedException {
+		System.out.println("ThreadsTest.contendedSynchronizedTest:");
+		final Object lock = new Object();
+		Thread[] threads = new Thread[4];
+		for (int n = 0; n < threads.length; n++) {
+			threads[n] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int m = 0; m < 10000; m++) {
+						synchronized (lock) {
+							counter++;
+						}
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) thread.start();
+		for (Thread thread : threads) thread.join();
+		System.out.println(counter);
+	}
+
+	static private void waitNotifyTest() throws InterruptedException {
+		System.out.println("ThreadsTest.waitNotifyTest:");
+		final int[] slot = new int[]{0};
+		final Object lock = new Object();
+		Thread consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				int sum = 0;
+				for (int n = 1; n <= 100; n++) {
+					synchronized (lock) {
+						while (slot[0] == 0) {
+							try {
+								lock.wait();
+							} catch (InterruptedException e) {
+								throw new RuntimeException(e);
+							}
+						}
+						sum += slot[0];
+						slot[0] = 0;
+						lock.notifyAll();
+					}
+				}
+				System.out.println("consumed:" + sum);
+			}
+		});
+		consumer.start();
+		for (int n = 1; n <= 100; n++) {
+			synchronized (lock) {
+				while (slot[0] != 0) lock.wait();
+				slot[0] = n;
+				lock.notifyAll();
+			}
+		}
+		consumer.join();
+	}
+
+	static private void interruptSleepTest() throws InterruptedException {
+		System.out.println("ThreadsTest.interruptSleepTest:");
+		final boolean[] result = new boolean[2];
+		Thread sleeper = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(60000L);
+				} catch (InterruptedException e) {
+					result[0] = true;
+					result[1] = Thread.currentThread().isInterrupted();
+				}
+			}
+		});
+		sleeper.start();
+		Thread.sleep(50L);
+		sleeper.interrupt();
+		sleeper.join();
+		System.out.println("interrupted:" + result[0]);
+		System.out.println("flag after:" + result[1]);
+	}
+
+	static private void interruptWaitTest() throws InterruptedException {
+		System.out.println("ThreadsTest.interruptWaitTest:");
+		final Object lock = new Object();
+		final boolean[] result = new boolean[2];
+		Thread waiter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (lock) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						result[0] = true;
+						// The monitor is owned again when wait throws
+						lock.notifyAll();
+						result[1] = true;
+					}
+				}
+			}
+		});
+		waiter.start();
+		Thread.sleep(50L);
+		waiter.interrupt();
+		waiter.join();
+		System.out.println("interrupted:" + result[0]);
+		System.out.println("owns monitor:" + result[1]);
+	}
+
+	static private void illegalMonitorStateTest() {
+		System.out.println("ThreadsTest.illegalMonitorStateTest:");
+		Object lock = new Object();
+		try {
+			lock.wait();
+			System.out.println("wait:no exception");
+		} catch (IllegalMonitorStateException e) {
+			System.out.println("wait:IllegalMonitorStateException");
+		} catch (InterruptedException e) {
+			System.out.println("wait:InterruptedException");
+		}
+		try {
+			lock.notify();
+			System.out.println("notify:no exception");
+		} catch (IllegalMonitorStateException e) {
+			System.out.println("notify:IllegalMonitorStateException");
+		}
+		try {
+			lock.notifyAll();
+			System.out.println("notifyAll:no exception");
+		} catch (IllegalMonitorStateException e) {
+			System.out.println("notifyAll:IllegalMonitorStateException");
+		}
+	}
+
+	static private class Box {
+		final int value;
+
+		Box(int value) {
+			this.value = value;
+		}
+	}
+
+	static private volatile Box published = new Box(0);
+
+	// Readers must always see a complete object, and the values in publication order
+	static private void volatilePublishTest() throws InterruptedException {
+		System.out.println("ThreadsTest.volatilePublishTest:");
+		final int[] anomalies = new int[3];
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int n = 1; n <= 20000; n++) published = new Box(n);
+			}
+		});
+		Thread[] readers = new Thread[3];
+		for (int n = 0; n < readers.length; n++) {
+			final int id = n;
+			readers[n] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					int last = 0;
+					for (int m = 0; m < 20000; m++) {
+						Box box = published;
+						if (box.value < last) anomalies[id]++;
+						last = box.value;
+					}
+				}
+			});
+		}
+		writer.start();
+		for (Thread reader : readers) reader.start();
+		writer.join();
+		for (Thread reader : readers) reader.join();
+		System.out.println("anomalies:" + (anomalies[0] + anomalies[1] + anomalies[2]));
+		System.out.println("last:" + published.value);
+	}
+
+	static private class Node {
+		Node prev;
+		Node next;
+		int value;
+	}
+
+	// Several threads allocating linked structures at once, so collections happen while all of them are running
+	static private void allocatingThreadsTest() throws InterruptedException {
+		System.out.println("ThreadsTest.allocatingThreadsTest:");
+		final long[] sums = new long[4];
+		Thread[] threads = new Thread[sums.length];
+		for (int n = 0; n < threads.length; n++) {
+			final int id = n;
+			threads[n] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int round = 0; round < 200; round++) {
+						Node first = new Node();
+						Node last = first;
+						for (int m = 1; m < 100; m++) {
+							Node node = new Node();
+							node.value = m;
+							node.prev = last;
+							last.next = node;
+							last = node;
+						}
+						for (Node node = first; node != null; node = node.next) sums[id] += node.value;
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) thread.start();
+		for (Thread thread : threads) thread.join();
+		for (long sum : sums) System.out.println(sum);
+	}
+
+	static private int staticCounter = 0;
+
+	static private synchronized void incrementStatic() {
+		staticCounter++;
+	}
+
+	// Static synchronized methods and synchronized (ThreadsTest.class) exclude each other
+	static private void staticSynchronizedTest() throws InterruptedException {
+		System.out.println("ThreadsTest.staticSynchronizedTest:");
+		Thread[] threads = new Thread[4];
+		for (int n = 0; n < threads.length; n++) {
+			final boolean method = (n % 2) == 0;
+			threads[n] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int m = 0; m < 10000; m++) {
+						if (method) {
+							incrementStatic();
+						} else {
+							synchronized (ThreadsTest.class) {
+								staticCounter++;
+							}
+						}
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) thread.start();
+		for (Thread thread : threads) thread.join();
+		System.out.println(staticCounter);
+	}
+}
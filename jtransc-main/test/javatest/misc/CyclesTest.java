@@ -0,0 +1,93 @@
+package javatest.misc;
+
+// Cyclic structures that only a tracing collector can reclaim, allocated until collections are forced many times
+public class CyclesTest {
+	static public void main(String[] args) {
+		ringsTest();
+		graphTest();
+	}
+
+	static private class Node {
+		Node prev;
+		Node next;
+		int[] payload;
+		int value;
+	}
+
+	static private Node ring(int size, int seed) {
+		Node first = new Node();
+		first.value = seed;
+		first.payload = new int[16];
+		Node last = first;
+		for (int n = 1; n < size; n++) {
+			Node node = new Node();
+			node.value = seed + n;
+			node.payload = new int[16];
+			node.prev = last;
+			last.next = node;
+			last = node;
+		}
+		last.next = first;
+		first.prev = last;
+		return first;
+	}
+
+	static private long sum(Node ring) {
+		long sum = 0;
+		Node node = ring;
+		do {
+			sum += node.value;
+			node = node.next;
+		} while (node != ring);
+		// Walking back checks the prev links
+		node = ring.prev;
+		while (node != ring) {
+			sum -= node.value;
+			node = node.prev;
+		}
+		return sum;
+	}
+
+	static private void ringsTest() {
+		System.out.println("CyclesTest.ringsTest:");
+		// Some rings survive the whole test while others become garbage immediately
+		Node[] kept = new Node[8];
+		long total = 0;
+		for (int n = 0; n < 20000; n++) {
+			Node ring = ring(64, n);
+			total += sum(ring);
+			if (n % 2500 == 0) kept[n / 2500] = ring;
+		}
+		System.out.println(total);
+		for (Node ring : kept) System.out.println(sum(ring));
+	}
+
+	static private class Vertex {
+		Vertex[] edges = new Vertex[4];
+		Vertex owner;
+		String name;
+	}
+
+	static private void graphTest() {
+		System.out.println("CyclesTest.graphTest:");
+		Vertex survivor = null;
+		int count = 0;
+		for (int n = 0; n < 2000; n++) {
+			Vertex[] vertices = new Vertex[50];
+			for (int m = 0; m < vertices.length; m++) {
+				vertices[m] = new Vertex();
+				vertices[m].name = "v" + n + "_" + m;
+			}
+			for (int m = 0; m < vertices.length; m++) {
+				for (int e = 0; e < 4; e++) vertices[m].edges[e] = vertices[(m * 7 + e * 13 + 1) % vertices.length];
+				vertices[m].owner = vertices[0];
+			}
+			if (n == 1000) survivor = vertices[17];
+			count += vertices.length;
+		}
+		System.out.println(count);
+		System.out.println(survivor.name);
+		System.out.println(survivor.owner.name);
+		System.out.println(survivor.edges[3].edges[2].name);
+	}
+}
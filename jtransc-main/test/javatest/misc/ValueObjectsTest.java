@@ -0,0 +1,76 @@
+package javatest.misc;
+
+// Small immutable objects that escape analysis can replace with locals
+public class ValueObjectsTest {
+	static public Point stored;
+
+	static public void main(String[] args) {
+		System.out.println("ValueObjectsTest:");
+		System.out.println(sum(3, 4));
+		System.out.println(loop(10));
+		System.out.println(escapeThroughCall(1, 2));
+		escapeThroughStore(5, 6);
+		System.out.println(stored.x + ":" + stored.y);
+		System.out.println(escapeThroughReturn(7, 8).y);
+		System.out.println(initialized());
+	}
+
+	static private int sum(int x, int y) {
+		Point p = new Point(x, y);
+		Point q = new Point(p.x * 2, p.y + 1);
+		return q.x + q.y;
+	}
+
+	static private int loop(int count) {
+		Point acc = new Point(0, 0);
+		for (int n = 0; n < count; n++) acc = new Point(acc.x + n, acc.y + 1);
+		return acc.x * 100 + acc.y;
+	}
+
+	static private String escapeThroughCall(int x, int y) {
+		Point p = new Point(x, y);
+		return describe(p);
+	}
+
+	static private void escapeThroughStore(int x, int y) {
+		Point p = new Point(x, y);
+		stored = p;
+	}
+
+	static private Point escapeThroughReturn(int x, int y) {
+		Point p = new Point(x, y);
+		return p;
+	}
+
+	static private int initialized() {
+		// Initialized is never referenced before, its static initializer must still run once the allocation is gone
+		Initialized value = new Initialized(21);
+		return value.value * 2;
+	}
+
+	static private String describe(Point p) {
+		return "Point(" + p.x + ", " + p.y + ")";
+	}
+
+	static public final class Point {
+		public final int x;
+		public final int y;
+
+		public Point(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	static public final class Initialized {
+		static {
+			System.out.println("Initialized.<clinit>");
+		}
+
+		public final int value;
+
+		public Initialized(int value) {
+			this.value = value;
+		}
+	}
+}
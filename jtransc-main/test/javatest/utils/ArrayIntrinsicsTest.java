@@ -0,0 +1,304 @@
+package javatest.utils;
+
+import com.jtransc.JTranscArrays;
+
+import java.util.Arrays;
+
+// Arrays.fill, Arrays.equals, JTranscArrays.equals and System.arraycopy for each element type,
+// which the targets map to bulk operations
+public class ArrayIntrinsicsTest {
+	static public void main(String[] args) {
+		booleanTest();
+		byteTest();
+		charTest();
+		shortTest();
+		intTest();
+		longTest();
+		floatTest();
+		doubleTest();
+		objectTest();
+	}
+
+	static private void booleanTest() {
+		System.out.println("ArrayIntrinsicsTest.booleanTest:");
+		boolean[] a = new boolean[8];
+		Arrays.fill(a, 2, 5, true);
+		Arrays.fill(a, 6, 6, true);
+		System.out.println(Arrays.toString(a));
+		boolean[] b = new boolean[8];
+		for (int n = 0; n < b.length; n++) b[n] = (n % 3) == 0;
+		System.arraycopy(b, 1, b, 3, 4);
+		System.out.println(Arrays.toString(b));
+		for (int n = 0; n < b.length; n++) b[n] = (n % 3) == 0;
+		System.arraycopy(b, 3, b, 1, 4);
+		System.out.println(Arrays.toString(b));
+		System.arraycopy(b, 0, a, 0, 0);
+		System.out.println(Arrays.toString(a));
+		System.out.println(Arrays.equals(a, a.clone()) + "," + Arrays.equals(a, b) + "," + Arrays.equals(a, new boolean[7]));
+		System.out.println(Arrays.equals((boolean[]) null, null) + "," + Arrays.equals(a, null) + "," + Arrays.equals(null, a));
+		System.out.println(JTranscArrays.equals(new boolean[] { false, true, true }, 1, new boolean[] { true, true, false }, 0, 2) + "," + JTranscArrays.equals(a, 0, b, 0, 0));
+		outOfBounds(a, b);
+		try {
+			Arrays.fill(a, 6, 9, true);
+			System.out.println("no exception");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			System.out.println("ArrayIndexOutOfBoundsException");
+		}
+	}
+
+	static private void byteTest() {
+		System.out.println("ArrayIntrinsicsTest.byteTest:");
+		byte[] a = new byte[8];
+		Arrays.fill(a, 2, 5, (byte) -7);
+		Arrays.fill(a, 6, 6, (byte) 1);
+		System.out.println(Arrays.toString(a));
+		byte[] b = new byte[8];
+		for (int n = 0; n < b.length; n++) b[n] = (byte) (n * 40);
+		System.arraycopy(b, 1, b, 3, 4);
+		System.out.println(Arrays.toString(b));
+		for (int n = 0; n < b.length; n++) b[n] = (byte) (n * 40);
+		System.arraycopy(b, 3, b, 1, 4);
+		System.out.println(Arrays.toString(b));
+		System.arraycopy(b, 0, a, 0, 0);
+		System.arraycopy(b, 2, a, 5, 3);
+		System.out.println(Arrays.toString(a));
+		System.out.println(Arrays.equals(a, a.clone()) + "," + Arrays.equals(a, b) + "," + Arrays.equals(a, new byte[7]));
+		System.out.println(Arrays.equals((byte[]) null, null) + "," + Arrays.equals(a, null) + "," + Arrays.equals(null, a));
+		System.out.println(JTranscArrays.equals(new byte[] { 1, 2, 3, 4 }, 1, new byte[] { 2, 3, 4, 5 }, 0, 3) + "," + JTranscArrays.equals(new byte[] { 1, 2, 3 }, 0, new byte[] { 1, 2, 4 }, 0, 3) + "," + JTranscArrays.equals(a, 0, b, 0, 0));
+		outOfBounds(a, b);
+		try {
+			Arrays.fill(a, -1, 2, (byte) 1);
+			System.out.println("no exception");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			System.out.println("ArrayIndexOutOfBoundsException");
+		}
+	}
+
+	static private void charTest() {
+		System.out.println("ArrayIntrinsicsTest.charTest:");
+		char[] a = new char[8];
+		Arrays.fill(a, 'a');
+		Arrays.fill(a, 2, 5, '\u00e9');
+		Arrays.fill(a, 6, 6, 'z');
+		System.out.println(codes(a));
+		char[] b = "abcdefgh".toCharArray();
+		System.arraycopy(b, 1, b, 3, 4);
+		System.out.println(new String(b));
+		b = "abcdefgh".toCharArray();
+		System.arraycopy(b, 3, b, 1, 4);
+		System.out.println(new String(b));
+		System.arraycopy("\u20ac\u0100".toCharArray(), 0, a, 6, 2);
+		System.arraycopy(b, 0, a, 0, 0);
+		System.out.println(codes(a));
+		System.out.println(Arrays.equals(a, a.clone()) + "," + Arrays.equals(a, b) + "," + Arrays.equals(a, new char[7]));
+		System.out.println(Arrays.equals((char[]) null, null) + "," + Arrays.equals(a, null) + "," + Arrays.equals(null, a));
+		System.out.println(JTranscArrays.equals("xabc".toCharArray(), 1, "abcy".toCharArray(), 0, 3) + "," + JTranscArrays.equals("abc".toCharArray(), 0, "abd".toCharArray(), 0, 3) + "," + JTranscArrays.equals(a, 0, b, 0, 0));
+		outOfBounds(a, b);
+		try {
+			Arrays.fill(a, 0, 9, 'x');
+			System.out.println("no exception");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			System.out.println("ArrayIndexOutOfBoundsException");
+		}
+	}
+
+	static private void shortTest() {
+		System.out.println("ArrayIntrinsicsTest.shortTest:");
+		short[] a = new short[8];
+		Arrays.fill(a, 2, 5, (short) -300);
+		Arrays.fill(a, 6, 6, (short) 1);
+		System.out.println(Arrays.toString(a));
+		short[] b = new short[8];
+		for (int n = 0; n < b.length; n++) b[n] = (short) (n * 10000);
+		System.arraycopy(b, 1, b, 3, 4);
+		System.out.println(Arrays.toString(b));
+		for (int n = 0; n < b.length; n++) b[n] = (short) (n * 10000);
+		System.arraycopy(b, 3, b, 1, 4);
+		System.out.println(Arrays.toString(b));
+		System.arraycopy(b, 0, a, 0, 0);
+		System.arraycopy(b, 2, a, 5, 3);
+		System.out.println(Arrays.toString(a));
+		System.out.println(Arrays.equals(a, a.clone()) + "," + Arrays.equals(a, b) + "," + Arrays.equals(a, new short[7]));
+		System.out.println(Arrays.equals((short[]) null, null) + "," + Arrays.equals(a, null) + "," + Arrays.equals(null, a));
+		System.out.println(JTranscArrays.equals(new short[] { 1, 2, 3, 4 }, 1, new short[] { 2, 3, 4, 5 }, 0, 3) + "," + JTranscArrays.equals(new short[] { 1, 2, 3 }, 0, new short[] { 1, 2, 4 }, 0, 3) + "," + JTranscArrays.equals(a, 0, b, 0, 0));
+		outOfBounds(a, b);
+		try {
+			Arrays.fill(a, 4, 10, (short) 1);
+			System.out.println("no exception");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			System.out.println("ArrayIndexOutOfBoundsException");
+		}
+	}
+
+	static private void intTest() {
+		System.out.println("ArrayIntrinsicsTest.intTest:");
+		int[] a = new int[8];
+		Arrays.fill(a, 2, 5, -123456789);
+		Arrays.fill(a, 6, 6, 1);
+		System.out.println(Arrays.toString(a));
+		int[] b = new int[8];
+		for (int n = 0; n < b.length; n++) b[n] = n * 1000000007;
+		System.arraycopy(b, 1, b, 3, 4);
+		System.out.println(Arrays.toString(b));
+		for (int n = 0; n < b.length; n++) b[n] = n * 1000000007;
+		System.arraycopy(b, 3, b, 1, 4);
+		System.out.println(Arrays.toString(b));
+		System.arraycopy(b, 0, a, 0, 0);
+		System.arraycopy(b, 2, a, 5, 3);
+		System.out.println(Arrays.toString(a));
+		System.out.println(Arrays.equals(a, a.clone()) + "," + Arrays.equals(a, b) + "," + Arrays.equals(a, new int[7]));
+		System.out.println(Arrays.equals((int[]) null, null) + "," + Arrays.equals(a, null) + "," + Arrays.equals(null, a));
+		System.out.println(JTranscArrays.equals(new int[] { 1, 2, 3, 4 }, 1, new int[] { 2, 3, 4, 5 }, 0, 3) + "," + JTranscArrays.equals(new int[] { 1, 2, 3 }, 0, new int[] { 1, 2, 4 }, 0, 3) + "," + JTranscArrays.equals(a, 0, b, 0, 0));
+		outOfBounds(a, b);
+		try {
+			Arrays.fill(a, 9, 10, 1);
+			System.out.println("no exception");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			System.out.println("ArrayIndexOutOfBoundsException");
+		}
+	}
+
+	static private void longTest() {
+		System.out.println("ArrayIntrinsicsTest.longTest:");
+		long[] a = new long[8];
+		Arrays.fill(a, 2, 5, -1234567890123L);
+		Arrays.fill(a, 6, 6, 1L);
+		System.out.println(Arrays.toString(a));
+		long[] b = new long[8];
+		for (int n = 0; n < b.length; n++) b[n] = n * 0x100000001L;
+		System.arraycopy(b, 1, b, 3, 4);
+		System.out.println(Arrays.toString(b));
+		for (int n = 0; n < b.length; n++) b[n] = n * 0x100000001L;
+		System.arraycopy(b, 3, b, 1, 4);
+		System.out.println(Arrays.toString(b));
+		System.arraycopy(b, 0, a, 0, 0);
+		System.arraycopy(b, 2, a, 5, 3);
+		System.out.println(Arrays.toString(a));
+		System.out.println(Arrays.equals(a, a.clone()) + "," + Arrays.equals(a, b) + "," + Arrays.equals(a, new long[7]));
+		System.out.println(Arrays.equals((long[]) null, null) + "," + Arrays.equals(a, null) + "," + Arrays.equals(null, a));
+		System.out.println(JTranscArrays.equals(new long[] { 1, 2, 3, 4 }, 1, new long[] { 2, 3, 4, 5 }, 0, 3) + "," + JTranscArrays.equals(new long[] { 1, 2, 3 }, 0, new long[] { 1, 2, 0x100000003L }, 0, 3) + "," + JTranscArrays.equals(a, 0, b, 0, 0));
+		outOfBounds(a, b);
+		try {
+			Arrays.fill(a, 0, 9, 1L);
+			System.out.println("no exception");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			System.out.println("ArrayIndexOutOfBoundsException");
+		}
+	}
+
+	static private void floatTest() {
+		System.out.println("ArrayIntrinsicsTest.floatTest:");
+		float[] a = new float[8];
+		Arrays.fill(a, 2, 5, -1.5f);
+		Arrays.fill(a, 6, 6, 1f);
+		System.out.println(Arrays.toString(a));
+		float[] b = new float[8];
+		for (int n = 0; n < b.length; n++) b[n] = n * 0.25f;
+		System.arraycopy(b, 1, b, 3, 4);
+		System.out.println(Arrays.toString(b));
+		for (int n = 0; n < b.length; n++) b[n] = n * 0.25f;
+		System.arraycopy(b, 3, b, 1, 4);
+		System.out.println(Arrays.toString(b));
+		System.arraycopy(b, 0, a, 0, 0);
+		System.arraycopy(b, 2, a, 5, 3);
+		System.out.println(Arrays.toString(a));
+		System.out.println(Arrays.equals(a, a.clone()) + "," + Arrays.equals(a, b) + "," + Arrays.equals(a, new float[7]));
+		System.out.println(Arrays.equals((float[]) null, null) + "," + Arrays.equals(a, null) + "," + Arrays.equals(null, a));
+		System.out.println(Arrays.equals(new float[] { Float.NaN }, new float[] { Float.NaN }) + "," + Arrays.equals(new float[] { 0f }, new float[] { -0f }));
+		outOfBounds(a, b);
+		try {
+			Arrays.fill(a, 0, 9, 1f);
+			System.out.println("no exception");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			System.out.println("ArrayIndexOutOfBoundsException");
+		}
+	}
+
+	static private void doubleTest() {
+		System.out.println("ArrayIntrinsicsTest.doubleTest:");
+		double[] a = new double[8];
+		Arrays.fill(a, 2, 5, -1.5);
+		Arrays.fill(a, 6, 6, 1.0);
+		System.out.println(Arrays.toString(a));
+		double[] b = new double[8];
+		for (int n = 0; n < b.length; n++) b[n] = n * 0.125;
+		System.arraycopy(b, 1, b, 3, 4);
+		System.out.println(Arrays.toString(b));
+		for (int n = 0; n < b.length; n++) b[n] = n * 0.125;
+		System.arraycopy(b, 3, b, 1, 4);
+		System.out.println(Arrays.toString(b));
+		System.arraycopy(b, 0, a, 0, 0);
+		System.arraycopy(b, 2, a, 5, 3);
+		System.out.println(Arrays.toString(a));
+		System.out.println(Arrays.equals(a, a.clone()) + "," + Arrays.equals(a, b) + "," + Arrays.equals(a, new double[7]));
+		System.out.println(Arrays.equals((double[]) null, null) + "," + Arrays.equals(a, null) + "," + Arrays.equals(null, a));
+		System.out.println(Arrays.equals(new double[] { Double.NaN }, new double[] { Double.NaN }) + "," + Arrays.equals(new double[] { 0.0 }, new double[] { -0.0 }));
+		outOfBounds(a, b);
+		try {
+			Arrays.fill(a, 0, 9, 1.0);
+			System.out.println("no exception");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			System.out.println("ArrayIndexOutOfBoundsException");
+		}
+	}
+
+	static private void objectTest() {
+		System.out.println("ArrayIntrinsicsTest.objectTest:");
+		String[] a = new String[8];
+		Arrays.fill(a, 2, 5, "x");
+		Arrays.fill(a, 6, 6, "y");
+		System.out.println(Arrays.toString(a));
+		String[] b = new String[8];
+		for (int n = 0; n < b.length; n++) b[n] = "s" + n;
+		System.arraycopy(b, 1, b, 3, 4);
+		System.out.println(Arrays.toString(b));
+		for (int n = 0; n < b.length; n++) b[n] = "s" + n;
+		System.arraycopy(b, 3, b, 1, 4);
+		System.out.println(Arrays.toString(b));
+		System.arraycopy(b, 0, a, 0, 0);
+		System.arraycopy(b, 2, a, 5, 3);
+		System.out.println(Arrays.toString(a));
+		System.out.println(Arrays.equals(a, a.clone()) + "," + Arrays.equals(a, b) + "," + Arrays.equals(a, new String[7]));
+		System.out.println(Arrays.equals((Object[]) null, null) + "," + Arrays.equals(a, null) + "," + Arrays.equals(null, a));
+		outOfBounds(a, b);
+		try {
+			Arrays.fill(a, 0, 9, "z");
+			System.out.println("no exception");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			System.out.println("ArrayIndexOutOfBoundsException");
+		}
+	}
+
+	static private String codes(char[] chars) {
+		StringBuilder out = new StringBuilder();
+		for (char c : chars) out.append((int) c).append(' ');
+		return out.toString();
+	}
+
+	// a and b have 8 elements
+	static private void outOfBounds(Object a, Object b) {
+		int[][] ranges = {
+			{ -1, 0, 1 },
+			{ 0, -1, 1 },
+			{ 0, 0, -1 },
+			{ 4, 0, 5 },
+			{ 0, 4, 5 },
+			{ 8, 0, 1 },
+			{ 0, 0, 9 },
+		};
+		StringBuilder out = new StringBuilder();
+		for (int[] range : ranges) {
+			try {
+				System.arraycopy(a, range[0], b, range[1], range[2]);
+				out.append("-");
+			} catch (ArrayIndexOutOfBoundsException e) {
+				out.append("A");
+			}
+		}
+		System.arraycopy(a, 8, b, 8, 0);
+		out.append("|");
+		System.arraycopy(a, 0, b, 0, 8);
+		out.append("|");
+		System.out.println(out);
+	}
+}
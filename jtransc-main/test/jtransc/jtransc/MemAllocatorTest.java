@@ -0,0 +1,121 @@
+package jtransc.jtransc;
+
+import com.jtransc.FastMemory;
+import com.jtransc.util.JTranscMemAllocator;
+
+import java.util.Random;
+
+public class MemAllocatorTest {
+	static private final int TOTAL = 64 * 1024;
+	static private final int MAX_BLOCKS = 64;
+
+	static public void main(String[] args) {
+		testRandom();
+	}
+
+	private static void testRandom() {
+		System.out.println("MemAllocatorTest.testRandom:");
+		FastMemory mem = FastMemory.alloc(TOTAL);
+		JTranscMemAllocator allocator = new JTranscMemAllocator(mem);
+		Random random = new Random(1234L);
+
+		int[] offsets = new int[MAX_BLOCKS];
+		int[] sizes = new int[MAX_BLOCKS];
+		int[] alignments = new int[MAX_BLOCKS];
+		int count = 0;
+		int failed = 0;
+		int errors = 0;
+
+		for (int n = 0; n < 2000; n++) {
+			int op = random.nextInt(3);
+			if (op == 0 && count < MAX_BLOCKS) {
+				int size = random.nextInt(2048);
+				int alignment = 1 << random.nextInt(7);
+				int offset;
+				try {
+					offset = allocator.malloc(size, alignment);
+				} catch (RuntimeException e) {
+					failed++;
+					continue;
+				}
+				if (offset % alignment != 0) errors++;
+				if (allocator.getSize(offset) < size) errors++;
+				if (overlaps(allocator, offsets, count, offset, -1)) errors++;
+				fill(mem, offset, size, count);
+				offsets[count] = offset;
+				sizes[count] = size;
+				alignments[count] = alignment;
+				count++;
+			} else if (op == 1 && count > 0) {
+				int index = random.nextInt(count);
+				if (!check(mem, offsets[index], sizes[index], index)) errors++;
+				allocator.free(offsets[index]);
+				count--;
+				offsets[index] = offsets[count];
+				sizes[index] = sizes[count];
+				alignments[index] = alignments[count];
+				if (index < count) fill(mem, offsets[index], sizes[index], index);
+			} else if (op == 2 && count > 0) {
+				int index = random.nextInt(count);
+				int size = random.nextInt(4096);
+				int offset;
+				try {
+					offset = allocator.realloc(offsets[index], size);
+				} catch (RuntimeException e) {
+					failed++;
+					continue;
+				}
+				if (!check(mem, offset, Math.min(sizes[index], size), index)) errors++;
+				if (offset % alignments[index] != 0) errors++;
+				if (allocator.getSize(offset) < size) errors++;
+				if (overlaps(allocator, offsets, count, offset, index)) errors++;
+				offsets[index] = offset;
+				sizes[index] = size;
+				fill(mem, offset, size, index);
+			}
+
+			int live = 0;
+			for (int m = 0; m < count; m++) live += allocator.getSize(offsets[m]);
+			if (allocator.getLiveBytes() != live) errors++;
+			if (allocator.getLiveBlocks() != count) errors++;
+			if (allocator.getLiveBytes() + allocator.getFreeBytes() != TOTAL) errors++;
+		}
+
+		System.out.println(failed > 0);
+		System.out.println(errors);
+
+		for (int m = 0; m < count; m++) {
+			if (!check(mem, offsets[m], sizes[m], m)) errors++;
+			allocator.free(offsets[m]);
+		}
+		System.out.println(errors);
+		System.out.println(allocator.getLiveBlocks());
+		System.out.println(allocator.getLiveBytes());
+		System.out.println(allocator.getFreeBytes());
+		System.out.println(allocator.getLargestFreeBlock());
+		System.out.println(allocator.getFragmentation());
+		System.out.println(allocator.malloc(TOTAL));
+	}
+
+	static private boolean overlaps(JTranscMemAllocator allocator, int[] offsets, int count, int offset, int skip) {
+		int end = offset + allocator.getSize(offset);
+		for (int m = 0; m < count; m++) {
+			if (m == skip) continue;
+			int start2 = offsets[m];
+			int end2 = start2 + allocator.getSize(start2);
+			if (offset < end2 && start2 < end) return true;
+		}
+		return false;
+	}
+
+	static private void fill(FastMemory mem, int offset, int size, int tag) {
+		for (int n = 0; n < size; n++) mem.setInt8(offset + n, tag + n);
+	}
+
+	static private boolean check(FastMemory mem, int offset, int size, int tag) {
+		for (int n = 0; n < size; n++) {
+			if (mem.getInt8(offset + n) != ((tag + n) & 0xFF)) return false;
+		}
+		return true;
+	}
+}
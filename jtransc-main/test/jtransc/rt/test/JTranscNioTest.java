@@ -2,13 +2,18 @@ package jtransc.rt.test;
 
 import com.jtransc.JTranscBits;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.*;
+import java.nio.channels.FileChannel;
 
 public class JTranscNioTest {
-	static public void main(String[] args) {
+	static public void main(String[] args) throws IOException {
 		test1();
 		test2();
 		test3();
+		testFileChannel();
 	}
 
 	static private void test1() {
@@ -105,4 +110,38 @@ public class JTranscNioTest {
 			System.out.println();
 		}
 	}
-}
\ No newline at end of file
+
+	static private void testFileChannel() throws IOException {
+		System.out.println("JTranscNioTest.testFileChannel:");
+		File file = new File(System.getProperty("java.io.tmpdir") + "/jtransc.test.channel");
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			FileChannel channel = raf.getChannel();
+			channel.truncate(0);
+			System.out.println(channel.write(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 })));
+			System.out.println(channel.write(ByteBuffer.wrap(new byte[] { 10, 11 }), 2));
+			System.out.println(channel.position() + "," + channel.size());
+
+			ByteBuffer read = ByteBuffer.allocate(4);
+			System.out.println(channel.read(read, 1));
+			for (int n = 0; n < 4; n++) System.out.print(read.get(n) + ",");
+			System.out.println();
+			System.out.println(channel.position());
+
+			MappedByteBuffer readOnly = channel.map(FileChannel.MapMode.READ_ONLY, 2, 4);
+			System.out.println(readOnly.isReadOnly() + "," + readOnly.capacity() + "," + readOnly.get(0) + "," + readOnly.get(3));
+
+			MappedByteBuffer readWrite = channel.map(FileChannel.MapMode.READ_WRITE, 4, 8);
+			readWrite.put(0, (byte) 20);
+			readWrite.put(7, (byte) 21);
+			readWrite.force();
+			channel.force(true);
+			System.out.println(channel.size());
+
+			ByteBuffer all = ByteBuffer.allocate(16);
+			System.out.println(channel.read(all, 0));
+			for (int n = 0; n < all.position(); n++) System.out.print(all.get(n) + ",");
+			System.out.println();
+		}
+		System.out.println(file.length());
+	}
+}
@@ -20,7 +20,12 @@ import com.jtransc.AllBuildSimple
 import com.jtransc.BuildBackend
 import com.jtransc.ast.AstBuildSettings
 import com.jtransc.ast.AstTypes
+import com.jtransc.ast.ConfigAstCache
 import com.jtransc.ast.ConfigMinimizeNames
+import com.jtransc.ast.incremental.ConfigIncremental
+import com.jtransc.ast.optimize.ConfigDevirtualization
+import com.jtransc.ast.optimize.ConfigEscapeAnalysis
+import com.jtransc.ast.optimize.ConfigInlining
 import com.jtransc.injector.Injector
 import org.apache.maven.execution.MavenSession
 import org.apache.maven.plugin.AbstractMojo
@@ -72,6 +77,11 @@ class JTranscMojo : AbstractMojo() {
 	@Parameter(property = "relooper", defaultValue = "false") @JvmField var relooper: Boolean = false
 	@Parameter(property = "minimizeNames", defaultValue = "false") @JvmField var minimizeNames: Boolean = false
 	@Parameter(property = "analyzer", defaultValue = "false") @JvmField var analyzer: Boolean = false
+	@Parameter(property = "incremental", defaultValue = "false") @JvmField var incremental: Boolean = false
+	@Parameter(property = "astCache", defaultValue = "") @JvmField var astCache: String = ""
+	@Parameter(property = "inlining", defaultValue = "false") @JvmField var inlining: Boolean = false
+	@Parameter(property = "devirtualize", defaultValue = "false") @JvmField var devirtualize: Boolean = false
+	@Parameter(property = "escapeAnalysis", defaultValue = "false") @JvmField var escapeAnalysis: Boolean = false
 	@Parameter(property = "extra") @JvmField var extra = hashMapOf<String?, String?>()
 
 	// @TODO: Use <resources> instead?
@@ -158,6 +168,11 @@ class JTranscMojo : AbstractMojo() {
 		)
 
 		injector.mapInstance(ConfigMinimizeNames(minimizeNames))
+		injector.mapInstance(ConfigIncremental(incremental))
+		injector.mapInstance(ConfigAstCache(if (astCache.isNotBlank()) project.basedir.resolve(astCache).absolutePath else null))
+		injector.mapInstance(ConfigInlining(inlining))
+		injector.mapInstance(ConfigDevirtualization(devirtualize))
+		injector.mapInstance(ConfigEscapeAnalysis(escapeAnalysis))
 		//project.version
 
 		log.info("KT: Transcompiling entry point '$mainClass':")
@@ -62,10 +62,12 @@ IO.Stream = function() {
 IO.Stream.prototype.open = function(path, flags) {
 	if (!fs) N.throwRuntimeException("Can't open");
 	try {
-		var flagsStr = '';
-		if ((flags & O_RDONLY) != 0) flagsStr += 'r';
-		if ((flags & O_RDWR) != 0) flagsStr += 'w';
-		this.fd = fs.openSync(path, flagsStr); // @TODO: convert flags!!!
+		if ((flags & O_RDWR) != 0) {
+			// Read and write without truncating, creating the file when it doesn't exist
+			this.fd = fs.openSync(path, fs.existsSync(path) ? 'r+' : 'w+');
+		} else {
+			this.fd = fs.openSync(path, 'r');
+		}
 		var stat = fs.fstatSync(this.fd);
 		this.position = 0;
 		this.length = stat.size;
@@ -81,22 +83,47 @@ IO.Stream.prototype.close = function() {
 
 IO.Stream.prototype.read = function(data, offset, length) {
 	if (!fs) return -1;
-	if (offset < 0 || offset >= this.length) return -1;
+	if (offset < 0 || this.position >= this.length) return -1;
 	if (length == 0) return 0;
-	var buffer = new Buffer(length);
-	var readed = fs.readSync(this.fd, buffer, offset, length, this.position);
+	// Read straight into the memory of the array
+	var readed = fs.readSync(this.fd, new Uint8Array(data.buffer, data.byteOffset + offset, length), 0, length, this.position);
 	if (readed > 0) this.position += readed;
-	for (var n = 0; n < readed; n++) data[n] = buffer[n];
 	return readed;
 };
 
 IO.Stream.prototype.write = function(data, offset, length) {
 	if (!fs) return -1;
-	var written = fs.writeSync(this.fd, new Buffer(data), offset, length, this.position);
+	var written = fs.writeSync(this.fd, new Uint8Array(data.buffer, data.byteOffset, data.length), offset, length, this.position);
 	if (written > 0) this.position += written;
+	if (this.position > this.length) this.length = this.position;
 	return written;
 };
 
+// Node can't map files: the region is read into a new ArrayBuffer, that the byte array wraps without copying it
+IO.Stream.prototype.map = function(position, size) {
+	var buffer = new ArrayBuffer(size);
+	if (!fs) return buffer;
+	var view = new Uint8Array(buffer);
+	for (var n = 0; n < size; ) {
+		var readed = fs.readSync(this.fd, view, n, size - n, position + n);
+		if (readed <= 0) break;
+		n += readed;
+	}
+	return buffer;
+};
+
+IO.Stream.prototype.flush = function(data, length, position) {
+	if (!fs) return;
+	var view = new Uint8Array(data.buffer, data.byteOffset, length);
+	for (var n = 0; n < view.length; ) n += fs.writeSync(this.fd, view, n, view.length - n, position + n);
+	if (position + view.length > this.length) this.length = position + view.length;
+};
+
+IO.Stream.prototype.sync = function(metaData) {
+	if (!fs) return;
+	if (metaData) fs.fsyncSync(this.fd); else fs.fdatasyncSync(this.fd);
+};
+
 IO.Stream.prototype.getPosition = function() {
 	return this.position;
 };
@@ -111,5 +138,5 @@ IO.Stream.prototype.getLength = function() {
 
 IO.Stream.prototype.setLength = function(v) {
 	this.length = v;
-	this.fd.setLength(v);
+	fs.ftruncateSync(this.fd, v);
 };
\ No newline at end of file
@@ -149,6 +149,142 @@ public class JTranscArrays {
 	}
 	*/
 
+	// Bulk operations on ranges of arrays, mapped to TypedArray and memmove / memset / memcmp on the targets.
+	// Ranges are not checked here. Copies are overlap safe, like System.arraycopy
+
+	static public void copy(boolean[] src, int srcPos, boolean[] dst, int dstPos, int count) {
+		System.arraycopy(src, srcPos, dst, dstPos, count);
+	}
+
+	static public void copy(byte[] src, int srcPos, byte[] dst, int dstPos, int count) {
+		System.arraycopy(src, srcPos, dst, dstPos, count);
+	}
+
+	static public void copy(char[] src, int srcPos, char[] dst, int dstPos, int count) {
+		System.arraycopy(src, srcPos, dst, dstPos, count);
+	}
+
+	static public void copy(short[] src, int srcPos, short[] dst, int dstPos, int count) {
+		System.arraycopy(src, srcPos, dst, dstPos, count);
+	}
+
+	static public void copy(int[] src, int srcPos, int[] dst, int dstPos, int count) {
+		System.arraycopy(src, srcPos, dst, dstPos, count);
+	}
+
+	static public void copy(long[] src, int srcPos, long[] dst, int dstPos, int count) {
+		System.arraycopy(src, srcPos, dst, dstPos, count);
+	}
+
+	static public void copy(float[] src, int srcPos, float[] dst, int dstPos, int count) {
+		System.arraycopy(src, srcPos, dst, dstPos, count);
+	}
+
+	static public void copy(double[] src, int srcPos, double[] dst, int dstPos, int count) {
+		System.arraycopy(src, srcPos, dst, dstPos, count);
+	}
+
+	static public void copy(Object[] src, int srcPos, Object[] dst, int dstPos, int count) {
+		System.arraycopy(src, srcPos, dst, dstPos, count);
+	}
+
+	@JTranscMethodBody(target = "js", value = "p0.data.fill(p3, p1, p2);")
+	@JTranscMethodBody(target = "cpp", value = "if (p2 > p1) ::memset(GET_OBJECT(JA_B, p0)->getOffsetPtr(p1), p3, p2 - p1);")
+	static public void fill(boolean[] array, int start, int end, boolean value) {
+		for (int n = start; n < end; n++) array[n] = value;
+	}
+
+	@JTranscMethodBody(target = "js", value = "p0.data.fill(p3, p1, p2);")
+	@JTranscMethodBody(target = "cpp", value = "if (p2 > p1) ::memset(GET_OBJECT(JA_B, p0)->getOffsetPtr(p1), p3, p2 - p1);")
+	static public void fill(byte[] array, int start, int end, byte value) {
+		for (int n = start; n < end; n++) array[n] = value;
+	}
+
+	@JTranscMethodBody(target = "js", value = "p0.data.fill(p3, p1, p2);")
+	@JTranscMethodBody(target = "cpp", cond = "JTRANSC_COMPACT_STRINGS", value = "for (int n = p1; n < p2; n++) GET_OBJECT(JA_C, p0)->fastSet(n, p3);")
+	@JTranscMethodBody(target = "cpp", value = "std::fill_n((uint16_t *)GET_OBJECT(JA_C, p0)->getOffsetPtr(p1), p2 - p1, p3);")
+	static public void fill(char[] array, int start, int end, char value) {
+		for (int n = start; n < end; n++) array[n] = value;
+	}
+
+	@JTranscMethodBody(target = "js", value = "p0.data.fill(p3, p1, p2);")
+	@JTranscMethodBody(target = "cpp", value = "std::fill_n((int16_t *)GET_OBJECT(JA_S, p0)->getOffsetPtr(p1), p2 - p1, p3);")
+	static public void fill(short[] array, int start, int end, short value) {
+		for (int n = start; n < end; n++) array[n] = value;
+	}
+
+	@JTranscMethodBody(target = "js", value = "p0.data.fill(p3, p1, p2);")
+	@JTranscMethodBody(target = "cpp", value = "std::fill_n((int32_t *)GET_OBJECT(JA_I, p0)->getOffsetPtr(p1), p2 - p1, p3);")
+	static public void fill(int[] array, int start, int end, int value) {
+		for (int n = start; n < end; n++) array[n] = value;
+	}
+
+	@JTranscMethodBody(target = "js", value = "p0.data.fill(p3, p1, p2);")
+	@JTranscMethodBody(target = "cpp", value = "std::fill_n((int64_t *)GET_OBJECT(JA_J, p0)->getOffsetPtr(p1), p2 - p1, p3);")
+	static public void fill(long[] array, int start, int end, long value) {
+		for (int n = start; n < end; n++) array[n] = value;
+	}
+
+	@JTranscMethodBody(target = "js", value = "p0.data.fill(p3, p1, p2);")
+	@JTranscMethodBody(target = "cpp", value = "std::fill_n((float *)GET_OBJECT(JA_F, p0)->getOffsetPtr(p1), p2 - p1, p3);")
+	static public void fill(float[] array, int start, int end, float value) {
+		for (int n = start; n < end; n++) array[n] = value;
+	}
+
+	@JTranscMethodBody(target = "js", value = "p0.data.fill(p3, p1, p2);")
+	@JTranscMethodBody(target = "cpp", value = "std::fill_n((double *)GET_OBJECT(JA_D, p0)->getOffsetPtr(p1), p2 - p1, p3);")
+	static public void fill(double[] array, int start, int end, double value) {
+		for (int n = start; n < end; n++) array[n] = value;
+	}
+
+	@JTranscMethodBody(target = "js", value = "p0.data.fill(p3, p1, p2);")
+	static public void fill(Object[] array, int start, int end, Object value) {
+		for (int n = start; n < end; n++) array[n] = value;
+	}
+
+	@JTranscMethodBody(target = "js", value = "var a = p0.data, b = p2.data; for (var n = 0; n < p4; n++) if (a[p1 + n] !== b[p3 + n]) return false; return true;")
+	@JTranscMethodBody(target = "cpp", value = "return ::memcmp(GET_OBJECT(JA_B, p0)->getOffsetPtr(p1), GET_OBJECT(JA_B, p2)->getOffsetPtr(p3), p4 * sizeof(int8_t)) == 0;")
+	static public boolean equals(boolean[] a, int aStart, boolean[] b, int bStart, int count) {
+		for (int n = 0; n < count; n++) if (a[aStart + n] != b[bStart + n]) return false;
+		return true;
+	}
+
+	@JTranscMethodBody(target = "js", value = "var a = p0.data, b = p2.data; for (var n = 0; n < p4; n++) if (a[p1 + n] !== b[p3 + n]) return false; return true;")
+	@JTranscMethodBody(target = "cpp", value = "return ::memcmp(GET_OBJECT(JA_B, p0)->getOffsetPtr(p1), GET_OBJECT(JA_B, p2)->getOffsetPtr(p3), p4 * sizeof(int8_t)) == 0;")
+	static public boolean equals(byte[] a, int aStart, byte[] b, int bStart, int count) {
+		for (int n = 0; n < count; n++) if (a[aStart + n] != b[bStart + n]) return false;
+		return true;
+	}
+
+	@JTranscMethodBody(target = "js", value = "var a = p0.data, b = p2.data; for (var n = 0; n < p4; n++) if (a[p1 + n] !== b[p3 + n]) return false; return true;")
+	@JTranscMethodBody(target = "cpp", cond = "JTRANSC_COMPACT_STRINGS", value = "for (int n = 0; n < p4; n++) if (GET_OBJECT(JA_C, p0)->fastGet(p1 + n) != GET_OBJECT(JA_C, p2)->fastGet(p3 + n)) return false; return true;")
+	@JTranscMethodBody(target = "cpp", value = "return ::memcmp(GET_OBJECT(JA_C, p0)->getOffsetPtr(p1), GET_OBJECT(JA_C, p2)->getOffsetPtr(p3), p4 * sizeof(uint16_t)) == 0;")
+	static public boolean equals(char[] a, int aStart, char[] b, int bStart, int count) {
+		for (int n = 0; n < count; n++) if (a[aStart + n] != b[bStart + n]) return false;
+		return true;
+	}
+
+	@JTranscMethodBody(target = "js", value = "var a = p0.data, b = p2.data; for (var n = 0; n < p4; n++) if (a[p1 + n] !== b[p3 + n]) return false; return true;")
+	@JTranscMethodBody(target = "cpp", value = "return ::memcmp(GET_OBJECT(JA_S, p0)->getOffsetPtr(p1), GET_OBJECT(JA_S, p2)->getOffsetPtr(p3), p4 * sizeof(int16_t)) == 0;")
+	static public boolean equals(short[] a, int aStart, short[] b, int bStart, int count) {
+		for (int n = 0; n < count; n++) if (a[aStart + n] != b[bStart + n]) return false;
+		return true;
+	}
+
+	@JTranscMethodBody(target = "js", value = "var a = p0.data, b = p2.data; for (var n = 0; n < p4; n++) if (a[p1 + n] !== b[p3 + n]) return false; return true;")
+	@JTranscMethodBody(target = "cpp", value = "return ::memcmp(GET_OBJECT(JA_I, p0)->getOffsetPtr(p1), GET_OBJECT(JA_I, p2)->getOffsetPtr(p3), p4 * sizeof(int32_t)) == 0;")
+	static public boolean equals(int[] a, int aStart, int[] b, int bStart, int count) {
+		for (int n = 0; n < count; n++) if (a[aStart + n] != b[bStart + n]) return false;
+		return true;
+	}
+
+	@JTranscMethodBody(target = "js", value = "var a = p0.data, b = p2.data; for (var n = 0; n < p4; n++) if (N.lcmp(a[p1 + n], b[p3 + n]) != 0) return false; return true;")
+	@JTranscMethodBody(target = "cpp", value = "return ::memcmp(GET_OBJECT(JA_J, p0)->getOffsetPtr(p1), GET_OBJECT(JA_J, p2)->getOffsetPtr(p3), p4 * sizeof(int64_t)) == 0;")
+	static public boolean equals(long[] a, int aStart, long[] b, int bStart, int count) {
+		for (int n = 0; n < count; n++) if (a[aStart + n] != b[bStart + n]) return false;
+		return true;
+	}
+
 	public static void checkOffsetAndCount(int arrayLength, int offset, int count) {
 		if ((offset | count) < 0 || offset > arrayLength || arrayLength - offset < count) {
 			throw new ArrayIndexOutOfBoundsException("length=" + arrayLength + "; regionStart=" + offset + "; regionLength=" + count);
@@ -280,7 +280,7 @@ public class JTranscSystem {
 		return System.getenv("java.home");
 	}
 
-	@JTranscMethodBody(target = "js", value = "return true;")
+	@JTranscMethodBody(target = "js", value = "return N.EMULATED_LONG;")
 	public static boolean isEmulatedLong() {
 		return FALSE;
 	}
@@ -1,12 +1,42 @@
 package com.jtransc.event;
 
+import com.jtransc.annotation.JTranscMethodBody;
+
 final public class JTranscEventLoop {
 	native static public void frame();
-	native static public Timer setImmediate(Runnable task);
-	native static public Timer setTimeout(Runnable task, int ms);
-	native static public Timer setInterval(Runnable task, int ms);
+
+	static public Timer setImmediate(Runnable task) {
+		return setTimeout(task, 0);
+	}
+
+	static public Timer setTimeout(Runnable task, int ms) {
+		return new Timer(_setTimeout(task, ms), false);
+	}
+
+	static public Timer setInterval(Runnable task, int ms) {
+		return new Timer(_setInterval(task, ms), true);
+	}
+
+	@JTranscMethodBody(target = "js", value = "var task = p0; return setTimeout(function() { task['{% METHOD java.lang.Runnable:run %}'](); }, p1);")
+	native static private Object _setTimeout(Runnable task, int ms);
+
+	@JTranscMethodBody(target = "js", value = "var task = p0; return setInterval(function() { task['{% METHOD java.lang.Runnable:run %}'](); }, p1);")
+	native static private Object _setInterval(Runnable task, int ms);
 
 	static public final class Timer {
-		native public void cancel();
+		private final Object handle;
+		private final boolean interval;
+
+		private Timer(Object handle, boolean interval) {
+			this.handle = handle;
+			this.interval = interval;
+		}
+
+		public void cancel() {
+			_cancel(handle, interval);
+		}
+
+		@JTranscMethodBody(target = "js", value = "if (p1) clearInterval(p0); else clearTimeout(p0);")
+		native static private void _cancel(Object handle, boolean interval);
 	}
 }
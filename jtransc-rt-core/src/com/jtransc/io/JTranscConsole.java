@@ -77,6 +77,12 @@ public class JTranscConsole {
 	@HaxeMethodBody(target = "sys", value = "var msg = '' + p0; Sys.stderr().writeString(msg + \"\\n\");")
 	@HaxeMethodBody("trace('' + p0);")
 	@JTranscMethodBody(target = "js", value = "console.error('' + p0);")
+	@JTranscMethodBody(target = "cpp", value = {
+		"auto str = p0.get() ? p0->M_toString___Ljava_lang_String_() : N::str(std::wstring(L\"null\"));",
+		"int len = N::strLen(str);",
+		"for (int n = 0; n < len; n++) fputwc((wchar_t)N::strCharAt(str, n), stderr);",
+		"fputwc('\\n', stderr);",
+	})
 	static public void error(Object msg) {
 		System.err.println(msg);
 	}
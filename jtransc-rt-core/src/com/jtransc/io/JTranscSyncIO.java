@@ -22,6 +22,10 @@ public class JTranscSyncIO {
 	public static final int O_SYNC = 4;
 	public static final int O_DSYNC = 8;
 
+	public static final int MAP_READ_ONLY = 0;
+	public static final int MAP_READ_WRITE = 1;
+	public static final int MAP_PRIVATE = 2;
+
 	public static final int ACCESS_EXECUTE = 0x01;
 	public static final int ACCESS_WRITE = 0x02;
 	public static final int ACCESS_READ = 0x04;
@@ -216,6 +220,22 @@ public class JTranscSyncIO {
 			_setLength(newLength);
 		}
 
+		@Override
+		public byte[] map(long position, int size, int mode) {
+			byte[] data = _map(position, size, mode);
+			return (data != null) ? data : super.map(position, size, mode);
+		}
+
+		@Override
+		public void flush(byte[] data, long position) {
+			if (!_flush(data, position)) super.flush(data, position);
+		}
+
+		@Override
+		public void sync(boolean metaData) {
+			_sync(metaData);
+		}
+
 		@HaxeMethodBody("_stream.syncioOpen(p0._str, p1); return true;")
 		@JTranscMethodBody(target = "js", value = "this._stream.open(N.istr(p0), p1); return true;")
 		@JTranscMethodBody(target = "cpp", value = {
@@ -272,8 +292,42 @@ public class JTranscSyncIO {
 
 		@HaxeMethodBody("_stream.syncioSetLength(p0);")
 		@JTranscMethodBody(target = "js", value = "this._stream.setLength(N.ltoFloat(p0));")
-		@JTranscMethodBody(target = "cpp", value = "if (this->file != NULL) ::ftruncate(this->file, p0);")
+		@JTranscMethodBody(target = "cpp", value = "if (this->file != NULL) { ::fflush(this->file); ::ftruncate(::fileno(this->file), p0); }")
 		private native void _setLength(long newLength);
+
+		@HaxeMethodBody("return null;")
+		@JTranscMethodBody(target = "js", value = "return JA_B.wrapBuffer(this._stream.map(N.ltoFloat(p0), p1));")
+		@JTranscMethodBody(target = "cpp", cond = "_WIN32", value = "return SOBJ(NULL);")
+		@JTranscMethodBody(target = "cpp", value = {
+			"if (this->file == NULL) return SOBJ(NULL);",
+			"if (p1 == 0) return SOBJ(new JA_B(0));",
+			"::fflush(this->file);",
+			"int64_t page = ::sysconf(_SC_PAGESIZE);",
+			"int64_t start = p0 & ~(page - 1);",
+			"size_t size = (size_t)(p0 - start) + p1;",
+			"int prot = (p2 == 0) ? PROT_READ : (PROT_READ | PROT_WRITE);",
+			"void *ptr = ::mmap(NULL, size, prot, (p2 == 2) ? MAP_PRIVATE : MAP_SHARED, ::fileno(this->file), start);",
+			"if (ptr == MAP_FAILED) return SOBJ(NULL);",
+			"return SOBJ(new JA_B_MAPPED(ptr, size, (int)(p0 - start), p1));",
+		})
+		private native byte[] _map(long position, int size, int mode);
+
+		@HaxeMethodBody("return false;")
+		@JTranscMethodBody(target = "js", value = "this._stream.flush(p0.data, p0.length, N.ltoFloat(p1)); return true;")
+		@JTranscMethodBody(target = "cpp", cond = "_WIN32", value = "return false;")
+		@JTranscMethodBody(target = "cpp", value = {
+			"auto mapped = dynamic_cast<JA_B_MAPPED*>(p0.get());",
+			"if (mapped == NULL) return false;",
+			"::msync(mapped->mapping, mapped->mappingSize, MS_SYNC);",
+			"return true;",
+		})
+		private native boolean _flush(byte[] data, long position);
+
+		@HaxeMethodBody("")
+		@JTranscMethodBody(target = "js", value = "this._stream.sync(p0);")
+		@JTranscMethodBody(target = "cpp", cond = "_WIN32", value = "if (this->file != NULL) ::fflush(this->file);")
+		@JTranscMethodBody(target = "cpp", value = "if (this->file != NULL) { ::fflush(this->file); ::fsync(::fileno(this->file)); }")
+		private native void _sync(boolean metaData);
 	}
 
 	static public class ByteStream extends ImplStream {
@@ -488,5 +542,31 @@ public class JTranscSyncIO {
 			read(out, 0, count);
 			return out;
 		}
+
+		// Array viewing a region of the stream. Streams that can't map their contents read them into a new array,
+		// so changes are only written back with flush
+		public byte[] map(long position, int size, int mode) {
+			byte[] out = new byte[size];
+			long old = getPosition();
+			setPosition(position);
+			for (int n = 0; n < size; ) {
+				int count = read(out, n, size - n);
+				if (count <= 0) break;
+				n += count;
+			}
+			setPosition(old);
+			return out;
+		}
+
+		public void flush(byte[] data, long position) {
+			long old = getPosition();
+			setPosition(position);
+			write(data, 0, data.length);
+			setPosition(old);
+		}
+
+		// Writes the contents to the storage device, and also the file metadata when metaData is set
+		public void sync(boolean metaData) {
+		}
 	}
 }
\ No newline at end of file
@@ -6,6 +6,20 @@ import com.jtransc.annotation.JTranscMethodBody;
 public class JTranscThreading {
 	static public Impl impl = new Impl(null);
 
+	// Entry point of the threads started by the native runtime
+	static private void _run(Thread thread) {
+		try {
+			thread.run();
+		} catch (Throwable e) {
+			Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+			if (handler != null) {
+				handler.uncaughtException(thread, e);
+			} else {
+				e.printStackTrace();
+			}
+		}
+	}
+
 	static public class Impl {
 		Impl parent;
 
@@ -23,11 +37,18 @@ public class JTranscThreading {
 				parent.start(thread);
 				return;
 			}
+			if (_startNative(thread, thread.isDaemon())) return;
 			System.err.println("WARNING: Threads not supported! Executing thread code in the parent's thread!");
 			thread.run();
 		}
 
+		@JTranscMethodBody(target = "cpp", value = "N::startThread(p0, p1, [](SOBJ thread) { {% SMETHOD com.jtransc.thread.JTranscThreading:_run %}(thread); }); return true;")
+		private boolean _startNative(Thread thread, boolean daemon) {
+			return false;
+		}
+
 		@JTranscMethodBody(target = "js", value = "return false;")
+		@JTranscMethodBody(target = "cpp", value = "return true;")
 		private boolean _isSupported() {
 			return !JTranscSystem.isJTransc();
 		}
@@ -35,6 +56,11 @@ public class JTranscThreading {
 		public boolean isAlive(Thread thread) {
 			if (parent != null) return parent.isAlive(thread);
 			//return thread._isAlive;
+			return _isAliveNative(thread);
+		}
+
+		@JTranscMethodBody(target = "cpp", value = "return N::isThreadAlive(p0.get());")
+		private boolean _isAliveNative(Thread thread) {
 			return false;
 		}
 	}
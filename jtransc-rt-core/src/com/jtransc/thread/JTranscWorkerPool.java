@@ -0,0 +1,95 @@
+package com.jtransc.thread;
+
+import com.jtransc.annotation.JTranscAddFile;
+import com.jtransc.annotation.JTranscMethodBody;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Pool of Node worker_threads or Web Workers for the js target, where each worker loads the same program.
+ *
+ * Tasks are copied to the workers and results are copied back (primitive arrays created by the task are transferred),
+ * so a task doesn't share any state with the code that submitted it. Lambdas can't be sent to workers.
+ */
+@JTranscAddFile(target = "js", priority = -999, process = true, prepend = "js/Workers.js")
+public class JTranscWorkerPool {
+	public interface Callback {
+		void done(Object result, String error);
+
+		// The task was still queued when the pool was shut down with shutdownNow
+		void cancelled();
+	}
+
+	private final Object pool;
+
+	public JTranscWorkerPool(int size) {
+		this.pool = _create(size);
+	}
+
+	@JTranscMethodBody(target = "js", value = "return N.workersSupported();")
+	static public boolean isSupported() {
+		return false;
+	}
+
+	@JTranscMethodBody(target = "js", value = "return N.workerDefaultSize();")
+	static public int getDefaultSize() {
+		return 1;
+	}
+
+	// Runs a Callable or a Runnable in a worker. The callback is called from the event loop, or from await.
+	public void submit(Object task, Callback callback) {
+		_submit(pool, task, callback);
+	}
+
+	// Blocks until a task completes or the timeout expires (-1 for no timeout). False when it is not possible to block.
+	public boolean await(long timeoutMs) {
+		return _await(pool, (int) Math.min(timeoutMs, Integer.MAX_VALUE));
+	}
+
+	public void shutdown() {
+		_shutdown(pool);
+	}
+
+	public Object[] shutdownNow() {
+		return _shutdownNow(pool);
+	}
+
+	public boolean isTerminated() {
+		return _isTerminated(pool);
+	}
+
+	// Called by the workers
+	static private Object runTask(Object task) throws Exception {
+		if (task instanceof Callable) return ((Callable<?>) task).call();
+		((Runnable) task).run();
+		return null;
+	}
+
+	@JTranscMethodBody(target = "js", value = "return new N.WorkerPool(p0);")
+	static private Object _create(int size) {
+		return null;
+	}
+
+	@JTranscMethodBody(target = "js", value = "p0.submit(p1, p2);")
+	static private void _submit(Object pool, Object task, Callback callback) {
+	}
+
+	@JTranscMethodBody(target = "js", value = "return p0.wait(p1);")
+	static private boolean _await(Object pool, int timeoutMs) {
+		return false;
+	}
+
+	@JTranscMethodBody(target = "js", value = "p0.shutdown();")
+	static private void _shutdown(Object pool) {
+	}
+
+	@JTranscMethodBody(target = "js", value = "return p0.shutdownNow();")
+	static private Object[] _shutdownNow(Object pool) {
+		return new Object[0];
+	}
+
+	@JTranscMethodBody(target = "js", value = "return p0.isTerminated();")
+	static private boolean _isTerminated(Object pool) {
+		return true;
+	}
+}
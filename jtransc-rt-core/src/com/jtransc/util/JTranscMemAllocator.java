@@ -1,29 +1,287 @@
 package com.jtransc.util;
 
 import com.jtransc.FastMemory;
+import com.jtransc.ds.FastIntMap;
+import com.jtransc.ds.IntStack;
 
+import java.util.Arrays;
+
+/**
+ * Allocates blocks of an arena of totalSize bytes, usually the contents of a FastMemory used through Mem.
+ *
+ * Free blocks are kept in segregated lists (TLSF-style): one list per size multiple of ALIGNMENT up to 256 bytes
+ * and four lists per power of two above that, with a bitmap of the non empty ones. Freed blocks are merged with
+ * their free neighbours. Blocks are described in arrays outside the arena, so all of it can be handed out.
+ */
 public class JTranscMemAllocator {
+	static public final int ALIGNMENT = 8;
+	static private final int SMALL_LIMIT = 256;
+	static private final int SMALL_LISTS = SMALL_LIMIT / ALIGNMENT;
+	static private final int SUB_LISTS = 4;
+	static private final int LIST_COUNT = SMALL_LISTS + (32 - 8) * SUB_LISTS;
+
 	public final int totalSize;
-	private int offset = 0;
+	private final FastMemory mem;
+
+	// Blocks by node: physical neighbours are linked to merge them, free ones are also linked in their list
+	private int[] offsets = new int[16];
+	private int[] sizes = new int[16];
+	// Alignment requested for the allocated blocks, kept when realloc moves them
+	private int[] alignments = new int[16];
+	private int[] prevPhys = new int[16];
+	private int[] nextPhys = new int[16];
+	private int[] prevFree = new int[16];
+	private int[] nextFree = new int[16];
+	private boolean[] isFree = new boolean[16];
+	private int nodeCount = 0;
+	private final IntStack unusedNodes = new IntStack();
+	// Offset -> node of the allocated blocks
+	private final FastIntMap<Integer> usedNodes = new FastIntMap<Integer>();
+
+	private final int[] heads = new int[LIST_COUNT];
+	private final int[] nonEmpty = new int[LIST_COUNT / 32];
+
+	private int liveBytes = 0;
+	private int liveBlocks = 0;
+	private int freeBytes = 0;
 
 	public JTranscMemAllocator(int totalSize) {
-		this.totalSize = totalSize;
+		this(totalSize, null);
 	}
 
+	// realloc copies the contents of the blocks it moves
 	public JTranscMemAllocator(FastMemory mem) {
-		this.totalSize = mem.getLength();
+		this(mem.getLength(), mem);
+	}
+
+	private JTranscMemAllocator(int totalSize, FastMemory mem) {
+		this.totalSize = totalSize;
+		this.mem = mem;
+		Arrays.fill(heads, -1);
+		int usable = totalSize & ~(ALIGNMENT - 1);
+		if (usable > 0) {
+			insertFree(newNode(0, usable));
+			freeBytes = usable;
+		}
 	}
 
 	public int malloc(int size) {
-		if (offset + size > totalSize) throw new RuntimeException("No enough space!");
-		try {
+		return malloc(size, ALIGNMENT);
+	}
+
+	public int malloc(int size, int alignment) {
+		if (alignment <= 0 || (alignment & (alignment - 1)) != 0) throw new IllegalArgumentException("Alignment must be a power of two: " + alignment);
+		int blockSize = blockSize(size);
+		int extra = Math.max(alignment - ALIGNMENT, 0);
+		int node = (blockSize <= totalSize - extra) ? findFree(blockSize + extra) : -1;
+		if (node < 0) throw new RuntimeException("No enough space!");
+		removeFree(node);
+
+		int offset = offsets[node];
+		int padding = ((offset + alignment - 1) & ~(alignment - 1)) - offset;
+		if (padding > 0) {
+			int rest = split(node, padding);
+			insertFree(node);
+			node = rest;
+		}
+		if (sizes[node] - blockSize >= ALIGNMENT) insertFree(split(node, blockSize));
+
+		alignments[node] = alignment;
+		usedNodes.set(offsets[node], node);
+		liveBytes += sizes[node];
+		freeBytes -= sizes[node];
+		liveBlocks++;
+		return offsets[node];
+	}
+
+	public void free(int offset) {
+		int node = usedNode(offset);
+		usedNodes.remove(offset);
+		liveBytes -= sizes[node];
+		freeBytes += sizes[node];
+		liveBlocks--;
+
+		int next = nextPhys[node];
+		if (next >= 0 && isFree[next]) {
+			removeFree(next);
+			merge(node, next);
+		}
+		int prev = prevPhys[node];
+		if (prev >= 0 && isFree[prev]) {
+			removeFree(prev);
+			merge(prev, node);
+			node = prev;
+		}
+		insertFree(node);
+	}
+
+	// Resizes in place when the block or its free neighbour is big enough, moves the block otherwise
+	public int realloc(int offset, int size) {
+		int node = usedNode(offset);
+		int blockSize = blockSize(size);
+		int oldSize = sizes[node];
+
+		int next = nextPhys[node];
+		if (blockSize > oldSize && next >= 0 && isFree[next] && oldSize + sizes[next] >= blockSize) {
+			removeFree(next);
+			liveBytes += sizes[next];
+			freeBytes -= sizes[next];
+			merge(node, next);
+		}
+
+		if (sizes[node] >= blockSize) {
+			if (sizes[node] - blockSize >= ALIGNMENT) {
+				int rest = split(node, blockSize);
+				liveBytes -= sizes[rest];
+				freeBytes += sizes[rest];
+				int restNext = nextPhys[rest];
+				if (restNext >= 0 && isFree[restNext]) {
+					removeFree(restNext);
+					merge(rest, restNext);
+				}
+				insertFree(rest);
+			}
 			return offset;
-		} finally {
-			offset += size;
 		}
+
+		int newOffset = malloc(size, alignments[node]);
+		if (mem != null) FastMemory.copy(mem, offset, mem, newOffset, Math.min(oldSize, size));
+		free(offset);
+		return newOffset;
+	}
+
+	// Usable size of an allocated block, at least the requested one
+	public int getSize(int offset) {
+		return sizes[usedNode(offset)];
+	}
+
+	public int getLiveBytes() {
+		return liveBytes;
 	}
 
-	// @TODO: No free! So this is much easier to implement. To create simple layouts along with Mem.
-	//public void free(int offset) {
-	//}
+	public int getLiveBlocks() {
+		return liveBlocks;
+	}
+
+	public int getFreeBytes() {
+		return freeBytes;
+	}
+
+	public int getLargestFreeBlock() {
+		for (int list = LIST_COUNT - 1; list >= 0; list--) {
+			if (heads[list] < 0) continue;
+			int largest = 0;
+			for (int node = heads[list]; node >= 0; node = nextFree[node]) largest = Math.max(largest, sizes[node]);
+			return largest;
+		}
+		return 0;
+	}
+
+	// 0 when the free memory is a single block, approaching 1 as it is split in many small ones
+	public double getFragmentation() {
+		return (freeBytes == 0) ? 0.0 : 1.0 - (double) getLargestFreeBlock() / (double) freeBytes;
+	}
+
+	static private int blockSize(int size) {
+		if (size < 0) throw new IllegalArgumentException("Negative size: " + size);
+		if (size > Integer.MAX_VALUE - ALIGNMENT) throw new RuntimeException("No enough space!");
+		return Math.max(ALIGNMENT, (size + ALIGNMENT - 1) & ~(ALIGNMENT - 1));
+	}
+
+	static private int listIndex(int size) {
+		if (size <= SMALL_LIMIT) return size / ALIGNMENT - 1;
+		int log2 = 31 - Integer.numberOfLeadingZeros(size);
+		return SMALL_LISTS + (log2 - 8) * SUB_LISTS + ((size >>> (log2 - 2)) & (SUB_LISTS - 1));
+	}
+
+	private int usedNode(int offset) {
+		Integer node = usedNodes.get(offset);
+		if (node == null) throw new IllegalArgumentException("Not an allocated block: " + offset);
+		return node;
+	}
+
+	private int findFree(int size) {
+		int list = listIndex(size);
+		// Blocks in the list of the size may be smaller, the ones in the following lists always fit
+		for (int node = heads[list]; node >= 0; node = nextFree[node]) {
+			if (sizes[node] >= size) return node;
+		}
+		for (int word = (list + 1) >>> 5; word < nonEmpty.length; word++) {
+			int bits = nonEmpty[word];
+			if (word == (list + 1) >>> 5) bits &= -1 << ((list + 1) & 31);
+			if (bits != 0) return heads[(word << 5) + Integer.numberOfTrailingZeros(bits)];
+		}
+		return -1;
+	}
+
+	private void insertFree(int node) {
+		int list = listIndex(sizes[node]);
+		int head = heads[list];
+		prevFree[node] = -1;
+		nextFree[node] = head;
+		if (head >= 0) prevFree[head] = node;
+		heads[list] = node;
+		nonEmpty[list >>> 5] |= 1 << (list & 31);
+		isFree[node] = true;
+	}
+
+	private void removeFree(int node) {
+		int list = listIndex(sizes[node]);
+		int prev = prevFree[node];
+		int next = nextFree[node];
+		if (prev >= 0) nextFree[prev] = next; else heads[list] = next;
+		if (next >= 0) prevFree[next] = prev;
+		if (heads[list] < 0) nonEmpty[list >>> 5] &= ~(1 << (list & 31));
+		isFree[node] = false;
+	}
+
+	// Keeps the first size bytes in node and returns a node with the rest
+	private int split(int node, int size) {
+		int rest = newNode(offsets[node] + size, sizes[node] - size);
+		sizes[node] = size;
+		int next = nextPhys[node];
+		prevPhys[rest] = node;
+		nextPhys[rest] = next;
+		if (next >= 0) prevPhys[next] = rest;
+		nextPhys[node] = rest;
+		return rest;
+	}
+
+	// Appends the following block to node
+	private void merge(int node, int next) {
+		sizes[node] += sizes[next];
+		int after = nextPhys[next];
+		nextPhys[node] = after;
+		if (after >= 0) prevPhys[after] = node;
+		unusedNodes.push(next);
+	}
+
+	private int newNode(int offset, int size) {
+		int node;
+		if (unusedNodes.getLength() > 0) {
+			node = unusedNodes.pop();
+		} else {
+			node = nodeCount++;
+			if (node >= offsets.length) {
+				int capacity = offsets.length * 2;
+				offsets = Arrays.copyOf(offsets, capacity);
+				sizes = Arrays.copyOf(sizes, capacity);
+				alignments = Arrays.copyOf(alignments, capacity);
+				prevPhys = Arrays.copyOf(prevPhys, capacity);
+				nextPhys = Arrays.copyOf(nextPhys, capacity);
+				prevFree = Arrays.copyOf(prevFree, capacity);
+				nextFree = Arrays.copyOf(nextFree, capacity);
+				isFree = Arrays.copyOf(isFree, capacity);
+			}
+		}
+		offsets[node] = offset;
+		sizes[node] = size;
+		alignments[node] = ALIGNMENT;
+		prevPhys[node] = -1;
+		nextPhys[node] = -1;
+		prevFree[node] = -1;
+		nextFree[node] = -1;
+		isFree[node] = false;
+		return node;
+	}
 }
@@ -34,6 +34,11 @@ class N {
 		//return (value != null) ? cast value : null;
 	}
 
+	static public function checkNotNull<T>(value:T):T {
+		if (value == null) throw {% CONSTRUCTOR java.lang.NullPointerException:()V %}();
+		return value;
+	}
+
 	static inline private function _shift(count:Int) {
 		#if php
 			return untyped __php__("PHP_INT_SIZE") * 8 - count;
@@ -6,14 +6,18 @@
 
 #include <memory>
 #include <vector>
+#include <unordered_map>
 #include <string>
 #include <sstream>
 #include <iostream>
 #include <algorithm>
 #include <cmath>
 #include <csignal>
-//#include <chrono>
-//#include <thread>
+#include <atomic>
+#include <mutex>
+#include <condition_variable>
+#include <chrono>
+#include <thread>
 
 extern "C" {
 	#include <stdio.h>
@@ -22,6 +26,8 @@ extern "C" {
 	#ifndef _WIN32
 		#include <sys/stat.h>
 		#include <sys/time.h>
+		#include <sys/mman.h>
+		#include <unistd.h>
 	#endif
 	#include <math.h>
 	#include <stdlib.h>
@@ -73,8 +79,157 @@ struct CLASS_TRACE { public:
 // For referencing pointers
 {{ CLASS_REFERENCES }}
 
-typedef std::shared_ptr<java_lang_Object> SOBJ;
-typedef std::weak_ptr<java_lang_Object> WOBJ;
+#ifdef JTRANSC_GC
+	struct SOBJ;
+	struct FOBJ;
+	struct WOBJ;
+
+	// Tracing mark & sweep collector. Roots are the live SOBJ handles (locals, temporaries and globals) of every thread
+	// plus the static fields, objects are traced through the pointer map of each class (__GC_trace).
+	// Collections are requested on allocation and only performed at safepoints (GC_SAFEPOINT at method entry, on every
+	// loop iteration and before allocating), where every reference in use by generated code is held by a handle.
+	// The first thread reaching a safepoint collects once all the other threads are stopped at one or blocked in a
+	// safe region (JT_BLOCKING).
+	struct GC { public:
+		struct ENTRY { java_lang_Object *obj; size_t size; };
+
+		static thread_local SOBJ *roots;
+		static std::vector<SOBJ**> threadRoots;
+		static WOBJ *weaks;
+		static std::mutex weakLock;
+		static std::vector<ENTRY> objects;
+		static std::vector<java_lang_Object*> markStack;
+		static std::atomic<size_t> allocated;
+		static std::atomic<size_t> threshold;
+		static std::atomic<bool> requested;
+
+		static std::mutex lock;
+		static std::condition_variable stopped;
+		static std::condition_variable resumed;
+		static int running;
+		static bool collecting;
+
+		static void *alloc(size_t size);
+		static void free(void *ptr);
+		inline static void external(size_t size);
+		inline static void mark(java_lang_Object *obj);
+		inline static void mark(const FOBJ &obj);
+		static void traceStatics();
+		static void traceThreads();
+		static void collect();
+		static void safepoint();
+		static void enterSafeRegion();
+		static void exitSafeRegion();
+		static void registerThread();
+		static void unregisterThread();
+	};
+
+	#define GC_SAFEPOINT() if (GC::requested) GC::safepoint();
+
+	// Reference held by generated code: links itself into GC::roots while alive
+	struct SOBJ { public:
+		java_lang_Object *ptr;
+		SOBJ *prev;
+		SOBJ *next;
+
+		inline void link() { prev = NULL; next = GC::roots; if (next != NULL) next->prev = this; GC::roots = this; }
+		inline void unlink() { if (prev != NULL) prev->next = next; else GC::roots = next; if (next != NULL) next->prev = prev; }
+
+		SOBJ() : ptr(NULL) { link(); }
+		SOBJ(java_lang_Object *p) : ptr(p) { link(); }
+		SOBJ(const SOBJ &o) : ptr(o.ptr) { link(); }
+		inline SOBJ(const FOBJ &o);
+		inline SOBJ(const WOBJ &o);
+		~SOBJ() { unlink(); }
+
+		SOBJ &operator=(const SOBJ &o) { ptr = o.ptr; return *this; }
+		SOBJ &operator=(java_lang_Object *p) { ptr = p; return *this; }
+		inline SOBJ &operator=(const FOBJ &o);
+		inline SOBJ &operator=(const WOBJ &o);
+		java_lang_Object *get() const { return ptr; }
+		java_lang_Object *operator->() const { return ptr; }
+		operator java_lang_Object*() const { return ptr; }
+	};
+
+	// Reference stored in the heap (fields and object arrays): traced, but not a root
+	struct FOBJ { public:
+		java_lang_Object *ptr;
+
+		FOBJ() : ptr(NULL) { }
+		FOBJ(java_lang_Object *p) : ptr(p) { }
+		FOBJ &operator=(const SOBJ &o) { ptr = o.ptr; return *this; }
+		FOBJ &operator=(java_lang_Object *p) { ptr = p; return *this; }
+		java_lang_Object *get() const { return ptr; }
+		java_lang_Object *operator->() const { return ptr; }
+		operator java_lang_Object*() const { return ptr; }
+	};
+
+	// Reference stored in a @JTranscWeak field: not traced, and cleared by the collection that frees its object.
+	// Weak handles are linked into GC::weaks while alive, so the collector can find them.
+	struct WOBJ { public:
+		java_lang_Object *ptr;
+		WOBJ *prev;
+		WOBJ *next;
+
+		inline void link() {
+			std::lock_guard<std::mutex> guard(GC::weakLock);
+			prev = NULL; next = GC::weaks; if (next != NULL) next->prev = this; GC::weaks = this;
+		}
+		inline void unlink() {
+			std::lock_guard<std::mutex> guard(GC::weakLock);
+			if (prev != NULL) prev->next = next; else GC::weaks = next; if (next != NULL) next->prev = prev;
+		}
+
+		WOBJ() : ptr(NULL) { link(); }
+		WOBJ(java_lang_Object *p) : ptr(p) { link(); }
+		WOBJ(const WOBJ &o) : ptr(o.ptr) { link(); }
+		~WOBJ() { unlink(); }
+
+		WOBJ &operator=(const WOBJ &o) { ptr = o.ptr; return *this; }
+		WOBJ &operator=(const SOBJ &o) { ptr = o.ptr; return *this; }
+		WOBJ &operator=(java_lang_Object *p) { ptr = p; return *this; }
+		java_lang_Object *get() const { return ptr; }
+		java_lang_Object *operator->() const { return ptr; }
+		operator java_lang_Object*() const { return ptr; }
+	};
+
+	SOBJ::SOBJ(const FOBJ &o) : ptr(o.ptr) { link(); }
+	SOBJ::SOBJ(const WOBJ &o) : ptr(o.ptr) { link(); }
+	SOBJ &SOBJ::operator=(const FOBJ &o) { ptr = o.ptr; return *this; }
+	SOBJ &SOBJ::operator=(const WOBJ &o) { ptr = o.ptr; return *this; }
+
+	// Blocking operations don't touch the heap, so collections don't have to wait for them
+	struct JT_BLOCKING {
+		JT_BLOCKING() { GC::enterSafeRegion(); }
+		~JT_BLOCKING() { GC::exitSafeRegion(); }
+	};
+#else
+	#define GC_SAFEPOINT() ;
+
+	typedef std::shared_ptr<java_lang_Object> SOBJ;
+	typedef std::weak_ptr<java_lang_Object> WOBJ;
+	typedef SOBJ FOBJ;
+
+	struct JT_BLOCKING { };
+#endif
+
+// Initialization state of a class, as in the JVM: the thread running the static initializer doesn't hold any lock,
+// other threads wait until it finishes, and the initializing thread sees the class as initialized when it recurses.
+// Zero initialized (NOT_STARTED), so it can be used before the static constructors run.
+struct JT_CLASS_INIT { public:
+	enum { NOT_STARTED = 0, IN_PROGRESS = 1, DONE = 2, FAILED = 3 };
+
+	static std::mutex lock;
+	static std::condition_variable changed;
+	static thread_local char self;
+
+	std::atomic<int> state;
+	const void *owner;
+
+	inline bool done() { return state.load(std::memory_order_acquire) == DONE; }
+	bool begin(const wchar_t *name);
+	void finish(bool ok);
+};
 
 // generateTypeTableHeader()
 {{ TYPE_TABLE_HEADERS }}
@@ -106,8 +261,11 @@ struct N { public:
 	static SOBJ resolveClass(std::wstring str);
 	inline static int64_t lnew(int high, int low);
 	static bool is(SOBJ obj, int type);
-	static bool isArray(SOBJ obj, std::wstring desc);
-	static bool isUnknown(std::shared_ptr<{% CLASS java.lang.Object %}> obj, const char *error);
+	inline static bool isClass(const SOBJ &obj, int first, int last);
+	inline static bool isInterface(const SOBJ &obj, int index);
+	static bool isArray(const SOBJ &obj, int descId);
+	static int arrayDescId(const std::wstring &desc);
+	static bool isUnknown(SOBJ obj, const char *error);
 	static int cmp(double a, double b);
 	static int cmpl(double a, double b);
 	static int cmpg(double a, double b);
@@ -149,6 +307,9 @@ struct N { public:
 	static SOBJ ensureNpe(SOBJ obj, const wchar_t *position);
 	static void throwNpe();
 	static SOBJ ensureNpe(SOBJ obj);
+	static void throwIllegalMonitorState();
+	static void throwNoClassDefFound(const wchar_t *name);
+	static SOBJ initializerError(SOBJ error);
 	static std::vector<SOBJ> getVectorOrEmpty(SOBJ array);
 
 	static int strLen(SOBJ obj);
@@ -181,29 +342,584 @@ struct N { public:
 
 	static double getTime();
 	static void startup();
+
+	inline static void monitorEnter(std::atomic<intptr_t> &word);
+	static void monitorEnterSlow(std::atomic<intptr_t> &word, intptr_t self);
+	inline static void monitorExit(std::atomic<intptr_t> &word);
+	static void monitorInflate(std::atomic<intptr_t> &word, intptr_t value);
+	static bool monitorHeld(std::atomic<intptr_t> &word);
+	static bool monitorWait(std::atomic<intptr_t> &word, int64_t millis);
+	static void monitorNotify(std::atomic<intptr_t> &word, bool all);
+	static void monitorFree(std::atomic<intptr_t> &word);
+
+	static void startThread(SOBJ thread, bool daemon, void (*run)(SOBJ));
+	static void attachThread(SOBJ thread);
+	static SOBJ currentThread();
+	static bool isThreadAlive(java_lang_Object *thread);
+	static bool joinThread(java_lang_Object *thread, int64_t millis);
+	static void interruptThread(java_lang_Object *thread);
+	static bool isInterrupted(java_lang_Object *thread);
+	static bool interrupted();
+	static bool sleep(int64_t millis);
+	static void waitThreads();
 };
 
 {{ ARRAY_HEADERS }}
 
+#ifndef _WIN32
+	// Byte array viewing a memory mapped region of a file (FileChannel.map), unmapped with the array
+	struct JA_B_MAPPED : public JA_B { public:
+		void *mapping;
+		size_t mappingSize;
+		JA_B_MAPPED(void *mapping, size_t mappingSize, int offset, int size) : JA_B((char *)mapping + offset, size), mapping(mapping), mappingSize(mappingSize) { };
+		~JA_B_MAPPED() { ::munmap(mapping, mappingSize); }
+	};
+#endif
+
+// Returns whether the caller has to run the static initializer, and then call finish
+bool JT_CLASS_INIT::begin(const wchar_t *name) {
+	std::unique_lock<std::mutex> guard(lock);
+	while (true) {
+		switch (state.load(std::memory_order_relaxed)) {
+			case DONE:
+				return false;
+			case FAILED:
+				guard.unlock();
+				N::throwNoClassDefFound(name);
+				return false;
+			case NOT_STARTED:
+				owner = &self;
+				state.store(IN_PROGRESS, std::memory_order_relaxed);
+				return true;
+			default:
+				if (owner == &self) return false;
+				// The initializer runs Java code in another thread, which may need this thread to stop for a collection
+				guard.unlock();
+				{
+					JT_BLOCKING blocking;
+					std::unique_lock<std::mutex> waiting(lock);
+					while (state.load(std::memory_order_relaxed) == IN_PROGRESS) changed.wait(waiting);
+				}
+				guard.lock();
+		}
+	}
+}
+
+void JT_CLASS_INIT::finish(bool ok) {
+	std::lock_guard<std::mutex> guard(lock);
+	owner = NULL;
+	state.store(ok ? DONE : FAILED, std::memory_order_release);
+	changed.notify_all();
+}
+
+std::mutex JT_CLASS_INIT::lock;
+std::condition_variable JT_CLASS_INIT::changed;
+thread_local char JT_CLASS_INIT::self;
+
+// Built without holding any lock, since building it can run Java code. When two threads build the same literal,
+// the first one published is kept and used by both.
 struct STRINGLIT {
+	static std::mutex publishing;
+
 	const wchar_t *ptr;
 	int len;
-	bool initialized;
+	std::atomic<java_lang_Object*> value;
 	SOBJ obj;
 	SOBJ get() {
-		if (!initialized) {
-			initialized = true;
-			obj = N::str(std::wstring(ptr, len));
+		java_lang_Object *str = value.load(std::memory_order_acquire);
+		if (str != NULL) return str->sptr();
+		SOBJ built = N::str(std::wstring(ptr, len));
+		std::lock_guard<std::mutex> guard(publishing);
+		str = value.load(std::memory_order_relaxed);
+		if (str != NULL) return str->sptr();
+		obj = built;
+		value.store(built.get(), std::memory_order_release);
+		return built;
+	};
+};
+
+std::mutex STRINGLIT::publishing;
+
+#ifdef JTRANSC_STATIC_STRINGS
+	// String literal built at startup from static data: neither the string nor its chars are allocated,
+	// and its hash is already computed
+	struct STATICSTR {
+		JA_C value;
+		{% CLASS java.lang.String %} str;
+		SOBJ obj;
+		STATICSTR(const uint16_t *data, int len, int32_t hash) : value(data, len, sizeof(uint16_t)) { init(hash); }
+		STATICSTR(const uint8_t *data, int len, int32_t hash) : value(data, len, sizeof(uint8_t)) { init(hash); }
+		void init(int32_t hash) {
+			#ifdef JTRANSC_GC
+				str.{% FIELD java.lang.String:value %} = &value;
+				obj = &str;
+			#else
+				// Owned by nobody: the references only keep the control blocks alive
+				str.{% FIELD java.lang.String:value %} = SOBJ(&value, [](java_lang_Object *) { });
+				obj = SOBJ(&str, [](java_lang_Object *) { });
+			#endif
+			str.{% FIELD java.lang.String:hash %} = hash;
 		}
-		return obj;
+		inline SOBJ get() { return obj; };
 	};
+#endif
+
+#ifdef JTRANSC_GC
+	thread_local SOBJ *GC::roots = NULL;
+	std::vector<SOBJ**> GC::threadRoots;
+	WOBJ *GC::weaks = NULL;
+	std::mutex GC::weakLock;
+	std::vector<GC::ENTRY> GC::objects;
+	std::vector<java_lang_Object*> GC::markStack;
+	std::atomic<size_t> GC::allocated(0);
+	std::atomic<size_t> GC::threshold(16 * 1024 * 1024);
+	std::atomic<bool> GC::requested(false);
+	std::mutex GC::lock;
+	std::condition_variable GC::stopped;
+	std::condition_variable GC::resumed;
+	int GC::running = 0;
+	bool GC::collecting = false;
+
+	void *GC::alloc(size_t size) {
+		// Before the object exists, so a loop that only allocates can't hold back a collection
+		GC_SAFEPOINT();
+		void *ptr = ::malloc(size);
+		ENTRY entry = { (java_lang_Object *)ptr, size };
+		{
+			std::lock_guard<std::mutex> guard(lock);
+			objects.push_back(entry);
+		}
+		GC::external(size);
+		return ptr;
+	}
+
+	void GC::free(void *ptr) {
+		::free(ptr);
+	}
+
+	void GC::external(size_t size) {
+		if ((allocated += size) >= threshold) requested = true;
+	}
+
+	void GC::mark(java_lang_Object *obj) {
+		if (obj != NULL && !obj->__GC_marked) {
+			obj->__GC_marked = true;
+			markStack.push_back(obj);
+		}
+	}
+
+	void GC::mark(const FOBJ &obj) {
+		GC::mark(obj.ptr);
+	}
+
+	// Called with the lock held and every other thread stopped
+	void GC::collect() {
+		for (size_t n = 0; n < threadRoots.size(); n++) {
+			for (SOBJ *root = *threadRoots[n]; root != NULL; root = root->next) GC::mark(root->ptr);
+		}
+		GC::traceStatics();
+		GC::traceThreads();
+		while (!markStack.empty()) {
+			java_lang_Object *obj = markStack.back();
+			markStack.pop_back();
+			obj->__GC_trace();
+		}
+
+		// Weak references to the objects about to be freed. Freeing them unlinks the weak fields they hold.
+		{
+			std::lock_guard<std::mutex> guard(weakLock);
+			for (WOBJ *weak = weaks; weak != NULL; weak = weak->next) {
+				if (weak->ptr != NULL && !weak->ptr->__GC_marked) weak->ptr = NULL;
+			}
+		}
+
+		size_t live = 0;
+		size_t liveSize = 0;
+		for (size_t n = 0; n < objects.size(); n++) {
+			ENTRY entry = objects[n];
+			if (entry.obj->__GC_marked) {
+				entry.obj->__GC_marked = false;
+				objects[live++] = entry;
+				liveSize += entry.size;
+			} else {
+				delete entry.obj;
+			}
+		}
+		objects.resize(live);
+
+		// The heap grows up to twice the size that survived
+		allocated = 0;
+		requested = false;
+		threshold = std::max((size_t)(16 * 1024 * 1024), liveSize);
+	}
+
+	void GC::safepoint() {
+		std::unique_lock<std::mutex> guard(lock);
+		if (!requested) return;
+		running--;
+		if (!collecting) {
+			collecting = true;
+			while (running > 0) stopped.wait(guard);
+			GC::collect();
+			collecting = false;
+			resumed.notify_all();
+		} else {
+			stopped.notify_all();
+			while (collecting) resumed.wait(guard);
+		}
+		running++;
+	}
+
+	void GC::enterSafeRegion() {
+		std::lock_guard<std::mutex> guard(lock);
+		running--;
+		stopped.notify_all();
+	}
+
+	void GC::exitSafeRegion() {
+		std::unique_lock<std::mutex> guard(lock);
+		while (collecting) resumed.wait(guard);
+		running++;
+	}
+
+	void GC::registerThread() {
+		std::unique_lock<std::mutex> guard(lock);
+		while (collecting) resumed.wait(guard);
+		threadRoots.push_back(&roots);
+		running++;
+	}
+
+	void GC::unregisterThread() {
+		std::lock_guard<std::mutex> guard(lock);
+		threadRoots.erase(std::find(threadRoots.begin(), threadRoots.end(), &roots));
+		running--;
+		stopped.notify_all();
+	}
+#endif
+
+// Threads and monitors
+//
+// Every object has a lock word (__monitor). While the object is not contended it is a thin lock: the id of the owner
+// thread and a recursion count, taken and released with a compare and swap. Contention, waiting and deep recursion
+// inflate it into a JT_MONITOR, and the word then holds the address of the monitor with the lowest bit set.
+// Any thread can inflate a thin lock (on behalf of its owner), so the owner only updates it with compare and swap.
+// Monitors are never deflated, they are freed with the object.
+
+#define JT_LOCK_INFLATED 1
+#define JT_LOCK_COUNT_ONE 2
+#define JT_LOCK_COUNT_MASK ((intptr_t)0xFFFE)
+#define JT_LOCK_OWNER_MASK (~(intptr_t)0xFFFF)
+
+struct JT_MONITOR;
+
+struct JT_THREAD { public:
+	static thread_local JT_THREAD *current;
+	static std::atomic<intptr_t> lastId;
+	static std::mutex lock; // guards the registry and the sleeping, joining and interrupted state of every thread
+	static std::condition_variable changed; // a thread finished or was interrupted
+	static std::unordered_map<java_lang_Object*, JT_THREAD*> alive;
+
+	intptr_t lockId;
+	FOBJ obj;
+	bool daemon;
+	std::atomic<bool> interrupted;
+	JT_MONITOR *waiting;
+	std::condition_variable wakeup;
+
+	JT_THREAD(SOBJ obj, bool daemon) : lockId((++lastId) << 16), daemon(daemon), interrupted(false), waiting(NULL) {
+		this->obj = obj;
+	}
+
+	static JT_THREAD *find(java_lang_Object *obj) {
+		auto it = alive.find(obj);
+		return (it != alive.end()) ? it->second : NULL;
+	}
+};
+
+thread_local JT_THREAD *JT_THREAD::current = NULL;
+std::atomic<intptr_t> JT_THREAD::lastId(0);
+std::mutex JT_THREAD::lock;
+std::condition_variable JT_THREAD::changed;
+std::unordered_map<java_lang_Object*, JT_THREAD*> JT_THREAD::alive;
+
+struct JT_MONITOR { public:
+	std::mutex mutex;
+	std::condition_variable released;
+	std::condition_variable notified;
+	intptr_t owner;
+	intptr_t count;
+
+	JT_MONITOR(intptr_t owner, intptr_t count) : owner(owner), count(count) { }
+
+	bool tryEnter(intptr_t self) {
+		std::lock_guard<std::mutex> guard(mutex);
+		if (owner != 0 && owner != self) return false;
+		owner = self;
+		count++;
+		return true;
+	}
+
+	void enter(intptr_t self) {
+		std::unique_lock<std::mutex> guard(mutex);
+		while (owner != 0 && owner != self) released.wait(guard);
+		owner = self;
+		count++;
+	}
+
+	void exit() {
+		std::lock_guard<std::mutex> guard(mutex);
+		if (--count == 0) {
+			owner = 0;
+			released.notify_one();
+		}
+	}
+
+	bool isOwner(intptr_t self) {
+		std::lock_guard<std::mutex> guard(mutex);
+		return owner == self;
+	}
+
+	// Spurious wakeups are allowed by Object.wait, so a single wait on the condition is enough
+	void wait(JT_THREAD *thread, int64_t millis) {
+		std::unique_lock<std::mutex> guard(mutex);
+		intptr_t savedCount = count;
+		owner = 0;
+		count = 0;
+		released.notify_one();
+		if (!thread->interrupted) {
+			if (millis > 0) {
+				notified.wait_for(guard, std::chrono::milliseconds(millis));
+			} else {
+				notified.wait(guard);
+			}
+		}
+		while (owner != 0) released.wait(guard);
+		owner = thread->lockId;
+		count = savedCount;
+	}
+
+	void notify(bool all) {
+		std::lock_guard<std::mutex> guard(mutex);
+		if (all) notified.notify_all(); else notified.notify_one();
+	}
+};
+
+#define JT_LOCK_MONITOR(value) ((JT_MONITOR *)((value) & ~(intptr_t)JT_LOCK_INFLATED))
+
+// Lock of a synchronized method, released when the method returns or throws
+struct JT_SYNCHRONIZED {
+	std::atomic<intptr_t> &word;
+	JT_SYNCHRONIZED(std::atomic<intptr_t> &word) : word(word) { N::monitorEnter(word); }
+	~JT_SYNCHRONIZED() { N::monitorExit(word); }
 };
 
+void N::monitorEnter(std::atomic<intptr_t> &word) {
+	intptr_t self = JT_THREAD::current->lockId;
+	intptr_t value = 0;
+	if (word.compare_exchange_strong(value, self | JT_LOCK_COUNT_ONE, std::memory_order_acquire)) return;
+	N::monitorEnterSlow(word, self);
+}
+
+void N::monitorEnterSlow(std::atomic<intptr_t> &word, intptr_t self) {
+	while (true) {
+		intptr_t value = word.load(std::memory_order_acquire);
+		if (value == 0) {
+			if (word.compare_exchange_weak(value, self | JT_LOCK_COUNT_ONE, std::memory_order_acquire)) return;
+		} else if ((value & JT_LOCK_INFLATED) != 0) {
+			JT_MONITOR *monitor = JT_LOCK_MONITOR(value);
+			if (!monitor->tryEnter(self)) {
+				JT_BLOCKING blocking;
+				monitor->enter(self);
+			}
+			return;
+		} else if ((value & JT_LOCK_OWNER_MASK) == self && (value & JT_LOCK_COUNT_MASK) != JT_LOCK_COUNT_MASK) {
+			if (word.compare_exchange_weak(value, value + JT_LOCK_COUNT_ONE, std::memory_order_relaxed)) return;
+		} else {
+			N::monitorInflate(word, value);
+		}
+	}
+}
+
+void N::monitorExit(std::atomic<intptr_t> &word) {
+	intptr_t value = word.load(std::memory_order_acquire);
+	while (true) {
+		if ((value & JT_LOCK_INFLATED) != 0) {
+			JT_LOCK_MONITOR(value)->exit();
+			return;
+		}
+		intptr_t next = ((value & JT_LOCK_COUNT_MASK) == JT_LOCK_COUNT_ONE) ? 0 : (value - JT_LOCK_COUNT_ONE);
+		if (word.compare_exchange_weak(value, next, std::memory_order_release, std::memory_order_acquire)) return;
+	}
+}
+
+// Replaces the thin lock [value] with a monitor held by the same thread, does nothing if the word changed meanwhile
+void N::monitorInflate(std::atomic<intptr_t> &word, intptr_t value) {
+	JT_MONITOR *monitor = new JT_MONITOR(value & JT_LOCK_OWNER_MASK, (value & JT_LOCK_COUNT_MASK) >> 1);
+	if (!word.compare_exchange_strong(value, (intptr_t)monitor | JT_LOCK_INFLATED, std::memory_order_acq_rel)) delete monitor;
+}
+
+bool N::monitorHeld(std::atomic<intptr_t> &word) {
+	intptr_t self = JT_THREAD::current->lockId;
+	intptr_t value = word.load(std::memory_order_acquire);
+	if ((value & JT_LOCK_INFLATED) != 0) return JT_LOCK_MONITOR(value)->isOwner(self);
+	return (value != 0) && ((value & JT_LOCK_OWNER_MASK) == self);
+}
+
+// Returns whether the thread was interrupted
+bool N::monitorWait(std::atomic<intptr_t> &word, int64_t millis) {
+	JT_THREAD *thread = JT_THREAD::current;
+	if (!N::monitorHeld(word)) N::throwIllegalMonitorState();
+	intptr_t value = word.load(std::memory_order_acquire);
+	while ((value & JT_LOCK_INFLATED) == 0) {
+		N::monitorInflate(word, value);
+		value = word.load(std::memory_order_acquire);
+	}
+	JT_MONITOR *monitor = JT_LOCK_MONITOR(value);
+	JT_BLOCKING blocking;
+	{
+		std::lock_guard<std::mutex> guard(JT_THREAD::lock);
+		thread->waiting = monitor;
+	}
+	monitor->wait(thread, millis);
+	std::lock_guard<std::mutex> guard(JT_THREAD::lock);
+	thread->waiting = NULL;
+	return thread->interrupted.exchange(false);
+}
+
+// A thin lock has no waiters, since waiting inflates it
+void N::monitorNotify(std::atomic<intptr_t> &word, bool all) {
+	if (!N::monitorHeld(word)) N::throwIllegalMonitorState();
+	intptr_t value = word.load(std::memory_order_acquire);
+	if ((value & JT_LOCK_INFLATED) != 0) JT_LOCK_MONITOR(value)->notify(all);
+}
+
+void N::monitorFree(std::atomic<intptr_t> &word) {
+	intptr_t value = word.load(std::memory_order_relaxed);
+	if ((value & JT_LOCK_INFLATED) != 0) delete JT_LOCK_MONITOR(value);
+}
+
+void N::startThread(SOBJ obj, bool daemon, void (*run)(SOBJ)) {
+	JT_THREAD *thread = new JT_THREAD(obj, daemon);
+	{
+		std::lock_guard<std::mutex> guard(JT_THREAD::lock);
+		JT_THREAD::alive[obj.get()] = thread;
+	}
+	std::thread([thread, run]() {
+		JT_THREAD::current = thread;
+		#ifdef JTRANSC_GC
+			GC::registerThread();
+		#endif
+		try {
+			run(thread->obj);
+		} catch (...) {
+		}
+		{
+			std::lock_guard<std::mutex> guard(JT_THREAD::lock);
+			JT_THREAD::alive.erase(thread->obj.get());
+			JT_THREAD::changed.notify_all();
+		}
+		#ifdef JTRANSC_GC
+			GC::unregisterThread();
+		#endif
+		delete thread;
+	}).detach();
+}
+
+// Associates the thread object created lazily for the main thread
+void N::attachThread(SOBJ obj) {
+	std::lock_guard<std::mutex> guard(JT_THREAD::lock);
+	JT_THREAD *thread = JT_THREAD::current;
+	if (thread->obj.get() != NULL) return;
+	thread->obj = obj;
+	JT_THREAD::alive[obj.get()] = thread;
+}
+
+SOBJ N::currentThread() {
+	return JT_THREAD::current->obj;
+}
+
+bool N::isThreadAlive(java_lang_Object *obj) {
+	std::lock_guard<std::mutex> guard(JT_THREAD::lock);
+	return JT_THREAD::find(obj) != NULL;
+}
+
+// Returns whether the current thread was interrupted while joining
+bool N::joinThread(java_lang_Object *obj, int64_t millis) {
+	JT_THREAD *self = JT_THREAD::current;
+	JT_BLOCKING blocking;
+	std::unique_lock<std::mutex> guard(JT_THREAD::lock);
+	auto deadline = std::chrono::steady_clock::now() + std::chrono::milliseconds(millis);
+	while (!self->interrupted) {
+		JT_THREAD *thread = JT_THREAD::find(obj);
+		if (thread == NULL || thread == self) break;
+		if (millis > 0) {
+			if (JT_THREAD::changed.wait_until(guard, deadline) == std::cv_status::timeout) break;
+		} else {
+			JT_THREAD::changed.wait(guard);
+		}
+	}
+	return self->interrupted.exchange(false);
+}
+
+void N::interruptThread(java_lang_Object *obj) {
+	std::lock_guard<std::mutex> guard(JT_THREAD::lock);
+	JT_THREAD *thread = JT_THREAD::find(obj);
+	if (thread == NULL) return;
+	thread->interrupted = true;
+	thread->wakeup.notify_all();
+	JT_THREAD::changed.notify_all();
+	if (thread->waiting != NULL) thread->waiting->notify(true);
+}
+
+bool N::isInterrupted(java_lang_Object *obj) {
+	std::lock_guard<std::mutex> guard(JT_THREAD::lock);
+	JT_THREAD *thread = JT_THREAD::find(obj);
+	return (thread != NULL) && thread->interrupted;
+}
+
+bool N::interrupted() {
+	return JT_THREAD::current->interrupted.exchange(false);
+}
+
+// Returns whether the thread was interrupted while sleeping
+bool N::sleep(int64_t millis) {
+	JT_THREAD *self = JT_THREAD::current;
+	JT_BLOCKING blocking;
+	std::unique_lock<std::mutex> guard(JT_THREAD::lock);
+	auto deadline = std::chrono::steady_clock::now() + std::chrono::milliseconds(millis);
+	while (!self->interrupted) {
+		if (self->wakeup.wait_until(guard, deadline) == std::cv_status::timeout) break;
+	}
+	return self->interrupted.exchange(false);
+}
+
+// The program ends when the last non daemon thread finishes
+void N::waitThreads() {
+	JT_THREAD *self = JT_THREAD::current;
+	JT_BLOCKING blocking;
+	std::unique_lock<std::mutex> guard(JT_THREAD::lock);
+	while (true) {
+		bool running = false;
+		for (auto &it : JT_THREAD::alive) running |= (it.second != self) && !it.second->daemon;
+		if (!running) break;
+		JT_THREAD::changed.wait(guard);
+	}
+}
+
+#ifdef JTRANSC_GC
+	// Threads are reachable while they run
+	void GC::traceThreads() {
+		std::lock_guard<std::mutex> guard(JT_THREAD::lock);
+		for (auto &it : JT_THREAD::alive) GC::mark(it.second->obj);
+	}
+#endif
+
 // Strings
 {{ STRINGS }}
 
 // Classes IMPLS
 {{ CLASSES_IMPL }}
+{{ GC_STATICS }}
 
 // N IMPLS
 
@@ -216,18 +932,46 @@ int64_t N::lnew(int high, int low) {
 };
 
 bool N::is(SOBJ obj, int type) {
+	const TYPE_INFO &info = TYPE_TABLE::TABLE[type];
+	if (info.interfaceIndex >= 0) return N::isInterface(obj, info.interfaceIndex);
+	return N::isClass(obj, type, info.lastDescendant);
+};
+
+// Class ids are assigned in depth first order, so a class and its descendants have consecutive ids
+bool N::isClass(const SOBJ &obj, int first, int last) {
+	if (obj.get() == NULL) return false;
+	int id = obj.get()->__INSTANCE_CLASS_ID;
+	return (id >= first) && (id <= last);
+};
+
+bool N::isInterface(const SOBJ &obj, int index) {
 	if (obj.get() == NULL) return false;
-	const int* table = TYPE_TABLE::TABLE[obj.get()->__INSTANCE_CLASS_ID].subtypes;
-	while (*table != 0) if (*(table++) == type) return true;
-	return false;
+	const TYPE_INFO &info = TYPE_TABLE::TABLE[obj.get()->__INSTANCE_CLASS_ID];
+	int word = index >> 5;
+	return (word < info.interfaceWords) && (((info.interfaceBits[word] >> (index & 31)) & 1) != 0);
 };
 
-bool N::isArray(SOBJ obj, std::wstring desc) {
+bool N::isArray(const SOBJ &obj, int descId) {
 	JA_0* ptr = GET_OBJECT(JA_0, obj);
-	return (ptr != null) && (ptr->desc == desc);
+	if (ptr == null) return false;
+	if (ptr->descId < 0) ptr->descId = N::arrayDescId(ptr->desc);
+	return ptr->descId == descId;
+};
+
+static std::unordered_map<std::wstring, int> N_createArrayDescIds() {
+	std::unordered_map<std::wstring, int> out;
+	for (int n = 1; n < TYPE_TABLE::arrayDescCount; n++) out[TYPE_TABLE::ARRAY_DESCS[n]] = n;
+	return out;
+}
+
+// Descriptors that no type test uses get 0, since they can't match any of them
+int N::arrayDescId(const std::wstring &desc) {
+	static std::unordered_map<std::wstring, int> ids = N_createArrayDescIds();
+	auto it = ids.find(desc);
+	return (it != ids.end()) ? it->second : 0;
 };
 
-bool N::isUnknown(std::shared_ptr<{% CLASS java.lang.Object %}> obj, const char * error) {
+bool N::isUnknown(SOBJ obj, const char * error) {
 	throw error;
 };
 
@@ -327,9 +1071,10 @@ int64_t N::d2j(double v) { return (int64_t)v; }
 SOBJ N::str(std::wstring str) {
 	int len = str.length();
 	SOBJ out(new {% CLASS java.lang.String %}());
-	std::shared_ptr<JA_C> array(new JA_C(len));
-	for (int n = 0; n < len; n++) array->set(n, (uint16_t)str[n]);
-	GET_OBJECT({% CLASS java.lang.String %}, out)->M_java_lang_String__init____CII_V(array, 0, len);
+	SOBJ array(new JA_C(len));
+	auto arr = GET_OBJECT(JA_C, array);
+	for (int n = 0; n < len; n++) arr->set(n, (uint16_t)str[n]);
+	GET_OBJECT({% CLASS java.lang.String %}, out)->{% METHOD java.lang.String:<init>:([CII)V %}(array, 0, len);
 	return out.get()->sptr();
 };
 
@@ -343,34 +1088,36 @@ SOBJ N::str(char *s) {
 	if (s == NULL) return SOBJ(NULL);
 	int len = strlen(s);
 	SOBJ out(new {% CLASS java.lang.String %}());
-	std::shared_ptr<JA_C> array(new JA_C(len));
-	for (int n = 0; n < len; n++) array->set(n, (uint16_t)s[n]);
-	GET_OBJECT({% CLASS java.lang.String %}, out)->M_java_lang_String__init____CII_V(array, 0, len);
+	SOBJ array(new JA_C(len));
+	auto arr = GET_OBJECT(JA_C, array);
+	for (int n = 0; n < len; n++) arr->set(n, (uint16_t)s[n]);
+	GET_OBJECT({% CLASS java.lang.String %}, out)->{% METHOD java.lang.String:<init>:([CII)V %}(array, 0, len);
 	return out.get()->sptr();
 };
 
 SOBJ N::strArray(int count, wchar_t **strs) {
-	std::shared_ptr<JA_L> out(new JA_L(count, L"[java/lang/String;"));
-	for (int n = 0; n < count; n++) out->set(n, N::str(std::wstring(strs[n])));
+	SOBJ out(new JA_L(count, L"[java/lang/String;"));
+	auto arr = GET_OBJECT(JA_L, out);
+	for (int n = 0; n < count; n++) arr->set(n, N::str(std::wstring(strs[n])));
 	return out.get()->sptr();
 }
 
 SOBJ N::strArray(std::vector<std::wstring> strs) {
 	int len = strs.size();
-	std::shared_ptr<JA_L> out(new JA_L(len, L"[java/lang/String;"));
-	for (int n = 0; n < len; n++) out->set(n, N::str(strs[n]));
+	SOBJ out(new JA_L(len, L"[java/lang/String;"));
+	for (int n = 0; n < len; n++) GET_OBJECT(JA_L, out)->set(n, N::str(strs[n]));
 	return out.get()->sptr();
 }
 
 SOBJ N::strArray(std::vector<std::string> strs) {
 	int len = strs.size();
-	std::shared_ptr<JA_L> out(new JA_L(len, L"[java/lang/String;"));
-	for (int n = 0; n < len; n++) out->set(n, N::str(strs[n]));
+	SOBJ out(new JA_L(len, L"[java/lang/String;"));
+	for (int n = 0; n < len; n++) GET_OBJECT(JA_L, out)->set(n, N::str(strs[n]));
 	return out.get()->sptr();
 }
 
 SOBJ N::strEmptyArray() {
-	std::shared_ptr<JA_L> out(new JA_L(0));
+	SOBJ out(new JA_L(0));
 	return out.get()->sptr();
 }
 
@@ -382,9 +1129,11 @@ wchar_t* N::istr(SOBJ obj) {
 }
 
 std::wstring N::istr2(SOBJ obj) {
-	auto str = GET_OBJECT({% CLASS java.lang.String %}, obj);
-	auto ptr = (wchar_t*)(((JA_C*)(str->{% FIELD java.lang.String:value %}.get()))->_data);
-	return std::wstring(ptr, N::strLen(obj));
+	// Chars are stored as uint16_t, while wchar_t is 32 bits wide on most platforms
+	int len = N::strLen(obj);
+	std::wstring out(len, 0);
+	for (int n = 0; n < len; n++) out[n] = (wchar_t)N::strCharAt(obj, n);
+	return out;
 }
 
 std::string N::istr3(SOBJ obj) {
@@ -437,10 +1186,22 @@ void N::throwNpe(const wchar_t* position) {
 	TRACE_REGISTER("N::throwNpe()");
 	std::wcout << L"N::throwNpe():" << std::wstring(position) << L"\n";
 	auto out = SOBJ(new {% CLASS java.lang.NullPointerException %}());
-	(dynamic_cast<{% CLASS java.lang.NullPointerException %}*>(out.get()))->M_java_lang_NullPointerException__init____V();
+	(dynamic_cast<{% CLASS java.lang.NullPointerException %}*>(out.get()))->{% METHOD java.lang.NullPointerException:<init>:()V %}();
 	throw out;
 }
 
+void N::throwIllegalMonitorState() {
+	{% SMETHOD java.lang.Object:_throwIllegalMonitorState %}();
+}
+
+void N::throwNoClassDefFound(const wchar_t *name) {
+	{% SMETHOD java.lang.Object:_throwNoClassDefFound %}(N::str(std::wstring(name)));
+}
+
+SOBJ N::initializerError(SOBJ error) {
+	return {% SMETHOD java.lang.Object:_initializerError %}(error);
+}
+
 SOBJ N::ensureNpe(SOBJ obj, const wchar_t* position) {
 	#ifdef CHECK_NPE
 	if (obj.get() == NULL) N::throwNpe(position);
@@ -556,6 +1317,10 @@ void N::startup() {
 	setvbuf(stderr, NULL, _IONBF, 0);
 	std::signal(SIGSEGV, SIGSEGV_handler);
 	std::signal(SIGFPE, SIGFPE_handler);
+	JT_THREAD::current = new JT_THREAD(SOBJ(NULL), false);
+	#ifdef JTRANSC_GC
+		GC::registerThread();
+	#endif
 };
 
 // Type Table Footer
@@ -69,7 +69,7 @@ function __createJavaArrayType(desc, type, elementBytesSize) {
 
 	ARRAY.prototype = $extend(JA_0.prototype, {});
 
-	if (desc == '[J') {
+	if (desc == '[J' && N.EMULATED_LONG) {
 		ARRAY.prototype.init = function() {
 			var zero = N.lnew(0, 0);
 			for (var n = 0; n < this.length; n++) this.set(n, zero);
@@ -94,6 +94,12 @@ function __createJavaArrayType(desc, type, elementBytesSize) {
 		return out;
 	};
 
+	ARRAY.fromArray = function(items) {
+		var out = new ARRAY(items.length);
+		out.setArraySlice(0, items);
+		return out;
+	};
+
 	ARRAY.wrapBuffer = function(arrayBuffer) {
 		var out = new ARRAY(0);
 		out.data = new type(arrayBuffer);
@@ -184,7 +190,11 @@ function __createJavaArrays() {
 	JA_C = __createJavaArrayType('[C', Uint16Array, 2);  // Character Array
 	JA_S = __createJavaArrayType('[S', Int16Array, 2);   // Short Array
 	JA_I = __createJavaArrayType('[I', Int32Array, 4);   // Int Array
+{% if jsBigInt %}
+	JA_J = __createJavaArrayType('[J', BigInt64Array, 8); // Long Array
+{% else %}
 	JA_J = __createJavaArrayType('[J', Array);        // Long Array
+{% end %}
 	JA_F = __createJavaArrayType('[F', Float32Array, 4); // Float Array
 	JA_D = __createJavaArrayType('[D', Float64Array, 8); // Double Array
 
@@ -1,5 +1,5 @@
 // N : Native
-var onNodeJs = typeof window == "undefined";
+var onNodeJs = typeof window == "undefined" && typeof importScripts == "undefined";
 
 function Int64Ref(high, low) {
 	this.high = high;
@@ -81,6 +81,55 @@ N.irem = function(a, b) { return (a % b) | 0; };
 ///////////////////////
 // Long
 ///////////////////////
+{% if jsBigInt %}
+// Longs are BigInt values in the signed 64-bit range
+N.EMULATED_LONG = false;
+N.MAX_INT64 = 9223372036854775807n;
+N.MIN_INT64 = -9223372036854775808n;
+
+N.i2j = function(v) { return BigInt(v | 0); }
+N.f2j = function(v) { return N.d2j(v); }
+N.d2j = function(v) {
+	if (v !== v) return 0n;
+	if (v >= 9223372036854775807) return N.MAX_INT64;
+	if (v <= -9223372036854775808) return N.MIN_INT64;
+	return BigInt(Math.trunc(v));
+}
+
+N.lnew = function(high, low) { return (BigInt(high | 0) << 32n) | BigInt(low >>> 0); };
+N.lnewFloat = function(float) { return N.d2j(float); };
+N.ltoFloat = function(v) { return Number(v); };
+N.llow = function(v) { return Number(BigInt.asIntN(32, v)); }
+N.lhigh = function(v) { return Number(BigInt.asIntN(32, v >> 32n)); }
+N.ladd = function(a, b) { return BigInt.asIntN(64, a + b); }
+N.lsub = function(a, b) { return BigInt.asIntN(64, a - b); }
+N.lmul = function(a, b) { return BigInt.asIntN(64, a * b); }
+N.ldiv = function(a, b) { if (b == 0n) N.throwRuntimeException("divide by zero"); return BigInt.asIntN(64, a / b); }
+N.lrem = function(a, b) { if (b == 0n) N.throwRuntimeException("divide by zero"); return a % b; }
+N.llcmp = function(a, b) { return (a < b) ? -1 : ((a > b) ? 1 : 0); } // Deprecated
+N.lcmp = function(a, b) { return (a < b) ? -1 : ((a > b) ? 1 : 0); }
+N.lxor = function(a, b) { return a ^ b; }
+N.land = function(a, b) { return a & b; }
+N.lor = function(a, b) { return a | b; }
+N.lshl = function(a, b) { return BigInt.asIntN(64, a << BigInt(b & 63)); }
+N.lshr = function(a, b) { return a >> BigInt(b & 63); }
+N.lushr = function(a, b) { return BigInt.asIntN(64, BigInt.asUintN(64, a) >> BigInt(b & 63)); }
+
+N.lneg = function(a) { return BigInt.asIntN(64, -a); }
+N.linv = function(a) { return ~a; }
+
+N.l2i = function(v) { return Number(BigInt.asIntN(32, v)); }
+N.l2d = function(v) { return Number(v); }
+
+N.doubleToLongBits = (function() {
+	var doubleArray = new Float64Array(1);
+	var longArray = new BigInt64Array(doubleArray.buffer);
+	N.longBitsToDouble = function(v) { longArray[0] = v; return doubleArray[0]; };
+	return function(v) { doubleArray[0] = v; return longArray[0]; };
+})();
+{% else %}
+N.EMULATED_LONG = true;
+
 N.lnew = function(high, low) { return {% SMETHOD com.jtransc.lang.Int64:make %}(high, low); };
 N.lnewFloat = function(float) { return {% SMETHOD com.jtransc.lang.Int64:ofFloat %}(float); };
 N.ltoFloat = function(v) { return {% SMETHOD com.jtransc.lang.Int64:toFloat %}(v); };
@@ -105,6 +154,7 @@ N.linv = function(a) { return {% SMETHOD com.jtransc.lang.Int64:not %}(a); }
 
 N.l2i = function(v) { return {% SMETHOD com.jtransc.lang.Int64:toInt %}(v); }
 N.l2d = function(v) { return {% SMETHOD com.jtransc.lang.Int64:toFloat %}(v); }
+{% end %}
 
 N.cmp  = function(a, b) { return (a < b) ? -1 : ((a > b) ? 1 : 0); }
 N.cmpl = function(a, b) { return (isNaN(a) || isNaN(b)) ? -1 : N.cmp(a, b); }
@@ -215,14 +265,12 @@ N.stringToCharArray = function(str) {
 N.resolveClass = function(name) { return java_lang_Class["forName(Ljava/lang/String;)Ljava/lang/Class;"](N.str(name)); };
 
 N.createStackTraceElement = function(declaringClass, methodName, fileName, lineNumber) {
-	var out = new java_lang_StackTraceElement();
-	out["java.lang.StackTraceElement<init>(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;I)V"](
+	return {% CONSTRUCTOR java.lang.StackTraceElement:(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;I)V %}(
 		N.str(declaringClass),
 		N.str(methodName),
 		N.str(fileName),
 		lineNumber | 0
 	);
-	return out;
 };
 
 N.getStackTrace = function(count) {
@@ -233,53 +281,21 @@ N.getStackTrace = function(count) {
 	return out;
 };
 
-N._arraycopyArray = function(srcData, srcPos, destData, destPos, length, overlapping) {
-	if (overlapping) {
-		for (var n = length - 1; n >= 0; n--) destData[destPos + n] = srcData[srcPos + n];
-	} else {
-		for (var n = 0; n < length; n++) destData[destPos + n] = srcData[srcPos + n];
-	}
-}
-
-N._arraycopyGeneric = function(srcData, srcPos, destData, destPos, length, overlapping) {
-	if (overlapping) {
-		for (var n = length - 1; n >= 0; n--) destData[destPos + n] = srcData[srcPos + n];
-	} else {
-		for (var n = 0; n < length; n++) destData[destPos + n] = srcData[srcPos + n];
-	}
-}
-
-N._arraycopyTyped_B = function(srcData, srcPos, destData, destPos, length) {
-	destData.set(new Int8Array(srcData.buffer, srcPos * 1, length), destPos);
-}
-
-N._arraycopyTyped_S = function(srcData, srcPos, destData, destPos, length) {
-	destData.set(new Int16Array(srcData.buffer, srcPos * 1, length), destPos);
-}
-
-N._arraycopyTyped_I = function(srcData, srcPos, destData, destPos, length) {
-	destData.set(new Int32Array(srcData.buffer, srcPos * 4, length), destPos);
-}
-
 N.arraycopy = function(src, srcPos, dest, destPos, length) {
 	if (length < 0 || srcPos < 0 || destPos < 0 || srcPos + length > src.length || destPos + length > dest.length) {
-		N.throwRuntimeException('N.arraycopy out of bounds');
+		{% SMETHOD java.lang.Object:_throwArrayCopyOutOfBounds %}(srcPos, destPos, length);
 	}
 
 	var srcData = src.data;
 	var destData = dest.data;
-	var overlapping = src == dest && (destPos > srcPos);
-
-	if (src instanceof JA_L) {
-		N._arraycopyArray(srcData, srcPos, destData, destPos, length, overlapping);
-	} else if (src instanceof JA_B) {
-		N._arraycopyTyped_B(srcData, srcPos, destData, destPos, length);
-	} else if (src instanceof JA_S) {
-		N._arraycopyTyped_S(srcData, srcPos, destData, destPos, length);
-	} else if (src instanceof JA_I) {
-		N._arraycopyTyped_I(srcData, srcPos, destData, destPos, length);
+
+	if (srcData === destData) {
+		// copyWithin handles overlapping ranges for both typed and plain arrays
+		destData.copyWithin(destPos, srcPos, srcPos + length);
+	} else if (ArrayBuffer.isView(srcData) && ArrayBuffer.isView(destData)) {
+		destData.set(srcData.subarray(srcPos, srcPos + length), destPos);
 	} else {
-		N._arraycopyGeneric(srcData, srcPos, destData, destPos, length, overlapping);
+		for (var n = 0; n < length; n++) destData[destPos + n] = srcData[srcPos + n];
 	}
 };
 
@@ -365,6 +381,11 @@ N.throwRuntimeException = function(msg) {
 	//throw msg;
 };
 
+N.checkNotNull = function(obj) {
+	if (obj == null) throw {% CONSTRUCTOR java.lang.NullPointerException:()V %}();
+	return obj;
+};
+
 N.boxWithType = function(clazz, value) {
 	if (value instanceof java_lang_Object) return value;
 
@@ -415,6 +436,7 @@ N.boxArray = function(array) {
 N.box = function(v) {
 	if (v instanceof {% CLASS java.lang.Object %}) return v; // already boxed!
 	if (v instanceof {% CLASS com.jtransc.lang.Int64 %}) return N.boxLong(v);
+	if (typeof v == 'bigint') return N.boxLong(v);
 	if (typeof v == 'string') return N.str(v);
 	if ((v|0) == v) return N.boxInt(v);
 	if (+(v) == v) return N.boxFloat(v);
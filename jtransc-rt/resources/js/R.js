@@ -10,6 +10,7 @@ function __createField(clazzClazz, info) {
 	out["{% FIELD java.lang.reflect.Field:signature %}"] = N.str(info.desc);
 	out["{% FIELD java.lang.reflect.Field:genericSignature %}"] = N.str(info.genericDesc || info.desc);
 	out["{% FIELD java.lang.reflect.Field:modifiers %}"] = N.str(info.flags);
+	out["_annotations"] = info.annotations ? info.annotations() : null;
 	return out;
 }
 
@@ -42,7 +43,7 @@ function __createConstructor(clazzClazz, info) {
 
 R.__initClass = function(clazzClazz) {
 	var clazzName = N.istr(clazzClazz._name);
-	var clazz = jtranscClasses[clazzName];
+	var clazz = jtranscClasses[clazzName] || program.loadType(clazzName);
 
 	// Array
 	if (clazzName.startsWith('[')) {
@@ -8,8 +8,8 @@ function $extend(from, fields) {
 var __TRACE = false;
 //var __TRACE = true;
 
-var S = {};
-var SS = {};
+var S = [];
+var ST = null;
 var CLASSES = {};
 
 if (__TRACE) console.log("global:" + _global);
@@ -19,15 +19,39 @@ _global.$JS$__lastId = 0;
 _global.jtranscClasses = {};
 _global.jtranscTypeContext = {};
 
-function __buildStrings() {
-	for (var id in SS) S[id] = N.str(SS[id]);
+// Builds the String of a literal the first time it is used, see StringTable
+function __S(id) {
+	return S[id] = N.str(__rawString(ST.index[id]));
+}
+
+function __rawString(n) {
+	var suffix = ST.data.substring((n > 0) ? ST.ends[n - 1] : 0, ST.ends[n]);
+	var prefix = (ST.prefixes != null) ? ST.prefixes[n] : 0;
+	return (prefix > 0) ? __rawString(n - 1).substring(0, prefix) + suffix : suffix;
 }
 
 var ProgramContext = function() {
 	this.types = {};
 	this.mainClass = null;
+	this.lazyTypes = {};
+	this.chunks = {};
+	this.registeredTypes = [];
 };
 
+// Evaluated here so chunks see the program scope. Their classes are published through the setters of lazyType.
+function __evalChunk($chunkCode) {
+	eval($chunkCode);
+}
+
+var $chunkBase = '';
+if (!onNodeJs) {
+	if (typeof document != 'undefined' && document.currentScript) {
+		$chunkBase = String(document.currentScript.src).replace(/[^\/]*$/, '');
+	} else if (typeof location != 'undefined') {
+		$chunkBase = String(location.href).replace(/[#?].*$/, '').replace(/[^\/]*$/, '');
+	}
+}
+
 var lastTypeId = 1;
 
 function setFunctionName(callback, name) {
@@ -80,9 +104,12 @@ var MethodContext = function (name, flags) {
 	this.flags = flags;
 };
 
-ProgramContext.prototype.registerStrings = function(strs) {
-	//console.log("Register strings: " + strs);
-	SS = strs;
+ProgramContext.prototype.registerStrings = function(ids, prefixes, ends, data) {
+	var maxId = 0;
+	for (var n = 0; n < ids.length; n++) maxId = Math.max(maxId, ids[n]);
+	var index = new Int32Array(maxId + 1);
+	for (var n = 0; n < ids.length; n++) index[ids[n]] = n;
+	ST = { index: index, prefixes: prefixes, ends: ends, data: data };
 };
 
 var EMPTY_FUNCTION = function(){};
@@ -98,6 +125,8 @@ TypeContext.prototype.completeTypeFirst = function() {
 
 		if (value instanceof Int64Ref) {
 			valueStr = 'N.lnew(' + value.high + ',' + value.low + ')';
+		} else if (typeof value == 'bigint') {
+			valueStr = value + 'n';
 		} else if (value instanceof String) {
 			valueStr = "N.strLit(" + (value).quote() + ")";
 		} else {
@@ -132,10 +161,84 @@ ProgramContext.prototype.registerType = function(internalName, name, flags, pare
 	callback.apply(context, []);
 	this.types[name] = context;
 	context.completeTypeFirst();
+	this.registeredTypes.push(name);
+
+	var lazy = this.lazyTypes[name];
+	if (lazy) lazy.set(context.clazz);
 
 	return context.clazz;
 };
 
+// Placeholder for a class in a chunk. Creating an instance, initializing it or resolving it by name loads the chunk.
+ProgramContext.prototype.lazyType = function(name, chunk, set) {
+	var program = this;
+	var stub = function() {
+		return new (program.loadType(name))();
+	};
+	stub.SI = function() {
+		program.loadType(name).SI();
+	};
+	stub.$$instanceOf = {};
+	this.lazyTypes[name] = { chunk: chunk, set: set };
+	this.chunks[chunk] = this.chunks[chunk] || null;
+	return stub;
+};
+
+ProgramContext.prototype.loadType = function(name) {
+	if (!_global.jtranscTypeContext[name] && !this.lazyTypes[name]) return undefined;
+	return this.getType(name);
+};
+
+ProgramContext.prototype.loadChunk = function(chunk) {
+	if (this.chunks[chunk] === true) return;
+	var code = this.chunks[chunk];
+	this.chunks[chunk] = true;
+	if (code == null) {
+		if (onNodeJs) {
+			code = require('fs').readFileSync(require('path').join(__dirname, chunk), 'utf8');
+		} else {
+			var xhr = new XMLHttpRequest();
+			xhr.open('GET', $chunkBase + chunk, false);
+			xhr.send(null);
+			if (xhr.status != 200 && xhr.status != 0) throw 'Can\'t load ' + chunk + ': ' + xhr.status;
+			code = xhr.responseText;
+		}
+	}
+	var registered = this.registeredTypes.length;
+	__evalChunk(code);
+	var types = this.registeredTypes.slice(registered);
+	for (var n = 0; n < types.length; n++) this.getType(types[n]);
+};
+
+// Loads the chunks with the ancestors of a class before completing it, so no ancestor is found half completed
+ProgramContext.prototype.registerAncestors = function(name) {
+	var info = _global.jtranscTypeContext[name];
+	if (!info) {
+		if (!this.lazyTypes[name]) return;
+		this.loadChunk(this.lazyTypes[name].chunk);
+		info = _global.jtranscTypeContext[name];
+		if (!info) throw 'Chunk ' + this.lazyTypes[name].chunk + ' doesn\'t define ' + name;
+	}
+	if (info.ancestorsRegistered) return;
+	info.ancestorsRegistered = true;
+	if (info.parent != null) this.registerAncestors(info.parent);
+	for (var n = 0; n < info.interfaces.length; n++) this.registerAncestors(info.interfaces[n]);
+};
+
+// Downloads the chunks in the background, so they are usually available when a class in them is first used
+ProgramContext.prototype.prefetchChunks = function() {
+	if (onNodeJs || typeof XMLHttpRequest == 'undefined') return;
+	var program = this;
+	Object.keys(this.chunks).forEach(function(chunk) {
+		var xhr = new XMLHttpRequest();
+		xhr.open('GET', $chunkBase + chunk, true);
+		xhr.onload = function() {
+			if (program.chunks[chunk] == null && (xhr.status == 200 || xhr.status == 0)) program.chunks[chunk] = xhr.responseText;
+		};
+		xhr.send(null);
+	});
+};
+
 ProgramContext.prototype.registerMainClass = function(name) {
 	this.mainClass = name;
 };
@@ -203,12 +306,18 @@ TypeContext.prototype.registerField = function(id, name, desc, genericDesc, flag
 };
 
 ProgramContext.prototype.getType = function(clazzName) {
+	this.registerAncestors(clazzName);
 	var clazz = _global.jtranscClasses[clazzName];
 	var clazzInfo = _global.jtranscTypeContext[clazzName];
 
 	if (!clazzInfo.initialized) {
 		clazzInfo.initialized = true;
 
+		for (var n = 0; n < clazzInfo.interfaces.length; n++) {
+			var int = clazzInfo.interfaces[n];
+			if (_global.jtranscTypeContext[int]) this.getType(int);
+		}
+
 		var allInterfaces = clazzInfo.interfaces.slice(0);
 
 		var allAncestors = [clazzInfo.name];
@@ -297,8 +406,9 @@ ProgramContext.prototype.finishTypes = function() {
 		this.resolveAnnotations(clazzName);
 	}
 
+	this.registeredTypes = [];
+
 	__createJavaArrays();
-	__buildStrings();
 
 	{% SINIT com.jtransc.lang.Int64 %}
 };
@@ -317,6 +427,8 @@ ProgramContext.prototype.finishTypes = function() {
 
 ProgramContext.prototype.finish = function() {
 	this.finishTypes();
+	if (N.workerMain && N.workerMain()) return;
+	this.prefetchChunks();
 	_global.jtranscClasses[this.mainClass]['SI']();
 	var mainMethod = _global.jtranscClasses[this.mainClass]["main([Ljava/lang/String;)V"];
 	mainMethod(N.strArray(N.args()));
@@ -0,0 +1,365 @@
+// Workers: executor tasks running in Node worker_threads or Web Workers, each one loading this same program
+
+var $workerThreads = null;
+var $workerScript = null;
+
+if (onNodeJs) {
+	try {
+		$workerThreads = require('worker_threads');
+		$workerScript = __filename;
+	} catch (e) {
+		$workerThreads = null;
+	}
+} else if (typeof document != 'undefined' && document.currentScript) {
+	$workerScript = document.currentScript.src;
+}
+
+N.isWorker = function() {
+	if ($workerThreads) return !$workerThreads.isMainThread && !!($workerThreads.workerData && $workerThreads.workerData.jtranscWorker);
+	return typeof importScripts == 'function' && self.location.hash == '#jtransc-worker';
+};
+
+// A worker that dies reports it through its port before exiting, so a main thread blocked in wait() wakes up
+if ($workerThreads && N.isWorker()) (function() {
+	var reported = false;
+	function died(error) {
+		if (reported) return;
+		reported = true;
+		var data = $workerThreads.workerData;
+		data.port.postMessage({ error: error, died: true });
+		if (data.signal) {
+			Atomics.add(data.signal, 0, 1);
+			Atomics.notify(data.signal, 0);
+		}
+	}
+	process.on('uncaughtException', function(e) {
+		died(String(e));
+		process.exit(1);
+	});
+	process.on('exit', function(code) { died('Worker exited with code ' + code); });
+})();
+
+N.workersSupported = function() {
+	if (N.isWorker()) return false;
+	if ($workerThreads) return true;
+	return $workerScript != null && typeof Worker == 'function' && typeof MessageChannel == 'function';
+};
+
+N.workerDefaultSize = function() {
+	if ($workerThreads) return Math.max(1, require('os').cpus().length);
+	if (typeof navigator != 'undefined' && navigator.hardwareConcurrency) return navigator.hardwareConcurrency;
+	return 4;
+};
+
+// Object graphs are sent as trees of plain objects: {$c: class, $f: fields}, {$a: desc, $d: typedArray} for primitive
+// arrays, {$a: desc, $l: items} for other arrays and {$r: index} for objects already sent. Everything else is
+// sent as is. Arrays created after firstId are owned by the sender and their buffers are transferred.
+N.workerPack = function(value, transfer, firstId) {
+	var refs = new Map();
+
+	function pack(v) {
+		if (v === null || typeof v != 'object') {
+			if (typeof v == 'function') throw new Error("Can't send functions to workers");
+			return v;
+		}
+		var ref = refs.get(v);
+		if (ref !== undefined) return { $r: ref };
+		refs.set(v, refs.size);
+		if (v instanceof JA_0) {
+			if (v instanceof JA_L || v.data instanceof Array) {
+				var items = new Array(v.length);
+				for (var n = 0; n < items.length; n++) items[n] = pack(v.data[n]);
+				return { $a: v.desc, $l: items };
+			}
+			if (transfer && v.$JS$ID$ >= firstId && transfer.indexOf(v.data.buffer) < 0) transfer.push(v.data.buffer);
+			return { $a: v.desc, $d: v.data, $n: v.length };
+		}
+		if (!v.$$JS_TYPE_CONTEXT$$) return v;
+		var fields = {};
+		for (var key in v) {
+			if (!v.hasOwnProperty(key) || key == '$JS$ID$' || key == '$JS$CLASS_ID$') continue;
+			var field = v[key];
+			if (typeof field == 'function') throw new Error("Can't send " + v.$$JS_TYPE_CONTEXT$$.name + " to workers: lambdas and native objects can't be copied");
+			fields[key] = pack(field);
+		}
+		return { $c: v.$$JS_TYPE_CONTEXT$$.name, $f: fields };
+	}
+
+	return pack(value);
+};
+
+N.workerUnpack = function(value) {
+	var refs = [];
+
+	function unpack(v) {
+		if (v === null || typeof v != 'object') return v;
+		if (v.$r !== undefined) return refs[v.$r];
+		var out, n;
+		if (v.$a !== undefined) {
+			if (v.$l !== undefined) {
+				out = (v.$a == '[J') ? new JA_J(v.$l.length) : new JA_L(v.$l.length, v.$a);
+				refs.push(out);
+				for (n = 0; n < v.$l.length; n++) out.data[n] = unpack(v.$l[n]);
+			} else {
+				out = new (N.workerArrayType(v.$a))(0);
+				out.data = v.$d;
+				out.length = v.$n;
+				out.memorySize = v.$n * v.$d.BYTES_PER_ELEMENT;
+				refs.push(out);
+			}
+			return out;
+		}
+		if (v.$c !== undefined) {
+			var clazz = _global.jtranscClasses[v.$c] || program.loadType(v.$c);
+			out = Object.create(clazz.prototype);
+			out.$JS$ID$ = $JS$__lastId++;
+			out.$JS$CLASS_ID$ = clazz.$$JS_TYPE_CONTEXT$$.id;
+			refs.push(out);
+			for (var key in v.$f) out[key] = unpack(v.$f[key]);
+			return out;
+		}
+		refs.push(v);
+		return v;
+	}
+
+	return unpack(value);
+};
+
+N.workerArrayType = function(desc) {
+	switch (desc) {
+		case '[Z': return JA_Z;
+		case '[B': return JA_B;
+		case '[C': return JA_C;
+		case '[S': return JA_S;
+		case '[I': return JA_I;
+		case '[J': return JA_J;
+		case '[F': return JA_F;
+		case '[D': return JA_D;
+	}
+	throw new Error('Invalid array type ' + desc);
+};
+
+// Worker side: runs the tasks posted to its port instead of the main method
+N.workerMain = function() {
+	if (!N.isWorker()) return false;
+	var signal = null;
+
+	function listen(port) {
+		function onTask(message) {
+			var firstId = $JS$__lastId;
+			try {
+				var result = {% SMETHOD com.jtransc.thread.JTranscWorkerPool:runTask %}(N.workerUnpack(message.task));
+				var transfer = [];
+				port.postMessage({ result: N.workerPack(result, transfer, firstId) }, transfer);
+			} catch (e) {
+				port.postMessage({ error: String(e) });
+			}
+			if (signal) {
+				Atomics.add(signal, 0, 1);
+				Atomics.notify(signal, 0);
+			}
+		}
+
+		if ($workerThreads) {
+			port.on('message', onTask);
+		} else {
+			port.onmessage = function(e) { onTask(e.data); };
+		}
+	}
+
+	if ($workerThreads) {
+		signal = $workerThreads.workerData.signal;
+		listen($workerThreads.workerData.port);
+	} else {
+		self.onmessage = function(e) {
+			self.onmessage = null;
+			listen(e.data.port);
+		};
+	}
+	return true;
+};
+
+// Main side
+N.WorkerPool = function(size) {
+	this.size = size;
+	this.workers = [];
+	this.idle = [];
+	this.queue = [];
+	this.running = 0;
+	this.shut = false;
+	// Counter notified by the workers after posting a result, so wait() can block on Node
+	this.signal = ($workerThreads && typeof SharedArrayBuffer != 'undefined') ? new Int32Array(new SharedArrayBuffer(4)) : null;
+};
+
+N.WorkerPool.prototype.submit = function(task, callback) {
+	this.queue.push({ task: task, callback: callback });
+	this.dispatch();
+};
+
+N.WorkerPool.prototype.spawn = function() {
+	var pool = this;
+	var channel = new MessageChannel();
+	var handle = { worker: null, port: channel.port1, current: null, dead: false };
+	if ($workerThreads) {
+		handle.worker = new $workerThreads.Worker($workerScript, {
+			workerData: { jtranscWorker: true, port: channel.port2, signal: this.signal },
+			transferList: [channel.port2]
+		});
+		handle.worker.on('error', function(e) { pool.failed(handle, String(e)); });
+		handle.worker.on('exit', function(code) { pool.failed(handle, 'Worker exited with code ' + code); });
+		channel.port1.on('message', function(message) { pool.completed(handle, message); });
+	} else {
+		handle.worker = new Worker($workerScript + '#jtransc-worker');
+		handle.worker.onerror = function(e) {
+			e.preventDefault();
+			pool.failed(handle, e.message || 'Worker failed');
+		};
+		handle.worker.postMessage({ port: channel.port2 }, [channel.port2]);
+		channel.port1.onmessage = function(e) { pool.completed(handle, e.data); };
+	}
+	this.workers.push(handle);
+	return handle;
+};
+
+N.WorkerPool.prototype.dispatch = function() {
+	while (this.queue.length > 0) {
+		var handle = this.idle.pop();
+		if (!handle) {
+			if (this.workers.length >= this.size) break;
+			handle = this.spawn();
+		}
+		var item = this.queue.shift();
+		var message;
+		try {
+			message = { task: N.workerPack(item.task, null, 0) };
+		} catch (e) {
+			this.idle.push(handle);
+			this.notify(item, null, String(e));
+			continue;
+		}
+		handle.current = item;
+		this.running++;
+		if ($workerThreads) {
+			handle.worker.ref();
+			handle.port.ref();
+		}
+		handle.port.postMessage(message);
+	}
+	this.release();
+};
+
+N.WorkerPool.prototype.completed = function(handle, message) {
+	if (message.died) return this.failed(handle, message.error);
+	var item = handle.current;
+	if (!item) return;
+	handle.current = null;
+	this.running--;
+	this.idle.push(handle);
+	var result = null, error = (message.error !== undefined) ? message.error : null;
+	if (error == null) {
+		try {
+			result = N.workerUnpack(message.result);
+		} catch (e) {
+			error = String(e);
+		}
+	}
+	this.dispatch();
+	this.notify(item, result, error);
+};
+
+// The task of a worker that failed to load or died completes with the error, and a new worker takes the queued tasks
+N.WorkerPool.prototype.failed = function(handle, error) {
+	if (handle.dead) return;
+	this.terminate(handle);
+	var item = handle.current;
+	if (item) {
+		handle.current = null;
+		this.running--;
+	}
+	this.dispatch();
+	if (item) this.notify(item, null, error);
+};
+
+N.WorkerPool.prototype.notify = function(item, result, error) {
+	item.callback['{% METHOD com.jtransc.thread.JTranscWorkerPool$Callback:done %}'](result, (error != null) ? N.str(error) : null);
+};
+
+// Idle workers don't keep Node running, and are stopped once the pool is shut down
+N.WorkerPool.prototype.release = function() {
+	if (this.shut && this.queue.length == 0) {
+		while (this.idle.length > 0) this.terminate(this.idle.pop());
+	} else if ($workerThreads) {
+		for (var n = 0; n < this.idle.length; n++) {
+			this.idle[n].worker.unref();
+			this.idle[n].port.unref();
+		}
+	}
+};
+
+N.WorkerPool.prototype.terminate = function(handle) {
+	handle.dead = true;
+	var index = this.workers.indexOf(handle);
+	if (index >= 0) this.workers.splice(index, 1);
+	index = this.idle.indexOf(handle);
+	if (index >= 0) this.idle.splice(index, 1);
+	handle.port.close();
+	handle.worker.terminate();
+};
+
+N.WorkerPool.prototype.shutdown = function() {
+	this.shut = true;
+	this.release();
+};
+
+// Running tasks fail and queued tasks are cancelled, so nobody keeps waiting for them
+N.WorkerPool.prototype.shutdownNow = function() {
+	this.shut = true;
+	var pending = this.queue;
+	var interrupted = [];
+	this.queue = [];
+	while (this.workers.length > 0) {
+		var handle = this.workers[0];
+		if (handle.current) interrupted.push(handle.current);
+		handle.current = null;
+		this.terminate(handle);
+	}
+	this.running = 0;
+	var n;
+	for (n = 0; n < interrupted.length; n++) this.notify(interrupted[n], null, 'Worker pool was shut down');
+	var out = new JA_L(pending.length, '[Ljava/lang/Object;');
+	for (n = 0; n < pending.length; n++) {
+		out.data[n] = pending[n].task;
+		pending[n].callback['{% METHOD com.jtransc.thread.JTranscWorkerPool$Callback:cancelled %}']();
+	}
+	return out;
+};
+
+N.WorkerPool.prototype.isTerminated = function() {
+	return this.shut && this.running == 0 && this.queue.length == 0;
+};
+
+// Blocks until a worker completes a task or the timeout expires. Only possible on Node: it returns false elsewhere.
+N.WorkerPool.prototype.wait = function(timeout) {
+	if (!this.signal || !$workerThreads.receiveMessageOnPort) return false;
+	var seen = Atomics.load(this.signal, 0);
+	if (this.poll()) return true;
+	if (this.running == 0) return true;
+	Atomics.wait(this.signal, 0, seen, (timeout < 0) ? Infinity : timeout);
+	this.poll();
+	return true;
+};
+
+N.WorkerPool.prototype.poll = function() {
+	var received = false;
+	var workers = this.workers.slice();
+	for (var n = 0; n < workers.length; n++) {
+		var handle = workers[n];
+		if (!handle.current) continue;
+		var entry = $workerThreads.receiveMessageOnPort(handle.port);
+		if (entry) {
+			this.completed(handle, entry.message);
+			received = true;
+		}
+	}
+	return received;
+};
@@ -1,3 +1,3 @@
 (function(_global) { "use strict";
 	/* ## BODY ## */
-})((typeof window !== "undefined") ? window : global);
\ No newline at end of file
+})((typeof window !== "undefined") ? window : ((typeof global !== "undefined") ? global : self));
\ No newline at end of file
@@ -16,6 +16,8 @@
 
 package java.io;
 
+import java.nio.channels.FileChannel;
+
 public class FileInputStream extends InputStream {
 	private final FileDescriptor fd;
 	private final RandomAccessFile rf;
@@ -70,6 +72,10 @@ public class FileInputStream extends InputStream {
 		throw new IOException();
 	}
 
+	public FileChannel getChannel() {
+		return this.rf.getChannel();
+	}
+
 	protected void finalize() throws IOException {
 		if ((fd != FileDescriptor.in)) {
 			close();
@@ -18,11 +18,15 @@ package java.io;
 
 import com.jtransc.io.JTranscSyncIO;
 
+import java.nio.channels.FileChannel;
+import java.nio.channels.JTranscFileChannel;
+
 public class FileOutputStream extends OutputStream {
 	private final FileDescriptor fd;
 	private final boolean append;
 	private final String path;
 	private final JTranscSyncIO.ImplStream jfd;
+	private FileChannel channel = null;
 	private volatile boolean closed = false;
 
 	public FileOutputStream(String name) throws FileNotFoundException {
@@ -48,6 +52,8 @@ public class FileOutputStream extends OutputStream {
 		jfd = JTranscSyncIO.impl.open(name, JTranscSyncIO.O_RDWR);
 		if (append) {
 			jfd.setPosition(jfd.getLength());
+		} else {
+			jfd.setLength(0L);
 		}
 	}
 
@@ -70,9 +76,15 @@ public class FileOutputStream extends OutputStream {
 	public void close() throws IOException {
 		if (closed) return;
 		closed = true;
+		if (channel != null) channel.close();
 		jfd.close();
 	}
 
+	public FileChannel getChannel() {
+		if (channel == null) channel = new JTranscFileChannel(jfd, false, true, this);
+		return channel;
+	}
+
 	public final FileDescriptor getFD() throws IOException {
 		if (fd != null) return fd;
 		throw new IOException();
@@ -19,11 +19,13 @@ package java.io;
 import com.jtransc.JTranscBits;
 import com.jtransc.io.JTranscSyncIO;
 
+import java.nio.channels.FileChannel;
+import java.nio.channels.JTranscFileChannel;
 import java.nio.charset.StandardCharsets;
 
 public class RandomAccessFile implements DataOutput, DataInput, Closeable {
 	private FileDescriptor fd;
-	//private FileChannel channel = null;
+	private FileChannel channel = null;
 	private boolean rw;
 	private final String path;
 
@@ -62,6 +64,11 @@ public class RandomAccessFile implements DataOutput, DataInput, Closeable {
 		return fd;
 	}
 
+	public final FileChannel getChannel() {
+		if (channel == null) channel = new JTranscFileChannel(jfd, true, rw, this);
+		return channel;
+	}
+
 	public int read() throws IOException {
 		return jfd.read();
 	}
@@ -130,7 +137,7 @@ public class RandomAccessFile implements DataOutput, DataInput, Closeable {
 	public void close() throws IOException {
 		if (closed) return;
 		closed = true;
-		//if (channel != null) channel.close();
+		if (channel != null) channel.close();
 		jfd.close();
 	}
 
@@ -103,13 +103,41 @@ public class Object {
 		return getClass().getName() + "@" + Integer.toHexString(this.hashCode());
 	}
 
+	@JTranscMethodBody(target = "cpp", value = "N::monitorNotify(this->__monitor, false);")
 	public final void notify() {
 	}
 
+	@JTranscMethodBody(target = "cpp", value = "N::monitorNotify(this->__monitor, true);")
 	public final void notifyAll() {
 	}
 
 	public final void wait(long timeout) throws InterruptedException {
+		if (_wait(timeout)) throw new InterruptedException();
+	}
+
+	@JTranscMethodBody(target = "cpp", value = "return N::monitorWait(this->__monitor, p0);")
+	private boolean _wait(long timeout) {
+		return false;
+	}
+
+	// Called by the cpp runtime, Object is always loaded while the exception class might not be
+	static private void _throwIllegalMonitorState() {
+		throw new IllegalMonitorStateException();
+	}
+
+	// Called by the cpp runtime when a class whose static initializer failed is used again
+	static private void _throwNoClassDefFound(String name) {
+		throw new NoClassDefFoundError("Could not initialize class " + name);
+	}
+
+	// Called by the js and cpp System.arraycopy when the range falls outside of one of the arrays
+	static private void _throwArrayCopyOutOfBounds(int srcPos, int destPos, int length) {
+		throw new ArrayIndexOutOfBoundsException("arraycopy: srcPos=" + srcPos + ", destPos=" + destPos + ", length=" + length);
+	}
+
+	// Called by the cpp runtime with the exception thrown by a static initializer
+	static private Throwable _initializerError(Throwable error) {
+		return (error instanceof Error) ? error : new ExceptionInInitializerError(error);
 	}
 
 	public final void wait(long timeout, int nanos) throws InterruptedException {
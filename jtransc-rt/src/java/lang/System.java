@@ -55,7 +55,7 @@ public class System {
 
 	@HaxeMethodBody("HaxeNatives.arraycopy(p0, p1, p2, p3, p4);")
 	@JTranscMethodBody(target = "js", value = "N.arraycopy(p0, p1, p2, p3, p4);")
-	@JTranscMethodBody(target = "cpp", value = "JA_0::copy((JA_0*)p0.get(), p1, (JA_0*)p2.get(), p3, p4);")
+	@JTranscMethodBody(target = "cpp", value = "JA_0 *src = (JA_0*)p0.get(), *dst = (JA_0*)p2.get(); if (p4 < 0 || p1 < 0 || p3 < 0 || p1 > src->length - p4 || p3 > dst->length - p4) {% SMETHOD java.lang.Object:_throwArrayCopyOutOfBounds %}(p1, p3, p4); JA_0::copy(src, p1, dst, p3, p4);")
 	public static native void arraycopy(Object src, int srcPos, Object dest, int destPos, int length);
 
 	@HaxeMethodBody("return (p0 != null) ? (p0.__ID__ | 0) : 0;")
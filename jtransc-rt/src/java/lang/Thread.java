@@ -32,12 +32,24 @@ public class Thread implements Runnable {
 	static private Thread _currentThread;
 
 	public static Thread currentThread() {
+		Thread current = _currentNative();
+		if (current != null) return current;
 		if (_currentThread == null) {
 			_currentThread = new Thread();
+			_attachNative(_currentThread);
 		}
 		return _currentThread;
 	}
 
+	@JTranscMethodBody(target = "cpp", value = "return N::currentThread();")
+	static private Thread _currentNative() {
+		return null;
+	}
+
+	@JTranscMethodBody(target = "cpp", value = "N::attachThread(p0);")
+	static private void _attachNative(Thread thread) {
+	}
+
 	public StackTraceElement[] getStackTrace() {
 		StackTraceElement[] stackTrace = _getStackTrace();
 		if ((stackTrace == null) || (stackTrace.length == 0)) {
@@ -59,16 +71,23 @@ public class Thread implements Runnable {
 		return ST_NULL;
 	}
 
+	@JTranscMethodBody(target = "cpp", value = "std::this_thread::yield();")
 	public static void yield() {
 
 	}
 
 	public static void sleep(long millis) throws InterruptedException {
-		JTranscSystem.sleep(millis);
+		if (_sleep(millis)) throw new InterruptedException();
 	}
 
 	public static void sleep(long millis, int nanos) throws InterruptedException {
+		sleep(millis);
+	}
+
+	@JTranscMethodBody(target = "cpp", value = "return N::sleep(p0);")
+	static private boolean _sleep(long millis) {
 		JTranscSystem.sleep(millis);
+		return false;
 	}
 
 	public Thread() {
@@ -78,6 +97,10 @@ public class Thread implements Runnable {
 	public long _data;
 	public boolean _isAlive;
 	private Runnable target;
+	private boolean daemon;
+	private boolean interrupted;
+	private UncaughtExceptionHandler uncaughtExceptionHandler;
+	static private UncaughtExceptionHandler defaultUncaughtExceptionHandler;
 
 	public Thread(Runnable target) {
 		this.target = target;
@@ -124,11 +147,23 @@ public class Thread implements Runnable {
 	@Deprecated
 	native public final synchronized void stop(Throwable obj);
 
-	native public void interrupt();
+	@JTranscMethodBody(target = "cpp", value = "N::interruptThread(this);")
+	public void interrupt() {
+		this.interrupted = true;
+	}
 
-	native public static boolean interrupted();
+	@JTranscMethodBody(target = "cpp", value = "return N::interrupted();")
+	public static boolean interrupted() {
+		Thread current = currentThread();
+		boolean out = current.interrupted;
+		current.interrupted = false;
+		return out;
+	}
 
-	native public boolean isInterrupted();
+	@JTranscMethodBody(target = "cpp", value = "return N::isInterrupted(this);")
+	public boolean isInterrupted() {
+		return this.interrupted;
+	}
 
 	@Deprecated
 	native public void destroy();
@@ -164,17 +199,32 @@ public class Thread implements Runnable {
 	@Deprecated
 	native public int countStackFrames();
 
-	native public final synchronized void join(long millis) throws InterruptedException;
+	public final void join(long millis) throws InterruptedException {
+		if (_join(millis)) throw new InterruptedException();
+	}
 
-	native public final synchronized void join(long millis, int nanos) throws InterruptedException;
+	public final void join(long millis, int nanos) throws InterruptedException {
+		join(millis);
+	}
+
+	public final void join() throws InterruptedException {
+		join(0);
+	}
 
-	native public final void join() throws InterruptedException;
+	@JTranscMethodBody(target = "cpp", value = "return N::joinThread(this, p0);")
+	private boolean _join(long millis) {
+		return false;
+	}
 
 	native public static void dumpStack();
 
-	native public final void setDaemon(boolean on);
+	public final void setDaemon(boolean on) {
+		this.daemon = on;
+	}
 
-	native public final boolean isDaemon();
+	public final boolean isDaemon() {
+		return this.daemon;
+	}
 
 	native public final void checkAccess();
 
@@ -200,6 +250,7 @@ public class Thread implements Runnable {
 		this.classLoader = cl;
 	}
 
+	@JTranscMethodBody(target = "cpp", value = "return N::monitorHeld(N::ensureNpe(p0)->__monitor);")
 	public static boolean holdsLock(Object obj) {
 		return false;
 	}
@@ -222,11 +273,19 @@ public class Thread implements Runnable {
 		void uncaughtException(Thread t, Throwable e);
 	}
 
-	native public static void setDefaultUncaughtExceptionHandler(UncaughtExceptionHandler eh);
+	public static void setDefaultUncaughtExceptionHandler(UncaughtExceptionHandler eh) {
+		defaultUncaughtExceptionHandler = eh;
+	}
 
-	native public static UncaughtExceptionHandler getDefaultUncaughtExceptionHandler();
+	public static UncaughtExceptionHandler getDefaultUncaughtExceptionHandler() {
+		return defaultUncaughtExceptionHandler;
+	}
 
-	native public UncaughtExceptionHandler getUncaughtExceptionHandler();
+	public UncaughtExceptionHandler getUncaughtExceptionHandler() {
+		return (uncaughtExceptionHandler != null) ? uncaughtExceptionHandler : defaultUncaughtExceptionHandler;
+	}
 
-	native public void setUncaughtExceptionHandler(UncaughtExceptionHandler eh);
+	public void setUncaughtExceptionHandler(UncaughtExceptionHandler eh) {
+		this.uncaughtExceptionHandler = eh;
+	}
 }
@@ -22,7 +22,7 @@ public class JTranscCoreReflection {
 		"JA_L *array = new JA_L(len, L\"Ljava/lang/reflect/Constructor;\");",
 		"SOBJ out = SOBJ(array);",
 		"for (int n = 0; n < len; n++) {",
-		"    auto c = new java_lang_reflect_Constructor();",
+		"    auto c = new {% CLASS java.lang.reflect.Constructor %}();",
 		"    auto info = table.constructors[n];",
 		"    c->{% FIELD java.lang.reflect.Constructor:typeId %} = typeId;",
 		"    c->{% FIELD java.lang.reflect.Constructor:slot %} = n;",
@@ -55,7 +55,7 @@ public class JTranscCoreReflection {
 		"JA_L *array = new JA_L(len, L\"Ljava/lang/reflect/Method;\");",
 		"SOBJ out = SOBJ(array);",
 		"for (int n = 0; n < len; n++) {",
-		"    auto c = new java_lang_reflect_Method();",
+		"    auto c = new {% CLASS java.lang.reflect.Method %}();",
 		"    auto info = methods[n];",
 		"    c->{% FIELD java.lang.reflect.Method:typeId %} = typeId;",
 		"    c->{% FIELD java.lang.reflect.Method:slot %} = n;",
@@ -79,7 +79,7 @@ public class JTranscCoreReflection {
 		"JA_L *array = new JA_L(len, L\"Ljava/lang/reflect/Field;\");",
 		"SOBJ out = SOBJ(array);",
 		"for (int n = 0; n < len; n++) {",
-		"    auto c = new java_lang_reflect_Field();",
+		"    auto c = new {% CLASS java.lang.reflect.Field %}();",
 		"    auto info = fields[n];",
 		"    c->{% FIELD java.lang.reflect.Field:typeId %} = typeId;",
 		"    c->{% FIELD java.lang.reflect.Field:slot %} = n;",
@@ -24,7 +24,7 @@ public class JTranscStrings {
 
 	static public int indexOf(char[] base, int offset, char[] haystack) {
 		int end = base.length - haystack.length;
-		for (int n = offset; n < end; n++) if (JTranscStrings.equals(base, n, haystack, 0, haystack.length)) return n;
+		for (int n = offset; n <= end; n++) if (JTranscStrings.equals(base, n, haystack, 0, haystack.length)) return n;
 		return -1;
 	}
 
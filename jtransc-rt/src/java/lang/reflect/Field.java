@@ -130,12 +130,12 @@ public final class Field extends AccessibleObject implements Member {
 
 	@HaxeMethodBody("Reflect.setField(_getObjectOrClass(p0), this._internalName, p1);")
 	@JTranscMethodBody(target = "js", value = "R.setField(this, p0, p1);")
-	@JTranscMethodBody(target = "cpp", value = "*(SOBJ *)(this->{% METHOD java.lang.reflect.Field:getFieldPtr %}(this->sptr(), p0)) = p1;")
+	@JTranscMethodBody(target = "cpp", value = "*(FOBJ *)(this->{% METHOD java.lang.reflect.Field:getFieldPtr %}(this->sptr(), p0)) = p1;")
 	native private void _setObject(Object obj, Object value) throws IllegalArgumentException, IllegalAccessException;
 
 	@HaxeMethodBody("return Reflect.field(_getObjectOrClass(p0), this._internalName);")
 	@JTranscMethodBody(target = "js", value = "return R.getField(this, p0);")
-	@JTranscMethodBody(target = "cpp", value = "return *(SOBJ *)(this->{% METHOD java.lang.reflect.Field:getFieldPtr %}(this->sptr(), p0));")
+	@JTranscMethodBody(target = "cpp", value = "return *(FOBJ *)(this->{% METHOD java.lang.reflect.Field:getFieldPtr %}(this->sptr(), p0));")
 	native public Object _getObject(Object obj) throws IllegalArgumentException, IllegalAccessException;
 
 	////////////////////////////////////////////////////////////
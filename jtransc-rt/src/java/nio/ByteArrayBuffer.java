@@ -23,7 +23,7 @@ import java.nio.internal.SizeOf;
 /**
  * ByteArrayBuffer implements byte[]-backed ByteBuffers.
  */
-public final class ByteArrayBuffer extends ByteBuffer {
+public class ByteArrayBuffer extends ByteBuffer {
 
 	/**
 	 * These fields are non-private for NioUtils.unsafeArray.
@@ -40,7 +40,11 @@ public final class ByteArrayBuffer extends ByteBuffer {
 	}
 
 	ByteArrayBuffer(byte[] backingArray, boolean isDirect) {
-		this(backingArray.length, backingArray, 0, false);
+		this(backingArray, isDirect, false);
+	}
+
+	ByteArrayBuffer(byte[] backingArray, boolean isDirect, boolean isReadOnly) {
+		this(backingArray.length, backingArray, 0, isReadOnly);
 		this.isDirect = isDirect;
 	}
 
@@ -0,0 +1,14 @@
+package java.nio;
+
+// Direct buffer over a region of a file. Its array views the mapped memory on the targets able to map files
+public abstract class MappedByteBuffer extends ByteArrayBuffer {
+	protected MappedByteBuffer(byte[] backingArray, boolean isReadOnly) {
+		super(backingArray, true, isReadOnly);
+	}
+
+	public abstract boolean isLoaded();
+
+	public abstract MappedByteBuffer load();
+
+	public abstract MappedByteBuffer force();
+}
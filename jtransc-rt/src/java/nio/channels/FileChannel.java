@@ -0,0 +1,51 @@
+package java.nio.channels;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+public abstract class FileChannel implements SeekableByteChannel {
+	public static class MapMode {
+		public static final MapMode READ_ONLY = new MapMode("READ_ONLY");
+		public static final MapMode READ_WRITE = new MapMode("READ_WRITE");
+		public static final MapMode PRIVATE = new MapMode("PRIVATE");
+
+		private final String name;
+
+		private MapMode(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	protected FileChannel() {
+	}
+
+	public abstract int read(ByteBuffer dst) throws IOException;
+
+	public abstract int read(ByteBuffer dst, long position) throws IOException;
+
+	public abstract int write(ByteBuffer src) throws IOException;
+
+	public abstract int write(ByteBuffer src, long position) throws IOException;
+
+	public abstract long position() throws IOException;
+
+	public abstract FileChannel position(long newPosition) throws IOException;
+
+	public abstract long size() throws IOException;
+
+	public abstract FileChannel truncate(long size) throws IOException;
+
+	public abstract void force(boolean metaData) throws IOException;
+
+	public abstract long transferTo(long position, long count, WritableByteChannel target) throws IOException;
+
+	public abstract long transferFrom(ReadableByteChannel src, long position, long count) throws IOException;
+
+	public abstract MappedByteBuffer map(MapMode mode, long position, long size) throws IOException;
+}
@@ -0,0 +1,232 @@
+package java.nio.channels;
+
+import com.jtransc.io.JTranscSyncIO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+// FileChannel of RandomAccessFile, FileInputStream and FileOutputStream. Buffers with an array (heap, direct and
+// mapped ones) are read and written in place
+public class JTranscFileChannel extends FileChannel {
+	private static final int TRANSFER_SIZE = 64 * 1024;
+
+	private final JTranscSyncIO.ImplStream jfd;
+	private final boolean readable;
+	private final boolean writable;
+	private final Closeable owner;
+	private boolean open = true;
+
+	public JTranscFileChannel(JTranscSyncIO.ImplStream jfd, boolean readable, boolean writable, Closeable owner) {
+		this.jfd = jfd;
+		this.readable = readable;
+		this.writable = writable;
+		this.owner = owner;
+	}
+
+	private void ensureOpen() throws ClosedChannelException {
+		if (!open) throw new ClosedChannelException();
+	}
+
+	private void ensureReadable() throws ClosedChannelException {
+		ensureOpen();
+		if (!readable) throw new NonReadableChannelException();
+	}
+
+	private void ensureWritable() throws ClosedChannelException {
+		ensureOpen();
+		if (!writable) throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!open) return;
+		open = false;
+		owner.close();
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		ensureReadable();
+		return _read(dst);
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException {
+		ensureReadable();
+		if (position < 0) throw new IllegalArgumentException("position < 0: " + position);
+		long old = jfd.getPosition();
+		jfd.setPosition(position);
+		try {
+			return _read(dst);
+		} finally {
+			jfd.setPosition(old);
+		}
+	}
+
+	private int _read(ByteBuffer dst) {
+		int remaining = dst.remaining();
+		if (remaining == 0) return 0;
+		int count;
+		if (dst.hasArray()) {
+			count = jfd.read(dst.array(), dst.arrayOffset() + dst.position(), remaining);
+			if (count > 0) dst.position(dst.position() + count);
+		} else {
+			byte[] temp = new byte[remaining];
+			count = jfd.read(temp, 0, remaining);
+			if (count > 0) dst.put(temp, 0, count);
+		}
+		return (count > 0) ? count : -1;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		ensureWritable();
+		return _write(src);
+	}
+
+	@Override
+	public int write(ByteBuffer src, long position) throws IOException {
+		ensureWritable();
+		if (position < 0) throw new IllegalArgumentException("position < 0: " + position);
+		long old = jfd.getPosition();
+		jfd.setPosition(position);
+		try {
+			return _write(src);
+		} finally {
+			jfd.setPosition(old);
+		}
+	}
+
+	private int _write(ByteBuffer src) {
+		int remaining = src.remaining();
+		if (remaining == 0) return 0;
+		int count;
+		if (src.hasArray()) {
+			count = jfd.write(src.array(), src.arrayOffset() + src.position(), remaining);
+			if (count > 0) src.position(src.position() + count);
+		} else {
+			byte[] temp = new byte[remaining];
+			src.get(temp);
+			count = jfd.write(temp, 0, remaining);
+			if (count < remaining) src.position(src.position() - remaining + Math.max(count, 0));
+		}
+		return Math.max(count, 0);
+	}
+
+	@Override
+	public long position() throws IOException {
+		ensureOpen();
+		return jfd.getPosition();
+	}
+
+	@Override
+	public FileChannel position(long newPosition) throws IOException {
+		ensureOpen();
+		if (newPosition < 0) throw new IllegalArgumentException("position < 0: " + newPosition);
+		jfd.setPosition(newPosition);
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		ensureOpen();
+		return jfd.getLength();
+	}
+
+	@Override
+	public FileChannel truncate(long size) throws IOException {
+		ensureWritable();
+		if (size < 0) throw new IllegalArgumentException("size < 0: " + size);
+		if (size < jfd.getLength()) jfd.setLength(size);
+		if (jfd.getPosition() > size) jfd.setPosition(size);
+		return this;
+	}
+
+	@Override
+	public void force(boolean metaData) throws IOException {
+		ensureOpen();
+		jfd.sync(metaData);
+	}
+
+	@Override
+	public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+		ensureReadable();
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, TRANSFER_SIZE));
+		long transferred = 0L;
+		while (transferred < count) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), count - transferred));
+			int read = read(buffer, position + transferred);
+			if (read <= 0) break;
+			buffer.flip();
+			while (buffer.hasRemaining()) target.write(buffer);
+			transferred += read;
+		}
+		return transferred;
+	}
+
+	@Override
+	public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+		ensureWritable();
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, TRANSFER_SIZE));
+		long transferred = 0L;
+		while (transferred < count) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), count - transferred));
+			int read = src.read(buffer);
+			if (read <= 0) break;
+			buffer.flip();
+			while (buffer.hasRemaining()) write(buffer, position + transferred + buffer.position());
+			transferred += read;
+		}
+		return transferred;
+	}
+
+	@Override
+	public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+		ensureReadable();
+		if (mode != MapMode.READ_ONLY && !writable) throw new NonWritableChannelException();
+		if (position < 0) throw new IllegalArgumentException("position < 0: " + position);
+		if (size < 0 || size > Integer.MAX_VALUE) throw new IllegalArgumentException("Invalid size: " + size);
+		if (position + size > jfd.getLength()) {
+			if (!writable) throw new IOException("Channel not open for writing - cannot extend file to required size");
+			jfd.setLength(position + size);
+		}
+		int imode = (mode == MapMode.READ_ONLY) ? JTranscSyncIO.MAP_READ_ONLY : ((mode == MapMode.READ_WRITE) ? JTranscSyncIO.MAP_READ_WRITE : JTranscSyncIO.MAP_PRIVATE);
+		return new Mapped(jfd.map(position, (int) size, imode), position, mode);
+	}
+
+	private class Mapped extends MappedByteBuffer {
+		private final long position;
+		private final MapMode mode;
+
+		Mapped(byte[] data, long position, MapMode mode) {
+			super(data, mode == MapMode.READ_ONLY);
+			this.position = position;
+			this.mode = mode;
+		}
+
+		@Override
+		public boolean isLoaded() {
+			return true;
+		}
+
+		@Override
+		public MappedByteBuffer load() {
+			return this;
+		}
+
+		@Override
+		public MappedByteBuffer force() {
+			if (mode == MapMode.READ_WRITE) jfd.flush(backingArray, position);
+			return this;
+		}
+	}
+}
@@ -17,6 +17,7 @@
 
 package java.util;
 
+import com.jtransc.JTranscArrays;
 import com.jtransc.annotation.JTranscMethodBody;
 
 import java.io.Serializable;
@@ -670,9 +671,7 @@ public class Arrays {
      *            the {@code byte} element.
      */
     public static void fill(byte[] array, byte value) {
-        for (int i = 0; i < array.length; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, 0, array.length, value);
     }
 
     /**
@@ -693,9 +692,7 @@ public class Arrays {
      */
     public static void fill(byte[] array, int start, int end, byte value) {
         Arrays.checkStartAndEnd(array.length, start, end);
-        for (int i = start; i < end; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, start, end, value);
     }
 
     /**
@@ -707,9 +704,7 @@ public class Arrays {
      *            the {@code short} element.
      */
     public static void fill(short[] array, short value) {
-        for (int i = 0; i < array.length; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, 0, array.length, value);
     }
 
     /**
@@ -730,9 +725,7 @@ public class Arrays {
      */
     public static void fill(short[] array, int start, int end, short value) {
         Arrays.checkStartAndEnd(array.length, start, end);
-        for (int i = start; i < end; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, start, end, value);
     }
 
     /**
@@ -744,9 +737,7 @@ public class Arrays {
      *            the {@code char} element.
      */
     public static void fill(char[] array, char value) {
-        for (int i = 0; i < array.length; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, 0, array.length, value);
     }
 
     /**
@@ -767,9 +758,7 @@ public class Arrays {
      */
     public static void fill(char[] array, int start, int end, char value) {
         Arrays.checkStartAndEnd(array.length, start, end);
-        for (int i = start; i < end; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, start, end, value);
     }
 
     /**
@@ -781,9 +770,7 @@ public class Arrays {
      *            the {@code int} element.
      */
     public static void fill(int[] array, int value) {
-        for (int i = 0; i < array.length; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, 0, array.length, value);
     }
 
     /**
@@ -804,9 +791,7 @@ public class Arrays {
      */
     public static void fill(int[] array, int start, int end, int value) {
         Arrays.checkStartAndEnd(array.length, start, end);
-        for (int i = start; i < end; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, start, end, value);
     }
 
     /**
@@ -818,9 +803,7 @@ public class Arrays {
      *            the {@code long} element.
      */
     public static void fill(long[] array, long value) {
-        for (int i = 0; i < array.length; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, 0, array.length, value);
     }
 
     /**
@@ -841,9 +824,7 @@ public class Arrays {
      */
     public static void fill(long[] array, int start, int end, long value) {
         Arrays.checkStartAndEnd(array.length, start, end);
-        for (int i = start; i < end; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, start, end, value);
     }
 
     /**
@@ -855,9 +836,7 @@ public class Arrays {
      *            the {@code float} element.
      */
     public static void fill(float[] array, float value) {
-        for (int i = 0; i < array.length; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, 0, array.length, value);
     }
 
     /**
@@ -878,9 +857,7 @@ public class Arrays {
      */
     public static void fill(float[] array, int start, int end, float value) {
         Arrays.checkStartAndEnd(array.length, start, end);
-        for (int i = start; i < end; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, start, end, value);
     }
 
     /**
@@ -892,9 +869,7 @@ public class Arrays {
      *            the {@code double} element.
      */
     public static void fill(double[] array, double value) {
-        for (int i = 0; i < array.length; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, 0, array.length, value);
     }
 
     /**
@@ -915,9 +890,7 @@ public class Arrays {
      */
     public static void fill(double[] array, int start, int end, double value) {
         Arrays.checkStartAndEnd(array.length, start, end);
-        for (int i = start; i < end; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, start, end, value);
     }
 
     /**
@@ -929,9 +902,7 @@ public class Arrays {
      *            the {@code boolean} element.
      */
     public static void fill(boolean[] array, boolean value) {
-        for (int i = 0; i < array.length; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, 0, array.length, value);
     }
 
     /**
@@ -952,9 +923,7 @@ public class Arrays {
      */
     public static void fill(boolean[] array, int start, int end, boolean value) {
         Arrays.checkStartAndEnd(array.length, start, end);
-        for (int i = start; i < end; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, start, end, value);
     }
 
     /**
@@ -966,9 +935,7 @@ public class Arrays {
      *            the {@code Object} element.
      */
     public static void fill(Object[] array, Object value) {
-        for (int i = 0; i < array.length; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, 0, array.length, value);
     }
 
     /**
@@ -989,9 +956,7 @@ public class Arrays {
      */
     public static void fill(Object[] array, int start, int end, Object value) {
         Arrays.checkStartAndEnd(array.length, start, end);
-        for (int i = start; i < end; i++) {
-            array[i] = value;
-        }
+        JTranscArrays.fill(array, start, end, value);
     }
 
     /**
@@ -1367,12 +1332,7 @@ public class Arrays {
         if (array1 == null || array2 == null || array1.length != array2.length) {
             return false;
         }
-        for (int i = 0; i < array1.length; i++) {
-            if (array1[i] != array2[i]) {
-                return false;
-            }
-        }
-        return true;
+        return JTranscArrays.equals(array1, 0, array2, 0, array1.length);
     }
 
     /**
@@ -1393,12 +1353,7 @@ public class Arrays {
         if (array1 == null || array2 == null || array1.length != array2.length) {
             return false;
         }
-        for (int i = 0; i < array1.length; i++) {
-            if (array1[i] != array2[i]) {
-                return false;
-            }
-        }
-        return true;
+        return JTranscArrays.equals(array1, 0, array2, 0, array1.length);
     }
 
     /**
@@ -1419,12 +1374,7 @@ public class Arrays {
         if (array1 == null || array2 == null || array1.length != array2.length) {
             return false;
         }
-        for (int i = 0; i < array1.length; i++) {
-            if (array1[i] != array2[i]) {
-                return false;
-            }
-        }
-        return true;
+        return JTranscArrays.equals(array1, 0, array2, 0, array1.length);
     }
 
     /**
@@ -1445,12 +1395,7 @@ public class Arrays {
         if (array1 == null || array2 == null || array1.length != array2.length) {
             return false;
         }
-        for (int i = 0; i < array1.length; i++) {
-            if (array1[i] != array2[i]) {
-                return false;
-            }
-        }
-        return true;
+        return JTranscArrays.equals(array1, 0, array2, 0, array1.length);
     }
 
     /**
@@ -1471,12 +1416,7 @@ public class Arrays {
         if (array1 == null || array2 == null || array1.length != array2.length) {
             return false;
         }
-        for (int i = 0; i < array1.length; i++) {
-            if (array1[i] != array2[i]) {
-                return false;
-            }
-        }
-        return true;
+        return JTranscArrays.equals(array1, 0, array2, 0, array1.length);
     }
 
     /**
@@ -1555,12 +1495,7 @@ public class Arrays {
         if (array1 == null || array2 == null || array1.length != array2.length) {
             return false;
         }
-        for (int i = 0; i < array1.length; i++) {
-            if (array1[i] != array2[i]) {
-                return false;
-            }
-        }
-        return true;
+        return JTranscArrays.equals(array1, 0, array2, 0, array1.length);
     }
 
     /**
@@ -1,47 +1,85 @@
 package java.util.concurrent;
 
+import com.jtransc.thread.JTranscWorkerPool;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
 public class ThreadPoolExecutor implements ExecutorService {
+	// Tasks run in workers on js, elsewhere they run in the caller's thread when submitted
+	private final JTranscWorkerPool workers;
+	private boolean shutdown;
+
 	public ThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
+		this.workers = JTranscWorkerPool.isSupported() ? new JTranscWorkerPool(getWorkerCount(corePoolSize, maximumPoolSize)) : null;
 	}
 
 	public ThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory) {
+		this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
 	}
 
 	public ThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue, RejectedExecutionHandler handler) {
+		this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
 	}
 
 	public ThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+		this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
 	}
+
+	static private int getWorkerCount(int corePoolSize, int maximumPoolSize) {
+		if (corePoolSize > 0) return corePoolSize;
+		return Math.max(1, Math.min(maximumPoolSize, JTranscWorkerPool.getDefaultSize()));
+	}
+
 	@Override
 	public void shutdown() {
+		shutdown = true;
+		if (workers != null) workers.shutdown();
 	}
 
 	@Override
 	public List<Runnable> shutdownNow() {
-		return new ArrayList<>();
+		shutdown = true;
+		ArrayList<Runnable> out = new ArrayList<>();
+		if (workers != null) {
+			for (Object task : workers.shutdownNow()) {
+				if (task instanceof Runnable) out.add((Runnable) task);
+			}
+		}
+		return out;
 	}
 
 	@Override
 	public boolean isShutdown() {
-		return false;
+		return shutdown;
 	}
 
 	@Override
 	public boolean isTerminated() {
-		return true;
+		return (workers == null) || (shutdown && workers.isTerminated());
 	}
 
 	@Override
 	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = WorkerFuture.deadline(unit.toMillis(timeout));
+		while (!isTerminated()) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0 || !workers.await(remaining)) return false;
+		}
 		return true;
 	}
 
+	private <T> Future<T> submitToWorker(Object task, WorkerFuture<T> future) {
+		if (task == null) throw new NullPointerException();
+		if (shutdown) throw new RejectedExecutionException("Executor has been shut down");
+		workers.submit(task, future);
+		return future;
+	}
+
 	@Override
 	public <T> Future<T> submit(Callable<T> task) {
+		if (workers != null) return submitToWorker(task, new WorkerFuture<T>(workers));
 		try {
 			return new ImmediateFuture<>(task.call());
 		} catch (Exception e) {
@@ -51,6 +89,7 @@ public class ThreadPoolExecutor implements ExecutorService {
 
 	@Override
 	public <T> Future<T> submit(Runnable task, T result) {
+		if (workers != null) return submitToWorker(task, new WorkerFuture<T>(workers, true, result));
 		task.run();
 		return new ImmediateFuture<>(result);
 	}
@@ -63,6 +102,16 @@ public class ThreadPoolExecutor implements ExecutorService {
 	@Override
 	public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
 		ArrayList<Future<T>> out = new ArrayList<>();
+		if (workers != null) {
+			for (Callable<T> task : tasks) out.add(submit(task));
+			for (Future<T> future : out) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+				}
+			}
+			return out;
+		}
 		for (Callable<T> task : tasks) {
 			try {
 				out.add(new ImmediateFuture(task.call()));
@@ -76,11 +125,50 @@ public class ThreadPoolExecutor implements ExecutorService {
 
 	@Override
 	public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
-		return invokeAll(tasks);
+		long deadline = WorkerFuture.deadline(unit.toMillis(timeout));
+		ArrayList<Future<T>> out = new ArrayList<>();
+		if (workers != null) {
+			for (Callable<T> task : tasks) out.add(submit(task));
+			// Once the deadline passes the remaining futures time out immediately and are cancelled
+			for (Future<T> future : out) {
+				try {
+					future.get(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+				} catch (ExecutionException e) {
+				} catch (TimeoutException e) {
+					future.cancel(true);
+				}
+			}
+			return out;
+		}
+		// Tasks run one after the other, the ones not started before the deadline are cancelled
+		for (Callable<T> task : tasks) {
+			if (System.currentTimeMillis() < deadline) {
+				out.add(submit(task));
+			} else {
+				WorkerFuture<T> future = new WorkerFuture<>(null);
+				future.cancel(true);
+				out.add(future);
+			}
+		}
+		return out;
 	}
 
 	@Override
 	public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+		if (workers != null) {
+			ArrayList<Future<T>> futures = new ArrayList<>();
+			for (Callable<T> task : tasks) futures.add(submit(task));
+			ExecutionException error = null;
+			for (Future<T> future : futures) {
+				try {
+					return future.get();
+				} catch (ExecutionException e) {
+					error = e;
+				}
+			}
+			if (error != null) throw error;
+			return null;
+		}
 		for (Callable<T> task : tasks) {
 			try {
 				return task.call();
@@ -93,11 +181,49 @@ public class ThreadPoolExecutor implements ExecutorService {
 
 	@Override
 	public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-		return invokeAny(tasks);
+		long deadline = WorkerFuture.deadline(unit.toMillis(timeout));
+		if (workers != null) {
+			ArrayList<Future<T>> futures = new ArrayList<>();
+			for (Callable<T> task : tasks) futures.add(submit(task));
+			ExecutionException error = null;
+			TimeoutException timeoutError = null;
+			boolean completed = false;
+			T result = null;
+			for (Future<T> future : futures) {
+				try {
+					result = future.get(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+					completed = true;
+					break;
+				} catch (ExecutionException e) {
+					error = e;
+				} catch (TimeoutException e) {
+					timeoutError = e;
+					break;
+				}
+			}
+			for (Future<T> future : futures) future.cancel(true);
+			if (completed) return result;
+			if (timeoutError != null) throw timeoutError;
+			if (error != null) throw error;
+			return null;
+		}
+		for (Callable<T> task : tasks) {
+			if (System.currentTimeMillis() >= deadline) throw new TimeoutException();
+			try {
+				return task.call();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		return null;
 	}
 
 	@Override
 	public void execute(Runnable command) {
-
+		if (workers != null) {
+			submit(command);
+		} else {
+			command.run();
+		}
 	}
 }
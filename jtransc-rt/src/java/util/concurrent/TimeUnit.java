@@ -26,39 +26,50 @@ public enum TimeUnit {
 	}
 
 	public long convert(long duration, TimeUnit sourceUnit) {
-		return _convert(duration, sourceUnit.value);
+		return _convert(duration, sourceUnit.value, this.value);
 	}
 
-	private long _convert(long duration, long constant) {
-		return duration * constant / this.value;
+	private long _to(long duration, long constant) {
+		return _convert(duration, this.value, constant);
+	}
+
+	// Saturates to Long.MAX_VALUE/MIN_VALUE instead of overflowing, like the JDK
+	static private long _convert(long duration, long from, long to) {
+		if (from == to) return duration;
+		if (from < to) return duration / (to / from);
+		long ratio = from / to;
+		long max = Long.MAX_VALUE / ratio;
+		if (duration > max) return Long.MAX_VALUE;
+		if (duration < -max) return Long.MIN_VALUE;
+		return duration * ratio;
 	}
 
 	public long toNanos(long duration) {
-		return _convert(duration, CST.NANO);
+		return _to(duration, CST.NANO);
 	}
 
 	public long toMicros(long duration) {
-		return _convert(duration, CST.MICRO);
+		return _to(duration, CST.MICRO);
 	}
 
 	public long toMillis(long duration) {
-		return _convert(duration, CST.MILLIS);
+		return _to(duration, CST.MILLIS);
 	}
 
 	public long toSeconds(long duration) {
-		return _convert(duration, CST.SECOND);
+		return _to(duration, CST.SECOND);
 	}
 
 	public long toMinutes(long duration) {
-		return _convert(duration, CST.MINUTE);
+		return _to(duration, CST.MINUTE);
 	}
 
 	public long toHours(long duration) {
-		return _convert(duration, CST.HOURS);
+		return _to(duration, CST.HOURS);
 	}
 
 	public long toDays(long duration) {
-		return _convert(duration, CST.DAYS);
+		return _to(duration, CST.DAYS);
 	}
 
 	int excessNanos(long d, long m) {
@@ -0,0 +1,90 @@
+package java.util.concurrent;
+
+import com.jtransc.thread.JTranscWorkerPool;
+
+// Completed from the event loop when the worker posts its result, or from get() when the pool can wait for workers
+class WorkerFuture<V> implements Future<V>, JTranscWorkerPool.Callback {
+	private final JTranscWorkerPool pool;
+	private final boolean hasResult;
+	private final V fixedResult;
+	private boolean done;
+	private boolean cancelled;
+	private Object result;
+	private String error;
+
+	WorkerFuture(JTranscWorkerPool pool) {
+		this(pool, false, null);
+	}
+
+	WorkerFuture(JTranscWorkerPool pool, boolean hasResult, V fixedResult) {
+		this.pool = pool;
+		this.hasResult = hasResult;
+		this.fixedResult = fixedResult;
+	}
+
+	@Override
+	public void done(Object result, String error) {
+		if (done) return;
+		this.done = true;
+		this.result = hasResult ? fixedResult : result;
+		this.error = error;
+	}
+
+	@Override
+	public void cancelled() {
+		cancel(false);
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (done) return false;
+		cancelled = true;
+		done = true;
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done;
+	}
+
+	@Override
+	public V get() throws InterruptedException, ExecutionException {
+		try {
+			return await(-1L);
+		} catch (TimeoutException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		return await(Math.max(0L, unit.toMillis(timeout)));
+	}
+
+	// Saturated, so long timeouts don't wrap around to the past
+	static long deadline(long timeoutMs) {
+		long now = System.currentTimeMillis();
+		return (timeoutMs > Long.MAX_VALUE - now) ? Long.MAX_VALUE : now + Math.max(0L, timeoutMs);
+	}
+
+	@SuppressWarnings("unchecked")
+	private V await(long timeoutMs) throws ExecutionException, TimeoutException {
+		long deadline = deadline(timeoutMs);
+		while (!done) {
+			long remaining = (timeoutMs < 0) ? -1L : deadline - System.currentTimeMillis();
+			if (timeoutMs >= 0 && remaining <= 0) throw new TimeoutException();
+			if (!pool.await(remaining)) {
+				throw new IllegalStateException("Can't wait for workers here: the result is delivered from the event loop, check isDone()");
+			}
+		}
+		if (cancelled) throw new CancellationException();
+		if (error != null) throw new ExecutionException(new RuntimeException(error));
+		return (V) result;
+	}
+}
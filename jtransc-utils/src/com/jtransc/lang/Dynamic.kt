@@ -251,32 +251,33 @@ object Dynamic {
 		return value.toString()
 	}
 
-	fun binop(l: Any?, r: Any?, op: String): Any? {
+	fun binop(l: Any?, r: Any?, op: String): Any? = binopFunction(op)(l, r)
+
+	fun binopFunction(op: String): (Any?, Any?) -> Any? {
 		return when (op) {
-			"+" -> {
+			"+" -> { l, r ->
 				when (l) {
 					is String -> l.toString() + r.toBetterString()
 					is Iterable<*> -> toIterable(l) + toIterable(r)
 					else -> toNumber(l) + toNumber(r)
 				}
 			}
-			"-"  -> toNumber(l) - toNumber(r)
-			"+"  -> toNumber(l) + toNumber(r)
-			"*"  -> toNumber(l) * toNumber(r)
-			"/"  -> toNumber(l) / toNumber(r)
-			"%"  -> toNumber(l) % toNumber(r)
-			"**" -> Math.pow(toNumber(l), toNumber(r))
-			"&"  -> toInt(l) and toInt(r)
-			"or" -> toInt(l) or toInt(r)
-			"^"  -> toInt(l) xor toInt(r)
-			"&&" -> toBool(l) && toBool(r)
-			"||" -> toBool(l) || toBool(r)
-			"==" -> Objects.equals(l, r)
-			"!=" -> !Objects.equals(l, r)
-			"<" -> compare(l, r) < 0
-			"<=" -> compare(l, r) <= 0
-			">" -> compare(l, r) > 0
-			">=" -> compare(l, r) >= 0
+			"-"  -> { l, r -> toNumber(l) - toNumber(r) }
+			"*"  -> { l, r -> toNumber(l) * toNumber(r) }
+			"/"  -> { l, r -> toNumber(l) / toNumber(r) }
+			"%"  -> { l, r -> toNumber(l) % toNumber(r) }
+			"**" -> { l, r -> Math.pow(toNumber(l), toNumber(r)) }
+			"&"  -> { l, r -> toInt(l) and toInt(r) }
+			"or" -> { l, r -> toInt(l) or toInt(r) }
+			"^"  -> { l, r -> toInt(l) xor toInt(r) }
+			"&&" -> { l, r -> toBool(l) && toBool(r) }
+			"||" -> { l, r -> toBool(l) || toBool(r) }
+			"==" -> { l, r -> Objects.equals(l, r) }
+			"!=" -> { l, r -> !Objects.equals(l, r) }
+			"<"  -> { l, r -> compare(l, r) < 0 }
+			"<=" -> { l, r -> compare(l, r) <= 0 }
+			">"  -> { l, r -> compare(l, r) > 0 }
+			">=" -> { l, r -> compare(l, r) >= 0 }
 			else -> noImpl("Not implemented binary operator $op")
 		}
 	}
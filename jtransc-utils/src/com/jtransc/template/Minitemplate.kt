@@ -6,10 +6,36 @@ import com.jtransc.error.noImpl
 import com.jtransc.lang.Dynamic
 import com.jtransc.text.*
 import java.io.File
+import java.lang.reflect.Method
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
 
 class Minitemplate(val template: String, val config: Config = Config()) {
 	val templateTokens = Token.tokenize(template)
 	val node = BlockNode.parse(templateTokens, config)
+	private val compiled = Compiler(config).compile(node)
+
+	/**
+	 * Parsed templates by text. Tags building nodes with side effects at parse time shouldn't be used with it.
+	 */
+	class Cache(val config: Config = Config()) {
+		private val templates = ConcurrentHashMap<String, Minitemplate>()
+		private val hitCount = AtomicInteger()
+		private val missCount = AtomicInteger()
+
+		val hits: Int get() = hitCount.get()
+		val misses: Int get() = missCount.get()
+
+		operator fun get(template: String): Minitemplate {
+			val cached = templates[template]
+			if (cached != null) {
+				hitCount.incrementAndGet()
+				return cached
+			}
+			missCount.incrementAndGet()
+			return templates.getOrPut(template) { Minitemplate(template, config) }
+		}
+	}
 
 	class Config(
 			private val extraTags: List<Tag> = listOf(),
@@ -55,7 +81,7 @@ class Minitemplate(val template: String, val config: Config = Config()) {
 	operator fun invoke(args: Any?): String {
 		val str = StringBuilder()
 		val context = Context(Scope(args), config) { str.append(it) }
-		context.createScope { node.eval(context) }
+		context.createScope { compiled(context) }
 		return str.toString()
 	}
 
@@ -68,6 +94,137 @@ class Minitemplate(val template: String, val config: Config = Config()) {
 		}
 	}
 
+	// Turns the nodes into closures, resolving filters, operators and property accessors once
+	private class Compiler(val config: Config) {
+		fun compile(node: BlockNode): (Context) -> Unit {
+			when (node) {
+				is BlockNode.GROUP -> {
+					val children = node.children.map { compile(it) }.toTypedArray()
+					return { context -> for (child in children) child(context) }
+				}
+				is BlockNode.TEXT -> {
+					val content = node.content
+					return { context -> context.write(content) }
+				}
+				is BlockNode.EXPR -> {
+					val expr = compile(node.expr)
+					return { context -> context.write(Dynamic.toString(expr(context))) }
+				}
+				is BlockNode.IF -> {
+					val cond = compile(node.cond)
+					val trueContent = compile(node.trueContent)
+					val falseContent = node.falseContent?.let { compile(it) }
+					return { context -> if (Dynamic.toBool(cond(context))) trueContent(context) else falseContent?.invoke(context) }
+				}
+				is BlockNode.FOR -> {
+					val varname = node.varname
+					val expr = compile(node.expr)
+					val loop = compile(node.loop)
+					return { context ->
+						context.createScope {
+							for (v in Dynamic.toIterable(expr(context))) {
+								context.scope[varname] = v
+								loop(context)
+							}
+						}
+					}
+				}
+				is BlockNode.SET -> {
+					val varname = node.varname
+					val expr = compile(node.expr)
+					return { context -> context.scope[varname] = expr(context) }
+				}
+				else -> return { context -> node.eval(context) }
+			}
+		}
+
+		fun compile(node: ExprNode): (Context) -> Any? {
+			when (node) {
+				is ExprNode.VAR -> {
+					val name = node.name
+					return { context -> context.scope[name] }
+				}
+				is ExprNode.LIT -> {
+					val value = node.value
+					return { value }
+				}
+				is ExprNode.ARRAY_LIT -> {
+					val items = node.items.map { compile(it) }
+					return { context -> items.map { it(context) } }
+				}
+				is ExprNode.FILTER -> {
+					val filter = config.filters[node.name]
+					val name = node.name
+					val expr = compile(node.expr)
+					val params = node.params.map { compile(it) }
+					return { context ->
+						if (filter == null) invalidOp("Unknown filter '$name'")
+						filter.eval(expr(context), params.map { it(context) })
+					}
+				}
+				is ExprNode.ACCESS -> {
+					val expr = compile(node.expr)
+					val key = node.name
+					if (key is ExprNode.LIT) {
+						val accessor = PropertyAccessor(key.value)
+						return { context -> accessor.get(expr(context)) }
+					}
+					val name = compile(key)
+					return { context -> ExprNode.ACCESS.access(expr(context), name(context)) }
+				}
+				is ExprNode.BINOP -> {
+					val l = compile(node.l)
+					val r = compile(node.r)
+					val op = Dynamic.binopFunction(node.op)
+					return { context -> op(l(context), r(context)) }
+				}
+				is ExprNode.UNOP -> {
+					val r = compile(node.r)
+					val op = node.op
+					return { context -> Dynamic.unop(r(context), op) }
+				}
+				else -> return { context -> node.eval(context) }
+			}
+		}
+	}
+
+	/**
+	 * Same lookup as [ExprNode.ACCESS], but the getter is resolved once for each class of the accessed objects.
+	 */
+	class PropertyAccessor(val key: Any?) {
+		private class Resolved(val clazz: Class<*>, val getter: (Any) -> Any?)
+
+		@Volatile private var last: Resolved? = null
+
+		fun get(obj: Any?): Any? {
+			if (obj == null || obj is Map<*, *> || obj is Iterable<*>) return ExprNode.ACCESS.access(obj, key)
+			val clazz = obj.javaClass
+			var resolved = last
+			if (resolved == null || resolved.clazz != clazz) {
+				resolved = Resolved(clazz, resolve(clazz))
+				last = resolved
+			}
+			return resolved.getter(obj)
+		}
+
+		private fun resolve(clazz: Class<*>): (Any) -> Any? {
+			val name = key.toString()
+			val method: Method = try {
+				clazz.getMethod("get${name.capitalize()}")
+			} catch (e: NoSuchMethodException) {
+				clazz.methods.firstOrNull { it.name == name }
+			} ?: return { null }
+			method.isAccessible = true
+			return { obj ->
+				try {
+					method.invoke(obj)
+				} catch (t: Throwable) {
+					null
+				}
+			}
+		}
+	}
+
 	interface ExprNode {
 		fun eval(context: Context): Any?
 
@@ -91,16 +248,18 @@ class Minitemplate(val template: String, val config: Config = Config()) {
 		}
 
 		data class ACCESS(val expr: ExprNode, val name: ExprNode) : ExprNode {
-			override fun eval(context: Context): Any? {
-				val obj = expr.eval(context)
-				val key = name.eval(context)
-				try {
-					return Dynamic.accessAny(obj, key)
-				} catch (t:Throwable) {
+			override fun eval(context: Context): Any? = access(expr.eval(context), name.eval(context))
+
+			companion object {
+				fun access(obj: Any?, key: Any?): Any? {
 					try {
-						return Dynamic.callAny(obj, key, listOf())
-					} catch (t: Throwable) {
-						return null
+						return Dynamic.accessAny(obj, key)
+					} catch (t:Throwable) {
+						try {
+							return Dynamic.callAny(obj, key, listOf())
+						} catch (t: Throwable) {
+							return null
+						}
 					}
 				}
 			}
@@ -16,9 +16,11 @@
 
 package com.jtransc.text
 
+import java.io.Reader
+import java.nio.CharBuffer
 import java.util.*
 
-class Indenter(private val actions: ArrayList<Action> = arrayListOf<Indenter.Action>()) : ToString {
+class Indenter(internal val actions: ArrayList<Action> = arrayListOf<Indenter.Action>()) : ToString {
 	interface Action {
 		data class Marker(val data: Any) : Action
 		data class Line(val str: String) : Action
@@ -51,7 +53,7 @@ class Indenter(private val actions: ArrayList<Action> = arrayListOf<Indenter.Act
 
 		private val INDENTS = arrayListOf<String>("")
 
-		private fun getIndent(index: Int): String {
+		internal fun getIndent(index: Int): String {
 			if (index >= INDENTS.size) {
 				val calculate = INDENTS.size * 10
 				var indent = INDENTS[INDENTS.size - 1]
@@ -113,41 +115,73 @@ class Indenter(private val actions: ArrayList<Action> = arrayListOf<Indenter.Act
 
 	fun toString(markHandler: ((sb: StringBuilder, line: Int, data: Any) -> Unit)?, doIndent: Boolean): String {
 		val out = StringBuilder()
-		var line = 0
-
-		var indentIndex = 0
-
-		fun eval(actions: List<Action>) {
-			for (action in actions) {
-				when (action) {
-					is Action.Line -> {
-						if (noIndentEmptyLines && action.str.isEmpty()) {
-							if (doIndent) out.append("\n")
-							line++
-						} else {
-							if (doIndent) out.append(getIndent(indentIndex)) else out.append(" ")
-							out.append(action.str)
-							line += action.str.count { it == '\n' }
-							if (doIndent) out.append("\n")
-							line++
-						}
-					}
-					is Action.LineDeferred -> eval(action.callback().actions)
-					Action.Indent -> indentIndex++
-					Action.Unindent -> indentIndex--
-					is Action.Marker -> {
-						markHandler?.invoke(out, line, action.data)
-					}
-				}
-			}
-		}
-
-		eval(actions)
-
+		val handler: ((line: Int, data: Any) -> Unit)? = if (markHandler != null) { line, data -> markHandler(out, line, data) } else null
+		IndenterWriter(out, handler, doIndent).write(this)
 		return out.toString()
 	}
 
+	fun writeTo(out: Appendable, markHandler: ((line: Int, data: Any) -> Unit)? = null): IndenterWriter = IndenterWriter(out, markHandler).apply { write(this@Indenter) }
+
 	fun toString(markHandler: ((sb: StringBuilder, line: Int, data: Any) -> Unit)?): String = toString(markHandler = markHandler, doIndent = true)
 	fun toString(doIndent: Boolean = true): String = toString(markHandler = null, doIndent = doIndent)
 	override fun toString(): String = toString(null, doIndent = true)
 }
+
+
+/**
+ * Writes [Indenter]s to [out] as they are generated, so the output never needs to be kept in memory as a whole.
+ * Indentation, line numbers for the markers and written length are kept between calls to [write].
+ */
+class IndenterWriter(
+	val out: Appendable,
+	val markHandler: ((line: Int, data: Any) -> Unit)? = null,
+	val doIndent: Boolean = true
+) {
+	var line = 0
+		private set
+	var length = 0L
+		private set
+	private var indentIndex = 0
+
+	fun write(indenter: Indenter) = this.apply { eval(indenter.actions) }
+
+	// Text already formatted, like a part of the output written before with another writer
+	fun writeRaw(reader: Reader, lines: Int) = this.apply {
+		val buffer = CharArray(0x10000)
+		while (true) {
+			val count = reader.read(buffer)
+			if (count < 0) break
+			out.append(CharBuffer.wrap(buffer, 0, count))
+			length += count
+		}
+		line += lines
+	}
+
+	private fun append(str: String) {
+		out.append(str)
+		length += str.length
+	}
+
+	private fun eval(actions: List<Indenter.Action>) {
+		for (action in actions) {
+			when (action) {
+				is Indenter.Action.Line -> {
+					if (action.str.length == 0) {
+						if (doIndent) append("\n")
+						line++
+					} else {
+						if (doIndent) append(Indenter.getIndent(indentIndex)) else append(" ")
+						append(action.str)
+						line += action.str.count { it == '\n' }
+						if (doIndent) append("\n")
+						line++
+					}
+				}
+				is Indenter.Action.LineDeferred -> eval(action.callback().actions)
+				Indenter.Action.Indent -> indentIndex++
+				Indenter.Action.Unindent -> indentIndex--
+				is Indenter.Action.Marker -> markHandler?.invoke(line, action.data)
+			}
+		}
+	}
+}
@@ -22,10 +22,7 @@ import com.jtransc.text.ToString
 import com.jtransc.text.splitLast
 import com.jtransc.vfs.node.FileNode
 import com.jtransc.vfs.node.FileNodeTree
-import java.io.ByteArrayOutputStream
-import java.io.File
-import java.io.FileNotFoundException
-import java.io.IOException
+import java.io.*
 import java.net.URL
 import java.nio.charset.Charset
 import java.util.*
@@ -72,6 +69,8 @@ class SyncVfsFile(internal val vfs: SyncVfs, val path: String) {
 	inline fun <reified T : Any> readSpecial(): T = readSpecial(T::class.java)
 	fun <T> readSpecial(clazz: Class<T>): T = vfs.readSpecial(clazz, path)
 	fun write(data: ByteArray): Unit = vfs.write(path, data)
+	fun openOutputStream(): OutputStream = vfs.openOutputStream(path)
+	fun openWriter(encoding: Charset = UTF8): Writer = BufferedWriter(OutputStreamWriter(ensureParentDir().openOutputStream(), encoding))
 	fun readString(encoding: Charset = Charsets.UTF_8): String = encoding.toString(vfs.read(path))
 	val exists: Boolean get() = vfs.exists(path)
 	val isDirectory: Boolean get() = stat().isDirectory
@@ -225,6 +224,14 @@ open class SyncVfs {
 		throw NotImplementedException()
 	}
 
+	// Written as a whole when closed, unless the vfs can stream it
+	open fun openOutputStream(path: String): OutputStream = object : ByteArrayOutputStream() {
+		override fun close() {
+			super.close()
+			this@SyncVfs.write(path, toByteArray())
+		}
+	}
+
 	open fun listdir(path: String): Iterable<SyncVfsStat> {
 		throw NotImplementedException()
 	}
@@ -305,6 +312,7 @@ private class _LocalVfs : SyncVfs() {
 	override val absolutePath: String get() = ""
 	override fun read(path: String): ByteArray = RawIo.fileRead(path)
 	override fun write(path: String, data: ByteArray): Unit = RawIo.fileWrite(path, data)
+	override fun openOutputStream(path: String): OutputStream = FileOutputStream(path)
 	override fun listdir(path: String): Iterable<SyncVfsStat> = RawIo.listdir(path).map { it.toSyncStat(this, "$path/${it.name}") }
 	override fun mkdir(path: String): Unit = RawIo.mkdir(path)
 	override fun rmdir(path: String): Unit = RawIo.rmdir(path)
@@ -335,6 +343,7 @@ abstract class ProxySyncVfs : SyncVfs() {
 	override fun read(path: String): ByteArray = transform(path).read()
 	override fun <T> readSpecial(clazz: Class<T>, path: String): T = transform(path).readSpecial(clazz)
 	override fun write(path: String, data: ByteArray): Unit = transform(path).write(data)
+	override fun openOutputStream(path: String): OutputStream = transform(path).openOutputStream()
 	// @TODO: Probably transform SyncVfsStat!
 	override fun listdir(path: String): Iterable<SyncVfsStat> = transform(path).listdir().map { transformStat(it) }
 
@@ -411,7 +420,7 @@ fun UrlVfs(url: String): SyncVfsFile = _UrlVfs().root().jailAccess(url)
 fun UrlVfs(url: URL): SyncVfsFile = _UrlVfs().root().jailAccess(url.toExternalForm())
 fun RootLocalVfs(): SyncVfsFile = _LocalVfs().root()
 fun MergeVfs(nodes: List<SyncVfsFile>) = if (nodes.isNotEmpty()) MergedSyncVfs(nodes).root() else MemoryVfs()
-fun MergedLocalAndJars(paths: List<String>) = MergeVfs(LocalAndJars(paths))
+fun MergedLocalAndJars(paths: List<String>): SyncVfsFile = if (paths.isNotEmpty()) ClassPathSyncVfs(paths).root() else MemoryVfs()
 fun LocalAndJars(paths: List<String>): List<SyncVfsFile> {
 	return paths.map { if (it.endsWith(".jar")) ZipVfs(it) else LocalVfs(File(it)) }
 }
@@ -559,7 +568,7 @@ val SyncVfsFile.withoutExtension: SyncVfsFile get() = SyncVfsFile(vfs, Path.with
 fun SyncVfsFile.withExtension(ext: String): SyncVfsFile = SyncVfsFile(vfs, Path.withExtension(path, ext))
 fun SyncVfsFile.withBaseName(baseName: String): SyncVfsFile = parent.access(baseName)
 
-private class MergedSyncVfs(private val nodes: List<SyncVfsFile>) : SyncVfs() {
+private open class MergedSyncVfs(private val nodes: List<SyncVfsFile>) : SyncVfs() {
 	init {
 		if (nodes.isEmpty()) throw InvalidArgumentException("Nodes can't be empty")
 	}
@@ -606,6 +615,73 @@ private class MergedSyncVfs(private val nodes: List<SyncVfsFile>) : SyncVfs() {
 	override fun setMtime(path: String, time: Date) = op(path, "setMtime") { it[path].setMtime(time) }
 }
 
+// Merged class path with an index of its files built once, so reads and stats don't try every entry in turn.
+// Files added to the local directories after it is created are not seen. Other operations go through MergedSyncVfs.
+private class ClassPathSyncVfs(paths: List<String>, nodes: List<SyncVfsFile> = LocalAndJars(paths)) : MergedSyncVfs(nodes) {
+	private class Entry(val zip: ZipFile?, val entry: ZipEntry?, val file: File?) {
+		val size: Long get() = entry?.size ?: file!!.length()
+		val mtime: Long get() = entry?.time ?: file!!.lastModified()
+
+		fun read(): ByteArray = if (zip != null) zip.getInputStream(entry).readBytes() else file!!.readBytes()
+	}
+
+	private val files = hashMapOf<String, Entry>()
+	private val directories = hashSetOf<String>()
+
+	init {
+		for ((path, node) in paths.zip(nodes)) {
+			val zipVfs = node.vfs as? ZipSyncVfs
+			if (zipVfs != null) {
+				val zip = zipVfs.zip
+				for (e in zip.entries()) {
+					if (e.isDirectory) continue
+					val name = e.name.trim('/')
+					if (name !in files) files[name] = Entry(zip, e, null)
+				}
+			} else {
+				val base = File(path)
+				if (!base.isDirectory) continue
+				for (file in base.walkTopDown()) {
+					if (!file.isFile) continue
+					val name = file.relativeTo(base).path.replace('\\', '/')
+					if (name !in files) files[name] = Entry(null, null, file)
+				}
+			}
+		}
+		for (name in files.keys) {
+			var dir = Path.parent(name)
+			while (dir.isNotEmpty() && directories.add(dir)) dir = Path.parent(dir)
+		}
+	}
+
+	override val absolutePath: String = "#classpath#"
+
+	override fun read(path: String): ByteArray {
+		val entry = files[path.trim('/')] ?: throw FileNotFoundException(path)
+		return entry.read()
+	}
+
+	override fun stat(path: String): SyncVfsStat {
+		val name = path.trim('/')
+		val entry = files[name]
+		return if (entry != null) {
+			SyncVfsStat(
+				file = SyncVfsFile(this, path),
+				size = entry.size,
+				mtime = Date(entry.mtime),
+				isDirectory = false,
+				isSymlink = false,
+				exists = true,
+				mode = FileMode.FULL_ACCESS
+			)
+		} else if (name.length == 0 || name in directories) {
+			super.stat(path)
+		} else {
+			SyncVfsStat.notExists(SyncVfsFile(this, path))
+		}
+	}
+}
+
 private class ResourcesSyncVfs(val clazz: Class<*>) : SyncVfs() {
 	val classLoader = clazz.classLoader
 	override fun read(path: String): ByteArray {
@@ -95,5 +95,15 @@ class MinitemplateTest {
 		)
 	}
 
+	@Test fun testCache() {
+		val cache = Minitemplate.Cache()
+		val persons = listOf(Person("Soywiz", "Zard"), Person("Carlos", "Ballesteros"))
+		Assert.assertEquals("ZardBallesteros", cache["{% for n in persons %}{{ n.surname }}{% end %}"](mapOf("persons" to persons)))
+		Assert.assertEquals("Zard", cache["{% for n in persons %}{{ n.surname }}{% end %}"](mapOf("persons" to persons.take(1))))
+		Assert.assertEquals("CARLOS", cache["{{ name|upper }}"](mapOf("name" to "caRLos")))
+		Assert.assertEquals(1, cache.hits)
+		Assert.assertEquals(2, cache.misses)
+	}
+
 	data class Person(val name:String, val surname:String)
 }
\ No newline at end of file
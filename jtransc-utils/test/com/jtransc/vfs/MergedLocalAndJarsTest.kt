@@ -0,0 +1,38 @@
+package com.jtransc.vfs
+
+import org.junit.Assert
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class MergedLocalAndJarsTest {
+	@Test
+	fun firstEntryWins() {
+		val temp = Files.createTempDirectory("classpath").toFile()
+		try {
+			val dir = File(temp, "classes")
+			File(dir, "a/b").mkdirs()
+			File(dir, "a/b/C.class").writeText("dir")
+			val jar = File(temp, "lib.jar")
+			ZipOutputStream(jar.outputStream()).use { out ->
+				for ((name, content) in listOf("a/b/C.class" to "jar", "a/D.class" to "jar2")) {
+					out.putNextEntry(ZipEntry(name))
+					out.write(content.toByteArray())
+					out.closeEntry()
+				}
+			}
+
+			val vfs = MergedLocalAndJars(listOf(dir.absolutePath, jar.absolutePath))
+			Assert.assertEquals("dir", vfs["a/b/C.class"].readString())
+			Assert.assertEquals("jar2", vfs["a/D.class"].readString())
+			Assert.assertEquals(4L, vfs["a/D.class"].stat().size)
+			Assert.assertTrue(vfs["a/b"].exists)
+			Assert.assertFalse(vfs["a/E.class"].exists)
+			Assert.assertFalse(vfs["a/b/C.class/x"].exists)
+		} finally {
+			temp.deleteRecursively()
+		}
+	}
+}